@@ -0,0 +1,326 @@
+package bankapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Applies account changes on single-writer partitions instead of under locks.
+ *
+ * Every account belongs to one partition, chosen by its ID. Each partition
+ * owns a bounded ring buffer of commands and one thread that takes them off
+ * in order and applies them, so changes to an account never contend with
+ * each other however many sessions submit them, and they happen in the
+ * order they were submitted. The thread takes whatever has queued up as one
+ * batch and hands all of the batch's history records to the journal before
+ * waiting on any of them, so a busy partition shares each fsync across many
+ * commands and never stalls on the disk itself.
+ *
+ * Each command returns a future that completes with its result once its
+ * history record, if any, is durable. When a partition's buffer is full the
+ * command fails straight away with a RejectedExecutionException rather than
+ * queueing without limit.
+ *
+ * {@link BankService} applies its account changes here when the
+ * bankapp.commands.enabled system property is true.
+ */
+public class AccountCommandExecutor {
+    private static final int MAX_BATCH = 256;
+
+    private static final AccountCommandExecutor SHARED = new AccountCommandExecutor(
+            Math.max(1, Integer.getInteger("bankapp.commands.partitions", Runtime.getRuntime().availableProcessors())),
+            Math.max(1, Integer.getInteger("bankapp.commands.queueSize", 1024)));
+
+    private final Partition[] partitions;
+    private volatile boolean shutdown;
+
+    /**
+     * Creates an executor and starts its partition threads.
+     *
+     * @param partitionCount The number of partitions, each with its own thread
+     * @param queueCapacity The most commands each partition holds waiting
+     */
+    public AccountCommandExecutor(int partitionCount, int queueCapacity) {
+        if (partitionCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Partitions and queue capacity must be positive");
+        }
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(queueCapacity, "account-commands-" + (i + 1));
+            partitions[i].thread.start();
+        }
+    }
+
+    /**
+     * Gets the executor shared by every session, sized by the
+     * bankapp.commands.partitions and bankapp.commands.queueSize system properties.
+     *
+     * @return The shared executor
+     */
+    public static AccountCommandExecutor shared() {
+        return SHARED;
+    }
+
+    /**
+     * Deposits money and records it in the account's history.
+     *
+     * @param account The account
+     * @param amountCents The amount in cents
+     * @param storage Where to record history, or null to record none
+     * @param username The account's owner, for the history record
+     * @return A future completing with OK, or why the deposit was refused
+     */
+    public CompletableFuture<TransactionStatus> deposit(BankAccount account, long amountCents,
+                                                        AccountStorage storage, String username) {
+        return submit(account, target -> target.tryDepositCents(amountCents),
+                status -> status == TransactionStatus.OK ? "Deposit: $" + Money.format(amountCents) : null,
+                storage, username);
+    }
+
+    /**
+     * Withdraws money and records it in the account's history.
+     *
+     * @param account The account
+     * @param amountCents The amount in cents
+     * @param storage Where to record history, or null to record none
+     * @param username The account's owner, for the history record
+     * @return A future completing with OK, or why the withdrawal was refused
+     */
+    public CompletableFuture<TransactionStatus> withdraw(BankAccount account, long amountCents,
+                                                         AccountStorage storage, String username) {
+        return submit(account, target -> target.tryWithdrawCents(amountCents),
+                status -> status == TransactionStatus.OK ? "Withdraw: $" + Money.format(amountCents) : null,
+                storage, username);
+    }
+
+    /**
+     * Adds a period's interest to a savings account.
+     *
+     * @param account The savings account
+     * @return A future completing with the interest added in cents
+     */
+    public CompletableFuture<Long> applyInterest(SavingsAccount account) {
+        return submit(account, target -> account.applyInterestCents());
+    }
+
+    /**
+     * Charges overdraft interest if the account is overdrawn, and records it
+     * in the account's history.
+     *
+     * @param account The account
+     * @param storage Where to record history, or null to record none
+     * @param username The account's owner, for the history record
+     * @return A future completing with the interest charged in cents
+     */
+    public CompletableFuture<Long> applyOverdraftInterest(BankAccount account, AccountStorage storage, String username) {
+        return submit(account, BankAccount::applyOverdraftInterestCents,
+                charged -> charged > 0 ? "Overdraft Interest Charged: $" + Money.format(charged) : null,
+                storage, username);
+    }
+
+    /**
+     * Freezes or unfreezes an account.
+     *
+     * @param account The account
+     * @param frozen true to freeze the account, false to unfreeze it
+     * @return A future completing once the change is made
+     */
+    public CompletableFuture<Void> setFrozen(BankAccount account, boolean frozen) {
+        return submit(account, target -> {
+            if (frozen) {
+                target.freezeAccount();
+            } else {
+                target.unfreezeAccount();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Sets an account's largest single withdrawal.
+     *
+     * @param account The account
+     * @param limitCents The limit in cents
+     * @return A future completing once the change is made
+     */
+    public CompletableFuture<Void> setWithdrawalLimit(BankAccount account, long limitCents) {
+        return submit(account, target -> {
+            target.setWithdrawalLimitCents(limitCents);
+            return null;
+        });
+    }
+
+    /**
+     * Sets how far an account may be overdrawn.
+     *
+     * @param account The account
+     * @param limitCents The limit in cents
+     * @return A future completing once the change is made
+     */
+    public CompletableFuture<Void> setOverdraftLimit(BankAccount account, long limitCents) {
+        return submit(account, target -> {
+            target.setOverdraftLimitCents(limitCents);
+            return null;
+        });
+    }
+
+    /**
+     * Sets an account's largest single transfer.
+     *
+     * @param account The account
+     * @param limitCents The limit in cents
+     * @return A future completing once the change is made
+     */
+    public CompletableFuture<Void> setTransferLimit(BankAccount account, long limitCents) {
+        return submit(account, target -> {
+            target.setTransferLimitCents(limitCents);
+            return null;
+        });
+    }
+
+    /**
+     * Runs any change on the account's partition, recording no history.
+     *
+     * @param account The account
+     * @param command The change, which must only touch this account
+     * @return A future completing with the command's result
+     */
+    public <T> CompletableFuture<T> submit(BankAccount account, Function<? super BankAccount, T> command) {
+        return submit(account, command, null, null, null);
+    }
+
+    /**
+     * Runs a change on the account's partition and records the history line
+     * it produces.
+     *
+     * @param account The account
+     * @param command The change, which must only touch this account
+     * @param history Turns the command's result into a history line, or null for none
+     * @param storage Where to record history, or null to record none
+     * @param username The account's owner, for the history record
+     * @return A future completing with the command's result once its history is durable
+     */
+    public <T> CompletableFuture<T> submit(BankAccount account, Function<? super BankAccount, T> command,
+                                           Function<? super T, String> history, AccountStorage storage, String username) {
+        Command<T> queued = new Command<>(account, command, history, storage, username);
+        Partition partition = partitions[partitionOf(account)];
+        if (shutdown) {
+            queued.result.completeExceptionally(new RejectedExecutionException("Executor shut down"));
+        } else if (!partition.queue.offer(queued)) {
+            queued.result.completeExceptionally(
+                    new RejectedExecutionException("Too many commands queued for " + partition.thread.getName()));
+        } else if (shutdown && partition.queue.remove(queued)) {
+            // Shut down after the check above; the partition may already have drained its queue
+            queued.result.completeExceptionally(new RejectedExecutionException("Executor shut down"));
+        }
+        return queued.result;
+    }
+
+    private int partitionOf(BankAccount account) {
+        long hash = account.getAccountId() * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 32) % partitions.length);
+    }
+
+    /**
+     * Stops the partition threads. Commands still queued are failed.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Partition partition : partitions) {
+            partition.thread.interrupt();
+        }
+    }
+
+    /**
+     * One ring buffer and the thread that drains it.
+     */
+    private static class Partition {
+        private final ArrayBlockingQueue<Command<?>> queue;
+        private final Thread thread;
+
+        Partition(int capacity, String name) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this::run, name);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            List<Command<?>> batch = new ArrayList<>(MAX_BATCH);
+            try {
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (Command<?> command : batch) {
+                        command.run();
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                batch.clear();
+                queue.drainTo(batch);
+                for (Command<?> command : batch) {
+                    command.result.completeExceptionally(new RejectedExecutionException("Executor shut down"));
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued change and the future waiting for it.
+     */
+    private static class Command<T> {
+        private final BankAccount account;
+        private final Function<? super BankAccount, T> action;
+        private final Function<? super T, String> history;
+        private final AccountStorage storage;
+        private final String username;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Command(BankAccount account, Function<? super BankAccount, T> action, Function<? super T, String> history,
+                AccountStorage storage, String username) {
+            this.account = account;
+            this.action = action;
+            this.history = history;
+            this.storage = storage;
+            this.username = username;
+        }
+
+        /**
+         * Applies the change and queues its history without waiting for the disk.
+         */
+        void run() {
+            T value;
+            String line;
+            try {
+                value = action.apply(account);
+                line = history == null || storage == null ? null : history.apply(value);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (line == null) {
+                result.complete(value);
+                return;
+            }
+
+            try {
+                storage.recordTransactionAsync(username, account.getAccountName(), line)
+                        .whenComplete((sequence, failure) -> {
+                            if (failure == null) {
+                                result.complete(value);
+                            } else {
+                                result.completeExceptionally(failure instanceof CompletionException
+                                        ? failure.getCause() : failure);
+                            }
+                        });
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package bankapp;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages multiple bank accounts for a user, including both checking and savings accounts.
@@ -13,13 +26,38 @@ import java.util.Map;
  */
 public class AccountManager {
     private String username;
+    private final Path userDirectory;
     private List<CheckingAccount> checkingAccounts;
     private List<SavingsAccount> savingsAccounts;
+    private AccountStateLog stateLog;
+    private Map<BankAccount, AccountStateLog.AccountState> loggedStates;
+    private volatile boolean hasLogBaseline;
+    private boolean checkingFileDirty;
+    private boolean savingsFileDirty;
+    private ScheduledFuture<?> pendingFlush;
+    private final KeyValueStore store;
     
     // Constants
     private static final int MAX_CHECKING_ACCOUNTS = 2;
     private static final int MAX_SAVINGS_ACCOUNTS = 3;
-    private static final String ACCOUNTS_DIRECTORY = "data/Accounts/";
+    private static final String DEFAULT_ACCOUNTS_DIRECTORY = "data/Accounts";
+    private static final String STATE_LOG_FILE = "accounts.wal";
+    private static final String RECORD_FILE_SUFFIX = ".dat";
+    private static final String LEGACY_FILE_SUFFIX = ".txt";
+    private static final int CHECKPOINT_RECORDS = 100; // log records allowed before a new snapshot
+    private static final long WRITE_BEHIND_MILLIS = Long.getLong("bankapp.accounts.writeBehindMs", 250);
+    
+    // Shared background writer for all managers, plus the managers it still owes a write
+    private static final ScheduledExecutorService WRITE_BEHIND_EXECUTOR = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "account-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<AccountManager> PENDING_FLUSHES = new HashSet<>();
+    
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AccountManager::flushAll, "account-flush-on-exit"));
+    }
     
     /**
      * Creates a new AccountManager for the specified user.
@@ -28,8 +66,14 @@ public class AccountManager {
      */
     public AccountManager(String username) {
         this.username = username;
-        this.checkingAccounts = new ArrayList<>();
-        this.savingsAccounts = new ArrayList<>();
+        // Copy-on-write so lookups and the write-behind flush never see a list mid-change
+        this.checkingAccounts = new CopyOnWriteArrayList<>();
+        this.savingsAccounts = new CopyOnWriteArrayList<>();
+        this.userDirectory = accountsDirectory().resolve(username);
+        this.stateLog = new AccountStateLog(userDirectory.resolve(STATE_LOG_FILE));
+        this.loggedStates = new IdentityHashMap<>();
+        this.hasLogBaseline = false;
+        this.store = KeyValueStore.configuredStore();
         createAccountsDirectory();
     }
 
@@ -46,9 +90,11 @@ public class AccountManager {
      * Creates the directory structure for storing account data.
      */
     private void createAccountsDirectory() {
+        if (store != null) {
+            return; // Accounts live in the key-value store
+        }
         try {
-            Path userAccountsDir = Paths.get(ACCOUNTS_DIRECTORY + username);
-            Files.createDirectories(userAccountsDir);
+            Files.createDirectories(userDirectory);
         } catch (IOException exception) {
             System.err.println("Failed to create accounts directory: " + exception.getMessage());
         }
@@ -62,18 +108,7 @@ public class AccountManager {
      * @return true if the account was successfully added, false otherwise
      */
     public boolean addCheckingAccount(String accountName, double overdraftLimit) {
-        if (isMaxCheckingAccountsReached()) {
-            return false;
-        }
-        
-        if (isAccountNameTaken(accountName)) {
-            return false;
-        }
-        
-        CheckingAccount newAccount = createNewCheckingAccount(accountName, overdraftLimit);
-        checkingAccounts.add(newAccount);
-        saveAccounts(); // Save after adding a new account
-        return true;
+        return reportAdded(tryAddAccount(createNewCheckingAccount(accountName, overdraftLimit)));
     }
     
     /**
@@ -82,11 +117,7 @@ public class AccountManager {
      * @return true if maximum reached, false otherwise
      */
     private boolean isMaxCheckingAccountsReached() {
-        if (checkingAccounts.size() >= MAX_CHECKING_ACCOUNTS) {
-            System.out.println("Maximum number of checking accounts (" + MAX_CHECKING_ACCOUNTS + ") reached.");
-            return true;
-        }
-        return false;
+        return checkingAccounts.size() >= MAX_CHECKING_ACCOUNTS;
     }
     
     /**
@@ -120,17 +151,52 @@ public class AccountManager {
      * @return true if the account was successfully added, false otherwise
      */
     public boolean addSavingsAccount(String accountName, double interestRate) {
-        if (isMaxSavingsAccountsReached()) {
-            return false;
+        return reportAdded(tryAddAccount(createNewSavingsAccount(accountName, interestRate)));
+    }
+    
+    /**
+     * Adds a new checking or savings account without printing anything.
+     * 
+     * @param account The new account
+     * @return null if the account was added, otherwise why it was not
+     */
+    String tryAddAccount(BankAccount account) {
+        boolean savings = account instanceof SavingsAccount;
+        String accountName = account.getAccountName();
+        // Checked and added under the lock so two sessions cannot both take the last slot or the same name
+        synchronized (this) {
+            if (savings ? isMaxSavingsAccountsReached() : isMaxCheckingAccountsReached()) {
+                return "Maximum number of " + account.getAccountType() + " accounts ("
+                        + (savings ? MAX_SAVINGS_ACCOUNTS : MAX_CHECKING_ACCOUNTS) + ") reached.";
+            }
+            if (isAccountNameTaken(accountName)) {
+                return "Account name '" + accountName + "' is already in use.";
+            }
+            if (isAccountNameTooLong(accountName)) {
+                return "Account name '" + accountName + "' is too long.";
+            }
+            
+            if (savings) {
+                savingsAccounts.add((SavingsAccount) account);
+            } else {
+                checkingAccounts.add((CheckingAccount) account);
+            }
         }
-        
-        if (isAccountNameTaken(accountName)) {
+        scheduleSave(); // Save after adding a new account
+        return null;
+    }
+    
+    /**
+     * Prints why an account could not be added, if it could not.
+     * 
+     * @param problem The result of tryAddAccount
+     * @return true if the account was added
+     */
+    private static boolean reportAdded(String problem) {
+        if (problem != null) {
+            System.out.println(problem);
             return false;
         }
-        
-        SavingsAccount newAccount = createNewSavingsAccount(accountName, interestRate);
-        savingsAccounts.add(newAccount);
-        saveAccounts(); // Save after adding a new account
         return true;
     }
     
@@ -140,11 +206,7 @@ public class AccountManager {
      * @return true if maximum reached, false otherwise
      */
     private boolean isMaxSavingsAccountsReached() {
-        if (savingsAccounts.size() >= MAX_SAVINGS_ACCOUNTS) {
-            System.out.println("Maximum number of savings accounts (" + MAX_SAVINGS_ACCOUNTS + ") reached.");
-            return true;
-        }
-        return false;
+        return savingsAccounts.size() >= MAX_SAVINGS_ACCOUNTS;
     }
     
     /**
@@ -158,6 +220,16 @@ public class AccountManager {
         return new SavingsAccount(accountName, interestRate);
     }
     
+    /**
+     * Checks if an account name is too long to be saved.
+     * 
+     * @param accountName The account name to check
+     * @return true if the name is too long, false otherwise
+     */
+    private boolean isAccountNameTooLong(String accountName) {
+        return !AccountRecordCodec.fitsName(accountName);
+    }
+    
     /**
      * Checks if an account name is already in use.
      * 
@@ -165,23 +237,7 @@ public class AccountManager {
      * @return true if the name is already taken, false otherwise
      */
     private boolean isAccountNameTaken(String accountName) {
-        // Check if name exists in checking accounts
-        for (CheckingAccount account : checkingAccounts) {
-            if (account.getAccountName().equalsIgnoreCase(accountName)) {
-                System.out.println("Account name '" + accountName + "' is already in use.");
-                return true;
-            }
-        }
-        
-        // Check if name exists in savings accounts
-        for (SavingsAccount account : savingsAccounts) {
-            if (account.getAccountName().equalsIgnoreCase(accountName)) {
-                System.out.println("Account name '" + accountName + "' is already in use.");
-                return true;
-            }
-        }
-        
-        return false;
+        return getAccountByName(accountName) != null;
     }
     
     /**
@@ -291,14 +347,14 @@ public class AccountManager {
     private void displayCheckingAccountInfo(CheckingAccount account, String statusText) {
         String overdraftText = "";
         if (account.getOverdraftLimit() > 0) {
-            overdraftText = String.format(" (Overdraft Limit: $%.2f, Rate: %.2f%%)", 
-                                         account.getOverdraftLimit(), 
+            overdraftText = String.format(" (Overdraft Limit: $%s, Rate: %.2f%%)", 
+                                         Money.format(account.getOverdraftLimitCents()), 
                                          account.getOverdraftInterestRate());
         }
         
-        System.out.printf("- %s: $%.2f%s%s\n", 
+        System.out.printf("- %s: $%s%s%s\n", 
                          account.getAccountName(), 
-                         account.getBalance(),
+                         Money.format(account.getBalanceCents()),
                          overdraftText,
                          statusText);
     }
@@ -310,75 +366,411 @@ public class AccountManager {
      * @param statusText Text indicating if account is frozen
      */
     private void displaySavingsAccountInfo(SavingsAccount account, String statusText) {
-        System.out.printf("- %s: $%.2f (Interest Rate: %.2f%%)%s\n", 
-                account.getAccountName(), account.getBalance(), account.getInterestRate(), statusText);
+        System.out.printf("- %s: $%s (Interest Rate: %.2f%%)%s\n", 
+                account.getAccountName(), Money.format(account.getBalanceCents()), account.getInterestRate(), statusText);
     }
     
     /**
-     * Saves all accounts to the filesystem.
+     * Saves all accounts to the filesystem right away.
+     * Equivalent to {@link #flush()}.
      * 
      * @return true if saving was successful, false otherwise
      */
     public boolean saveAccounts() {
-        createAccountsDirectory();
+        return flush();
+    }
+    
+    /**
+     * Writes all pending changes to the filesystem and cancels any scheduled write-behind.
+     * Changes since the last save are appended to the account log; account
+     * files are only rewritten when the log grows long enough to checkpoint,
+     * and then only for the account types that changed.
+     * Call this on logout and shutdown.
+     * 
+     * @return true if saving was successful, false otherwise
+     */
+    public boolean flush() {
+        // Make other managers' pending changes for this user land first
+        if (!hasLogBaseline) {
+            flushOtherManagers();
+        }
+        
+        synchronized (this) {
+            unregisterPendingFlush();
+            createAccountsDirectory();
+            
+            try {
+                // Until this manager has loaded or written a snapshot, its accounts replace whatever is on disk
+                if (!hasLogBaseline) {
+                    checkpoint(true, true);
+                    return true;
+                }
+                
+                List<byte[]> records = new ArrayList<>();
+                collectChanges(records);
+                
+                // The key-value store is itself a log, so changed snapshots are written to it directly
+                if (store != null) {
+                    if (checkingFileDirty || savingsFileDirty) {
+                        checkpoint(checkingFileDirty, savingsFileDirty);
+                    }
+                    return true;
+                }
+                
+                stateLog.append(records);
+                if (stateLog.getRecordCount() >= CHECKPOINT_RECORDS) {
+                    checkpoint(checkingFileDirty, savingsFileDirty);
+                }
+                return true;
+            } catch (IOException exception) {
+                System.err.println("Error saving accounts for " + username + ": " + exception.getMessage());
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Schedules the pending changes to be written in the background.
+     * Changes made within the write-behind window are coalesced into one write.
+     * Falls back to an immediate flush when write-behind is disabled or no
+     * snapshot has been written yet.
+     */
+    void scheduleSave() {
+        if (WRITE_BEHIND_MILLIS <= 0 || !hasLogBaseline) {
+            flush();
+            return;
+        }
         
+        synchronized (this) {
+            if (pendingFlush != null) {
+                return; // Already scheduled; this change rides along
+            }
+            pendingFlush = WRITE_BEHIND_EXECUTOR.schedule(this::flushInBackground, WRITE_BEHIND_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        synchronized (PENDING_FLUSHES) {
+            PENDING_FLUSHES.add(this);
+        }
+    }
+    
+    /**
+     * Runs a scheduled flush, reporting failures the executor would otherwise swallow.
+     */
+    private void flushInBackground() {
         try {
-            // Save checking accounts
+            flush();
+        } catch (RuntimeException exception) {
+            System.err.println("Error saving accounts for " + username + ": " + exception);
+        }
+    }
+    
+    /**
+     * Cancels the scheduled write-behind, if any. Caller holds this manager's lock.
+     */
+    private void unregisterPendingFlush() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        synchronized (PENDING_FLUSHES) {
+            PENDING_FLUSHES.remove(this);
+        }
+    }
+    
+    /**
+     * Flushes other managers for the same user that still have changes waiting to be written.
+     */
+    private void flushOtherManagers() {
+        List<AccountManager> others = new ArrayList<>();
+        synchronized (PENDING_FLUSHES) {
+            for (AccountManager manager : PENDING_FLUSHES) {
+                if (manager != this && manager.username.equals(username)) {
+                    others.add(manager);
+                }
+            }
+        }
+        for (AccountManager manager : others) {
+            manager.flush();
+        }
+    }
+    
+    /**
+     * Flushes every manager with pending changes. Runs at JVM shutdown.
+     */
+    public static void flushAll() {
+        List<AccountManager> pending;
+        synchronized (PENDING_FLUSHES) {
+            pending = new ArrayList<>(PENDING_FLUSHES);
+        }
+        for (AccountManager manager : pending) {
+            manager.flush();
+        }
+    }
+    
+    /**
+     * Encodes the log records for every account that changed since the last save
+     * and marks the account files those changes belong to as dirty.
+     * 
+     * @param records Collects the encoded records
+     * @throws IOException If a record cannot be encoded
+     */
+    private void collectChanges(List<byte[]> records) throws IOException {
+        // Removals first so a closed account's name can be reused in the same save
+        Map<BankAccount, Boolean> current = new IdentityHashMap<>();
+        for (BankAccount account : checkingAccounts) {
+            current.put(account, Boolean.TRUE);
+        }
+        for (BankAccount account : savingsAccounts) {
+            current.put(account, Boolean.TRUE);
+        }
+        Iterator<Map.Entry<BankAccount, AccountStateLog.AccountState>> logged = loggedStates.entrySet().iterator();
+        while (logged.hasNext()) {
+            Map.Entry<BankAccount, AccountStateLog.AccountState> entry = logged.next();
+            if (!current.containsKey(entry.getKey())) {
+                stateLog.removed(records, entry.getValue().name);
+                markFileDirty(entry.getKey());
+                logged.remove();
+            }
+        }
+        
+        for (BankAccount account : checkingAccounts) {
+            collectAccountChanges(records, account);
+        }
+        for (BankAccount account : savingsAccounts) {
+            collectAccountChanges(records, account);
+        }
+    }
+    
+    /**
+     * Encodes the changes to one account if it is new or has been marked dirty.
+     */
+    private void collectAccountChanges(List<byte[]> records, BankAccount account) throws IOException {
+        AccountStateLog.AccountState before = loggedStates.get(account);
+        if (!account.takeDirty() && before != null) {
+            return;
+        }
+        
+        AccountStateLog.AccountState after = AccountStateLog.AccountState.of(account);
+        int recordsBefore = records.size();
+        stateLog.diff(records, before, after);
+        if (records.size() > recordsBefore) {
+            markFileDirty(account);
+        }
+        loggedStates.put(account, after);
+    }
+    
+    private void markFileDirty(BankAccount account) {
+        if (account instanceof SavingsAccount) {
+            savingsFileDirty = true;
+        } else {
+            checkingFileDirty = true;
+        }
+    }
+    
+    /**
+     * Records the current state of every account as the last logged state.
+     */
+    private void rememberLoggedStates() {
+        loggedStates.clear();
+        for (BankAccount account : checkingAccounts) {
+            account.takeDirty();
+            loggedStates.put(account, AccountStateLog.AccountState.of(account));
+        }
+        for (BankAccount account : savingsAccounts) {
+            account.takeDirty();
+            loggedStates.put(account, AccountStateLog.AccountState.of(account));
+        }
+    }
+    
+    /**
+     * Writes a snapshot of the changed account files and truncates the log.
+     * 
+     * @param writeChecking Whether to rewrite the checking accounts file
+     * @param writeSavings Whether to rewrite the savings accounts file
+     * @throws IOException If the snapshot cannot be written
+     */
+    private void checkpoint(boolean writeChecking, boolean writeSavings) throws IOException {
+        rememberLoggedStates();
+        if (writeChecking) {
             saveAccountList(checkingAccounts, "checking");
-            
-            // Save savings accounts
+        }
+        if (writeSavings) {
             saveAccountList(savingsAccounts, "savings");
-            
-            return true;
-        } catch (IOException exception) {
-            System.err.println("Error saving accounts for " + username + ": " + exception.getMessage());
-            return false;
         }
+        stateLog.truncate();
+        checkingFileDirty = false;
+        savingsFileDirty = false;
+        hasLogBaseline = true;
     }
     
     /**
-     * Saves a list of accounts to a file.
+     * Saves a list of accounts as binary account records.
+     * The file is written to a temporary name first and then moved into place,
+     * replacing any older CSV accounts file. A list holding an older account
+     * whose name is too long for a record is saved as CSV lines instead.
      * 
      * @param accounts The list of accounts to save
      * @param accountType The type of accounts ("checking" or "savings")
      * @throws IOException If there's an error writing to the file
      */
     private <T extends BankAccount> void saveAccountList(List<T> accounts, String accountType) throws IOException {
-        Path filePath = Paths.get(ACCOUNTS_DIRECTORY + username + "/" + accountType + ".txt");
+        boolean binary = allNamesFit(accounts);
+        byte[] saved = binary ? AccountRecordCodec.encodeAll(accounts) : encodeCsv(accounts);
+        if (store != null) {
+            store.put(getStoreKey(accountType), saved);
+            return;
+        }
+        
+        String suffix = binary ? RECORD_FILE_SUFFIX : LEGACY_FILE_SUFFIX;
+        Path filePath = getAccountFilePath(accountType, suffix);
+        Path tempPath = getAccountFilePath(accountType, suffix + ".tmp");
         
-        try (BufferedWriter writer = Files.newBufferedWriter(filePath)) {
-            for (T account : accounts) {
-                writeAccountToFile(writer, account);
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(saved);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
             }
         }
+        Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(getAccountFilePath(accountType, binary ? LEGACY_FILE_SUFFIX : RECORD_FILE_SUFFIX));
     }
     
     /**
-     * Writes a single account's data to a file.
+     * Checks whether every account name fits in a binary account record.
+     * Names are limited when accounts are added, but accounts saved before
+     * the record format may have longer names.
      * 
-     * @param writer The writer to use
-     * @param account The account to write
-     * @throws IOException If there's an error writing to the file
+     * @param accounts The accounts to check
+     * @return true if every name fits
+     */
+    private static boolean allNamesFit(List<? extends BankAccount> accounts) {
+        for (BankAccount account : accounts) {
+            if (!AccountRecordCodec.fitsName(account.getAccountName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Encodes accounts as CSV lines in the format read by the legacy loader.
+     * 
+     * @param accounts The accounts to encode
+     * @return The CSV bytes
      */
-    private <T extends BankAccount> void writeAccountToFile(BufferedWriter writer, T account) throws IOException {
+    private static byte[] encodeCsv(List<? extends BankAccount> accounts) {
         StringBuilder builder = new StringBuilder();
-        
-        // Add basic account information
-        builder.append(account.getAccountName()).append(",")
-               .append(account.getBalance()).append(",")
-               .append(account.isFrozen()).append(",")
-               .append(account.getOverdraftLimit()).append(",")
-               .append(account.getOverdraftInterestRate()).append(",")
-               .append(account.getWithdrawalLimit());
-        
-        // Add savings-specific information
-        if (account instanceof SavingsAccount) {
-            SavingsAccount savingsAccount = (SavingsAccount) account;
-            builder.append(",").append(savingsAccount.getInterestRate());
+        for (BankAccount account : accounts) {
+            builder.append(account.getAccountName()).append(',');
+            Money.appendTo(builder, account.getBalanceCents()).append(',')
+                   .append(account.isFrozen()).append(',');
+            Money.appendTo(builder, account.getOverdraftLimitCents()).append(',')
+                   .append(account.getOverdraftInterestRate()).append(',');
+            Money.appendTo(builder, account.getWithdrawalLimitCents());
+            if (account instanceof SavingsAccount) {
+                builder.append(',').append(((SavingsAccount) account).getInterestRate());
+            }
+            builder.append(System.lineSeparator());
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Gets the path of one of this user's accounts files.
+     * 
+     * @param accountType The type of accounts ("checking" or "savings")
+     * @param suffix The file suffix
+     * @return The file path
+     */
+    private Path getAccountFilePath(String accountType, String suffix) {
+        return userDirectory.resolve(accountType + suffix);
+    }
+    
+    /**
+     * Gets the directory holding each user's account files, set by the
+     * bankapp.accounts.dir system property (default data/Accounts) when a manager is created.
+     * 
+     * @return The accounts directory
+     */
+    private static Path accountsDirectory() {
+        return Paths.get(System.getProperty("bankapp.accounts.dir", DEFAULT_ACCOUNTS_DIRECTORY));
+    }
+    
+    /**
+     * Gets the key-value store key holding one type of this user's accounts.
+     * 
+     * @param accountType The type of accounts ("checking" or "savings")
+     * @return The store key
+     */
+    private String getStoreKey(String accountType) {
+        return "accounts/" + username + "/" + accountType;
+    }
+    
+    /**
+     * Loads the saved accounts of one type.
+     * Accounts still saved in the older CSV format are read with the CSV
+     * parser and marked for rewriting as binary records.
+     * 
+     * @param accountType The type of accounts ("checking" or "savings")
+     * @throws IOException If the accounts cannot be read
+     */
+    private void loadAccountList(String accountType) throws IOException {
+        if (store != null) {
+            byte[] saved = store.get(getStoreKey(accountType));
+            if (saved != null) {
+                if (AccountRecordCodec.isBinary(saved)) {
+                    addDecodedAccounts(saved);
+                } else {
+                    loadLegacyAccountList(accountType, saved);
+                }
+                return;
+            }
+        } else {
+            Path recordPath = getAccountFilePath(accountType, RECORD_FILE_SUFFIX);
+            if (Files.exists(recordPath)) {
+                addDecodedAccounts(Files.readAllBytes(recordPath));
+                return;
+            }
         }
         
-        writer.write(builder.toString());
-        writer.newLine();
+        Path legacyPath = getAccountFilePath(accountType, LEGACY_FILE_SUFFIX);
+        if (Files.exists(legacyPath)) {
+            loadLegacyAccountList(accountType, Files.readAllBytes(legacyPath));
+        }
+    }
+    
+    /**
+     * Adds the accounts held in binary account records.
+     * 
+     * @param records The saved records
+     * @throws IOException If the records are corrupt
+     */
+    private void addDecodedAccounts(byte[] records) throws IOException {
+        for (BankAccount account : AccountRecordCodec.decodeAll(records)) {
+            if (account instanceof SavingsAccount) {
+                savingsAccounts.add((SavingsAccount) account);
+            } else {
+                checkingAccounts.add((CheckingAccount) account);
+            }
+        }
+    }
+    
+    /**
+     * Loads accounts saved as CSV lines and marks them for migration to binary records.
+     * Lists holding a name too long for a record stay in CSV form.
+     * 
+     * @param accountType The type of accounts ("checking" or "savings")
+     * @param csv The saved CSV bytes
+     */
+    private void loadLegacyAccountList(String accountType, byte[] csv) {
+        LegacyCsvParser parser = new LegacyCsvParser(csv);
+        if (accountType.equals("savings")) {
+            loadSavingsAccounts(parser);
+            savingsFileDirty = allNamesFit(savingsAccounts);
+        } else {
+            loadCheckingAccounts(parser);
+            checkingFileDirty = allNamesFit(checkingAccounts);
+        }
     }
     
     /**
@@ -387,21 +779,47 @@ public class AccountManager {
      * @return true if loading was successful, false otherwise
      */
     public boolean loadAccounts() {
+        flushOtherManagers();
+        
+        synchronized (this) {
+            return loadAccountsFromDisk();
+        }
+    }
+    
+    /**
+     * Reads the account snapshot and replays the account log. Caller holds this manager's lock.
+     * 
+     * @return true if loading was successful, false otherwise
+     */
+    private boolean loadAccountsFromDisk() {
+        unregisterPendingFlush();
+        
         // Clear existing accounts
         checkingAccounts.clear();
         savingsAccounts.clear();
+        checkingFileDirty = false;
+        savingsFileDirty = false;
         
         try {
-            // Load checking accounts
-            Path checkingPath = Paths.get(ACCOUNTS_DIRECTORY + username + "/checking.txt");
-            if (Files.exists(checkingPath)) {
-                loadCheckingAccounts(checkingPath);
+            loadAccountList("checking");
+            loadAccountList("savings");
+            
+            // Apply changes logged since the snapshot was written
+            stateLog.replay(new LogReplayer());
+            rememberLoggedStates();
+            hasLogBaseline = true;
+            
+            // Replayed changes may touch either file, so both must be rewritten before the log is dropped
+            if (stateLog.getRecordCount() > 0) {
+                checkingFileDirty = true;
+                savingsFileDirty = true;
             }
             
-            // Load savings accounts
-            Path savingsPath = Paths.get(ACCOUNTS_DIRECTORY + username + "/savings.txt");
-            if (Files.exists(savingsPath)) {
-                loadSavingsAccounts(savingsPath);
+            if (stateLog.getRecordCount() >= CHECKPOINT_RECORDS) {
+                checkpoint(true, true);
+            } else if (stateLog.getRecordCount() == 0 && (checkingFileDirty || savingsFileDirty)) {
+                // Rewrite CSV accounts as binary records right away
+                checkpoint(checkingFileDirty, savingsFileDirty);
             }
             
             return true;
@@ -412,45 +830,66 @@ public class AccountManager {
     }
     
     /**
-     * Loads checking accounts from a file.
+     * Applies account log records to this manager's account lists.
+     */
+    private class LogReplayer implements AccountStateLog.Replayer {
+        @Override
+        public void put(AccountStateLog.AccountState state) {
+            remove(state.name);
+            BankAccount account = state.toAccount();
+            if (account instanceof SavingsAccount) {
+                savingsAccounts.add((SavingsAccount) account);
+            } else {
+                checkingAccounts.add((CheckingAccount) account);
+            }
+        }
+        
+        @Override
+        public void remove(String accountName) {
+            checkingAccounts.removeIf(account -> account.getAccountName().equalsIgnoreCase(accountName));
+            savingsAccounts.removeIf(account -> account.getAccountName().equalsIgnoreCase(accountName));
+        }
+        
+        @Override
+        public BankAccount find(String accountName) {
+            return getAccountByName(accountName);
+        }
+    }
+    
+    /**
+     * Loads checking accounts from saved account lines.
      * 
-     * @param filePath The path to the checking accounts file
-     * @throws IOException If there's an error reading from the file
+     * @param parser The parser over the checking accounts
      */
-    private void loadCheckingAccounts(Path filePath) throws IOException {
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length < 2) {
-                    continue; // Skip invalid lines
-                }
-                
-                CheckingAccount account = parseCheckingAccount(parts);
-                if (account != null) {
-                    checkingAccounts.add(account);
-                }
+    private void loadCheckingAccounts(LegacyCsvParser parser) {
+        while (parser.nextLine()) {
+            if (parser.fieldCount() < 2) {
+                continue; // Skip invalid lines
+            }
+            
+            CheckingAccount account = parseCheckingAccount(parser);
+            if (account != null) {
+                checkingAccounts.add(account);
             }
         }
     }
     
     /**
-     * Parses a checking account from its string representation.
+     * Parses a checking account from the parser's current line.
      * 
-     * @param parts The parts of the account string
+     * @param parser The parser positioned on the account's line
      * @return The parsed checking account, or null if invalid
      */
-    private CheckingAccount parseCheckingAccount(String[] parts) {
+    private CheckingAccount parseCheckingAccount(LegacyCsvParser parser) {
         try {
-            String accountName = parts[0];
-            double balance = Double.parseDouble(parts[1]);
+            long balance = parser.fieldCents(1);
             
-            CheckingAccount account = new CheckingAccount(accountName);
-            account.deposit(balance); // Set the balance
+            CheckingAccount account = new CheckingAccount(parser.fieldString(0));
+            account.depositCents(balance); // Set the balance
             
             // Set overdraft settings if present in file (newer format)
-            if (parts.length >= 6) {
-                configureAccountFromParts(account, parts);
+            if (parser.fieldCount() >= 6) {
+                configureAccountFromFields(account, parser);
             }
             
             return account;
@@ -461,72 +900,66 @@ public class AccountManager {
     }
     
     /**
-     * Configures an account with settings from parsed file data.
+     * Configures an account with settings from the parser's current line.
      * 
      * @param account The account to configure
-     * @param parts The parts of the account string
+     * @param parser The parser positioned on the account's line
      */
-    private void configureAccountFromParts(BankAccount account, String[] parts) {
+    private void configureAccountFromFields(BankAccount account, LegacyCsvParser parser) {
         try {
-            boolean isFrozen = Boolean.parseBoolean(parts[2]);
-            double overdraftLimit = Double.parseDouble(parts[3]);
-            double overdraftRate = Double.parseDouble(parts[4]);
-            double withdrawalLimit = Double.parseDouble(parts[5]);
+            boolean isFrozen = parser.fieldBoolean(2);
+            long overdraftLimit = parser.fieldCents(3);
+            double overdraftRate = parser.fieldDouble(4);
+            long withdrawalLimit = parser.fieldCents(5);
             
             if (isFrozen) account.freezeAccount();
-            account.setOverdraftLimit(overdraftLimit);
+            account.setOverdraftLimitCents(overdraftLimit);
             account.setOverdraftInterestRate(overdraftRate);
-            account.setWithdrawalLimit(withdrawalLimit);
+            account.setWithdrawalLimitCents(withdrawalLimit);
         } catch (NumberFormatException e) {
             System.err.println("Error configuring account: " + e.getMessage());
         }
     }
     
     /**
-     * Loads savings accounts from a file.
+     * Loads savings accounts from saved account lines.
      * 
-     * @param filePath The path to the savings accounts file
-     * @throws IOException If there's an error reading from the file
+     * @param parser The parser over the savings accounts
      */
-    private void loadSavingsAccounts(Path filePath) throws IOException {
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length < 3) {
-                    continue; // Skip invalid lines
-                }
-                
-                SavingsAccount account = parseSavingsAccount(parts);
-                if (account != null) {
-                    savingsAccounts.add(account);
-                }
+    private void loadSavingsAccounts(LegacyCsvParser parser) {
+        while (parser.nextLine()) {
+            if (parser.fieldCount() < 3) {
+                continue; // Skip invalid lines
+            }
+            
+            SavingsAccount account = parseSavingsAccount(parser);
+            if (account != null) {
+                savingsAccounts.add(account);
             }
         }
     }
     
     /**
-     * Parses a savings account from its string representation.
+     * Parses a savings account from the parser's current line.
      * 
-     * @param parts The parts of the account string
+     * @param parser The parser positioned on the account's line
      * @return The parsed savings account, or null if invalid
      */
-    private SavingsAccount parseSavingsAccount(String[] parts) {
+    private SavingsAccount parseSavingsAccount(LegacyCsvParser parser) {
         try {
-            String accountName = parts[0];
-            double balance = Double.parseDouble(parts[1]);
+            long balance = parser.fieldCents(1);
             
             // In newer format, interest rate is at index 6
-            double interestRate = parts.length >= 7 ? 
-                                 Double.parseDouble(parts[6]) : 
-                                 Double.parseDouble(parts[2]);
+            double interestRate = parser.fieldCount() >= 7 ? 
+                                 parser.fieldDouble(6) : 
+                                 parser.fieldDouble(2);
             
-            SavingsAccount account = new SavingsAccount(accountName, interestRate);
-            account.deposit(balance); // Set the balance
+            SavingsAccount account = new SavingsAccount(parser.fieldString(0), interestRate);
+            account.depositCents(balance); // Set the balance
             
             // Set overdraft settings if present in file (newer format)
-            if (parts.length >= 6) {
-                configureAccountFromParts(account, parts);
+            if (parser.fieldCount() >= 6) {
+                configureAccountFromFields(account, parser);
             }
             
             return account;
@@ -545,7 +978,7 @@ public class AccountManager {
                 account.applyInterest();
             }
         }
-        saveAccounts(); // Save changes after applying interest
+        scheduleSave(); // Save changes after applying interest
     }
     
     /**
@@ -554,7 +987,7 @@ public class AccountManager {
      * @return The total interest charged across all accounts
      */
     public double applyOverdraftInterestToAllAccounts() {
-        double totalInterestCharged = 0.0;
+        long totalInterestCharged = 0;
         AccountStorage storage = new AccountStorage();
         
         // Apply interest to checking accounts
@@ -563,8 +996,8 @@ public class AccountManager {
         // Apply interest to savings accounts (although they typically don't allow overdraft)
         totalInterestCharged += applyOverdraftInterestToAccounts(savingsAccounts, storage);
         
-        saveAccounts(); // Save changes after applying interest
-        return totalInterestCharged;
+        scheduleSave(); // Save changes after applying interest
+        return Money.toDouble(totalInterestCharged);
     }
     
     /**
@@ -572,18 +1005,28 @@ public class AccountManager {
      * 
      * @param accounts The list of accounts
      * @param storage The account storage for recording transactions
-     * @return The total interest charged
+     * @return The total interest charged in cents
      */
-    private <T extends BankAccount> double applyOverdraftInterestToAccounts(List<T> accounts, AccountStorage storage) {
-        double totalInterestCharged = 0.0;
+    private <T extends BankAccount> long applyOverdraftInterestToAccounts(List<T> accounts, AccountStorage storage) {
+        long totalInterestCharged = 0;
+        List<CompletableFuture<Long>> pendingRecords = new ArrayList<>();
         
         for (T account : accounts) {
-            if (!account.isFrozen() && account.getBalance() < 0) {
-                double interestAmount = account.applyOverdraftInterest();
+            if (!account.isFrozen() && account.getBalanceCents() < 0) {
+                long interestAmount = account.applyOverdraftInterestCents();
                 totalInterestCharged += interestAmount;
                 
                 // Record the transaction
-                recordOverdraftInterestTransaction(storage, account, interestAmount);
+                recordOverdraftInterestTransaction(storage, account, interestAmount, pendingRecords);
+            }
+        }
+        
+        // Wait once for the whole group instead of once per account
+        for (CompletableFuture<Long> pending : pendingRecords) {
+            try {
+                AccountStorage.awaitDurable(pending);
+            } catch (IOException e) {
+                System.err.println("Error recording overdraft interest transaction: " + e.getMessage());
             }
         }
         
@@ -591,16 +1034,18 @@ public class AccountManager {
     }
     
     /**
-     * Records an overdraft interest transaction.
+     * Queues an overdraft interest transaction.
      * 
      * @param storage The account storage
      * @param account The account
-     * @param interestAmount The interest amount
+     * @param interestAmount The interest amount in cents
+     * @param pendingRecords Collects the future of the queued record
      */
-    private void recordOverdraftInterestTransaction(AccountStorage storage, BankAccount account, double interestAmount) {
+    private void recordOverdraftInterestTransaction(AccountStorage storage, BankAccount account, long interestAmount,
+                                                    List<CompletableFuture<Long>> pendingRecords) {
         try {
-            storage.recordTransaction(username, account.getAccountName(),
-                String.format("Overdraft Interest Charged: $%.2f", interestAmount));
+            pendingRecords.add(storage.recordTransactionAsync(username, account.getAccountName(),
+                "Overdraft Interest Charged: $" + Money.format(interestAmount)));
         } catch (IOException e) {
             System.err.println("Error recording overdraft interest transaction: " + e.getMessage());
         }
@@ -620,7 +1065,7 @@ public class AccountManager {
         }
         
         account.freezeAccount();
-        saveAccounts();
+        scheduleSave();
         return true;
     }
     
@@ -638,7 +1083,7 @@ public class AccountManager {
         }
         
         account.unfreezeAccount();
-        saveAccounts();
+        scheduleSave();
         return true;
     }
     
@@ -662,7 +1107,7 @@ public class AccountManager {
         }
         
         account.setOverdraftLimit(overdraftLimit);
-        saveAccounts();
+        scheduleSave();
         return true;
     }
     
@@ -686,7 +1131,7 @@ public class AccountManager {
         }
         
         account.setOverdraftInterestRate(interestRate);
-        saveAccounts();
+        scheduleSave();
         return true;
     }
     
@@ -765,6 +1210,7 @@ public class AccountManager {
         String accountName = defaultName;
         int suffix = 1;
         while (isAccountNameTaken(accountName)) {
+            System.out.println("Account name '" + accountName + "' is already in use.");
             accountName = defaultName + " " + suffix;
             suffix++;
         }
@@ -780,18 +1226,19 @@ public class AccountManager {
      * @return true if successful, false otherwise
      */
     private boolean migrateCheckingAccount(CheckingAccount oldAccount, String accountName) {
-        if (checkingAccounts.size() >= MAX_CHECKING_ACCOUNTS) {
-            System.out.println("Cannot migrate existing checking account: maximum number reached.");
-            return false;
-        }
-        
         CheckingAccount newAccount = new CheckingAccount(accountName);
-        newAccount.deposit(oldAccount.getBalance());
-        newAccount.setOverdraftLimit(oldAccount.getOverdraftLimit());
+        newAccount.depositCents(oldAccount.getBalanceCents());
+        newAccount.setOverdraftLimitCents(oldAccount.getOverdraftLimitCents());
         newAccount.setOverdraftInterestRate(oldAccount.getOverdraftInterestRate());
-        checkingAccounts.add(newAccount);
+        synchronized (this) {
+            if (checkingAccounts.size() >= MAX_CHECKING_ACCOUNTS) {
+                System.out.println("Cannot migrate existing checking account: maximum number reached.");
+                return false;
+            }
+            checkingAccounts.add(newAccount);
+        }
         
-        saveAccounts();
+        scheduleSave();
         return true;
     }
     
@@ -803,18 +1250,19 @@ public class AccountManager {
      * @return true if successful, false otherwise
      */
     private boolean migrateSavingsAccount(SavingsAccount oldAccount, String accountName) {
-        if (savingsAccounts.size() >= MAX_SAVINGS_ACCOUNTS) {
-            System.out.println("Cannot migrate existing savings account: maximum number reached.");
-            return false;
-        }
-        
         SavingsAccount newAccount = new SavingsAccount(accountName, oldAccount.getInterestRate());
-        newAccount.deposit(oldAccount.getBalance());
-        newAccount.setOverdraftLimit(oldAccount.getOverdraftLimit());
+        newAccount.depositCents(oldAccount.getBalanceCents());
+        newAccount.setOverdraftLimitCents(oldAccount.getOverdraftLimitCents());
         newAccount.setOverdraftInterestRate(oldAccount.getOverdraftInterestRate());
-        savingsAccounts.add(newAccount);
+        synchronized (this) {
+            if (savingsAccounts.size() >= MAX_SAVINGS_ACCOUNTS) {
+                System.out.println("Cannot migrate existing savings account: maximum number reached.");
+                return false;
+            }
+            savingsAccounts.add(newAccount);
+        }
         
-        saveAccounts();
+        scheduleSave();
         return true;
     }
     
@@ -825,22 +1273,14 @@ public class AccountManager {
      * @return true if the account was successfully removed, false otherwise
      */
     public boolean removeAccount(String accountName) {
-        for (CheckingAccount account : checkingAccounts) {
-            if (account.getAccountName().equalsIgnoreCase(accountName)) {
-                checkingAccounts.remove(account);
-                saveAccounts();
-                return true;
-            }
+        boolean removed;
+        synchronized (this) {
+            removed = checkingAccounts.removeIf(account -> account.getAccountName().equalsIgnoreCase(accountName))
+                    || savingsAccounts.removeIf(account -> account.getAccountName().equalsIgnoreCase(accountName));
         }
-
-        for (SavingsAccount account : savingsAccounts) {
-            if (account.getAccountName().equalsIgnoreCase(accountName)){
-                savingsAccounts.remove(account);
-                saveAccounts();
-                return true;
-            }
+        if (removed) {
+            scheduleSave();
         }
-
-        return false; // Account not found
+        return removed; // false if the account was not found
     }
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+package bankapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-width binary format for saved account state.
+ *
+ * Every account takes exactly {@link #RECORD_SIZE} bytes, so a file of
+ * accounts is a plain array of records. Amounts are written as whole cents
+ * in a long and rates as raw doubles, with no text formatting or parsing in
+ * either direction.
+ *
+ * Record layout (big-endian):
+ *   0      format version
+ *   1      flags (bit 0 savings, bit 1 frozen)
+ *   2      name length in UTF-8 bytes
+ *   3      reserved
+ *   4-81   name, zero padded
+ *   82-87  reserved
+ *   88     balance in cents
+ *   96     overdraft limit in cents
+ *   104    overdraft interest rate
+ *   112    withdrawal limit in cents
+ *   120    savings interest rate (0 for checking)
+ */
+public class AccountRecordCodec {
+    public static final int RECORD_SIZE = 128;
+    public static final int MAX_NAME_BYTES = 78;
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FLAG_SAVINGS = 1;
+    private static final int FLAG_FROZEN = 2;
+    private static final int NAME_OFFSET = 4;
+    private static final int VALUES_OFFSET = 88;
+
+    private AccountRecordCodec() {
+    }
+
+    /**
+     * Checks whether an account name fits in a record.
+     *
+     * @param accountName The account name
+     * @return true if the name's UTF-8 form is at most MAX_NAME_BYTES long
+     */
+    public static boolean fitsName(String accountName) {
+        return utf8Length(accountName) <= MAX_NAME_BYTES;
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Checks whether saved bytes are in this format rather than the older CSV text.
+     *
+     * @param data The saved bytes
+     * @return true if the data is a whole number of binary records
+     */
+    public static boolean isBinary(byte[] data) {
+        return data.length % RECORD_SIZE == 0
+                && (data.length == 0 || data[0] == FORMAT_VERSION);
+    }
+
+    /**
+     * Writes one account as a record at the buffer's position.
+     *
+     * @param account The account
+     * @param out The buffer, with at least RECORD_SIZE bytes remaining
+     */
+    public static void encode(BankAccount account, ByteBuffer out) {
+        int start = out.position();
+        boolean savings = account instanceof SavingsAccount;
+        int flags = (savings ? FLAG_SAVINGS : 0) | (account.isFrozen() ? FLAG_FROZEN : 0);
+
+        out.put(FORMAT_VERSION).put((byte) flags);
+        int lengthPosition = out.position();
+        out.put((byte) 0).put((byte) 0);
+        int nameLength = encodeName(account.getAccountName(), out);
+        out.put(lengthPosition, (byte) nameLength);
+
+        // Zero the padding so identical accounts always encode to identical bytes
+        while (out.position() < start + VALUES_OFFSET) {
+            out.put((byte) 0);
+        }
+        out.putLong(account.getBalanceCents())
+           .putLong(account.getOverdraftLimitCents())
+           .putDouble(account.getOverdraftInterestRate())
+           .putLong(account.getWithdrawalLimitCents())
+           .putDouble(savings ? ((SavingsAccount) account).getInterestRate() : 0.0);
+    }
+
+    /**
+     * Writes a name as UTF-8 directly into the buffer.
+     *
+     * @return The number of bytes written
+     */
+    private static int encodeName(String name, ByteBuffer out) {
+        int start = out.position();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                // Rare non-ASCII names take the general path
+                out.position(start);
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                checkNameLength(name, bytes.length);
+                out.put(bytes);
+                return bytes.length;
+            }
+            checkNameLength(name, i + 1);
+            out.put((byte) c);
+        }
+        return name.length();
+    }
+
+    private static void checkNameLength(String name, int length) {
+        if (length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Account name is too long to save: " + name);
+        }
+    }
+
+    /**
+     * Encodes a list of accounts as consecutive records.
+     *
+     * @param accounts The accounts
+     * @return The encoded records
+     */
+    public static byte[] encodeAll(List<? extends BankAccount> accounts) {
+        ByteBuffer out = ByteBuffer.allocate(accounts.size() * RECORD_SIZE);
+        for (BankAccount account : accounts) {
+            encode(account, out);
+        }
+        return out.array();
+    }
+
+    /**
+     * Reads one record at the buffer's position.
+     *
+     * @param in The buffer, with at least RECORD_SIZE bytes remaining
+     * @return A new checking or savings account holding the record's state
+     * @throws IOException If the record is not in a supported format
+     */
+    public static BankAccount decode(ByteBuffer in) throws IOException {
+        int start = in.position();
+        byte version = in.get(start);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported account record version: " + version);
+        }
+        int flags = in.get(start + 1);
+        int nameLength = in.get(start + 2) & 0xFF;
+        if (nameLength > MAX_NAME_BYTES) {
+            throw new IOException("Corrupt account record: name length " + nameLength);
+        }
+
+        String name = decodeName(in, start + NAME_OFFSET, nameLength);
+        in.position(start + VALUES_OFFSET);
+        long balance = in.getLong();
+        long overdraftLimit = in.getLong();
+        double overdraftRate = in.getDouble();
+        long withdrawalLimit = in.getLong();
+        double interestRate = in.getDouble();
+
+        boolean savings = (flags & FLAG_SAVINGS) != 0;
+        return new AccountStateLog.AccountState(savings ? "savings" : "checking", name, balance,
+                (flags & FLAG_FROZEN) != 0, overdraftLimit, overdraftRate, withdrawalLimit, interestRate).toAccount();
+    }
+
+    private static String decodeName(ByteBuffer in, int offset, int length) {
+        if (in.hasArray()) {
+            return new String(in.array(), in.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = in.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes every record in a byte array.
+     *
+     * @param data Consecutive records
+     * @return The decoded accounts, in order
+     * @throws IOException If the data is not a whole number of valid records
+     */
+    public static List<BankAccount> decodeAll(byte[] data) throws IOException {
+        if (data.length % RECORD_SIZE != 0) {
+            throw new IOException("Account data is not a whole number of records");
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        List<BankAccount> accounts = new ArrayList<>(data.length / RECORD_SIZE);
+        while (in.hasRemaining()) {
+            accounts.add(decode(in));
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,351 @@
+package bankapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of changes to a user's accounts.
+ *
+ * Each change is appended as a small checksummed record instead of rewriting
+ * the account files. The account files act as the snapshot; loading reads the
+ * snapshot and replays the log on top of it. Every record stores the new value
+ * rather than a difference, so replaying a record twice is harmless.
+ * Amounts are logged as whole cents.
+ */
+public class AccountStateLog {
+    private static final byte OP_PUT = 1;
+    private static final byte OP_BALANCE = 2;
+    private static final byte OP_FROZEN = 3;
+    private static final byte OP_OVERDRAFT_LIMIT = 4;
+    private static final byte OP_OVERDRAFT_RATE = 5;
+    private static final byte OP_WITHDRAWAL_LIMIT = 6;
+    private static final byte OP_REMOVE = 7;
+
+    private final Path logPath;
+    private int recordCount;
+
+    /**
+     * The persisted state of one account.
+     */
+    public static class AccountState {
+        final String type;
+        final String name;
+        final long balance; // Cents
+        final boolean frozen;
+        final long overdraftLimit; // Cents
+        final double overdraftRate;
+        final long withdrawalLimit; // Cents
+        final double interestRate;
+
+        AccountState(String type, String name, long balance, boolean frozen, long overdraftLimit,
+                     double overdraftRate, long withdrawalLimit, double interestRate) {
+            this.type = type;
+            this.name = name;
+            this.balance = balance;
+            this.frozen = frozen;
+            this.overdraftLimit = overdraftLimit;
+            this.overdraftRate = overdraftRate;
+            this.withdrawalLimit = withdrawalLimit;
+            this.interestRate = interestRate;
+        }
+
+        /**
+         * Captures the current state of an account.
+         *
+         * @param account The account
+         * @return The account's state
+         */
+        static AccountState of(BankAccount account) {
+            double interestRate = account instanceof SavingsAccount ? ((SavingsAccount) account).getInterestRate() : 0.0;
+            return new AccountState(account.getAccountType(), account.getAccountName(), account.getBalanceCents(),
+                    account.isFrozen(), account.getOverdraftLimitCents(), account.getOverdraftInterestRate(),
+                    account.getWithdrawalLimitCents(), interestRate);
+        }
+
+        /**
+         * Builds an account holding this state.
+         *
+         * @return A new checking or savings account
+         */
+        BankAccount toAccount() {
+            BankAccount account = type.equals("savings")
+                    ? new SavingsAccount(name, interestRate)
+                    : new CheckingAccount(name);
+            account.restoreBalanceCents(balance);
+            account.setOverdraftLimitCents(overdraftLimit);
+            account.setOverdraftInterestRate(overdraftRate);
+            account.setWithdrawalLimitCents(withdrawalLimit);
+            if (frozen) {
+                account.freezeAccount();
+            }
+            return account;
+        }
+    }
+
+    /**
+     * Applies replayed log records to the in-memory accounts.
+     */
+    public interface Replayer {
+        void put(AccountState state);
+
+        void remove(String accountName);
+
+        /**
+         * @return The account with this name, or null if it no longer exists
+         */
+        BankAccount find(String accountName);
+    }
+
+    /**
+     * Creates a log stored at the given path.
+     *
+     * @param logPath The log file
+     */
+    public AccountStateLog(Path logPath) {
+        this.logPath = logPath;
+    }
+
+    /**
+     * Gets the number of records in the log since it was last truncated.
+     *
+     * @return The record count
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Appends the records needed to turn one account state into another.
+     *
+     * @param records Collects the encoded records
+     * @param before The previously logged state, or null for a new account
+     * @param after The current state
+     * @throws IOException If a record cannot be encoded
+     */
+    public void diff(List<byte[]> records, AccountState before, AccountState after) throws IOException {
+        if (before == null || !before.name.equals(after.name) || !before.type.equals(after.type)
+                || before.interestRate != after.interestRate) {
+            records.add(encodePut(after));
+            return;
+        }
+        if (before.balance != after.balance) {
+            records.add(encodeCents(OP_BALANCE, after.name, after.balance));
+        }
+        if (before.frozen != after.frozen) {
+            records.add(encodeValue(OP_FROZEN, after.name, after.frozen ? 1.0 : 0.0));
+        }
+        if (before.overdraftLimit != after.overdraftLimit) {
+            records.add(encodeCents(OP_OVERDRAFT_LIMIT, after.name, after.overdraftLimit));
+        }
+        if (before.overdraftRate != after.overdraftRate) {
+            records.add(encodeValue(OP_OVERDRAFT_RATE, after.name, after.overdraftRate));
+        }
+        if (before.withdrawalLimit != after.withdrawalLimit) {
+            records.add(encodeCents(OP_WITHDRAWAL_LIMIT, after.name, after.withdrawalLimit));
+        }
+    }
+
+    /**
+     * Encodes the removal of an account.
+     *
+     * @param records Collects the encoded record
+     * @param accountName The removed account's name
+     * @throws IOException If the record cannot be encoded
+     */
+    public void removed(List<byte[]> records, String accountName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_REMOVE);
+        out.writeUTF(accountName);
+        records.add(bytes.toByteArray());
+    }
+
+    private static byte[] encodePut(AccountState state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_PUT);
+        out.writeUTF(state.name);
+        out.writeUTF(state.type);
+        out.writeLong(state.balance);
+        out.writeBoolean(state.frozen);
+        out.writeLong(state.overdraftLimit);
+        out.writeDouble(state.overdraftRate);
+        out.writeLong(state.withdrawalLimit);
+        out.writeDouble(state.interestRate);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeCents(byte op, String accountName, long cents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(op);
+        out.writeUTF(accountName);
+        out.writeLong(cents);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeValue(byte op, String accountName, double value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(op);
+        out.writeUTF(accountName);
+        out.writeDouble(value);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Appends encoded records to the log with one write and one force.
+     *
+     * @param records The encoded records
+     * @throws IOException If the log cannot be written
+     */
+    public void append(List<byte[]> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        int total = 0;
+        for (byte[] record : records) {
+            total += 8 + record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (byte[] record : records) {
+            CRC32 checksum = new CRC32();
+            checksum.update(record);
+            buffer.putInt(record.length).putInt((int) checksum.getValue()).put(record);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        recordCount += records.size();
+    }
+
+    /**
+     * Replays every intact record in the log. A torn or damaged record (from
+     * a crash mid-append) ends the replay, and the log is cut back to the end
+     * of the last intact record so later appends are not written after it.
+     *
+     * @param replayer Receives the replayed changes
+     * @return The number of bytes of intact records kept in the log
+     * @throws IOException If the log cannot be read or truncated
+     */
+    public long replay(Replayer replayer) throws IOException {
+        recordCount = 0;
+        if (!Files.exists(logPath)) {
+            return 0;
+        }
+
+        byte[] data = Files.readAllBytes(logPath);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int validBytes = 0;
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(data, buffer.position(), length);
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, buffer.position(), length));
+            try {
+                applyRecord(in, replayer);
+            } catch (EOFException e) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+            validBytes = buffer.position();
+            recordCount++;
+        }
+
+        // Drop the torn tail so it does not hide records appended after it
+        if (validBytes < data.length) {
+            System.err.println("Dropping " + (data.length - validBytes) + " damaged bytes from " + logPath.getFileName());
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes);
+                channel.force(false);
+            }
+        }
+        return validBytes;
+    }
+
+    private static void applyRecord(DataInputStream in, Replayer replayer) throws IOException {
+        byte op = in.readByte();
+        String name = in.readUTF();
+
+        if (op == OP_PUT) {
+            String type = in.readUTF();
+            replayer.put(new AccountState(type, name, in.readLong(), in.readBoolean(), in.readLong(),
+                    in.readDouble(), in.readLong(), in.readDouble()));
+            return;
+        }
+        if (op == OP_REMOVE) {
+            replayer.remove(name);
+            return;
+        }
+
+        BankAccount account = replayer.find(name);
+        if (account == null) {
+            return;
+        }
+        switch (op) {
+            case OP_BALANCE:
+                account.restoreBalanceCents(in.readLong());
+                return;
+            case OP_OVERDRAFT_LIMIT:
+                account.setOverdraftLimitCents(in.readLong());
+                return;
+            case OP_WITHDRAWAL_LIMIT:
+                account.setWithdrawalLimitCents(in.readLong());
+                return;
+            default:
+                break;
+        }
+
+        double value = in.readDouble();
+        switch (op) {
+            case OP_FROZEN:
+                if (value != 0.0) {
+                    account.freezeAccount();
+                } else {
+                    account.unfreezeAccount();
+                }
+                break;
+            case OP_OVERDRAFT_RATE:
+                account.setOverdraftInterestRate(value);
+                break;
+            default:
+                System.err.println("Unknown account log record type: " + op);
+        }
+    }
+
+    /**
+     * Empties the log after its changes have been captured in a snapshot.
+     *
+     * @throws IOException If the log cannot be truncated
+     */
+    public void truncate() throws IOException {
+        Files.deleteIfExists(logPath);
+        recordCount = 0;
+    }
+}
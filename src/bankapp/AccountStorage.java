@@ -1,19 +1,36 @@
 package bankapp;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Records and reads account transaction history.
+ * History is kept in a shared {@link TransactionJournal}; legacy per-account
+ * history files are imported into the journal the first time they are touched.
+ */
 public class AccountStorage {
     private final Path accountsRoot;
     private static final String HISTORY_FILE = "_history.txt";
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("MM-dd-yyyy HH:mm:ss");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm:ss");
+    private static final String TIMESTAMP_SEPARATOR = ", ";
 
     public AccountStorage() {
         this(Paths.get("..", "data", "Accounts"));
@@ -28,35 +45,241 @@ public class AccountStorage {
         }
     }
 
-    private Path getUserPath(String username) throws IOException {
-        Path userPath = accountsRoot.resolve(username);
-        if (!Files.exists(userPath)) {
-            Files.createDirectories(userPath);
+    /**
+     * Commits any queued history and closes the journal under this storage's
+     * directory. Later calls open it again.
+     */
+    public void close() {
+        TransactionJournal.closeDirectory(accountsRoot);
+    }
+
+    /**
+     * Gets the journal for this storage, importing the account's legacy history file first.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @return The journal
+     * @throws IOException If the journal cannot be opened or the import fails
+     */
+    private TransactionJournal getJournal(String username, String accountName) throws IOException {
+        TransactionJournal journal = TransactionJournal.forDirectory(accountsRoot);
+        if (journal.claimLegacyCheck(username, accountName)) {
+            importLegacyHistory(journal, username, accountName);
+        }
+        return journal;
+    }
+
+    /**
+     * Moves the entries of an old per-account history file into the journal and deletes the file.
+     *
+     * @param journal The journal to import into
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @throws IOException If the file cannot be read or the journal written
+     */
+    private void importLegacyHistory(TransactionJournal journal, String username, String accountName) throws IOException {
+        Path historyPath = accountsRoot.resolve(username).resolve(accountName + HISTORY_FILE);
+        if (!Files.exists(historyPath)) {
+            return;
+        }
+
+        long fallbackTimestamp = Files.getLastModifiedTime(historyPath).toMillis();
+        LegacyCsvParser parser = new LegacyCsvParser(Files.readAllBytes(historyPath));
+        while (parser.nextLine()) {
+            importLegacyLine(journal, username, accountName, parser, fallbackTimestamp);
+        }
+
+        journal.force();
+        Files.delete(historyPath);
+    }
+
+    /**
+     * Splits the trailing timestamp off a legacy history line and appends it to the journal.
+     */
+    private void importLegacyLine(TransactionJournal journal, String username, String accountName,
+                                  LegacyCsvParser parser, long fallbackTimestamp) throws IOException {
+        if (parser.hasTrailingTimestamp()) {
+            long timestamp = parser.trailingTimestampMillis(ZoneId.systemDefault());
+            if (timestamp >= 0) {
+                journal.append(username, accountName, timestamp,
+                               fitLegacyText(username, accountName, parser.textBeforeTimestamp()));
+                return;
+            }
+        }
+        // Not a timestamp; keep the whole line
+        journal.append(username, accountName, fallbackTimestamp,
+                       fitLegacyText(username, accountName, parser.lineString()));
+    }
+
+    /**
+     * Cuts a legacy line that is too long for a journal record, reporting the cut.
+     * The legacy file is deleted after import, so dropping the line would lose it entirely.
+     */
+    private static String fitLegacyText(String username, String accountName, String text) {
+        String fitted = TransactionJournal.fitText(username, accountName, text);
+        if (fitted.length() < text.length()) {
+            System.err.println("Truncating long history entry for " + username + "/" + accountName
+                    + ": " + text);
         }
-        return userPath;
+        return fitted;
     }
 
     public void recordTransaction(String username, String accountName, String transaction) throws IOException {
-        Path historyPath = getUserPath(username).resolve(accountName + HISTORY_FILE);
-        String timestampedTransaction = transaction + ", " + DATE_FORMAT.format(new Date()) + System.lineSeparator();
-        Files.write(historyPath, 
-                   timestampedTransaction.getBytes(), 
-                   StandardOpenOption.CREATE, 
-                   StandardOpenOption.APPEND);
+        awaitDurable(recordTransactionAsync(username, accountName, transaction));
     }
 
-    public List<String> getAccountHistory(String username, String accountName) throws IOException {
-        Path historyPath = getUserPath(username).resolve(accountName + HISTORY_FILE);
-        if (!Files.exists(historyPath)) {
-            return Collections.emptyList();
+    /**
+     * Queues a transaction for the journal's group-commit writer.
+     * Records submitted together by concurrent callers share a single fsync.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param transaction The transaction description
+     * @return A future completing with the record's sequence number once it is durable
+     * @throws IOException If the journal cannot be opened
+     */
+    public CompletableFuture<Long> recordTransactionAsync(String username, String accountName, String transaction) throws IOException {
+        return getJournal(username, accountName).writer()
+                .submit(username, accountName, System.currentTimeMillis(), transaction);
+    }
+
+    /**
+     * Waits for a queued transaction to become durable.
+     *
+     * @param pending The future returned by recordTransactionAsync
+     * @throws IOException If the record could not be written
+     */
+    public static void awaitDurable(CompletableFuture<Long> pending) throws IOException {
+        try {
+            pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to record transaction", e.getCause());
         }
-        return Files.readAllLines(historyPath);
+    }
+
+    public List<String> getAccountHistory(String username, String accountName) throws IOException {
+        TransactionJournal journal = getJournal(username, accountName);
+        return formatEntries(journal.read(username, accountName, 0, journal.size(username, accountName)));
+    }
+
+    /**
+     * Gets the transactions recorded in a time range, oldest first.
+     * Only the archived history blocks that overlap the range are decompressed.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param from The start of the range (inclusive)
+     * @param to The end of the range (exclusive)
+     * @return The transactions in the range
+     * @throws IOException If the history cannot be read
+     */
+    public List<String> getAccountHistoryBetween(String username, String accountName,
+                                                 LocalDateTime from, LocalDateTime to) throws IOException {
+        long fromMillis = from.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long toMillis = to.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return formatEntries(getJournal(username, accountName).readBetween(username, accountName, fromMillis, toMillis));
+    }
+
+    /**
+     * Reads one page of an account's history.
+     * Start with a cursor of 0 and pass each page's next cursor to continue.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param cursor The position of the first transaction to return
+     * @param pageSize The maximum number of transactions to return
+     * @return The page of transactions
+     * @throws IOException If the history cannot be read
+     */
+    public HistoryPage getHistoryPage(String username, String accountName, long cursor, int pageSize) throws IOException {
+        TransactionJournal journal = getJournal(username, accountName);
+        int size = journal.size(username, accountName);
+        int from = (int) Math.min(Math.max(0, cursor), size);
+        int to = (int) Math.min((long) from + Math.max(0, pageSize), size);
+
+        List<String> transactions = formatEntries(journal.read(username, accountName, from, to));
+        return new HistoryPage(transactions, to, to < size);
+    }
+
+    /**
+     * Streams an account's history one page at a time, so only a single page
+     * is held in memory. The stream should be closed when finished.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param pageSize The number of transactions read per page
+     * @return A lazily read stream of history lines, oldest first
+     */
+    public Stream<String> streamAccountHistory(String username, String accountName, int pageSize) {
+        Iterator<String> iterator = new Iterator<String>() {
+            private Iterator<String> currentPage = Collections.emptyIterator();
+            private long cursor = 0;
+            private boolean hasMorePages = true;
+
+            @Override
+            public boolean hasNext() {
+                while (!currentPage.hasNext() && hasMorePages) {
+                    try {
+                        HistoryPage page = getHistoryPage(username, accountName, cursor, pageSize);
+                        currentPage = page.getTransactions().iterator();
+                        cursor = page.getNextCursor();
+                        hasMorePages = page.hasMore();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return currentPage.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return currentPage.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
     }
 
     public List<String> getLastFiveTransactions(String username, String accountName) throws IOException {
-        List<String> allTransactions = getAccountHistory(username, accountName);
-        int startIdx = Math.max(0, allTransactions.size() - 5);
-        return allTransactions.subList(startIdx, allTransactions.size());
+        return getLastNTransactions(username, accountName, 5);
+    }
+
+    /**
+     * Gets an account's most recent transactions, oldest first.
+     * Only the requested records are read, however long the history is.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param count The number of transactions to return
+     * @return Up to count of the most recent transactions
+     * @throws IOException If the history cannot be read
+     */
+    public List<String> getLastNTransactions(String username, String accountName, int count) throws IOException {
+        return formatEntries(getJournal(username, accountName).readLast(username, accountName, count));
+    }
+
+    /**
+     * Formats journal entries the way history lines have always been displayed.
+     *
+     * @param entries The journal entries
+     * @return One "transaction, timestamp" line per entry
+     */
+    private List<String> formatEntries(List<TransactionJournal.Entry> entries) {
+        List<String> lines = new ArrayList<>(entries.size());
+        for (TransactionJournal.Entry entry : entries) {
+            lines.add(formatEntry(entry));
+        }
+        return lines;
+    }
+
+    private String formatEntry(TransactionJournal.Entry entry) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getTimestamp()), ZoneId.systemDefault());
+        return entry.getText() + TIMESTAMP_SEPARATOR + DATE_FORMAT.format(time);
     }
 
-}
\ No newline at end of file
+}
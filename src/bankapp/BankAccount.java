@@ -1,35 +1,58 @@
 package bankapp;
+
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Money is held in whole cents (see Money); the double methods convert at the edges.
+// The balance and the frozen flag share one atomic word, (cents << 1) | frozen, and every
+// change to them is a compare-and-set loop that re-checks the frozen flag, the limits and
+// the overdraft against the value it replaces, so concurrent sessions can never race
+// past a check.
 public abstract class BankAccount {
-	protected double accountBalance;
+	private static final long FROZEN = 1;
+	private static final long MAX_BALANCE_CENTS = Long.MAX_VALUE >> 1;
+	private static final long MIN_BALANCE_CENTS = Long.MIN_VALUE >> 1;
+	private static final long OUT_OF_RANGE = Long.MIN_VALUE; // Never a valid balance
+	private static final AtomicLong NEXT_ACCOUNT_ID = new AtomicLong(1);
+
+	private final long accountId = NEXT_ACCOUNT_ID.getAndIncrement();
+	private final AtomicLong state = new AtomicLong(); // Balance in cents, shifted left one, and the frozen flag
 	protected String accountName;
-	protected double withdrawalLimit;
-	protected double overdraftLimit;       // Maximum amount of overdraft allowed
-	protected double overdraftInterestRate; // Interest rate charged on overdrafts
-	protected boolean isFrozen;            // Flag to indicate if account is frozen
-	protected double overdraftAmount;      // Current amount in overdraft (for tracking)
-	protected double transferLimit;
+	protected volatile long withdrawalLimitCents;
+	protected volatile long overdraftLimitCents;    // Maximum amount of overdraft allowed
+	protected volatile double overdraftInterestRate; // Interest rate charged on overdrafts
+	protected volatile long transferLimitCents;
+	private final AtomicBoolean dirty = new AtomicBoolean(); // Changed since the owning AccountManager last saved it
 
 
 	//initialization constructor with account name
 	public BankAccount(String accountName) {
-		this.accountBalance = 0.0;
 		this.accountName = accountName;
-		this.withdrawalLimit = 10000.0; 
-		this.overdraftLimit = 0.0;  // Default: no overdraft allowed
+		this.withdrawalLimitCents = 10000 * Money.CENTS_PER_DOLLAR;
+		this.overdraftLimitCents = 0;  // Default: no overdraft allowed
 		this.overdraftInterestRate = 15.0; // Default: 15% interest rate on overdrafts
-		this.isFrozen = false;
-		this.overdraftAmount = 0.0;
-		this.transferLimit = 1000.0;
+		markDirty();
+		this.transferLimitCents = 1000 * Money.CENTS_PER_DOLLAR;
 	}
 
 	// Getter and setter for transfer limit
 	public double getTransferLimit() {
-		return transferLimit;
+		return Money.toDouble(transferLimitCents);
+	}
+
+	public long getTransferLimitCents() {
+		return transferLimitCents;
 	}
 
 	public void setTransferLimit(double transferLimit) {
-	    if (transferLimit > 0) {
-	        this.transferLimit = transferLimit;
+		setTransferLimitCents(Money.fromDouble(transferLimit));
+	}
+
+	public void setTransferLimitCents(long transferLimitCents) {
+	    if (transferLimitCents > 0) {
+	        this.transferLimitCents = transferLimitCents;
+	        markDirty();
 	    } else {
 	        System.out.println("Transfer limit must be positive.");
 	    }
@@ -37,23 +60,42 @@ public abstract class BankAccount {
 
 
 	public void setWithdrawalLimit(double limit) {
-		this.withdrawalLimit = limit;
+		setWithdrawalLimitCents(Money.fromDouble(limit));
+	}
+
+	public void setWithdrawalLimitCents(long limitCents) {
+		this.withdrawalLimitCents = limitCents;
+		markDirty();
 	}
 
 	public double getWithdrawalLimit() {
-		return withdrawalLimit;
+		return Money.toDouble(withdrawalLimitCents);
+	}
+
+	public long getWithdrawalLimitCents() {
+		return withdrawalLimitCents;
 	}
 
 	public void setOverdraftLimit(double limit) {
-		this.overdraftLimit = limit;
+		setOverdraftLimitCents(Money.fromDouble(limit));
+	}
+
+	public void setOverdraftLimitCents(long limitCents) {
+		this.overdraftLimitCents = limitCents;
+		markDirty();
 	}
 
 	public double getOverdraftLimit() {
-		return overdraftLimit;
+		return Money.toDouble(overdraftLimitCents);
+	}
+
+	public long getOverdraftLimitCents() {
+		return overdraftLimitCents;
 	}
 
 	public void setOverdraftInterestRate(double rate) {
 		this.overdraftInterestRate = rate;
+		markDirty();
 	}
 
 	public double getOverdraftInterestRate() {
@@ -61,57 +103,189 @@ public abstract class BankAccount {
 	}
 
 	public double getOverdraftAmount() {
-		return Math.max(0, -accountBalance);
+		return Money.toDouble(Math.max(0, -getBalanceCents()));
 	}
 
 	public boolean isFrozen() {
-		return isFrozen;
+		return (state.get() & FROZEN) != 0;
 	}
 
 	public void freezeAccount() {
-		this.isFrozen = true;
+		state.getAndUpdate(current -> current | FROZEN);
+		markDirty();
 	}
 
 	public void unfreezeAccount() {
-		this.isFrozen = false;
+		state.getAndUpdate(current -> current & ~FROZEN);
+		markDirty();
 	}
 
 	public String getAccountName() {
 		return accountName;
 	}
 
+	/**
+	 * Gets an ID that identifies this account object for as long as the
+	 * program runs. Unlike the name, it never changes, so it can order locks.
+	 * @return The account ID
+	 */
+	public long getAccountId() {
+		return accountId;
+	}
+
 	public double getBalance() {
 		//simple getter function
-		return accountBalance;
+		return Money.toDouble(getBalanceCents());
+	}
+
+	public long getBalanceCents() {
+		return state.get() >> 1;
+	}
+
+	// Used when restoring persisted state; skips the frozen and limit checks
+	void restoreBalanceCents(long balanceCents) {
+		long balance = checkBalance(balanceCents);
+		state.getAndUpdate(current -> (balance << 1) | (current & FROZEN));
+		markDirty();
 	}
 
 	public void deposit(double amount) {
-		if (isFrozen) {
-			System.out.println("Cannot deposit to a frozen account.");
-			return;
+		depositCents(Money.fromDouble(amount));
+	}
+
+	/**
+	 * Adds to the balance unless the account is frozen.
+	 * @param amountCents The amount in cents
+	 * @return true if the deposit was made
+	 */
+	public boolean depositCents(long amountCents) {
+		TransactionStatus status = tryDepositCents(amountCents);
+		if (status != TransactionStatus.OK) {
+			System.out.println(describeDepositFailure(status));
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds to the balance unless the account is frozen, without printing anything.
+	 * @param amountCents The amount in cents
+	 * @return OK, FROZEN, or BALANCE_OUT_OF_RANGE if the new balance would not fit
+	 */
+	public TransactionStatus tryDepositCents(long amountCents) {
+		while (true) {
+			long current = state.get();
+			if ((current & FROZEN) != 0) {
+				return TransactionStatus.FROZEN;
+			}
+			long balance = addToBalance(current >> 1, amountCents);
+			if (balance == OUT_OF_RANGE) {
+				return TransactionStatus.BALANCE_OUT_OF_RANGE;
+			}
+			if (state.compareAndSet(current, balance << 1)) {
+				markDirty();
+				return TransactionStatus.OK;
+			}
+		}
+	}
+
+	/**
+	 * Explains why a deposit was refused.
+	 * @param status The status returned by tryDepositCents
+	 * @return A message for the account holder
+	 */
+	public String describeDepositFailure(TransactionStatus status) {
+		switch (status) {
+			case FROZEN:
+				return "Cannot deposit to a frozen account.";
+			case BALANCE_OUT_OF_RANGE:
+				return "Deposit refused. The balance would be larger than an account can hold.";
+			default:
+				return status.getDescription();
+		}
+	}
+
+	/**
+	 * Puts back money taken by a withdrawal that could not be completed; skips the frozen check.
+	 * @param amountCents The amount in cents
+	 * @return OK, or BALANCE_OUT_OF_RANGE if the new balance would not fit
+	 */
+	TransactionStatus refundCents(long amountCents) {
+		while (true) {
+			long current = state.get();
+			long balance = addToBalance(current >> 1, amountCents);
+			if (balance == OUT_OF_RANGE) {
+				return TransactionStatus.BALANCE_OUT_OF_RANGE;
+			}
+			if (state.compareAndSet(current, (balance << 1) | (current & FROZEN))) {
+				markDirty();
+				return TransactionStatus.OK;
+			}
 		}
-		accountBalance += amount;
 	}
 
 	public boolean withdraw(double amount) {
-		if (isFrozen) {
-			System.out.println("Cannot withdraw from a frozen account.");
+		return withdrawCents(Money.fromDouble(amount));
+	}
+
+	public boolean withdrawCents(long amountCents) {
+		TransactionStatus status = tryWithdrawCents(amountCents);
+		if (status != TransactionStatus.OK) {
+			System.out.println(describeWithdrawalFailure(status));
 			return false;
 		}
+		return true;
+	}
 
-		if (amount > withdrawalLimit) {
-			System.out.printf("Withdrawal exceeds the limit of $%.2f per transaction.\n", withdrawalLimit);
-			return false;
+	/**
+	 * Takes from the balance if the account is not frozen and the amount is
+	 * within the withdrawal limit and the balance plus overdraft, without
+	 * printing anything.
+	 * @param amountCents The amount in cents
+	 * @return OK, or why the withdrawal was refused
+	 */
+	public TransactionStatus tryWithdrawCents(long amountCents) {
+		while (true) {
+			long current = state.get();
+			if ((current & FROZEN) != 0) {
+				return TransactionStatus.FROZEN;
+			}
+			if (amountCents > withdrawalLimitCents) {
+				return TransactionStatus.OVER_WITHDRAWAL_LIMIT;
+			}
+
+			// Check if withdrawal is within balance + overdraft limit
+			long balance = amountCents == Long.MIN_VALUE ? OUT_OF_RANGE : addToBalance(current >> 1, -amountCents);
+			if (balance == OUT_OF_RANGE) {
+				return amountCents > 0 ? TransactionStatus.INSUFFICIENT_FUNDS : TransactionStatus.BALANCE_OUT_OF_RANGE;
+			}
+			if (balance < -overdraftLimitCents) {
+				return TransactionStatus.INSUFFICIENT_FUNDS;
+			}
+			if (state.compareAndSet(current, balance << 1)) {
+				markDirty();
+				return TransactionStatus.OK;
+			}
+			// Another session changed the balance first, so check again against the new one
 		}
+	}
 
-		// Check if withdrawal is within balance + overdraft limit
-		if (accountBalance >= amount || Math.abs(accountBalance - amount) <= overdraftLimit) {
-			accountBalance -= amount;
-			return true;
-		} else {
-			System.out.printf("Insufficient funds. Your maximum withdrawal amount is $%.2f.\n", 
-					accountBalance + overdraftLimit);
-			return false;
+	/**
+	 * Explains why a withdrawal was refused, using this account's limits.
+	 * @param status The status returned by tryWithdrawCents
+	 * @return A message for the account holder
+	 */
+	public String describeWithdrawalFailure(TransactionStatus status) {
+		switch (status) {
+			case FROZEN:
+				return "Cannot withdraw from a frozen account.";
+			case OVER_WITHDRAWAL_LIMIT:
+				return "Withdrawal exceeds the limit of $" + Money.format(withdrawalLimitCents) + " per transaction.";
+			case INSUFFICIENT_FUNDS:
+				return "Insufficient funds. Your maximum withdrawal amount is $"
+						+ Money.format(getBalanceCents() + overdraftLimitCents) + ".";
+			default:
+				return status.getDescription();
 		}
 	}
 
@@ -120,13 +294,83 @@ public abstract class BankAccount {
 	 * @return The amount of interest charged
 	 */
 	public double applyOverdraftInterest() {
-		if (accountBalance < 0) {
-			double overdraftAmount = Math.abs(accountBalance);
-			double interestAmount = overdraftAmount * (overdraftInterestRate / 100);
-			accountBalance -= interestAmount;
-			return interestAmount;
+		return Money.toDouble(applyOverdraftInterestCents());
+	}
+
+	/**
+	 * Applies overdraft interest to the account if it's in overdraft,
+	 * rounding half a cent up.
+	 * @return The amount of interest charged in cents
+	 */
+	public long applyOverdraftInterestCents() {
+		return -accrueInterestCents(overdraftInterestRate, RoundingMode.HALF_UP, true);
+	}
+
+	/**
+	 * Adds a percentage of the balance to it in one atomic step, so a
+	 * concurrent deposit or withdrawal is neither lost nor charged twice.
+	 * Frozen accounts still accrue interest. Interest that would take the
+	 * balance out of range is not added.
+	 * @param ratePercent The rate in percent
+	 * @param rounding How to round a part cent
+	 * @return The amount added in cents, negative when the balance is negative
+	 */
+	protected long accrueInterestCents(double ratePercent, RoundingMode rounding) {
+		return accrueInterestCents(ratePercent, rounding, false);
+	}
+
+	private long accrueInterestCents(double ratePercent, RoundingMode rounding, boolean onlyWhenOverdrawn) {
+		while (true) {
+			long current = state.get();
+			long balance = current >> 1;
+			if (onlyWhenOverdrawn && balance >= 0) {
+				return 0;
+			}
+			long interestCents = 0;
+			long accrued = OUT_OF_RANGE;
+			try {
+				interestCents = Money.percentOf(balance, ratePercent, rounding);
+				accrued = addToBalance(balance, interestCents);
+			} catch (ArithmeticException e) {
+				// The interest itself does not fit in a long
+			}
+			if (accrued == OUT_OF_RANGE) {
+				System.err.println("Interest not applied to " + accountName + ": the balance would be out of range.");
+				return 0;
+			}
+			long next = (accrued << 1) | (current & FROZEN);
+			if (state.compareAndSet(current, next)) {
+				if (interestCents != 0) {
+					markDirty();
+				}
+				return interestCents;
+			}
+		}
+	}
+
+	/**
+	 * Adds an amount to a balance, checking that the result fits in the
+	 * atomic word alongside the frozen flag.
+	 * @return The new balance, or OUT_OF_RANGE if the sum overflows or does not fit
+	 */
+	private static long addToBalance(long balanceCents, long amountCents) {
+		long sum = balanceCents + amountCents;
+		// The sum overflowed if both operands have a sign it lacks
+		if (((balanceCents ^ sum) & (amountCents ^ sum)) < 0
+				|| sum > MAX_BALANCE_CENTS || sum < MIN_BALANCE_CENTS) {
+			return OUT_OF_RANGE;
+		}
+		return sum;
+	}
+
+	/**
+	 * Checks that a restored balance fits in the atomic word alongside the frozen flag.
+	 */
+	private static long checkBalance(long balanceCents) {
+		if (balanceCents > MAX_BALANCE_CENTS || balanceCents < MIN_BALANCE_CENTS) {
+			throw new ArithmeticException("Balance out of range: " + balanceCents);
 		}
-		return 0.0;
+		return balanceCents;
 	}
 
 	/**
@@ -135,7 +379,23 @@ public abstract class BankAccount {
 	 * @return true if the account can be closed, false otherwise
 	 */
 	public boolean canClose() {
-		return accountBalance >= 0;
+		return getBalanceCents() >= 0;
+	}
+
+	/**
+	 * Flags the account as changed so the next save writes it.
+	 */
+	protected void markDirty() {
+		dirty.set(true);
+	}
+
+	/**
+	 * Clears the changed flag in one atomic step, so a change marked while
+	 * a save is reading the flag is never lost.
+	 * @return true if the account had changed since the flag was last cleared
+	 */
+	boolean takeDirty() {
+		return dirty.getAndSet(false);
 	}
 
 	public abstract String getAccountType(); // implemented by subclasses
@@ -0,0 +1,939 @@
+package bankapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The bank's operations without the console.
+ *
+ * Every operation takes a request object and returns a response object and
+ * never reads input or prints, so batch jobs, servers and benchmarks can
+ * call it directly. A caller logs in once and passes the session token to
+ * each later call; the token resolves to the user's loaded accounts without
+ * hashing the password again. Amounts are in cents.
+ *
+ * Balance changes go straight to the account's compare-and-set and transfers
+ * through the shared {@link TransferEngine}, so any number of threads may
+ * call one service. Each change that succeeds is recorded in the account's
+ * history, durable before the call returns, and the accounts are saved by the
+ * account manager's write-behind.
+ *
+ * The console menus are a client of this class: they prompt, pass the
+ * accounts they already hold to the same operations and print the responses.
+ *
+ * With bankapp.commands.enabled set to true, deposits, withdrawals, interest,
+ * freezes and limit changes are applied on the shared
+ * {@link AccountCommandExecutor}'s partitions instead of on the caller's
+ * thread, and a change the executor has no room for is answered THROTTLED.
+ */
+public class BankService {
+    private static final String NOT_LOGGED_IN = "Not logged in, or the session has expired.";
+    private static final String TOO_BUSY = "Too many changes in progress. Please try again shortly.";
+
+    private final UserManager users;
+    private final AccountStorage storage;
+    private final TransferEngine transfers;
+    private final AccountCommandExecutor commands;
+
+    /**
+     * Creates a service over the registered users, the default history
+     * storage and the shared transfer engine.
+     */
+    public BankService() {
+        this(null, new AccountStorage());
+    }
+
+    /**
+     * Creates a service.
+     *
+     * @param users The users to log in, or null to use UserManager.getInstance() when first needed
+     * @param storage Where to record and read account history
+     */
+    public BankService(UserManager users, AccountStorage storage) {
+        this(users, storage, Boolean.getBoolean("bankapp.commands.enabled") ? AccountCommandExecutor.shared() : null);
+    }
+
+    /**
+     * Creates a service that applies account changes on an executor.
+     *
+     * @param users The users to log in, or null to use UserManager.getInstance() when first needed
+     * @param storage Where to record and read account history
+     * @param commands Where to apply account changes, or null to apply them on the caller's thread
+     */
+    public BankService(UserManager users, AccountStorage storage, AccountCommandExecutor commands) {
+        this.users = users;
+        this.storage = storage;
+        this.transfers = TransferEngine.shared();
+        this.commands = commands;
+    }
+
+    private UserManager users() {
+        return users != null ? users : UserManager.getInstance();
+    }
+
+    /**
+     * Logs a user in and starts a session.
+     *
+     * @param request The credentials
+     * @return The session token, UNAUTHORIZED if the credentials were wrong,
+     *         or THROTTLED if the attempt was turned away without checking them
+     */
+    public LoginResponse login(LoginRequest request) {
+        UserManager.LoginResult result = users().authenticate(request.getUsername(), request.getPassword(), request.getSource());
+        switch (result.getStatus()) {
+            case THROTTLED:
+                return new LoginResponse(Status.THROTTLED, "Too many login attempts. Please wait and try again.", null);
+            case BUSY:
+                return new LoginResponse(Status.THROTTLED, "Too many logins in progress. Please try again shortly.", null);
+            case BAD_CREDENTIALS:
+                return new LoginResponse(Status.UNAUTHORIZED, "Invalid username or password.", null);
+            default:
+                return new LoginResponse(Status.OK, "Logged in.", users().startSession(result));
+        }
+    }
+
+    /**
+     * Ends a session.
+     *
+     * @param token The session token
+     * @return OK, or UNAUTHORIZED if there was no such session
+     */
+    public Response logout(String token) {
+        if (!users().endSession(token)) {
+            return new Response(Status.UNAUTHORIZED, NOT_LOGGED_IN);
+        }
+        return new Response(Status.OK, "Logged out.");
+    }
+
+    /**
+     * Opens a checking or savings account.
+     *
+     * @param token The session token
+     * @param request The new account
+     * @return The new account, or why it could not be opened
+     */
+    public AccountResponse openAccount(String token, OpenAccountRequest request) {
+        AccountManager accounts = accountsFor(token);
+        if (accounts == null) {
+            return AccountResponse.failed(Status.UNAUTHORIZED, NOT_LOGGED_IN);
+        }
+        return openAccount(accounts, request);
+    }
+
+    /**
+     * Deposits money into an account.
+     *
+     * @param token The session token
+     * @param request The account and amount
+     * @return The new balance, or why the deposit was refused
+     */
+    public AccountResponse deposit(String token, AmountRequest request) {
+        return withAccount(token, request.getAccountName(),
+                (accounts, account) -> deposit(accounts, account, request.getAmountCents()), AccountResponse::failed);
+    }
+
+    /**
+     * Withdraws money from an account.
+     *
+     * @param token The session token
+     * @param request The account and amount
+     * @return The new balance, or why the withdrawal was refused
+     */
+    public AccountResponse withdraw(String token, AmountRequest request) {
+        return withAccount(token, request.getAccountName(),
+                (accounts, account) -> withdraw(accounts, account, request.getAmountCents()), AccountResponse::failed);
+    }
+
+    /**
+     * Transfers money between two of the user's accounts.
+     *
+     * @param token The session token
+     * @param request The accounts and amount
+     * @return Both new balances, or why the transfer was refused
+     */
+    public TransferResponse transfer(String token, TransferRequest request) {
+        return withAccount(token, request.getFromAccountName(), (accounts, source) -> {
+            BankAccount target = accounts.getAccountByName(request.getToAccountName());
+            if (target == null) {
+                return TransferResponse.failed(Status.NOT_FOUND, "Account not found: " + request.getToAccountName());
+            }
+            return transfer(accounts, source, target, request.getAmountCents());
+        }, TransferResponse::failed);
+    }
+
+    /**
+     * Freezes or unfreezes an account.
+     *
+     * @param token The session token
+     * @param request The account and whether to freeze it
+     * @return The account after the change
+     */
+    public AccountResponse setFrozen(String token, FreezeRequest request) {
+        return withAccount(token, request.getAccountName(),
+                (accounts, account) -> setFrozen(accounts, account, request.isFrozen()), AccountResponse::failed);
+    }
+
+    /**
+     * Changes one of an account's limits.
+     *
+     * @param token The session token
+     * @param request The account, limit and new value
+     * @return The account after the change, or why the value was refused
+     */
+    public AccountResponse setLimit(String token, LimitRequest request) {
+        return withAccount(token, request.getAccountName(),
+                (accounts, account) -> setLimit(accounts, account, request.getLimit(), request.getAmountCents()),
+                AccountResponse::failed);
+    }
+
+    /**
+     * Adds a period's interest to each of the user's savings accounts that is not frozen.
+     *
+     * @param token The session token
+     * @return OK, or UNAUTHORIZED if there was no such session
+     */
+    public Response applySavingsInterest(String token) {
+        AccountManager accounts = accountsFor(token);
+        if (accounts == null) {
+            return new Response(Status.UNAUTHORIZED, NOT_LOGGED_IN);
+        }
+        return applySavingsInterest(accounts);
+    }
+
+    /**
+     * Charges overdraft interest on each of the user's overdrawn accounts that is not frozen.
+     *
+     * @param token The session token
+     * @return The total charged, or UNAUTHORIZED if there was no such session
+     */
+    public Response applyOverdraftInterest(String token) {
+        AccountManager accounts = accountsFor(token);
+        if (accounts == null) {
+            return new Response(Status.UNAUTHORIZED, NOT_LOGGED_IN);
+        }
+        return applyOverdraftInterest(accounts);
+    }
+
+    /**
+     * Closes an account whose balance is zero or positive.
+     *
+     * @param token The session token
+     * @param request The account
+     * @return OK, or why the account could not be closed
+     */
+    public Response closeAccount(String token, CloseRequest request) {
+        return withAccount(token, request.getAccountName(), this::closeAccount, Response::new);
+    }
+
+    /**
+     * Reads one page of an account's history.
+     *
+     * @param token The session token
+     * @param request The account and where to start
+     * @return The page, or why it could not be read
+     */
+    public HistoryResponse history(String token, HistoryRequest request) {
+        return withAccount(token, request.getAccountName(),
+                (accounts, account) -> history(accounts, account, request.getCursor(), request.getPageSize()),
+                HistoryResponse::failed);
+    }
+
+    /**
+     * Resolves the session and the named account, then runs the operation.
+     */
+    private <R extends Response> R withAccount(String token, String accountName,
+                                               BiFunction<AccountManager, BankAccount, R> operation,
+                                               BiFunction<Status, String, R> failure) {
+        AccountManager accounts = accountsFor(token);
+        if (accounts == null) {
+            return failure.apply(Status.UNAUTHORIZED, NOT_LOGGED_IN);
+        }
+        BankAccount account = accounts.getAccountByName(accountName);
+        if (account == null) {
+            return failure.apply(Status.NOT_FOUND, "Account not found: " + accountName);
+        }
+        return operation.apply(accounts, account);
+    }
+
+    private AccountManager accountsFor(String token) {
+        SessionStore.Session session = users().getSession(token);
+        return session == null ? null : session.getAccountManager();
+    }
+
+    AccountResponse openAccount(AccountManager accounts, OpenAccountRequest request) {
+        String accountName = request.getAccountName();
+        if (accountName == null || accountName.trim().isEmpty()) {
+            return AccountResponse.failed(Status.REJECTED, "Account name cannot be empty.");
+        }
+        BankAccount account;
+        if (request.isSavings()) {
+            if (request.getInterestRate() < 0) {
+                return AccountResponse.failed(Status.REJECTED, "Interest rate cannot be negative.");
+            }
+            account = new SavingsAccount(accountName, request.getInterestRate());
+        } else {
+            if (request.getOverdraftLimitCents() < 0) {
+                return AccountResponse.failed(Status.REJECTED, "Overdraft limit cannot be negative.");
+            }
+            account = new CheckingAccount(accountName);
+            account.setOverdraftLimitCents(request.getOverdraftLimitCents());
+        }
+
+        String problem = accounts.tryAddAccount(account);
+        if (problem != null) {
+            return AccountResponse.failed(Status.REJECTED, problem);
+        }
+        return AccountResponse.of(account, TransactionStatus.OK, "Account '" + accountName + "' opened.");
+    }
+
+    AccountResponse deposit(AccountManager accounts, BankAccount account, long amountCents) {
+        if (amountCents <= 0) {
+            return AccountResponse.refused(account, TransactionStatus.INVALID_AMOUNT, "Deposit amount must be positive.");
+        }
+        TransactionStatus status;
+        if (commands == null) {
+            status = account.tryDepositCents(amountCents);
+        } else {
+            try {
+                // The executor records the history itself, so a failed record means the deposit was made
+                status = await(commands.deposit(account, amountCents, storage, accounts.getUsername()), TransactionStatus.OK);
+            } catch (RejectedExecutionException e) {
+                return AccountResponse.failed(Status.THROTTLED, TOO_BUSY);
+            }
+        }
+        if (status != TransactionStatus.OK) {
+            return AccountResponse.refused(account, status, account.describeDepositFailure(status));
+        }
+        if (commands == null) {
+            record(accounts, account, "Deposit: $" + Money.format(amountCents));
+        }
+        accounts.scheduleSave();
+        return AccountResponse.of(account, status, "Deposited $" + Money.format(amountCents) + ".");
+    }
+
+    AccountResponse withdraw(AccountManager accounts, BankAccount account, long amountCents) {
+        if (amountCents <= 0) {
+            return AccountResponse.refused(account, TransactionStatus.INVALID_AMOUNT, "Withdrawal amount must be positive.");
+        }
+        TransactionStatus status;
+        if (commands == null) {
+            status = account.tryWithdrawCents(amountCents);
+        } else {
+            try {
+                status = await(commands.withdraw(account, amountCents, storage, accounts.getUsername()), TransactionStatus.OK);
+            } catch (RejectedExecutionException e) {
+                return AccountResponse.failed(Status.THROTTLED, TOO_BUSY);
+            }
+        }
+        if (status != TransactionStatus.OK) {
+            return AccountResponse.refused(account, status, account.describeWithdrawalFailure(status));
+        }
+        if (commands == null) {
+            record(accounts, account, "Withdraw: $" + Money.format(amountCents));
+        }
+        accounts.scheduleSave();
+        return AccountResponse.of(account, status, "Withdrew $" + Money.format(amountCents) + ".");
+    }
+
+    TransferResponse transfer(AccountManager accounts, BankAccount source, BankAccount target, long amountCents) {
+        TransactionStatus status = transfers.tryTransfer(source, target, amountCents, storage, accounts.getUsername());
+        if (status != TransactionStatus.OK) {
+            return new TransferResponse(Status.REJECTED, TransferEngine.describeFailure(status, source), status, source, target);
+        }
+        accounts.scheduleSave();
+        return new TransferResponse(Status.OK, "Successfully transferred $" + Money.format(amountCents) + " from "
+                + source.getAccountName() + " to " + target.getAccountName() + ".", status, source, target);
+    }
+
+    AccountResponse setFrozen(AccountManager accounts, BankAccount account, boolean frozen) {
+        try {
+            apply(account, target -> {
+                if (frozen) {
+                    target.freezeAccount();
+                } else {
+                    target.unfreezeAccount();
+                }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            return AccountResponse.failed(Status.THROTTLED, TOO_BUSY);
+        }
+        accounts.scheduleSave();
+        return AccountResponse.of(account, null, frozen ? "Account frozen successfully." : "Account unfrozen successfully.");
+    }
+
+    AccountResponse setLimit(AccountManager accounts, BankAccount account, Limit limit, long amountCents) {
+        Function<BankAccount, Void> change;
+        switch (limit) {
+            case OVERDRAFT:
+                if (amountCents < 0) {
+                    return AccountResponse.refused(account, null, "Overdraft limit cannot be negative.");
+                }
+                change = target -> {
+                    target.setOverdraftLimitCents(amountCents);
+                    return null;
+                };
+                break;
+            case WITHDRAWAL:
+                if (amountCents <= 0) {
+                    return AccountResponse.refused(account, null, "Withdrawal limit must be greater than zero.");
+                }
+                change = target -> {
+                    target.setWithdrawalLimitCents(amountCents);
+                    return null;
+                };
+                break;
+            default:
+                if (amountCents <= 0) {
+                    return AccountResponse.refused(account, null, "Transfer limit must be greater than zero.");
+                }
+                change = target -> {
+                    target.setTransferLimitCents(amountCents);
+                    return null;
+                };
+                break;
+        }
+        try {
+            apply(account, change);
+        } catch (RejectedExecutionException e) {
+            return AccountResponse.failed(Status.THROTTLED, TOO_BUSY);
+        }
+        accounts.scheduleSave();
+        return AccountResponse.of(account, null, limit.getDescription() + " updated to $" + Money.format(amountCents) + ".");
+    }
+
+    Response applySavingsInterest(AccountManager accounts) {
+        StringBuilder message = new StringBuilder();
+        try {
+            for (SavingsAccount account : accounts.getSavingsAccounts()) {
+                if (!account.isFrozen()) {
+                    long added = apply(account, target -> account.applyInterestCents());
+                    message.append("Interest of ").append(Money.format(added))
+                           .append(" applied. New balance: ").append(Money.format(account.getBalanceCents())).append('\n');
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            accounts.scheduleSave(); // Some accounts may already have been paid
+            return new Response(Status.THROTTLED, message.append(TOO_BUSY).toString());
+        }
+        accounts.scheduleSave();
+        return new Response(Status.OK, message.append("Applied interest to all savings accounts.").toString());
+    }
+
+    Response applyOverdraftInterest(AccountManager accounts) {
+        List<BankAccount> overdrawn = new ArrayList<>();
+        for (BankAccount account : accounts.getCheckingAccounts()) {
+            if (!account.isFrozen() && account.getBalanceCents() < 0) {
+                overdrawn.add(account);
+            }
+        }
+        for (BankAccount account : accounts.getSavingsAccounts()) {
+            if (!account.isFrozen() && account.getBalanceCents() < 0) {
+                overdrawn.add(account);
+            }
+        }
+
+        long totalCharged = 0;
+        try {
+            for (BankAccount account : overdrawn) {
+                long charged = apply(account, BankAccount::applyOverdraftInterestCents);
+                if (charged > 0) {
+                    totalCharged += charged;
+                    record(accounts, account, "Overdraft Interest Charged: $" + Money.format(charged));
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            accounts.scheduleSave(); // Some accounts may already have been charged
+            return new Response(Status.THROTTLED, TOO_BUSY);
+        }
+        accounts.scheduleSave();
+        if (totalCharged == 0) {
+            return new Response(Status.OK, "No accounts are currently in overdraft.");
+        }
+        return new Response(Status.OK, "Applied overdraft interest. Total interest charged: $" + Money.format(totalCharged));
+    }
+
+    Response closeAccount(AccountManager accounts, BankAccount account) {
+        if (!account.canClose()) {
+            return new Response(Status.REJECTED, "Cannot close account: balance must be zero or positive.");
+        }
+        if (!accounts.removeAccount(account.getAccountName())) {
+            return new Response(Status.NOT_FOUND, "Account not found: " + account.getAccountName());
+        }
+        return new Response(Status.OK, "Account closed successfully.");
+    }
+
+    HistoryResponse history(AccountManager accounts, BankAccount account, long cursor, int pageSize) {
+        if (cursor < 0 || pageSize <= 0) {
+            return HistoryResponse.failed(Status.REJECTED, "Cursor must not be negative and page size must be positive.");
+        }
+        try {
+            HistoryPage page = storage.getHistoryPage(accounts.getUsername(), account.getAccountName(), cursor, pageSize);
+            return new HistoryResponse(Status.OK, page.getTransactions().size() + " transactions.", page);
+        } catch (IOException e) {
+            return HistoryResponse.failed(Status.FAILED, "Error retrieving transaction history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies a change to one account, on its executor partition when commands are enabled.
+     *
+     * @throws RejectedExecutionException If the account's partition has no room for the change
+     */
+    private <T> T apply(BankAccount account, Function<? super BankAccount, T> change) {
+        if (commands == null) {
+            return change.apply(account);
+        }
+        return await(commands.submit(account, change), null);
+    }
+
+    /**
+     * Waits for a command on the executor. A failure to record its history is
+     * logged rather than returned, as in {@link #record}, because the change
+     * has been made either way.
+     *
+     * @param recorded The command's result whenever it records history
+     * @throws RejectedExecutionException If the command was turned away
+     */
+    private static <T> T await(CompletableFuture<T> pending, T recorded) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                System.err.println("Error recording transaction: " + e.getCause().getMessage());
+                return recorded;
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Records a change that has already been made. A failure is logged rather
+     * than returned because the balance has changed either way.
+     */
+    private void record(AccountManager accounts, BankAccount account, String transaction) {
+        try {
+            storage.recordTransaction(accounts.getUsername(), account.getAccountName(), transaction);
+        } catch (IOException e) {
+            System.err.println("Error recording transaction: " + e.getMessage());
+        }
+    }
+
+    /**
+     * How a call turned out.
+     */
+    public enum Status {
+        OK,
+        /** The session token is unknown or expired, or the login failed. */
+        UNAUTHORIZED,
+        /** A named account does not belong to the user. */
+        NOT_FOUND,
+        /** The request broke a rule, such as a limit; nothing was changed. */
+        REJECTED,
+        /** Storage failed. */
+        FAILED,
+        /** Too many logins or account changes were in progress, or too many recent login attempts; try again later. */
+        THROTTLED
+    }
+
+    /**
+     * The limits a user can change.
+     */
+    public enum Limit {
+        WITHDRAWAL("Withdrawal limit"),
+        OVERDRAFT("Overdraft limit"),
+        TRANSFER("Transfer limit");
+
+        private final String description;
+
+        Limit(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * A request to log in.
+     */
+    public static class LoginRequest {
+        private final String username;
+        private final String password;
+        private final String source;
+
+        /**
+         * @param username The username
+         * @param password The password
+         * @param source Where the attempt came from, for throttling, or null if unknown
+         */
+        public LoginRequest(String username, String password, String source) {
+            this.username = username;
+            this.password = password;
+            this.source = source;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public String getSource() {
+            return source;
+        }
+    }
+
+    /**
+     * A request to open a checking or savings account.
+     */
+    public static class OpenAccountRequest {
+        private final String accountName;
+        private final boolean savings;
+        private final long overdraftLimitCents;
+        private final double interestRate;
+
+        private OpenAccountRequest(String accountName, boolean savings, long overdraftLimitCents, double interestRate) {
+            this.accountName = accountName;
+            this.savings = savings;
+            this.overdraftLimitCents = overdraftLimitCents;
+            this.interestRate = interestRate;
+        }
+
+        /**
+         * @param accountName The new account's name
+         * @param overdraftLimitCents How far it may be overdrawn, in cents
+         * @return A request for a checking account
+         */
+        public static OpenAccountRequest checking(String accountName, long overdraftLimitCents) {
+            return new OpenAccountRequest(accountName, false, overdraftLimitCents, 0);
+        }
+
+        /**
+         * @param accountName The new account's name
+         * @param interestRate The interest rate as a percentage
+         * @return A request for a savings account
+         */
+        public static OpenAccountRequest savings(String accountName, double interestRate) {
+            return new OpenAccountRequest(accountName, true, 0, interestRate);
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public boolean isSavings() {
+            return savings;
+        }
+
+        public long getOverdraftLimitCents() {
+            return overdraftLimitCents;
+        }
+
+        public double getInterestRate() {
+            return interestRate;
+        }
+    }
+
+    /**
+     * A request to deposit or withdraw money.
+     */
+    public static class AmountRequest {
+        private final String accountName;
+        private final long amountCents;
+
+        public AmountRequest(String accountName, long amountCents) {
+            this.accountName = accountName;
+            this.amountCents = amountCents;
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public long getAmountCents() {
+            return amountCents;
+        }
+    }
+
+    /**
+     * A request to move money between two of the user's accounts.
+     */
+    public static class TransferRequest {
+        private final String fromAccountName;
+        private final String toAccountName;
+        private final long amountCents;
+
+        public TransferRequest(String fromAccountName, String toAccountName, long amountCents) {
+            this.fromAccountName = fromAccountName;
+            this.toAccountName = toAccountName;
+            this.amountCents = amountCents;
+        }
+
+        public String getFromAccountName() {
+            return fromAccountName;
+        }
+
+        public String getToAccountName() {
+            return toAccountName;
+        }
+
+        public long getAmountCents() {
+            return amountCents;
+        }
+    }
+
+    /**
+     * A request to freeze or unfreeze an account.
+     */
+    public static class FreezeRequest {
+        private final String accountName;
+        private final boolean frozen;
+
+        public FreezeRequest(String accountName, boolean frozen) {
+            this.accountName = accountName;
+            this.frozen = frozen;
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public boolean isFrozen() {
+            return frozen;
+        }
+    }
+
+    /**
+     * A request to change one of an account's limits.
+     */
+    public static class LimitRequest {
+        private final String accountName;
+        private final Limit limit;
+        private final long amountCents;
+
+        public LimitRequest(String accountName, Limit limit, long amountCents) {
+            this.accountName = accountName;
+            this.limit = limit;
+            this.amountCents = amountCents;
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public Limit getLimit() {
+            return limit;
+        }
+
+        public long getAmountCents() {
+            return amountCents;
+        }
+    }
+
+    /**
+     * A request to close an account.
+     */
+    public static class CloseRequest {
+        private final String accountName;
+
+        public CloseRequest(String accountName) {
+            this.accountName = accountName;
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+    }
+
+    /**
+     * A request for one page of an account's history.
+     */
+    public static class HistoryRequest {
+        private final String accountName;
+        private final long cursor;
+        private final int pageSize;
+
+        /**
+         * @param accountName The account
+         * @param cursor 0 for the first page, then the previous page's next cursor
+         * @param pageSize The most transactions to return
+         */
+        public HistoryRequest(String accountName, long cursor, int pageSize) {
+            this.accountName = accountName;
+            this.cursor = cursor;
+            this.pageSize = pageSize;
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public long getCursor() {
+            return cursor;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+    }
+
+    /**
+     * The outcome of a call and a message for the user.
+     */
+    public static class Response {
+        private final Status status;
+        private final String message;
+
+        public Response(Status status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public boolean isOk() {
+            return status == Status.OK;
+        }
+    }
+
+    /**
+     * The outcome of a login.
+     */
+    public static class LoginResponse extends Response {
+        private final String token;
+
+        public LoginResponse(Status status, String message, String token) {
+            super(status, message);
+            this.token = token;
+        }
+
+        /**
+         * @return The session token, or null if the login failed
+         */
+        public String getToken() {
+            return token;
+        }
+    }
+
+    /**
+     * The outcome of a change to one account, with its balance afterwards.
+     */
+    public static class AccountResponse extends Response {
+        private final TransactionStatus transactionStatus;
+        private final String accountName;
+        private final long balanceCents;
+
+        public AccountResponse(Status status, String message, TransactionStatus transactionStatus,
+                               String accountName, long balanceCents) {
+            super(status, message);
+            this.transactionStatus = transactionStatus;
+            this.accountName = accountName;
+            this.balanceCents = balanceCents;
+        }
+
+        static AccountResponse of(BankAccount account, TransactionStatus transactionStatus, String message) {
+            return new AccountResponse(Status.OK, message, transactionStatus, account.getAccountName(), account.getBalanceCents());
+        }
+
+        static AccountResponse refused(BankAccount account, TransactionStatus transactionStatus, String message) {
+            return new AccountResponse(Status.REJECTED, message, transactionStatus, account.getAccountName(), account.getBalanceCents());
+        }
+
+        static AccountResponse failed(Status status, String message) {
+            return new AccountResponse(status, message, null, null, 0);
+        }
+
+        /**
+         * @return Why a balance change was or was not made, or null for other changes
+         */
+        public TransactionStatus getTransactionStatus() {
+            return transactionStatus;
+        }
+
+        /**
+         * @return The account's name, or null if no account was found
+         */
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public long getBalanceCents() {
+            return balanceCents;
+        }
+    }
+
+    /**
+     * The outcome of a transfer, with both balances afterwards.
+     */
+    public static class TransferResponse extends AccountResponse {
+        private final String targetAccountName;
+        private final long targetBalanceCents;
+
+        TransferResponse(Status status, String message, TransactionStatus transactionStatus,
+                         BankAccount source, BankAccount target) {
+            super(status, message, transactionStatus, source.getAccountName(), source.getBalanceCents());
+            this.targetAccountName = target.getAccountName();
+            this.targetBalanceCents = target.getBalanceCents();
+        }
+
+        private TransferResponse(Status status, String message) {
+            super(status, message, null, null, 0);
+            this.targetAccountName = null;
+            this.targetBalanceCents = 0;
+        }
+
+        static TransferResponse failed(Status status, String message) {
+            return new TransferResponse(status, message);
+        }
+
+        public String getTargetAccountName() {
+            return targetAccountName;
+        }
+
+        public long getTargetBalanceCents() {
+            return targetBalanceCents;
+        }
+    }
+
+    /**
+     * One page of an account's history.
+     */
+    public static class HistoryResponse extends Response {
+        private final HistoryPage page;
+
+        public HistoryResponse(Status status, String message, HistoryPage page) {
+            super(status, message);
+            this.page = page;
+        }
+
+        static HistoryResponse failed(Status status, String message) {
+            return new HistoryResponse(status, message, null);
+        }
+
+        /**
+         * @return The page, or null if it could not be read
+         */
+        public HistoryPage getPage() {
+            return page;
+        }
+    }
+}
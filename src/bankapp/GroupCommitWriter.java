@@ -0,0 +1,275 @@
+package bankapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues transaction records from concurrent callers and writes them to a
+ * {@link TransactionJournal} in batches, with one fsync per batch.
+ *
+ * The durability mode is chosen per deployment with the
+ * bankapp.journal.durability system property:
+ * - "sync": every record is written and forced before its future completes
+ * - "batched" (default): records are gathered for up to
+ *   bankapp.journal.maxBatchDelayMs milliseconds, then written and forced together
+ * - "async": futures complete once records are written; forcing happens in the
+ *   background every bankapp.journal.maxBatchDelayMs milliseconds
+ */
+public class GroupCommitWriter {
+
+    /**
+     * How long a caller waits before its record is considered durable.
+     */
+    public enum Durability {
+        ASYNC, BATCHED, SYNC
+    }
+
+    private static final long DEFAULT_MAX_BATCH_DELAY_MS = 2;
+    private static final int MAX_BATCH_RECORDS = 4096;
+
+    private final TransactionJournal journal;
+    private final Durability durability;
+    private final long maxBatchDelayMillis;
+    private final BlockingQueue<PendingRecord> queue;
+    private final Thread flusher;
+    private volatile boolean running;
+
+    /**
+     * A record waiting to be written, together with the future its caller holds.
+     */
+    static class PendingRecord {
+        final String username;
+        final String accountName;
+        final long timestamp;
+        final String text;
+        final CompletableFuture<Long> future;
+        long sequence;
+
+        PendingRecord(String username, String accountName, long timestamp, String text) {
+            this.username = username;
+            this.accountName = accountName;
+            this.timestamp = timestamp;
+            this.text = text;
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Creates a writer using the durability settings from system properties.
+     *
+     * @param journal The journal to write to
+     */
+    public GroupCommitWriter(TransactionJournal journal) {
+        this(journal, configuredDurability(), Long.getLong("bankapp.journal.maxBatchDelayMs", DEFAULT_MAX_BATCH_DELAY_MS));
+    }
+
+    /**
+     * Creates a writer with explicit durability settings.
+     *
+     * @param journal The journal to write to
+     * @param durability The durability mode
+     * @param maxBatchDelayMillis The longest a record waits for its batch to fill
+     */
+    public GroupCommitWriter(TransactionJournal journal, Durability durability, long maxBatchDelayMillis) {
+        this.journal = journal;
+        this.durability = durability;
+        this.maxBatchDelayMillis = Math.max(0, maxBatchDelayMillis);
+        this.queue = new LinkedBlockingQueue<>();
+        this.running = true;
+
+        if (durability == Durability.SYNC) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::runFlusher, "journal-group-commit");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Reads the durability mode from the bankapp.journal.durability system property.
+     *
+     * @return The configured mode, BATCHED if unset or unrecognized
+     */
+    private static Durability configuredDurability() {
+        String value = System.getProperty("bankapp.journal.durability", "batched");
+        try {
+            return Durability.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown journal durability '" + value + "', using batched.");
+            return Durability.BATCHED;
+        }
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Submits a transaction record.
+     * A record whose names or text do not fit in the journal fails on its own, before it is queued.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param timestamp The transaction time in epoch milliseconds
+     * @param text The transaction description
+     * @return A future completing with the record's sequence number once it is durable
+     */
+    public CompletableFuture<Long> submit(String username, String accountName, long timestamp, String text) {
+        PendingRecord record = new PendingRecord(username, accountName, timestamp, text);
+
+        // a record that cannot be encoded would fail the whole batch it lands in
+        try {
+            TransactionJournal.checkRecord(username, accountName, text);
+        } catch (IOException e) {
+            record.future.completeExceptionally(e);
+            return record.future;
+        }
+
+        if (!running) {
+            record.future.completeExceptionally(new IOException("Journal writer is stopped"));
+        } else if (durability == Durability.SYNC) {
+            writeSync(record);
+        } else {
+            queue.add(record);
+            // stop() may have drained the queue between the check and the add;
+            // if it did, nobody else will complete this record
+            if (!running && queue.remove(record)) {
+                record.future.completeExceptionally(new IOException("Journal writer is stopped"));
+            }
+        }
+        return record.future;
+    }
+
+    /**
+     * Writes and forces a single record on the caller's thread.
+     */
+    private void writeSync(PendingRecord record) {
+        try {
+            synchronized (journal) {
+                record.sequence = journal.append(record.username, record.accountName, record.timestamp, record.text);
+                journal.force();
+            }
+            record.future.complete(record.sequence);
+        } catch (IOException e) {
+            record.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Background loop that gathers queued records into batches and commits them.
+     */
+    private void runFlusher() {
+        List<PendingRecord> batch = new ArrayList<>();
+        long lastForce = System.nanoTime();
+        boolean unforced = false;
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(Math.max(1, maxBatchDelayMillis), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    fillBatch(batch);
+                    unforced = commit(batch) || unforced;
+                    batch.clear();
+                }
+
+                // In async mode records are forced on a timer rather than per batch
+                if (unforced && System.nanoTime() - lastForce >= TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis)) {
+                    journal.force();
+                    lastForce = System.nanoTime();
+                    unforced = false;
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException e) {
+                System.err.println("Error forcing transaction journal: " + e.getMessage());
+            }
+        }
+
+        if (unforced) {
+            try {
+                journal.force();
+            } catch (IOException e) {
+                System.err.println("Error forcing transaction journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Adds queued records to the batch, waiting up to the batch delay in batched mode.
+     */
+    private void fillBatch(List<PendingRecord> batch) throws InterruptedException {
+        queue.drainTo(batch, MAX_BATCH_RECORDS - batch.size());
+        if (durability != Durability.BATCHED) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        while (batch.size() < MAX_BATCH_RECORDS) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, MAX_BATCH_RECORDS - batch.size());
+        }
+    }
+
+    /**
+     * Writes a batch and completes its futures.
+     *
+     * @param batch The records to commit
+     * @return true if the batch was written but not yet forced
+     */
+    private boolean commit(List<PendingRecord> batch) {
+        try {
+            if (durability == Durability.BATCHED) {
+                synchronized (journal) {
+                    journal.appendBatch(batch);
+                    journal.force();
+                }
+            } else {
+                journal.appendBatch(batch);
+            }
+            for (PendingRecord record : batch) {
+                record.future.complete(record.sequence);
+            }
+            return durability == Durability.ASYNC;
+        } catch (IOException e) {
+            for (PendingRecord record : batch) {
+                record.future.completeExceptionally(e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting records, commits everything already queued and waits for the flusher to exit.
+     */
+    public void stop() {
+        running = false;
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Fail anything that slipped in after the flusher exited
+        PendingRecord record;
+        while ((record = queue.poll()) != null) {
+            record.future.completeExceptionally(new IOException("Journal writer is stopped"));
+        }
+    }
+}
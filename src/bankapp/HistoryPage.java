@@ -0,0 +1,38 @@
+package bankapp;
+
+import java.util.List;
+
+/**
+ * One page of an account's transaction history, along with the cursor
+ * needed to fetch the page that follows it.
+ */
+public class HistoryPage {
+    private final List<String> transactions;
+    private final long nextCursor;
+    private final boolean hasMore;
+
+    /**
+     * Creates a history page.
+     * 
+     * @param transactions The transactions on this page, oldest first
+     * @param nextCursor The cursor to pass when fetching the next page
+     * @param hasMore Whether any transactions follow this page
+     */
+    public HistoryPage(List<String> transactions, long nextCursor, boolean hasMore) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<String> getTransactions() {
+        return transactions;
+    }
+
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,310 @@
+package bankapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed, read-only copy of a sealed {@link TransactionJournal} segment.
+ *
+ * The segment's records are split into blocks of consecutive slots and each
+ * block is compressed on its own with {@link Deflater}. A block index at the
+ * end of the file records where each block lives, which slots it holds and
+ * the oldest and newest timestamp inside it, so a read decompresses only the
+ * blocks it touches and a date-range query can skip blocks entirely.
+ *
+ * File layout:
+ *   header  magic, version
+ *   blocks  deflated records
+ *   index   per block: offset, compressed length, first slot, record count,
+ *           oldest timestamp, newest timestamp
+ *   footer  index offset, block count, magic
+ */
+public class JournalArchive {
+    static final int BLOCK_RECORDS = 256;
+
+    private static final int ARCHIVE_MAGIC = 0x54584E41; // "TXNA"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int INDEX_ENTRY_SIZE = 36;
+    private static final int FOOTER_SIZE = 16;
+    private static final int TIMESTAMP_OFFSET = 16; // Where a journal record keeps its timestamp
+    private static final int RECORD_SIZE = TransactionJournal.RECORD_SIZE;
+
+    private final FileChannel channel;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockFirstSlots;
+    private final int[] blockCounts;
+    private final long[] blockOldest;
+    private final long[] blockNewest;
+    private int cachedBlock = -1;
+    private byte[] cachedRecords;
+
+    /**
+     * Compresses the first usedSlots records of a segment into an archive file.
+     * The archive is written under a temporary name and moved into place once forced.
+     *
+     * @param archivePath Where to write the archive
+     * @param segment The sealed segment's channel
+     * @param usedSlots The number of records in the segment
+     * @throws IOException If the segment cannot be read or the archive written
+     */
+    static void write(Path archivePath, FileChannel segment, int usedSlots) throws IOException {
+        Path tempPath = archivePath.resolveSibling(archivePath.getFileName() + ".tmp");
+        ByteBuffer records = ByteBuffer.allocate(BLOCK_RECORDS * RECORD_SIZE);
+        byte[] compressed = new byte[BLOCK_RECORDS * RECORD_SIZE + 1024];
+        List<long[]> index = new ArrayList<>();
+        Deflater deflater = new Deflater();
+
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = writeFully(out, ByteBuffer.allocate(HEADER_SIZE).putInt(ARCHIVE_MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+
+            for (int firstSlot = 0; firstSlot < usedSlots; firstSlot += BLOCK_RECORDS) {
+                int count = Math.min(BLOCK_RECORDS, usedSlots - firstSlot);
+                records.clear().limit(count * RECORD_SIZE);
+                readFully(segment, records, (long) firstSlot * RECORD_SIZE);
+
+                long oldest = Long.MAX_VALUE;
+                long newest = Long.MIN_VALUE;
+                for (int i = 0; i < count; i++) {
+                    long timestamp = records.getLong(i * RECORD_SIZE + TIMESTAMP_OFFSET);
+                    oldest = Math.min(oldest, timestamp);
+                    newest = Math.max(newest, timestamp);
+                }
+
+                deflater.reset();
+                deflater.setInput(records.array(), 0, count * RECORD_SIZE);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    length += deflater.deflate(compressed, length, compressed.length - length);
+                }
+
+                index.add(new long[] {offset, length, firstSlot, count, oldest, newest});
+                offset = writeFully(out, ByteBuffer.wrap(compressed, 0, length), offset);
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate(index.size() * INDEX_ENTRY_SIZE + FOOTER_SIZE);
+            for (long[] entry : index) {
+                trailer.putLong(entry[0]).putInt((int) entry[1]).putInt((int) entry[2]).putInt((int) entry[3])
+                       .putLong(entry[4]).putLong(entry[5]);
+            }
+            trailer.putLong(offset).putInt(index.size()).putInt(ARCHIVE_MAGIC);
+            trailer.flip();
+            writeFully(out, trailer, offset);
+            out.force(true);
+        } finally {
+            deflater.end();
+        }
+        Files.move(tempPath, archivePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens an archive file and reads its block index.
+     *
+     * @param archivePath The archive file
+     * @throws IOException If the file is not a complete archive
+     */
+    JournalArchive(Path archivePath) throws IOException {
+        channel = FileChannel.open(archivePath, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                throw new IOException("Journal archive is truncated: " + archivePath);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(channel, footer, size - FOOTER_SIZE);
+            long indexOffset = footer.getLong(0);
+            int blockCount = footer.getInt(8);
+            if (footer.getInt(12) != ARCHIVE_MAGIC || blockCount < 0
+                    || indexOffset + (long) blockCount * INDEX_ENTRY_SIZE + FOOTER_SIZE != size) {
+                throw new IOException("Journal archive is corrupt: " + archivePath);
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE);
+            readFully(channel, index, indexOffset);
+            blockOffsets = new long[blockCount];
+            blockLengths = new int[blockCount];
+            blockFirstSlots = new int[blockCount];
+            blockCounts = new int[blockCount];
+            blockOldest = new long[blockCount];
+            blockNewest = new long[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                int start = i * INDEX_ENTRY_SIZE;
+                blockOffsets[i] = index.getLong(start);
+                blockLengths[i] = index.getInt(start + 8);
+                blockFirstSlots[i] = index.getInt(start + 12);
+                blockCounts[i] = index.getInt(start + 16);
+                blockOldest[i] = index.getLong(start + 20);
+                blockNewest[i] = index.getLong(start + 28);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of compressed blocks.
+     *
+     * @return The block count
+     */
+    int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Gets the number of records in the archive.
+     *
+     * @return The record count
+     */
+    int getRecordCount() {
+        int total = 0;
+        for (int count : blockCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Decompresses one block.
+     *
+     * @param block The block number
+     * @return The block's records, RECORD_SIZE bytes each
+     * @throws IOException If the block cannot be read or is corrupt
+     */
+    synchronized byte[] readBlock(int block) throws IOException {
+        if (block == cachedBlock) {
+            return cachedRecords;
+        }
+
+        ByteBuffer compressed = ByteBuffer.allocate(blockLengths[block]);
+        readFully(channel, compressed, blockOffsets[block]);
+        byte[] records = new byte[blockCounts[block] * RECORD_SIZE];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            int length = 0;
+            while (length < records.length && !inflater.finished()) {
+                int inflated = inflater.inflate(records, length, records.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != records.length) {
+                throw new IOException("Journal archive block " + block + " is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Journal archive block " + block + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        cachedBlock = block;
+        cachedRecords = records;
+        return records;
+    }
+
+    /**
+     * Copies consecutive records into a buffer, decompressing only the blocks they span.
+     *
+     * @param firstSlot The slot of the first record
+     * @param count The number of records
+     * @param out The buffer, cleared and filled from position 0
+     * @throws IOException If a block cannot be read
+     */
+    synchronized void readRecords(int firstSlot, int count, ByteBuffer out) throws IOException {
+        out.clear().limit(count * RECORD_SIZE);
+        int slot = firstSlot;
+        while (slot < firstSlot + count) {
+            int block = blockFor(slot);
+            if (block < 0) {
+                throw new IOException("Journal archive has no record in slot " + slot);
+            }
+            byte[] records = readBlock(block);
+            int offset = slot - blockFirstSlots[block];
+            int run = Math.min(firstSlot + count - slot, blockCounts[block] - offset);
+            out.put(records, offset * RECORD_SIZE, run * RECORD_SIZE);
+            slot += run;
+        }
+    }
+
+    /**
+     * Checks whether the block holding a slot can contain a timestamp in a range,
+     * using only the block index.
+     *
+     * @param slot The record's slot
+     * @param fromMillis The start of the range (inclusive)
+     * @param toMillis The end of the range (exclusive)
+     * @return false if the block lies entirely outside the range
+     */
+    boolean mayContain(int slot, long fromMillis, long toMillis) {
+        int block = blockFor(slot);
+        return block >= 0 && blockOldest[block] < toMillis && blockNewest[block] >= fromMillis;
+    }
+
+    /**
+     * Finds the block holding a slot.
+     *
+     * @return The block number, or -1 if no block holds the slot
+     */
+    private int blockFor(int slot) {
+        int low = 0;
+        int high = blockFirstSlots.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (blockFirstSlots[middle] > slot) {
+                high = middle - 1;
+            } else if (blockFirstSlots[middle] + blockCounts[middle] <= slot) {
+                low = middle + 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Closes the archive file.
+     */
+    synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal archive: " + e.getMessage());
+        }
+        cachedRecords = null;
+        cachedBlock = -1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal file");
+            }
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,627 @@
+package bankapp;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded log-structured key-value store.
+ *
+ * Every write is appended to the active data file; an in-memory hash index
+ * maps each key to the file and offset of its latest value, so a lookup is a
+ * single positional read. Deletes append a tombstone. Once superseded records
+ * outweigh live ones, a background compaction copies the live records out of
+ * the older files into one new file and removes the old files. The index is
+ * rebuilt by scanning the data files in order when the store is opened.
+ *
+ * The store is used for users, profiles and account snapshots when the
+ * bankapp.storage system property is set to "kv"; otherwise the application
+ * keeps using its per-user text files.
+ */
+public class KeyValueStore {
+    private static final int HEADER_SIZE = 12; // checksum, key length, value length
+    private static final int TOMBSTONE = -1;
+    private static final String FILE_PREFIX = "data-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final String DEFAULT_DIRECTORY = "data/store";
+    private static final long DEFAULT_FILE_BYTES = 64L * 1024 * 1024;
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    // One store per directory, shared by every user of that directory in the process
+    private static final Map<Path, KeyValueStore> OPEN_STORES = new HashMap<>();
+
+    // Compactions run one at a time on a background thread
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "kv-store-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final TreeMap<Integer, FileChannel> files;
+    private final Map<String, Location> index;
+    private final Map<Integer, Long> deadBytes;
+    private final ReentrantReadWriteLock lock;
+    private int activeFile;
+    private long activeSize;
+    private long liveBytes;
+    private boolean compacting;
+    private boolean closed;
+
+    /**
+     * Where the latest value of a key is stored.
+     */
+    private static class Location {
+        final int fileId;
+        final long recordOffset;
+        final int keyLength;
+        final int valueLength;
+
+        Location(int fileId, long recordOffset, int keyLength, int valueLength) {
+            this.fileId = fileId;
+            this.recordOffset = recordOffset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        long valueOffset() {
+            return recordOffset + HEADER_SIZE + keyLength;
+        }
+
+        int recordLength() {
+            return HEADER_SIZE + keyLength + Math.max(0, valueLength);
+        }
+    }
+
+    /**
+     * Gets the store the application is configured to use.
+     *
+     * @return The shared store under data/store, or null when the bankapp.storage
+     *         system property does not select "kv"
+     */
+    public static KeyValueStore configuredStore() {
+        if (!"kv".equalsIgnoreCase(System.getProperty("bankapp.storage", "files"))) {
+            return null;
+        }
+        try {
+            return forDirectory(Paths.get(DEFAULT_DIRECTORY));
+        } catch (IOException e) {
+            System.err.println("Failed to open key-value store: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gets the store kept in a directory, opening it if necessary.
+     *
+     * @param directory The directory holding the data files
+     * @return The shared store for that directory
+     * @throws IOException If the store cannot be opened
+     */
+    public static synchronized KeyValueStore forDirectory(Path directory) throws IOException {
+        Path key = directory.toAbsolutePath().normalize();
+        KeyValueStore store = OPEN_STORES.get(key);
+        if (store == null) {
+            store = new KeyValueStore(key, Long.getLong("bankapp.store.fileBytes", DEFAULT_FILE_BYTES));
+            OPEN_STORES.put(key, store);
+        }
+        return store;
+    }
+
+    /**
+     * Opens the store in the given directory, scanning its data files.
+     *
+     * @param directory The directory holding the data files
+     * @param maxFileBytes The size at which the active data file is rolled over
+     * @throws IOException If the data files cannot be opened or scanned
+     */
+    private KeyValueStore(Path directory, long maxFileBytes) throws IOException {
+        this.directory = directory;
+        this.maxFileBytes = Math.max(HEADER_SIZE, maxFileBytes);
+        this.files = new TreeMap<>();
+        this.index = new HashMap<>();
+        this.deadBytes = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+
+        Files.createDirectories(directory);
+        openExistingFiles();
+
+        if (files.isEmpty()) {
+            startFile(1);
+        }
+    }
+
+    private Path filePath(int fileId) {
+        return directory.resolve(String.format("%s%08d%s", FILE_PREFIX, fileId, FILE_SUFFIX));
+    }
+
+    /**
+     * Opens every data file in the directory and rebuilds the index from them, oldest first.
+     *
+     * @throws IOException If a data file cannot be read
+     */
+    private void openExistingFiles() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String number = name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length());
+                try {
+                    files.put(Integer.parseInt(number), FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring unexpected store file: " + name);
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, FileChannel> file : files.entrySet()) {
+            long validBytes = scanFile(file.getKey(), file.getValue());
+            activeFile = file.getKey();
+            activeSize = validBytes;
+        }
+
+        // Drop a torn record left at the end of the active file by a crash
+        if (!files.isEmpty() && files.get(activeFile).size() > activeSize) {
+            files.get(activeFile).truncate(activeSize);
+        }
+    }
+
+    /**
+     * Adds every intact record in a data file to the index.
+     *
+     * @param fileId The file's number
+     * @param channel The file's channel
+     * @return The number of bytes up to the end of the last intact record
+     * @throws IOException If the file cannot be read
+     */
+    private long scanFile(int fileId, FileChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 64 * 1024));
+        long offset = 0;
+
+        while (true) {
+            int checksum;
+            byte[] key;
+            byte[] value;
+            int valueLength;
+            try {
+                checksum = in.readInt();
+                int keyLength = in.readInt();
+                valueLength = in.readInt();
+                if (keyLength < 0 || valueLength < TOMBSTONE
+                        || offset + HEADER_SIZE + keyLength + Math.max(0, valueLength) > channel.size()) {
+                    return offset;
+                }
+                key = new byte[keyLength];
+                value = new byte[Math.max(0, valueLength)];
+                in.readFully(key);
+                in.readFully(value);
+            } catch (EOFException e) {
+                return offset;
+            }
+
+            if (checksum != checksum(key, value, valueLength)) {
+                return offset;
+            }
+
+            Location location = new Location(fileId, offset, key.length, valueLength);
+            String keyText = new String(key, StandardCharsets.UTF_8);
+            if (valueLength == TOMBSTONE) {
+                supersede(index.remove(keyText));
+                addDeadBytes(fileId, location.recordLength());
+            } else {
+                supersede(index.put(keyText, location));
+                liveBytes += location.recordLength();
+            }
+            offset += location.recordLength();
+        }
+    }
+
+    private static int checksum(byte[] key, byte[] value, int valueLength) {
+        CRC32 crc = new CRC32();
+        crc.update(key.length >>> 24);
+        crc.update(key.length >>> 16);
+        crc.update(key.length >>> 8);
+        crc.update(key.length);
+        crc.update(valueLength >>> 24);
+        crc.update(valueLength >>> 16);
+        crc.update(valueLength >>> 8);
+        crc.update(valueLength);
+        crc.update(key);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Accounts for a record that is no longer the latest value of its key.
+     */
+    private void supersede(Location previous) {
+        if (previous != null) {
+            liveBytes -= previous.recordLength();
+            addDeadBytes(previous.fileId, previous.recordLength());
+        }
+    }
+
+    private void addDeadBytes(int fileId, long bytes) {
+        deadBytes.merge(fileId, bytes, Long::sum);
+    }
+
+    /**
+     * Makes a new, empty file the active data file.
+     *
+     * @param fileId The new file's number
+     * @throws IOException If the file cannot be created
+     */
+    private void startFile(int fileId) throws IOException {
+        files.put(fileId, openNewFile(fileId));
+        activeFile = fileId;
+        activeSize = 0;
+    }
+
+    private FileChannel openNewFile(int fileId) throws IOException {
+        return FileChannel.open(filePath(fileId), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Gets the latest value stored under a key.
+     *
+     * @param key The key
+     * @return The value, or null if the key is not present
+     * @throws IOException If the value cannot be read
+     */
+    public byte[] get(String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(location.valueLength);
+            readFully(files.get(location.fileId), buffer, location.valueOffset());
+            return buffer.array();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the latest value stored under a key as text.
+     *
+     * @param key The key
+     * @return The UTF-8 decoded value, or null if the key is not present
+     * @throws IOException If the value cannot be read
+     */
+    public String getString(String key) throws IOException {
+        byte[] value = get(key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key The key
+     * @return true if the key has a value
+     */
+    public boolean containsKey(String key) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists the keys starting with a prefix.
+     *
+     * @param prefix The key prefix
+     * @return The matching keys in sorted order
+     */
+    public List<String> keysWithPrefix(String prefix) {
+        List<String> keys = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String key : index.keySet()) {
+                if (key.startsWith(prefix)) {
+                    keys.add(key);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Stores a value under a key, replacing any previous value.
+     *
+     * @param key The key
+     * @param value The value
+     * @throws IOException If the value cannot be written
+     */
+    public void put(String key, byte[] value) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(key, value);
+        putAll(entries);
+    }
+
+    /**
+     * Stores a text value under a key, replacing any previous value.
+     *
+     * @param key The key
+     * @param value The value, stored as UTF-8
+     * @throws IOException If the value cannot be written
+     */
+    public void putString(String key, String value) throws IOException {
+        put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stores several values with one write and one force.
+     * A null value deletes its key.
+     *
+     * @param entries The keys and values to store
+     * @throws IOException If the values cannot be written
+     */
+    public void putAll(Map<String, byte[]> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> keys = new ArrayList<>(entries.size());
+        int total = 0;
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            keys.add(key);
+            total += HEADER_SIZE + key.length + (entry.getValue() == null ? 0 : entry.getValue().length);
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                throw new IOException("Key-value store is closed");
+            }
+            if (activeSize > 0 && activeSize + total > maxFileBytes) {
+                startFile(files.lastKey() + 1);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(total);
+            List<Location> locations = new ArrayList<>(entries.size());
+            int i = 0;
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                byte[] key = keys.get(i++);
+                byte[] value = entry.getValue();
+                int valueLength = value == null ? TOMBSTONE : value.length;
+                byte[] valueBytes = value == null ? new byte[0] : value;
+
+                locations.add(new Location(activeFile, activeSize + buffer.position(), key.length, valueLength));
+                buffer.putInt(checksum(key, valueBytes, valueLength)).putInt(key.length).putInt(valueLength)
+                        .put(key).put(valueBytes);
+            }
+            buffer.flip();
+
+            FileChannel channel = files.get(activeFile);
+            writeFully(channel, buffer, activeSize);
+            channel.force(false);
+            activeSize += total;
+
+            i = 0;
+            for (String key : entries.keySet()) {
+                Location location = locations.get(i++);
+                if (location.valueLength == TOMBSTONE) {
+                    supersede(index.remove(key));
+                    addDeadBytes(location.fileId, location.recordLength());
+                } else {
+                    supersede(index.put(key, location));
+                    liveBytes += location.recordLength();
+                }
+            }
+            scheduleCompactionIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key The key
+     * @throws IOException If the tombstone cannot be written
+     */
+    public void delete(String key) throws IOException {
+        if (!containsKey(key)) {
+            return;
+        }
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(key, null);
+        putAll(entries);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of store file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * Gets the total size of superseded records still on disk.
+     *
+     * @return The number of reclaimable bytes
+     */
+    public long getDeadBytes() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (long bytes : deadBytes.values()) {
+                total += bytes;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a background compaction once superseded records outweigh live ones.
+     * Caller holds the write lock.
+     */
+    private void scheduleCompactionIfNeeded() {
+        long dead = 0;
+        for (long bytes : deadBytes.values()) {
+            dead += bytes;
+        }
+        if (!compacting && dead >= MIN_COMPACTION_BYTES && dead > liveBytes) {
+            compacting = true;
+            COMPACTOR.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("Key-value store compaction failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies the live records out of every data file except the active one
+     * into a single new file, then deletes the old files.
+     * Writes continue to the active file while the copy runs.
+     *
+     * @throws IOException If the compacted file cannot be written
+     */
+    public synchronized void compact() throws IOException {
+        try {
+            int compactedFile;
+            Map<String, Location> toCopy = new LinkedHashMap<>();
+
+            // Roll the active file so the compacted file sits between the old files and the new active one
+            lock.writeLock().lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                compacting = true;
+                compactedFile = files.lastKey() + 1;
+                startFile(compactedFile + 1);
+                for (Map.Entry<String, Location> entry : index.entrySet()) {
+                    if (entry.getValue().fileId < compactedFile) {
+                        toCopy.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Map<String, Location> copied = new HashMap<>();
+            try (FileChannel output = openNewFile(compactedFile)) {
+                long offset = 0;
+                for (Map.Entry<String, Location> entry : toCopy.entrySet()) {
+                    Location old = entry.getValue();
+                    ByteBuffer record = ByteBuffer.allocate(old.recordLength());
+                    lock.readLock().lock();
+                    try {
+                        readFully(files.get(old.fileId), record, old.recordOffset);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    record.flip();
+                    writeFully(output, record, offset);
+                    copied.put(entry.getKey(), new Location(compactedFile, offset, old.keyLength, old.valueLength));
+                    offset += old.recordLength();
+                }
+                output.force(true);
+            } catch (IOException | RuntimeException e) {
+                // The old files are untouched; drop the partial copy so a reopen does not load it
+                Files.deleteIfExists(filePath(compactedFile));
+                throw e;
+            }
+
+            // Point the index at the copies, unless a key was rewritten while we were copying
+            lock.writeLock().lock();
+            try {
+                FileChannel compacted = FileChannel.open(filePath(compactedFile), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                for (Map.Entry<String, Location> entry : copied.entrySet()) {
+                    Location copy = entry.getValue();
+                    if (index.get(entry.getKey()) == toCopy.get(entry.getKey())) {
+                        index.put(entry.getKey(), copy);
+                    } else {
+                        addDeadBytes(compactedFile, copy.recordLength());
+                    }
+                }
+
+                for (Integer fileId : new ArrayList<>(files.headMap(compactedFile).keySet())) {
+                    files.remove(fileId).close();
+                    deadBytes.remove(fileId);
+                    Files.deleteIfExists(filePath(fileId));
+                }
+                files.put(compactedFile, compacted);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            // Reset on every path, or a failed compaction would stop all later ones being scheduled
+            lock.writeLock().lock();
+            try {
+                compacting = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Closes the store's data files.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (FileChannel channel : files.values()) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing store file: " + e.getMessage());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        synchronized (KeyValueStore.class) {
+            OPEN_STORES.remove(directory, this);
+        }
+    }
+}
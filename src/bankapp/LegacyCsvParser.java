@@ -0,0 +1,342 @@
+package bankapp;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Line-by-line parser for the comma-separated account and history files.
+ *
+ * The parser walks a byte array in place. Field boundaries are kept in
+ * reused offset arrays, and numbers and booleans are parsed straight from the
+ * bytes, so reading a line allocates nothing unless the caller asks for a
+ * field as a String. One parser can be reused across files with {@link #reset}.
+ */
+public class LegacyCsvParser {
+    private static final int MAX_FIELDS = 16;
+    private static final int MAX_FAST_DIGITS = 15; // Every 15-digit integer is exact as a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final byte[] TIMESTAMP_PATTERN = "00-00-0000 00:00:00".getBytes(StandardCharsets.US_ASCII); // 0 = any digit
+    private static final int TIMESTAMP_LENGTH = TIMESTAMP_PATTERN.length; // "MM-dd-yyyy HH:mm:ss"
+
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private final AsciiView asciiView = new AsciiView();
+    private byte[] data;
+    private int limit;
+    private int position;
+    private int lineStart;
+    private int lineEnd;
+    private int fieldCount;
+
+    /**
+     * Creates a parser over a whole file's contents.
+     *
+     * @param data The file's bytes
+     */
+    public LegacyCsvParser(byte[] data) {
+        reset(data);
+    }
+
+    /**
+     * Points the parser at new data, reusing its buffers.
+     *
+     * @param data The file's bytes
+     */
+    public void reset(byte[] data) {
+        this.data = data;
+        this.limit = data.length;
+        this.position = 0;
+        this.fieldCount = 0;
+    }
+
+    /**
+     * Advances to the next line and finds its fields.
+     * Like String.split(","), trailing empty fields are not counted.
+     *
+     * @return false once every line has been read
+     */
+    public boolean nextLine() {
+        if (position >= limit) {
+            return false;
+        }
+
+        lineStart = position;
+        int end = position;
+        while (end < limit && data[end] != '\n') {
+            end++;
+        }
+        position = end + 1;
+        if (end > lineStart && data[end - 1] == '\r') {
+            end--;
+        }
+        lineEnd = end;
+
+        fieldCount = 0;
+        int fieldStart = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || data[i] == ',') {
+                if (fieldCount < MAX_FIELDS) {
+                    fieldStarts[fieldCount] = fieldStart;
+                    fieldEnds[fieldCount] = i;
+                }
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+        fieldCount = Math.min(fieldCount, MAX_FIELDS);
+        while (fieldCount > 0 && fieldStarts[fieldCount - 1] == fieldEnds[fieldCount - 1]) {
+            fieldCount--;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of fields on the current line.
+     *
+     * @return The field count
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Gets a field as text. This is the only field accessor that allocates.
+     *
+     * @param index The field index
+     * @return The field's text
+     */
+    public String fieldString(int index) {
+        checkField(index);
+        return new String(data, fieldStarts[index], fieldEnds[index] - fieldStarts[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a field as a boolean, following Boolean.parseBoolean.
+     *
+     * @param index The field index
+     * @return true if the field is "true" in any case
+     */
+    public boolean fieldBoolean(int index) {
+        checkField(index);
+        int start = fieldStarts[index];
+        if (fieldEnds[index] - start != 4) {
+            return false;
+        }
+        return (data[start] | 0x20) == 't' && (data[start + 1] | 0x20) == 'r'
+                && (data[start + 2] | 0x20) == 'u' && (data[start + 3] | 0x20) == 'e';
+    }
+
+    /**
+     * Parses a field as a double.
+     * Plain decimals such as those written by Double.toString are parsed in
+     * place; anything else falls back to Double.parseDouble.
+     *
+     * @param index The field index
+     * @return The parsed value
+     * @throws NumberFormatException If the field is not a number
+     */
+    public double fieldDouble(int index) {
+        checkField(index);
+        return parseDouble(fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * Parses a field as a dollar amount in whole cents, rounding any further
+     * digits half to even. The digits are read in place, so old files whose
+     * amounts were written by Double.toString load without going through a
+     * double.
+     *
+     * @param index The field index
+     * @return The amount in cents
+     * @throws NumberFormatException If the field is not a number
+     */
+    public long fieldCents(int index) {
+        checkField(index);
+        return Money.parse(asciiView, fieldStarts[index], fieldEnds[index]);
+    }
+
+    private void checkField(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + fieldCount);
+        }
+    }
+
+    /**
+     * Parses a decimal number exactly when its digits and exponent allow a
+     * single correctly rounded multiply or divide by a power of ten.
+     */
+    private double parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        for (; i < end; i++) {
+            byte c = data[i];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    // Leading zeros add no precision
+                } else if (++digits > MAX_FAST_DIGITS) {
+                    return slowParse(start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) {
+            return slowParse(start, end);
+        }
+
+        int exponent = 0;
+        if (i < end && (data[i] == 'E' || data[i] == 'e')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (data[i] == '-' || data[i] == '+')) {
+                negativeExponent = data[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                return slowParse(start, end);
+            }
+            for (; i < end; i++) {
+                byte c = data[i];
+                if (c < '0' || c > '9' || exponent > 1000) {
+                    return slowParse(start, end);
+                }
+                exponent = exponent * 10 + (c - '0');
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != end) {
+            return slowParse(start, end);
+        }
+
+        int scale = exponent - fractionDigits;
+        double value = mantissa;
+        if (scale < -22 || scale > 22) {
+            return slowParse(start, end);
+        } else if (scale < 0) {
+            value /= POWERS_OF_TEN[-scale];
+        } else {
+            value *= POWERS_OF_TEN[scale];
+        }
+        return negative ? -value : value;
+    }
+
+    private double slowParse(int start, int end) {
+        return Double.parseDouble(new String(data, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Checks whether the current line ends with ", MM-dd-yyyy HH:mm:ss",
+     * the way history lines are written.
+     *
+     * @return true if the line has a trailing timestamp
+     */
+    public boolean hasTrailingTimestamp() {
+        int start = lineEnd - TIMESTAMP_LENGTH;
+        if (start - 2 < lineStart || data[start - 2] != ',' || data[start - 1] != ' ') {
+            return false;
+        }
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            byte c = data[start + i];
+            byte expected = TIMESTAMP_PATTERN[i];
+            if (expected == '0' ? (c < '0' || c > '9') : c != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the current line's trailing timestamp.
+     * Call only after {@link #hasTrailingTimestamp()} returns true.
+     *
+     * @param zone The zone the timestamp was written in
+     * @return The timestamp in epoch milliseconds, or -1 if the date is not valid
+     */
+    public long trailingTimestampMillis(ZoneId zone) {
+        int start = lineEnd - TIMESTAMP_LENGTH;
+        try {
+            LocalDateTime time = LocalDateTime.of(digits(start + 6, 4), digits(start, 2), digits(start + 3, 2),
+                    digits(start + 11, 2), digits(start + 14, 2), digits(start + 17, 2));
+            return time.atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Gets the current line without its trailing timestamp.
+     *
+     * @return The transaction text
+     */
+    public String textBeforeTimestamp() {
+        int end = lineEnd - TIMESTAMP_LENGTH - 2;
+        return new String(data, lineStart, end - lineStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The parser's bytes seen as characters, for parsers that take a CharSequence.
+     * Only meaningful for ASCII text such as numbers.
+     */
+    private class AsciiView implements CharSequence {
+        @Override
+        public int length() {
+            return limit;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (data[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(data, start, end - start, StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public String toString() {
+            return new String(data, 0, limit, StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Gets the whole current line.
+     *
+     * @return The line's text
+     */
+    public String lineString() {
+        return new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+}
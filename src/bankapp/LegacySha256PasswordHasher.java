@@ -0,0 +1,43 @@
+package bankapp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * The original unsalted SHA-256 password hash, stored as bare Base64.
+ * Kept so users registered before salted hashing can still log in; their
+ * hashes always need rehashing.
+ */
+public class LegacySha256PasswordHasher implements PasswordHasher {
+    public static final String ID = "sha256";
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String hash(String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] encodedhash = digest.digest(password.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(encodedhash);
+        } catch (NoSuchAlgorithmException e) {
+            // Fallback to simple hashing if SHA-256 isn't available
+            return String.valueOf(password.hashCode());
+        }
+    }
+
+    @Override
+    public boolean verify(String password, String encoded) {
+        return MessageDigest.isEqual(hash(password).getBytes(StandardCharsets.UTF_8),
+                encoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean needsRehash(String encoded) {
+        return true;
+    }
+}
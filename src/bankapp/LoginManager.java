@@ -83,21 +83,29 @@ public class LoginManager {
         String usernameText = getStringInput("Enter your username: ");
         String passwordText = getStringInput("Enter your password: ");
         
-        User loggedInUser = userManager.login(usernameText, passwordText);
-        displayLoginResult(loggedInUser != null);
-        return loggedInUser;
+        UserManager.LoginResult result = userManager.authenticate(usernameText, passwordText, null);
+        displayLoginResult(result.getStatus());
+        return result.getUser();
     }
     
     /**
      * Displays the result of a login attempt.
      * 
-     * @param successful Whether the login was successful
+     * @param status How the login attempt ended
      */
-    private void displayLoginResult(boolean successful) {
-        if (successful) {
-            System.out.println("Login successful!");
-        } else {
-            System.out.println("Invalid username or password.");
+    private void displayLoginResult(UserManager.LoginStatus status) {
+        switch (status) {
+            case OK:
+                System.out.println("Login successful!");
+                break;
+            case THROTTLED:
+                System.out.println("Too many login attempts. Please wait and try again.");
+                break;
+            case BUSY:
+                System.out.println("Too many logins in progress. Please try again shortly.");
+                break;
+            default:
+                System.out.println("Invalid username or password.");
         }
     }
     
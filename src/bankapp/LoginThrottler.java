@@ -0,0 +1,210 @@
+package bankapp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how many login attempts a key, such as a username or a source
+ * address, may make within a sliding time window.
+ *
+ * Attempts are counted per fixed window, and the estimate for the sliding
+ * window weights the previous window's count by how much of it still
+ * overlaps. Each key's fingerprint, window and both counts are packed into
+ * a single long, so checking and counting an attempt is one compare-and-set
+ * with no locks. Keys hash to a bucket of eight adjacent slots, about one
+ * cache line, so threads working on different keys rarely touch the same memory.
+ *
+ * Memory is fixed when the throttler is created. Slots whose counts have
+ * slid out of the window are reused by new keys; when a bucket is full of
+ * live keys the one seen least recently is evicted, which at worst lets an
+ * evicted key start counting again.
+ *
+ * Layout of a slot, from the high bits: fingerprint (24), window number (20),
+ * previous window's count (10), current window's count (10). Zero is empty.
+ */
+public class LoginThrottler {
+    private static final int BUCKET_SLOTS = 8; // About one 64-byte cache line
+    private static final int COUNT_BITS = 10;
+    private static final int WINDOW_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long WINDOW_MASK = (1L << WINDOW_BITS) - 1;
+    private static final int WINDOW_SHIFT = 2 * COUNT_BITS;
+    private static final int FINGERPRINT_SHIFT = WINDOW_SHIFT + WINDOW_BITS;
+
+    /** The largest attempt limit the packed counts can represent. */
+    public static final int MAX_LIMIT = (int) COUNT_MASK - 1;
+
+    private final int limit;
+    private final long windowMillis;
+    private final AtomicLongArray slots;
+    private final int bucketMask;
+    private final LongSupplier clock;
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * Creates a throttler on the system clock.
+     *
+     * @param limit The attempts allowed per key within a window
+     * @param windowMillis The window length in milliseconds
+     * @param maxKeys The number of keys to make room for
+     */
+    public LoginThrottler(int limit, long windowMillis, int maxKeys) {
+        this(limit, windowMillis, maxKeys, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a throttler.
+     *
+     * @param limit The attempts allowed per key within a window, at most {@link #MAX_LIMIT}
+     * @param windowMillis The window length in milliseconds
+     * @param maxKeys The number of keys to make room for, rounded up to a power of two
+     * @param clock The time source, in milliseconds
+     */
+    public LoginThrottler(int limit, long windowMillis, int maxKeys, LongSupplier clock) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Attempt limit must be between 1 and " + MAX_LIMIT + ": " + limit);
+        }
+        if (windowMillis < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        int buckets = 1;
+        while ((long) buckets * BUCKET_SLOTS < maxKeys) {
+            buckets <<= 1;
+        }
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        this.slots = new AtomicLongArray(buckets * BUCKET_SLOTS);
+        this.bucketMask = buckets - 1;
+        this.clock = clock;
+    }
+
+    /**
+     * Counts an attempt for a key if it is under its limit.
+     *
+     * @param key The key, such as a username or source address
+     * @return true if the attempt may go ahead, false if it must be turned away
+     */
+    public boolean tryAcquire(String key) {
+        long now = clock.getAsLong();
+        long window = (now / windowMillis) & WINDOW_MASK;
+        long remaining = windowMillis - now % windowMillis; // Overlap of the previous window with the sliding one
+
+        long hash = (key.hashCode() + 31L * key.length()) * 0xC4CEB93FE1A85A63L;
+        hash ^= hash >>> 29;
+        long fingerprint = (hash >>> FINGERPRINT_SHIFT) | 1; // Never zero, so never an empty slot
+        int base = ((int) hash & bucketMask) * BUCKET_SLOTS;
+
+        while (true) {
+            int slot = -1;
+            long current = 0;
+            long oldest = -1;
+            for (int i = base; i < base + BUCKET_SLOTS; i++) {
+                long state = slots.get(i);
+                if (state != 0 && state >>> FINGERPRINT_SHIFT == fingerprint) {
+                    slot = i;
+                    current = state;
+                    break;
+                }
+                long age = state == 0 ? Long.MAX_VALUE : windowsSince(state, window);
+                if (age > oldest) {
+                    oldest = age;
+                    slot = i;
+                    current = state;
+                }
+            }
+            boolean found = current != 0 && current >>> FINGERPRINT_SHIFT == fingerprint;
+
+            long previousCount = 0;
+            long currentCount = 0;
+            if (found) {
+                long age = windowsSince(current, window);
+                if (age == 0) {
+                    previousCount = (current >>> COUNT_BITS) & COUNT_MASK;
+                    currentCount = current & COUNT_MASK;
+                } else if (age == 1) {
+                    previousCount = current & COUNT_MASK;
+                }
+            }
+
+            if (previousCount * remaining / windowMillis + currentCount >= limit) {
+                rejected.increment();
+                return false;
+            }
+
+            long next = (fingerprint << FINGERPRINT_SHIFT) | (window << WINDOW_SHIFT)
+                    | (previousCount << COUNT_BITS) | (currentCount + 1);
+            if (slots.compareAndSet(slot, current, next)) {
+                if (!found && current != 0 && windowsSince(current, window) <= 1) {
+                    evicted.increment(); // Replaced a key that still had live counts
+                }
+                allowed.increment();
+                return true;
+            }
+            // Another thread changed the slot first, so look again
+        }
+    }
+
+    /**
+     * Counts whole windows between a slot's window and the current one.
+     */
+    private static long windowsSince(long state, long window) {
+        return (window - ((state >>> WINDOW_SHIFT) & WINDOW_MASK)) & WINDOW_MASK;
+    }
+
+    /**
+     * Gets the number of attempts allowed since the throttler was created.
+     *
+     * @return The allowed attempt count
+     */
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    /**
+     * Gets the number of attempts turned away since the throttler was created.
+     *
+     * @return The rejected attempt count
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Gets how many times a key with live counts was evicted to make room.
+     * A steadily rising count means the throttler needs room for more keys.
+     *
+     * @return The eviction count
+     */
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    /**
+     * Counts the keys with attempts in the current sliding window.
+     *
+     * @return The number of keys being tracked
+     */
+    public int getTrackedKeyCount() {
+        long window = (clock.getAsLong() / windowMillis) & WINDOW_MASK;
+        int count = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            long state = slots.get(i);
+            if (state != 0 && windowsSince(state, window) <= 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of keys the throttler has room for.
+     *
+     * @return The slot count
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+}
@@ -57,6 +57,9 @@ public class Menu {
             String choice = getUserChoice();
             continueSession = processMainMenuChoice(choice, accountManager, userProfile);
         }
+        
+        // Write out any account changes still waiting in the write-behind window
+        accountManager.flush();
     }
     
     /**
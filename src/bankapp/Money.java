@@ -0,0 +1,230 @@
+package bankapp;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money arithmetic on whole cents held in a long.
+ *
+ * Amounts are plain longs rather than objects, so adding, comparing and
+ * storing them allocates nothing and never drifts the way repeated double
+ * arithmetic does. Formatting appends digits straight to a StringBuilder and
+ * parsing reads characters in place. Percentages are applied with integer
+ * math and an explicit rounding mode; only amounts too large for that fall
+ * back to BigDecimal.
+ *
+ * Doubles are accepted at the edges for compatibility and are rounded to the
+ * nearest cent, ties to even.
+ */
+public final class Money {
+    public static final long CENTS_PER_DOLLAR = 100;
+    private static final long RATE_SCALE = 1_000_000; // Rates are held in millionths, i.e. 4 decimal places of a percent
+
+    private Money() {
+    }
+
+    /**
+     * Converts a dollar amount to cents.
+     *
+     * @param dollars The amount in dollars
+     * @return The nearest whole number of cents, ties to even
+     */
+    public static long fromDouble(double dollars) {
+        return (long) Math.rint(dollars * CENTS_PER_DOLLAR);
+    }
+
+    /**
+     * Converts cents to dollars.
+     *
+     * @param cents The amount in cents
+     * @return The amount in dollars
+     */
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_DOLLAR;
+    }
+
+    /**
+     * Formats cents as dollars with two decimal places, like "%.2f".
+     *
+     * @param cents The amount in cents
+     * @return The formatted amount, such as "-12.05"
+     */
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    /**
+     * Appends cents as dollars with two decimal places, like "%.2f".
+     *
+     * @param out Where to append
+     * @param cents The amount in cents
+     * @return The builder, for chaining
+     */
+    public static StringBuilder appendTo(StringBuilder out, long cents) {
+        long dollars = cents / CENTS_PER_DOLLAR;
+        int fraction = (int) Math.abs(cents % CENTS_PER_DOLLAR);
+        if (cents < 0) {
+            out.append('-');
+            dollars = -dollars;
+        }
+        out.append(dollars).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    /**
+     * Parses a dollar amount such as "12", "-3.5" or "1234.567" into cents.
+     * Digits beyond the cents are rounded half to even.
+     *
+     * @param text The amount
+     * @return The amount in cents
+     * @throws NumberFormatException If the text is not a decimal number or is out of range
+     */
+    public static long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses a dollar amount from part of a character sequence into cents.
+     * Digits beyond the cents are rounded half to even. Numbers with an
+     * exponent, as Double.toString writes for large values, are accepted too.
+     *
+     * @param text The characters
+     * @param start The index of the first character
+     * @param end The index just past the last character
+     * @return The amount in cents
+     * @throws NumberFormatException If the text is not a decimal number or is out of range
+     */
+    public static long parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long cents = 0;
+        int fractionDigits = -1; // -1 until the decimal point
+        int firstDropped = -1;
+        boolean droppedNonZero = false;
+        boolean seenDigit = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (fractionDigits < 2) {
+                    if (cents > (Long.MAX_VALUE - 9) / 10) {
+                        throw new NumberFormatException("Amount out of range: " + text.subSequence(start, end));
+                    }
+                    cents = cents * 10 + (c - '0');
+                    if (fractionDigits >= 0) {
+                        fractionDigits++;
+                    }
+                } else if (firstDropped < 0) {
+                    firstDropped = c - '0';
+                } else if (c != '0') {
+                    droppedNonZero = true;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if ((c == 'e' || c == 'E') && seenDigit) {
+                return parseSlow(text, start, end);
+            } else {
+                throw new NumberFormatException("Not an amount: " + text.subSequence(start, end));
+            }
+        }
+        if (!seenDigit) {
+            throw new NumberFormatException("Not an amount: " + text.subSequence(start, end));
+        }
+
+        for (int scale = Math.max(fractionDigits, 0); scale < 2; scale++) {
+            if (cents > Long.MAX_VALUE / 10) {
+                throw new NumberFormatException("Amount out of range: " + text.subSequence(start, end));
+            }
+            cents *= 10;
+        }
+        if (firstDropped > 5 || (firstDropped == 5 && (droppedNonZero || (cents & 1) != 0))) {
+            cents++;
+        }
+        return negative ? -cents : cents;
+    }
+
+    private static long parseSlow(CharSequence text, int start, int end) {
+        try {
+            return new BigDecimal(text.subSequence(start, end).toString())
+                    .setScale(2, RoundingMode.HALF_EVEN).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text.subSequence(start, end));
+        }
+    }
+
+    /**
+     * Takes a percentage of an amount.
+     *
+     * @param cents The amount in cents
+     * @param ratePercent The rate in percent, such as 2.5, used to four decimal places
+     * @param rounding How to round a result between two cents
+     * @return The percentage of the amount in cents
+     */
+    public static long percentOf(long cents, double ratePercent, RoundingMode rounding) {
+        long rate = Math.round(ratePercent * (RATE_SCALE / 100));
+        long high = Math.multiplyHigh(cents, rate);
+        long low = cents * rate;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+            return divide(low, RATE_SCALE, rounding);
+        }
+        // Only amounts in the tens of billions of dollars get here
+        return BigDecimal.valueOf(cents).multiply(BigDecimal.valueOf(rate))
+                .divide(BigDecimal.valueOf(RATE_SCALE), 0, rounding).longValueExact();
+    }
+
+    /**
+     * Divides with an explicit rounding mode.
+     *
+     * @param dividend The dividend
+     * @param divisor The divisor, which must be positive
+     * @param rounding How to round an inexact quotient
+     * @return The rounded quotient
+     * @throws ArithmeticException If rounding is UNNECESSARY and the quotient is inexact
+     */
+    public static long divide(long dividend, long divisor, RoundingMode rounding) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+
+        int sign = dividend < 0 ? -1 : 1; // Sign of the exact result, since the divisor is positive
+        long dropped = Math.abs(remainder);
+        int half = Long.compare(dropped, divisor - dropped); // Is the dropped part below, at or above one half?
+        boolean awayFromZero;
+        switch (rounding) {
+            case UP:
+                awayFromZero = true;
+                break;
+            case DOWN:
+                awayFromZero = false;
+                break;
+            case CEILING:
+                awayFromZero = sign > 0;
+                break;
+            case FLOOR:
+                awayFromZero = sign < 0;
+                break;
+            case HALF_UP:
+                awayFromZero = half >= 0;
+                break;
+            case HALF_DOWN:
+                awayFromZero = half > 0;
+                break;
+            case HALF_EVEN:
+                awayFromZero = half > 0 || (half == 0 && (quotient & 1) != 0);
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+        return awayFromZero ? quotient + sign : quotient;
+    }
+}
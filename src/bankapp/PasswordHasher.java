@@ -0,0 +1,43 @@
+package bankapp;
+
+/**
+ * A way of hashing passwords for storage.
+ *
+ * Encoded hashes start with the hasher's ID followed by '$', so the hasher
+ * that produced a stored hash can always be found again after the default
+ * changes. Hashes written before IDs were added have no '$' at all.
+ */
+public interface PasswordHasher {
+
+    /**
+     * Gets the ID written at the start of this hasher's encoded hashes.
+     *
+     * @return The hasher ID
+     */
+    String getId();
+
+    /**
+     * Hashes a password with a fresh salt.
+     *
+     * @param password The password
+     * @return The encoded hash, including everything needed to verify it
+     */
+    String hash(String password);
+
+    /**
+     * Checks a password against an encoded hash produced by this hasher.
+     *
+     * @param password The password
+     * @param encoded The encoded hash
+     * @return true if the password matches
+     */
+    boolean verify(String password, String encoded);
+
+    /**
+     * Checks whether an encoded hash is weaker than this hasher would produce now.
+     *
+     * @param encoded The encoded hash
+     * @return true if the password should be hashed again
+     */
+    boolean needsRehash(String encoded);
+}
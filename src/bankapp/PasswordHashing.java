@@ -0,0 +1,167 @@
+package bankapp;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes and verifies passwords with the configured {@link PasswordHasher}.
+ *
+ * New passwords are hashed with PBKDF2 at bankapp.passwords.iterations
+ * iterations (default 310000). Stored hashes are verified by the hasher
+ * named in their encoding, so older hashes keep working after the default
+ * changes, and {@link #needsRehash(String)} says when one should be replaced.
+ *
+ * Hashing is deliberately slow, so all of it runs on a fixed pool of
+ * bankapp.passwords.hashThreads threads (default one per core) with a
+ * bounded queue of waiting requests. A burst of logins can use at most those
+ * threads, and once the queue is full further requests are turned away with
+ * a RejectedExecutionException instead of piling up.
+ *
+ * Run this class with a target time in milliseconds to print the iteration
+ * count that takes about that long to verify on this machine.
+ */
+public class PasswordHashing {
+    private static final int DEFAULT_ITERATIONS = 310_000;
+    private static final int QUEUED_PER_THREAD = 32;
+
+    private static final PasswordHasher LEGACY = new LegacySha256PasswordHasher();
+    private static final Map<String, PasswordHasher> HASHERS = new ConcurrentHashMap<>();
+    private static volatile PasswordHasher current;
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor(
+            Math.max(1, Integer.getInteger("bankapp.passwords.hashThreads", Runtime.getRuntime().availableProcessors())));
+
+    static {
+        HASHERS.put(LEGACY.getId(), LEGACY);
+        setHasher(new Pbkdf2PasswordHasher(Integer.getInteger("bankapp.passwords.iterations", DEFAULT_ITERATIONS)));
+    }
+
+    private PasswordHashing() {
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_PER_THREAD), task -> {
+                    Thread thread = new Thread(task, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Gets the hasher used for new passwords.
+     *
+     * @return The current hasher
+     */
+    public static PasswordHasher getHasher() {
+        return current;
+    }
+
+    /**
+     * Sets the hasher used for new passwords. Hashes from earlier hashers
+     * with other IDs remain verifiable.
+     *
+     * @param hasher The hasher
+     */
+    public static void setHasher(PasswordHasher hasher) {
+        HASHERS.put(hasher.getId(), hasher);
+        current = hasher;
+    }
+
+    /**
+     * Finds the hasher that produced an encoded hash.
+     *
+     * @param encoded The encoded hash
+     * @return The hasher, or null if its ID is unknown
+     */
+    public static PasswordHasher hasherFor(String encoded) {
+        int end = encoded.indexOf('$');
+        return end < 0 ? LEGACY : HASHERS.get(encoded.substring(0, end));
+    }
+
+    /**
+     * Hashes a password with the current hasher.
+     *
+     * @param password The password
+     * @return The encoded hash
+     * @throws RejectedExecutionException If too many hashes are already waiting
+     */
+    public static String hash(String password) {
+        PasswordHasher hasher = current;
+        return run(() -> hasher.hash(password));
+    }
+
+    /**
+     * Checks a password against a stored hash.
+     *
+     * @param password The password
+     * @param encoded The stored hash
+     * @return true if the password matches
+     * @throws RejectedExecutionException If too many hashes are already waiting
+     */
+    public static boolean verify(String password, String encoded) {
+        PasswordHasher hasher = hasherFor(encoded);
+        if (hasher == null) {
+            return false;
+        }
+        return run(() -> hasher.verify(password, encoded));
+    }
+
+    /**
+     * Checks whether a stored hash should be replaced by one from the current hasher.
+     *
+     * @param encoded The stored hash
+     * @return true if the hash came from another hasher or is weaker than the current one
+     */
+    public static boolean needsRehash(String encoded) {
+        PasswordHasher hasher = current;
+        PasswordHasher original = hasherFor(encoded);
+        return original == null || !original.getId().equals(hasher.getId()) || hasher.needsRehash(encoded);
+    }
+
+    /**
+     * Runs a hashing task on the hashing pool and waits for it.
+     */
+    private static <T> T run(Callable<T> task) {
+        try {
+            return EXECUTOR.submit(task).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Password hashing failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        }
+    }
+
+    /**
+     * Prints the PBKDF2 iteration count for a target verification time.
+     *
+     * @param args The target time in milliseconds (default 250)
+     */
+    public static void main(String[] args) {
+        long targetMillis = args.length > 0 ? Long.parseLong(args[0]) : 250;
+        int iterations = Pbkdf2PasswordHasher.calibrate(targetMillis);
+
+        Pbkdf2PasswordHasher hasher = new Pbkdf2PasswordHasher(iterations);
+        String encoded = hasher.hash("calibration");
+        long start = System.nanoTime();
+        hasher.verify("calibration", encoded);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Target " + targetMillis + " ms: " + iterations + " iterations (measured "
+                + elapsedMillis + " ms per verification)");
+        System.out.println("Use -Dbankapp.passwords.iterations=" + iterations);
+    }
+}
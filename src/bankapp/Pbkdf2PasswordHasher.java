@@ -0,0 +1,149 @@
+package bankapp;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashing.
+ *
+ * Encoded as pbkdf2-sha256$iterations$salt$hash, with the salt and hash in
+ * Base64. The iteration count is the cost factor: each stored hash records
+ * its own, so raising the cost leaves existing hashes verifiable and
+ * {@link #needsRehash(String)} reports them for upgrading.
+ */
+public class Pbkdf2PasswordHasher implements PasswordHasher {
+    public static final String ID = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final int CALIBRATION_ITERATIONS = 10_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+
+    /**
+     * Creates a hasher.
+     *
+     * @param iterations The PBKDF2 iteration count for new hashes
+     */
+    public Pbkdf2PasswordHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iteration count must be positive: " + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    /**
+     * Gets the iteration count used for new hashes.
+     *
+     * @return The iteration count
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = derive(password, salt, iterations, HASH_BYTES);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return ID + "$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    @Override
+    public boolean verify(String password, String encoded) {
+        Parsed parsed = Parsed.of(encoded);
+        if (parsed == null) {
+            return false;
+        }
+        byte[] actual = derive(password, parsed.salt, parsed.iterations, parsed.hash.length);
+        return MessageDigest.isEqual(actual, parsed.hash);
+    }
+
+    @Override
+    public boolean needsRehash(String encoded) {
+        Parsed parsed = Parsed.of(encoded);
+        return parsed == null || parsed.iterations < iterations
+                || parsed.salt.length < SALT_BYTES || parsed.hash.length < HASH_BYTES;
+    }
+
+    /**
+     * Finds the iteration count at which verifying a password takes about
+     * the target time on this machine, by timing a short run and scaling it.
+     *
+     * @param targetMillis The target verification time in milliseconds
+     * @return The iteration count, rounded to a thousand
+     */
+    public static int calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_BYTES];
+        long best = Long.MAX_VALUE;
+        // Early runs include class loading and JIT warm-up, so keep the fastest
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            derive("calibration", salt, CALIBRATION_ITERATIONS, HASH_BYTES);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double perIteration = (double) best / CALIBRATION_ITERATIONS;
+        long iterations = Math.round(targetMillis * 1_000_000.0 / perIteration / 1000) * 1000;
+        return (int) Math.max(1000, Math.min(Integer.MAX_VALUE / 2, iterations));
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations, int length) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, length * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * The parts of an encoded hash.
+     */
+    private static class Parsed {
+        final int iterations;
+        final byte[] salt;
+        final byte[] hash;
+
+        private Parsed(int iterations, byte[] salt, byte[] hash) {
+            this.iterations = iterations;
+            this.salt = salt;
+            this.hash = hash;
+        }
+
+        /**
+         * Splits an encoded hash into its parts.
+         *
+         * @return The parts, or null if the hash is not a PBKDF2 hash
+         */
+        static Parsed of(String encoded) {
+            String[] parts = encoded.split("\\$");
+            if (parts.length != 4 || !ID.equals(parts[0])) {
+                return null;
+            }
+            try {
+                int iterations = Integer.parseInt(parts[1]);
+                byte[] salt = Base64.getDecoder().decode(parts[2]);
+                byte[] hash = Base64.getDecoder().decode(parts[3]);
+                if (iterations < 1 || hash.length == 0) {
+                    return null;
+                }
+                return new Parsed(iterations, salt, hash);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -8,6 +8,9 @@ import java.util.Scanner;
  */
 public class PromptHandler {
 
+	private static final int HISTORY_PAGE_SIZE = 20;
+	private static final BankService SERVICE = new BankService();
+
 	/**
 	 * Opens a new bank account based on user input.
 	 * 
@@ -102,13 +105,13 @@ public class PromptHandler {
 			return;
 		}
 
-		double overdraftLimit = getValidOverdraftLimit(scanner);
-		if (overdraftLimit <= 0) {
+		long overdraftLimitCents = getValidOverdraftLimit(scanner);
+		if (overdraftLimitCents <= 0) {
 			System.out.println("Invalid overdraft limit. Overdraft protection not enabled.");
 			return;
 		}
 
-		account.setOverdraftLimit(overdraftLimit);
+		account.setOverdraftLimitCents(overdraftLimitCents);
 		configureOverdraftInterestRate(scanner, account);
 	}
 
@@ -116,12 +119,12 @@ public class PromptHandler {
 	 * Gets a valid overdraft limit from the user.
 	 * 
 	 * @param scanner The scanner for user input
-	 * @return The overdraft limit or 0 if invalid
+	 * @return The overdraft limit in cents, or 0 if invalid
 	 */
-	private static double getValidOverdraftLimit(Scanner scanner) {
+	private static long getValidOverdraftLimit(Scanner scanner) {
 		try {
 			System.out.print("Enter overdraft limit ($): ");
-			return Double.parseDouble(scanner.nextLine());
+			return Money.parse(scanner.nextLine().trim());
 		} catch (NumberFormatException e) {
 			System.out.println("Invalid input. Overdraft protection not enabled.");
 			return 0;
@@ -232,12 +235,7 @@ public class PromptHandler {
 	 * @param accountManager The account manager
 	 */
 	private static void applyOverdraftInterest(AccountManager accountManager) {
-		double interestCharged = accountManager.applyOverdraftInterestToAllAccounts();
-		if (interestCharged > 0) {
-			System.out.printf("Applied overdraft interest. Total interest charged: $%.2f\n", interestCharged);
-		} else {
-			System.out.println("No accounts are currently in overdraft.");
-		}
+		System.out.println(SERVICE.applyOverdraftInterest(accountManager).getMessage());
 	}
 
 	/**
@@ -246,8 +244,7 @@ public class PromptHandler {
 	 * @param accountManager The account manager
 	 */
 	private static void applySavingsInterest(AccountManager accountManager) {
-		accountManager.applyInterestToAllSavingsAccounts();
-		System.out.println("Applied interest to all savings accounts.");
+		System.out.println(SERVICE.applySavingsInterest(accountManager).getMessage());
 	}
 
 	/**
@@ -261,12 +258,12 @@ public class PromptHandler {
 		System.out.print("Enter a name for your checking account: ");
 		String accountName = scanner.nextLine();
 
-		double overdraftLimit = promptForOverdraftLimit(scanner);
+		long overdraftLimitCents = promptForOverdraftLimit(scanner);
 
-		if (accountManager.addCheckingAccount(accountName, overdraftLimit)) {
+		if (accountManager.addCheckingAccount(accountName, Money.toDouble(overdraftLimitCents))) {
 			System.out.println("Checking account '" + accountName + "' created successfully!");
 
-			if (overdraftLimit > 0) {
+			if (overdraftLimitCents > 0) {
 				configureOverdraftInterestRate(accountManager, accountName, scanner);
 			}
 		}
@@ -276,20 +273,43 @@ public class PromptHandler {
 	 * Prompts for and validates an overdraft limit.
 	 * 
 	 * @param scanner The scanner for user input
-	 * @return The overdraft limit
+	 * @return The overdraft limit in cents
 	 */
-	private static double promptForOverdraftLimit(Scanner scanner) {
-		double overdraftLimit = 0.0; // Default: no overdraft
+	private static long promptForOverdraftLimit(Scanner scanner) {
+		long overdraftLimitCents = 0; // Default: no overdraft
 
 		System.out.print("Would you like to enable overdraft protection? (yes/no): ");
 		String overdraftChoice = scanner.nextLine().trim().toLowerCase();
 
 		if (overdraftChoice.equals("yes")) {
-			overdraftLimit = getValidPositiveDouble(scanner, "Enter overdraft limit ($): ", 
+			overdraftLimitCents = getValidPositiveAmount(scanner, "Enter overdraft limit ($): ", 
 					"Overdraft limit must be greater than zero.");
 		}
 
-		return overdraftLimit;
+		return overdraftLimitCents;
+	}
+
+	/**
+	 * Gets a valid positive dollar amount from the user.
+	 * 
+	 * @param scanner The scanner for user input
+	 * @param prompt The prompt to display
+	 * @param errorMessage The error message to display for an amount that is not positive
+	 * @return The amount in cents
+	 */
+	private static long getValidPositiveAmount(Scanner scanner, String prompt, String errorMessage) {
+		while (true) {
+			System.out.print(prompt);
+			try {
+				long cents = Money.parse(scanner.nextLine().trim());
+				if (cents > 0) {
+					return cents;
+				}
+				System.out.println(errorMessage);
+			} catch (NumberFormatException e) {
+				System.out.println("Invalid input. Please enter a number.");
+			}
+		}
 	}
 
 	/**
@@ -378,10 +398,10 @@ public class PromptHandler {
 			return;
 		}
 
-		double overdraftLimit = getValidPositiveDouble(scanner, "Enter overdraft limit ($): ", 
+		long overdraftLimitCents = getValidPositiveAmount(scanner, "Enter overdraft limit ($): ", 
 				"Overdraft limit must be greater than zero.");
 
-		if (accountManager.setOverdraftLimit(accountName, overdraftLimit)) {
+		if (accountManager.setOverdraftLimit(accountName, Money.toDouble(overdraftLimitCents))) {
 			configureOverdraftInterestRate(accountManager, accountName, scanner);
 		}
 	}
@@ -478,61 +498,44 @@ public class PromptHandler {
 		}
 
 		System.out.print("Enter amount to deposit: $");
-		double amount = parseAmount(scanner);
+		long amountCents = parseAmount(scanner);
 
-		if (amount <= 0) {
+		if (amountCents <= 0) {
 			System.out.println("Deposit amount must be positive.");
 			return;
 		}
 
-		account.deposit(amount);
-		recordDepositTransaction(accountManager, account, amount);
-		displayDepositResult(amount, account.getBalance());
+		BankService.AccountResponse response = SERVICE.deposit(accountManager, account, amountCents);
+		if (!response.isOk()) {
+			System.out.println(response.getMessage());
+			return;
+		}
+		displayDepositResult(amountCents, response.getBalanceCents());
 	}
 
 	/**
 	 * Parses and validates an amount from user input.
 	 * 
 	 * @param scanner The scanner for user input
-	 * @return The amount entered, or -1 if invalid
+	 * @return The amount entered in cents, or -1 if invalid
 	 */
-	private static double parseAmount(Scanner scanner) {
+	private static long parseAmount(Scanner scanner) {
 		try {
-			return Double.parseDouble(scanner.nextLine());
+			return Money.parse(scanner.nextLine().trim());
 		} catch (NumberFormatException e) {
 			System.out.println("Invalid amount. Please enter a valid number.");
 			return -1;
 		}
 	}
 
-	/**
-	 * Records a deposit transaction in account history.
-	 * 
-	 * @param accountManager The account manager
-	 * @param account The bank account
-	 * @param amount The deposit amount
-	 */
-	private static void recordDepositTransaction(AccountManager accountManager, BankAccount account, double amount) {
-		AccountStorage accountStorage = new AccountStorage();
-		try {
-			accountStorage.recordTransaction(
-					accountManager.getUsername(), 
-					account.getAccountName(), 
-					"Deposit: $" + amount
-					);
-		} catch (IOException e) {
-			System.err.println("Error recording transaction: " + e.getMessage());
-		}
-	}
-
 	/**
 	 * Displays the result of a deposit operation.
 	 * 
-	 * @param amount The amount deposited
-	 * @param newBalance The new account balance
+	 * @param amountCents The amount deposited in cents
+	 * @param newBalanceCents The new account balance in cents
 	 */
-	private static void displayDepositResult(double amount, double newBalance) {
-		System.out.printf("Deposited $%.2f. New balance: $%.2f\n", amount, newBalance);
+	private static void displayDepositResult(long amountCents, long newBalanceCents) {
+		System.out.println("Deposited $" + Money.format(amountCents) + ". New balance: $" + Money.format(newBalanceCents));
 	}
 
 	/**
@@ -550,21 +553,22 @@ public class PromptHandler {
 
 		displayWithdrawalLimits(account);
 		System.out.print("Enter amount to withdraw: $");
-		double amount = parseAmount(scanner);
+		long amountCents = parseAmount(scanner);
 
-		if (amount <= 0) {
+		if (amountCents <= 0) {
 			System.out.println("Withdrawal amount must be positive.");
 			return;
 		}
 
-		if (!account.withdraw(amount)) {
-			return; // Withdrawal failed (error message already displayed in BankAccount.withdraw)
+		BankService.AccountResponse response = SERVICE.withdraw(accountManager, account, amountCents);
+		if (!response.isOk()) {
+			System.out.println(response.getMessage());
+			return;
 		}
 
-		recordWithdrawalTransaction(accountManager, account, amount);
-		displayWithdrawalResult(amount, account.getBalance());
+		displayWithdrawalResult(amountCents, response.getBalanceCents());
 
-		if (account.getBalance() < 0) {
+		if (response.getBalanceCents() < 0) {
 			displayOverdraftWarning(account);
 		}
 	}
@@ -583,34 +587,14 @@ public class PromptHandler {
 		}
 	}
 
-	/**
-	 * Records a withdrawal transaction in account history.
-	 * 
-	 * @param accountManager The account manager
-	 * @param account The bank account
-	 * @param amount The withdrawal amount
-	 */
-	private static void recordWithdrawalTransaction(AccountManager accountManager, BankAccount account, double amount) {
-		AccountStorage accountStorage = new AccountStorage();
-		try {
-			accountStorage.recordTransaction(
-					accountManager.getUsername(), 
-					account.getAccountName(), 
-					"Withdraw: $" + amount
-					);
-		} catch (IOException e) {
-			System.err.println("Error recording transaction: " + e.getMessage());
-		}
-	}
-
 	/**
 	 * Displays the result of a withdrawal operation.
 	 * 
-	 * @param amount The amount withdrawn
-	 * @param newBalance The new account balance
+	 * @param amountCents The amount withdrawn in cents
+	 * @param newBalanceCents The new account balance in cents
 	 */
-	private static void displayWithdrawalResult(double amount, double newBalance) {
-		System.out.printf("Withdrew $%.2f. New balance: $%.2f\n", amount, newBalance);
+	private static void displayWithdrawalResult(long amountCents, long newBalanceCents) {
+		System.out.println("Withdrew $" + Money.format(amountCents) + ". New balance: $" + Money.format(newBalanceCents));
 	}
 
 	/**
@@ -757,12 +741,13 @@ public class PromptHandler {
 	private static void updateOverdraftLimit(AccountManager accountManager, BankAccount account, Scanner scanner) {
 		System.out.print("Enter new overdraft limit ($): ");
 		try {
-			double newLimit = Double.parseDouble(scanner.nextLine());
-			if (newLimit >= 0) {
-				accountManager.setOverdraftLimit(account.getAccountName(), newLimit);
-				System.out.printf("Overdraft limit updated to $%.2f\n", newLimit);
+			long newLimitCents = Money.parse(scanner.nextLine().trim());
+			BankService.AccountResponse response = SERVICE.setLimit(accountManager, account,
+					BankService.Limit.OVERDRAFT, newLimitCents);
+			if (response.isOk()) {
+				System.out.println("Overdraft limit updated to $" + Money.format(newLimitCents));
 			} else {
-				System.out.println("Overdraft limit cannot be negative.");
+				System.out.println(response.getMessage());
 			}
 		} catch (NumberFormatException e) {
 			System.out.println("Invalid input. Please enter a number.");
@@ -818,8 +803,7 @@ public class PromptHandler {
 		String choice = scanner.nextLine().trim().toLowerCase();
 
 		if (choice.equals("yes")) {
-			accountManager.unfreezeAccount(account.getAccountName());
-			System.out.println("Account unfrozen successfully.");
+			System.out.println(SERVICE.setFrozen(accountManager, account, false).getMessage());
 		}
 	}
 
@@ -835,8 +819,7 @@ public class PromptHandler {
 		String choice = scanner.nextLine().trim().toLowerCase();
 
 		if (choice.equals("yes")) {
-			accountManager.freezeAccount(account.getAccountName());
-			System.out.println("Account frozen successfully.");
+			System.out.println(SERVICE.setFrozen(accountManager, account, true).getMessage());
 		}
 	}
 	
@@ -853,15 +836,20 @@ public class PromptHandler {
 	    
 	    System.out.print("Enter new transfer limit: $");
 	    try {
-	        double newLimit = Double.parseDouble(scanner.nextLine());
-	        if (newLimit <= 0) {
+	        long newLimitCents = Money.parse(scanner.nextLine().trim());
+	        if (newLimitCents <= 0) {
 	            System.out.println("Transfer limit must be greater than zero.");
 	            return;
 	        }
 	        
 	        // Update the limit
-	        accountManager.setTransferLimit(account.getAccountName(), newLimit);
-	        System.out.printf("Transfer limit updated to $%.2f\n", newLimit);
+	        BankService.AccountResponse response = SERVICE.setLimit(accountManager, account,
+	                BankService.Limit.TRANSFER, newLimitCents);
+	        if (response.isOk()) {
+	            System.out.println("Transfer limit updated to $" + Money.format(newLimitCents));
+	        } else {
+	            System.out.println(response.getMessage());
+	        }
 	    } catch (NumberFormatException e) {
 	        System.out.println("Invalid input. Please enter a valid number.");
 	    }
@@ -894,14 +882,9 @@ public class PromptHandler {
 			return false;
 		}
 
-		boolean removed = accountManager.closeAccount(account.getAccountName());
-		if (removed) {
-			System.out.println("Account closed successfully.");
-			return true; 
-		} else {
-			System.out.println("Error closing account.");
-			return false;
-		}
+		BankService.Response response = SERVICE.closeAccount(accountManager, account);
+		System.out.println(response.getMessage());
+		return response.isOk();
 	}
 
 	public static void handleDepositChecks(AccountManager accountManager, BankAccount account, Scanner scanner) {
@@ -911,19 +894,19 @@ public class PromptHandler {
 		}
 
 		System.out.print("Enter amount to deposit: $");
-		double amount = parseAmount(scanner);
+		long amountCents = parseAmount(scanner);
 
-		if (amount <= 0) {
+		if (amountCents <= 0) {
 			System.out.println("Deposit amount must be positive.");
 			return;
 		}
 
-		account.deposit(amount);
+		account.depositCents(amountCents);
 		System.out.print("Enter check number: ");
 		String checkNumber = scanner.nextLine();
 		AccountStorage accountStorage = new AccountStorage();
 		try {
-			accountStorage.recordTransaction(accountManager.getUsername(), account.getAccountName(), "Deposited Check #" + checkNumber + ": $" + amount);
+			accountStorage.recordTransaction(accountManager.getUsername(), account.getAccountName(), "Deposited Check #" + checkNumber + ": $" + Money.format(amountCents));
 		} catch (IOException e) {
 			System.err.println("Error recording transaction: " + e.getMessage());
 		}
@@ -1009,7 +992,7 @@ public class PromptHandler {
 			handleOption4(accountManager, account, scanner);
 			return false;
 		case "5":
-			viewTransactionHistory(accountManager, account);
+			viewTransactionHistory(accountManager, account, scanner);
 			return false;
 		case "6":
 			viewRecentTransactions(accountManager, account);
@@ -1061,19 +1044,39 @@ public class PromptHandler {
 	 * @param accountManager The account manager
 	 * @param account The bank account
 	 */
-	private static void viewTransactionHistory(AccountManager accountManager, BankAccount account) {
-		AccountStorage accountStorage = new AccountStorage();
-		try {
-			System.out.println("Transaction History:");
-			for (String transaction : accountStorage.getAccountHistory(
-					accountManager.getUsername(), account.getAccountName())) {
+	private static void viewTransactionHistory(AccountManager accountManager, BankAccount account, Scanner scanner) {
+		System.out.println("Transaction History:");
+		long cursor = 0;
+		boolean showMore = true;
+
+		// Show one page at a time so long histories are never loaded all at once
+		while (showMore) {
+			BankService.HistoryResponse response = SERVICE.history(accountManager, account, cursor, HISTORY_PAGE_SIZE);
+			if (!response.isOk()) {
+				System.out.println(response.getMessage());
+				return;
+			}
+			HistoryPage page = response.getPage();
+			for (String transaction : page.getTransactions()) {
 				System.out.println(transaction);
 			}
-		} catch (IOException e) {
-			System.out.println("Error retrieving transaction history: " + e.getMessage());
+
+			cursor = page.getNextCursor();
+			showMore = page.hasMore() && promptForMoreHistory(scanner);
 		}
 	}
 
+	/**
+	 * Asks whether to show the next page of transaction history.
+	 * 
+	 * @param scanner The scanner for user input
+	 * @return true if the user wants another page
+	 */
+	private static boolean promptForMoreHistory(Scanner scanner) {
+		System.out.print("Press Enter to see more, or type 0 to stop: ");
+		return !scanner.nextLine().trim().equals("0");
+	}
+
 	/**
 	 * Displays recent transactions for an account.
 	 * 
@@ -1,5 +1,7 @@
 package bankapp;
 
+import java.math.RoundingMode;
+
 public class SavingsAccount extends BankAccount {
     private double interestRate;
     
@@ -19,8 +21,15 @@ public class SavingsAccount extends BankAccount {
     }
 
     public void applyInterest() {
-        double interest = accountBalance * (interestRate / 100);
-        accountBalance += interest;
-        System.out.printf("Interest of %.2f applied. New balance: %.2f\n", interest, accountBalance);
+        long interestCents = applyInterestCents();
+        System.out.println("Interest of " + Money.format(interestCents) + " applied. New balance: " + Money.format(getBalanceCents()));
+    }
+
+    /**
+     * Adds a period's interest to the balance, rounding half a cent to even.
+     * @return The interest added in cents
+     */
+    public long applyInterestCents() {
+        return accrueInterestCents(interestRate, RoundingMode.HALF_EVEN);
     }
 }
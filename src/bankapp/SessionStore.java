@@ -0,0 +1,278 @@
+package bankapp;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory sessions for users who have already logged in.
+ *
+ * A session is found by a random token and holds the user with their
+ * accounts already loaded, so a request carrying a token costs one map
+ * lookup instead of a password check. Sessions end after a period without
+ * use (idle expiry) or a fixed time after login (absolute expiry), whichever
+ * comes first, and the least recently used session is dropped when the store
+ * is full.
+ *
+ * Expiry is checked exactly on every lookup. Expired sessions nobody asks
+ * for again are removed by a hashed timing wheel: each session sits in the
+ * wheel slot for its deadline, and as time passes the slots reached are
+ * swept. A session used since it was placed is moved to its new deadline's
+ * slot when its old one is swept, so using a session never touches the wheel.
+ */
+public class SessionStore {
+    private static final int WHEEL_SLOTS = 512;
+    private static final int TICKS_PER_IDLE = 64; // Wheel resolution, as a fraction of the idle timeout
+    private static final int TOKEN_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final long idleMillis;
+    private final long absoluteMillis;
+    private final int maxSessions;
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final Map<String, Session> sessions;
+    private final List<List<Session>> wheel = new ArrayList<>(WHEEL_SLOTS);
+    private long currentTick;
+
+    /**
+     * Creates a store on the system clock.
+     *
+     * @param idleMillis How long a session lasts without being used
+     * @param absoluteMillis How long a session lasts after login regardless of use
+     * @param maxSessions The most sessions kept at once
+     */
+    public SessionStore(long idleMillis, long absoluteMillis, int maxSessions) {
+        this(idleMillis, absoluteMillis, maxSessions, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param idleMillis How long a session lasts without being used
+     * @param absoluteMillis How long a session lasts after login regardless of use
+     * @param maxSessions The most sessions kept at once
+     * @param clock The time source, in milliseconds
+     */
+    public SessionStore(long idleMillis, long absoluteMillis, int maxSessions, LongSupplier clock) {
+        if (idleMillis < 1 || absoluteMillis < 1 || maxSessions < 1) {
+            throw new IllegalArgumentException("Session timeouts and size must be positive");
+        }
+        this.idleMillis = idleMillis;
+        this.absoluteMillis = absoluteMillis;
+        this.maxSessions = maxSessions;
+        this.tickMillis = Math.max(1, Math.min(idleMillis, absoluteMillis) / TICKS_PER_IDLE);
+        this.clock = clock;
+        this.currentTick = clock.getAsLong() / tickMillis;
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel.add(new ArrayList<>());
+        }
+
+        // Access order, so the eldest entry is the least recently used session
+        this.sessions = new LinkedHashMap<String, Session>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                if (size() > SessionStore.this.maxSessions) {
+                    eldest.getValue().closed = true;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Starts a session for a user who has just logged in, loading their accounts.
+     *
+     * @param user The user
+     * @return The new session's token
+     */
+    public String create(User user) {
+        AccountManager accountManager = user.getAccountManager(); // Loaded outside the lock
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        synchronized (this) {
+            long now = clock.getAsLong();
+            advance(now);
+            Session session = new Session(token, user, accountManager, now);
+            sessions.put(token, session);
+            schedule(session);
+        }
+        return token;
+    }
+
+    /**
+     * Finds the session for a token and marks it as used.
+     *
+     * @param token The session token
+     * @return The session, or null if the token is unknown, expired or ended
+     */
+    public synchronized Session get(String token) {
+        if (token == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        Session session = sessions.get(token);
+        if (session != null && now >= deadline(session)) {
+            remove(session);
+            session = null;
+        } else if (session != null) {
+            session.lastAccessedAt = now;
+        }
+        advance(now);
+        return session;
+    }
+
+    /**
+     * Ends a session, as on logout.
+     *
+     * @param token The session token
+     * @return true if the session existed
+     */
+    public synchronized boolean invalidate(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null) {
+            return false;
+        }
+        remove(session);
+        return true;
+    }
+
+    /**
+     * Ends every session belonging to a user, as after a password change.
+     *
+     * @param username The username
+     * @return The number of sessions ended
+     */
+    public synchronized int invalidateUser(String username) {
+        List<Session> ended = new ArrayList<>();
+        for (Session session : sessions.values()) {
+            if (session.user.getUsername().equals(username)) {
+                ended.add(session);
+            }
+        }
+        for (Session session : ended) {
+            remove(session);
+        }
+        return ended.size();
+    }
+
+    /**
+     * Removes every session whose deadline has passed.
+     */
+    public synchronized void expire() {
+        advance(clock.getAsLong());
+    }
+
+    /**
+     * Gets the number of sessions held, including expired ones not yet swept.
+     *
+     * @return The session count
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    private long deadline(Session session) {
+        return Math.min(session.lastAccessedAt + idleMillis, session.createdAt + absoluteMillis);
+    }
+
+    private void remove(Session session) {
+        sessions.remove(session.token);
+        session.closed = true; // Left in the wheel until its slot is swept
+    }
+
+    private void schedule(Session session) {
+        long tick = Math.max(currentTick + 1, (deadline(session) + tickMillis - 1) / tickMillis);
+        wheel.get((int) (tick % WHEEL_SLOTS)).add(session);
+    }
+
+    /**
+     * Sweeps the wheel slots for every tick up to the current time. A full
+     * turn covers every slot, so a long gap never sweeps more than that.
+     */
+    private void advance(long now) {
+        long target = now / tickMillis;
+        long steps = Math.min(target - currentTick, WHEEL_SLOTS);
+        for (long i = 0; i < steps; i++) {
+            int slot = (int) ((target - steps + 1 + i) % WHEEL_SLOTS);
+            List<Session> due = wheel.set(slot, new ArrayList<>());
+            currentTick = target - steps + 1 + i;
+            for (Session session : due) {
+                if (session.closed) {
+                    continue;
+                }
+                if (now >= deadline(session)) {
+                    remove(session);
+                } else {
+                    schedule(session); // Used since it was placed, or due on a later turn
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, target);
+    }
+
+    /**
+     * A logged-in user's session.
+     */
+    public static class Session {
+        private final String token;
+        private final User user;
+        private final AccountManager accountManager;
+        private final long createdAt;
+        private long lastAccessedAt;
+        private boolean closed;
+
+        private Session(String token, User user, AccountManager accountManager, long createdAt) {
+            this.token = token;
+            this.user = user;
+            this.accountManager = accountManager;
+            this.createdAt = createdAt;
+            this.lastAccessedAt = createdAt;
+        }
+
+        /**
+         * Gets the session token.
+         *
+         * @return The token
+         */
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * Gets the logged-in user.
+         *
+         * @return The user
+         */
+        public User getUser() {
+            return user;
+        }
+
+        /**
+         * Gets the user's account manager, loaded when the session started.
+         *
+         * @return The account manager
+         */
+        public AccountManager getAccountManager() {
+            return accountManager;
+        }
+
+        /**
+         * Gets when the session started.
+         *
+         * @return The login time in milliseconds
+         */
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+}
@@ -0,0 +1,1091 @@
+package bankapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal holding the transaction history of every account under
+ * one accounts directory.
+ *
+ * Each transaction is stored as a fixed-size binary record inside a large,
+ * preallocated segment file. Once the active segment is full a new one is
+ * started, so the number of files grows with history volume instead of with
+ * the number of accounts. An in-memory index maps each account to the
+ * addresses of its records and is rebuilt by scanning the segments on open.
+ *
+ * Sealed segments whose newest record is older than
+ * bankapp.journal.archiveAfterDays days (default 90, negative to disable) are
+ * moved in the background into a compressed {@link JournalArchive}. Archived
+ * records keep their addresses, so reads merge the archive and the hot
+ * segments transparently. Each archive has an index file beside it listing
+ * which slots belong to which account, so reopening the journal loads that
+ * index instead of decompressing the archive.
+ */
+public class TransactionJournal {
+    public static final int RECORD_SIZE = 256;
+
+    private static final int RECORD_MAGIC = 0x54584E4A; // "TXNJ"
+    private static final int HEADER_SIZE = 28;
+    private static final int PAYLOAD_SIZE = RECORD_SIZE - HEADER_SIZE;
+    private static final int CHECKSUM_OFFSET = 8;
+    private static final String JOURNAL_DIRECTORY = "_journal";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int SCAN_BATCH_RECORDS = 4096;
+    private static final int READ_BLOCK_RECORDS = 64;
+    private static final String ARCHIVE_PREFIX = "archive-";
+    private static final String ARCHIVE_SUFFIX = ".arc";
+    private static final String ARCHIVE_INDEX_SUFFIX = ".idx";
+    private static final int ARCHIVE_INDEX_MAGIC = 0x54584E49; // "TXNI"
+    private static final int ARCHIVE_INDEX_VERSION = 1;
+    private static final long DEFAULT_ARCHIVE_AFTER_DAYS = 90;
+
+    // Archiving runs one segment at a time on a background thread
+    private static final ExecutorService ARCHIVER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "journal-archiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // One journal per accounts directory, shared by every AccountStorage in the process
+    private static final Map<Path, TransactionJournal> OPEN_JOURNALS = new HashMap<>();
+
+    private final Path journalDirectory;
+    private final long segmentBytes;
+    private final TreeMap<Integer, FileChannel> segments;
+    private final Map<Integer, JournalArchive> archives;
+    private final Map<Integer, Integer> sealedSlots;
+    private final Map<Integer, Long> newestTimestamps;
+    private final Object archiveLock;
+    private final long archiveAfterMillis;
+    private final Map<String, AddressList> index;
+    private final Set<String> legacyChecked;
+    private final ByteBuffer writeBuffer;
+    private int activeSegment;
+    private int activeCapacity;
+    private int nextSlot;
+    private long nextSequence;
+    private GroupCommitWriter writer;
+    private boolean closed;
+
+    /**
+     * A single transaction read back from the journal.
+     */
+    public static class Entry {
+        private final long sequence;
+        private final long timestamp;
+        private final String text;
+
+        Entry(long sequence, long timestamp, String text) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.text = text;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Gets the journal for an accounts directory, opening it if necessary.
+     *
+     * @param accountsRoot The accounts directory
+     * @return The shared journal for that directory
+     * @throws IOException If the journal cannot be opened
+     */
+    public static synchronized TransactionJournal forDirectory(Path accountsRoot) throws IOException {
+        Path key = accountsRoot.toAbsolutePath().normalize();
+        TransactionJournal journal = OPEN_JOURNALS.get(key);
+        if (journal == null) {
+            journal = new TransactionJournal(key.resolve(JOURNAL_DIRECTORY), configuredSegmentBytes());
+            OPEN_JOURNALS.put(key, journal);
+            journal.scheduleArchiving();
+        }
+        return journal;
+    }
+
+    /**
+     * Closes the journal for an accounts directory if it is open. The next
+     * call to {@link #forDirectory} opens it again.
+     *
+     * @param accountsRoot The accounts directory
+     */
+    public static void closeDirectory(Path accountsRoot) {
+        TransactionJournal journal;
+        synchronized (TransactionJournal.class) {
+            journal = OPEN_JOURNALS.get(accountsRoot.toAbsolutePath().normalize());
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Reads the segment size from the bankapp.journal.segmentBytes system property.
+     *
+     * @return The configured segment size in bytes
+     */
+    private static long configuredSegmentBytes() {
+        long bytes = Long.getLong("bankapp.journal.segmentBytes", DEFAULT_SEGMENT_BYTES);
+        return Math.max(RECORD_SIZE, bytes - bytes % RECORD_SIZE);
+    }
+
+    /**
+     * Opens the journal stored in the given directory.
+     *
+     * @param journalDirectory The directory holding the segment files
+     * @param segmentBytes The size new segments are preallocated to
+     * @throws IOException If the segments cannot be opened or scanned
+     */
+    private TransactionJournal(Path journalDirectory, long segmentBytes) throws IOException {
+        this.journalDirectory = journalDirectory;
+        this.segmentBytes = segmentBytes;
+        this.segments = new TreeMap<>();
+        this.archives = new HashMap<>();
+        this.sealedSlots = new HashMap<>();
+        this.newestTimestamps = new HashMap<>();
+        this.archiveLock = new Object();
+        long archiveAfterDays = Long.getLong("bankapp.journal.archiveAfterDays", DEFAULT_ARCHIVE_AFTER_DAYS);
+        this.archiveAfterMillis = archiveAfterDays < 0 ? -1 : TimeUnit.DAYS.toMillis(archiveAfterDays);
+        this.index = new HashMap<>();
+        this.legacyChecked = new HashSet<>();
+        this.writeBuffer = ByteBuffer.allocate(RECORD_SIZE);
+        this.nextSequence = 1;
+
+        Files.createDirectories(journalDirectory);
+        openExistingSegments();
+
+        if (segments.isEmpty()) {
+            startSegment(archives.isEmpty() ? 1 : Collections.max(archives.keySet()) + 1);
+        }
+    }
+
+    /**
+     * Opens and scans every archive and segment already present on disk, oldest first.
+     * Archives are indexed from their index files; one without a usable index
+     * file is decompressed and scanned, and its index file written again.
+     *
+     * @throws IOException If a segment cannot be read
+     */
+    private void openExistingSegments() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDirectory, ARCHIVE_PREFIX + "*" + ARCHIVE_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String number = name.substring(ARCHIVE_PREFIX.length(), name.length() - ARCHIVE_SUFFIX.length());
+                try {
+                    archives.put(Integer.parseInt(number), new JournalArchive(path));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring unexpected journal file: " + name);
+                }
+            }
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDirectory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.put(Integer.parseInt(number), FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring unexpected journal file: " + name);
+                }
+            }
+        }
+
+        // A crash after archiving but before the segment was deleted leaves both; the archive wins
+        for (Integer archived : archives.keySet()) {
+            FileChannel leftover = segments.remove(archived);
+            if (leftover != null) {
+                leftover.close();
+                Files.deleteIfExists(segmentPath(archived));
+            }
+        }
+
+        TreeMap<Integer, Boolean> ordered = new TreeMap<>();
+        for (Integer number : archives.keySet()) {
+            ordered.put(number, Boolean.TRUE);
+        }
+        for (Integer number : segments.keySet()) {
+            ordered.put(number, Boolean.FALSE);
+        }
+
+        for (Map.Entry<Integer, Boolean> entry : ordered.entrySet()) {
+            int number = entry.getKey();
+            if (entry.getValue()) {
+                JournalArchive archive = archives.get(number);
+                if (!loadArchiveIndex(number, archive)) {
+                    long lastSequence = scanArchive(number, archive);
+                    try {
+                        writeArchiveIndex(number, encodeArchiveIndex(number, archive.getRecordCount(), lastSequence));
+                    } catch (IOException e) {
+                        System.err.println("Error writing journal archive index: " + e.getMessage());
+                    }
+                }
+                continue;
+            }
+            FileChannel channel = segments.get(number);
+            int usedSlots = scanSegment(number, channel);
+            if (number != segments.lastKey()) {
+                sealedSlots.put(number, usedSlots);
+            }
+            activeSegment = number;
+            activeCapacity = (int) (channel.size() / RECORD_SIZE);
+            nextSlot = usedSlots;
+        }
+    }
+
+    /**
+     * Adds every record in an archive to the index.
+     *
+     * @param segmentNumber The number of the segment the archive replaced
+     * @param archive The archive
+     * @return The sequence number of the archive's last record, or 0 if it is empty
+     * @throws IOException If a block cannot be read
+     */
+    private long scanArchive(int segmentNumber, JournalArchive archive) throws IOException {
+        int slot = 0;
+        long lastSequence = 0;
+        for (int block = 0; block < archive.getBlockCount(); block++) {
+            ByteBuffer buffer = ByteBuffer.wrap(archive.readBlock(block));
+            for (int start = 0; start < buffer.capacity(); start += RECORD_SIZE) {
+                if (!isValidRecord(buffer, start)) {
+                    throw new IOException("Journal archive for segment " + segmentNumber + " holds a damaged record");
+                }
+                indexRecord(buffer, start, segmentNumber, slot++);
+                lastSequence = buffer.getLong(start + 8);
+            }
+        }
+        return lastSequence;
+    }
+
+    /**
+     * Encodes the index file for a sealed segment from the in-memory index.
+     * For each account it lists the runs of consecutive slots the account
+     * holds, split at archive block boundaries, with the block of each run.
+     *
+     * File layout:
+     *   header    magic, version, record count, last sequence, newest timestamp, account count
+     *   accounts  per account: index key, run count, then per run: block, first slot, record count
+     *
+     * @param segmentNumber The segment number
+     * @param recordCount The number of records in the segment
+     * @param lastSequence The sequence number of the segment's last record
+     * @return The encoded index
+     * @throws IOException If the index cannot be encoded
+     */
+    private byte[] encodeArchiveIndex(int segmentNumber, int recordCount, long lastSequence) throws IOException {
+        long firstAddress = address(segmentNumber, 0);
+        long endAddress = address(segmentNumber + 1, 0);
+        ByteArrayOutputStream accounts = new ByteArrayOutputStream();
+        DataOutputStream accountsOut = new DataOutputStream(accounts);
+        int accountCount = 0;
+        int[] runs = new int[3 * 16];
+
+        for (Map.Entry<String, AddressList> entry : index.entrySet()) {
+            AddressList addresses = entry.getValue();
+            int from = addresses.firstAtOrAfter(firstAddress);
+            int to = addresses.firstAtOrAfter(endAddress);
+            int runCount = 0;
+            int i = from;
+            while (i < to) {
+                int firstSlot = (int) addresses.values[i];
+                int block = firstSlot / JournalArchive.BLOCK_RECORDS;
+                int count = 1;
+                while (i + count < to && (int) addresses.values[i + count] == firstSlot + count
+                        && (firstSlot + count) / JournalArchive.BLOCK_RECORDS == block) {
+                    count++;
+                }
+                if (3 * runCount + 3 > runs.length) {
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                }
+                runs[3 * runCount] = block;
+                runs[3 * runCount + 1] = firstSlot;
+                runs[3 * runCount + 2] = count;
+                runCount++;
+                i += count;
+            }
+            if (runCount == 0) {
+                continue;
+            }
+
+            accountsOut.writeUTF(entry.getKey());
+            accountsOut.writeInt(runCount);
+            for (int run = 0; run < 3 * runCount; run++) {
+                accountsOut.writeInt(runs[run]);
+            }
+            accountCount++;
+        }
+        accountsOut.flush();
+
+        Long newest = newestTimestamps.get(segmentNumber);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + accounts.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ARCHIVE_INDEX_MAGIC);
+        out.writeInt(ARCHIVE_INDEX_VERSION);
+        out.writeInt(recordCount);
+        out.writeLong(lastSequence);
+        out.writeLong(newest == null ? Long.MIN_VALUE : newest);
+        out.writeInt(accountCount);
+        accounts.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an archive's index file under a temporary name and moves it into place.
+     *
+     * @param segmentNumber The number of the segment the archive replaces
+     * @param encoded The encoded index
+     * @throws IOException If the file cannot be written
+     */
+    private void writeArchiveIndex(int segmentNumber, byte[] encoded) throws IOException {
+        Path indexPath = archivePath(segmentNumber, ARCHIVE_INDEX_SUFFIX);
+        Path tempPath = archivePath(segmentNumber, ARCHIVE_INDEX_SUFFIX + ".tmp");
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds an archive's records to the index from its index file, without
+     * decompressing the archive. Nothing is added unless the whole file is
+     * readable and agrees with the archive's block index.
+     *
+     * @param segmentNumber The number of the segment the archive replaced
+     * @param archive The archive
+     * @return true if the index file was loaded, false if it is missing or unusable
+     */
+    private boolean loadArchiveIndex(int segmentNumber, JournalArchive archive) {
+        Path indexPath = archivePath(segmentNumber, ARCHIVE_INDEX_SUFFIX);
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<int[]> accountRuns = new ArrayList<>();
+        int recordCount;
+        long lastSequence;
+        long newest;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(indexPath)))) {
+            if (in.readInt() != ARCHIVE_INDEX_MAGIC || in.readInt() != ARCHIVE_INDEX_VERSION) {
+                throw new IOException("unknown format");
+            }
+            recordCount = in.readInt();
+            lastSequence = in.readLong();
+            newest = in.readLong();
+            int accountCount = in.readInt();
+            int total = 0;
+            for (int account = 0; account < accountCount; account++) {
+                keys.add(in.readUTF());
+                int runCount = in.readInt();
+                if (runCount <= 0 || runCount > recordCount) {
+                    throw new IOException("bad run count");
+                }
+                int[] runs = new int[3 * runCount];
+                for (int run = 0; run < runs.length; run += 3) {
+                    int block = in.readInt();
+                    int firstSlot = in.readInt();
+                    int count = in.readInt();
+                    if (block < 0 || block >= archive.getBlockCount() || count <= 0 || firstSlot < 0
+                            || firstSlot / JournalArchive.BLOCK_RECORDS != block
+                            || (firstSlot + count - 1) / JournalArchive.BLOCK_RECORDS != block) {
+                        throw new IOException("bad run");
+                    }
+                    runs[run] = block;
+                    runs[run + 1] = firstSlot;
+                    runs[run + 2] = count;
+                    total += count;
+                }
+                accountRuns.add(runs);
+            }
+            if (total != recordCount || recordCount != archive.getRecordCount()) {
+                throw new IOException("record count does not match the archive");
+            }
+        } catch (IOException e) {
+            System.err.println("Rebuilding journal archive index " + indexPath.getFileName() + ": " + e.getMessage());
+            return false;
+        }
+
+        for (int account = 0; account < keys.size(); account++) {
+            AddressList addresses = index.computeIfAbsent(keys.get(account), key -> new AddressList());
+            int[] runs = accountRuns.get(account);
+            for (int run = 0; run < runs.length; run += 3) {
+                for (int slot = runs[run + 1]; slot < runs[run + 1] + runs[run + 2]; slot++) {
+                    addresses.add(address(segmentNumber, slot));
+                }
+            }
+        }
+        nextSequence = Math.max(nextSequence, lastSequence + 1);
+        if (recordCount > 0) {
+            noteTimestamp(segmentNumber, newest);
+        }
+        return true;
+    }
+
+    /**
+     * Scans a segment, adding every valid record to the index.
+     * Scanning stops at the first empty or torn slot.
+     *
+     * @param segmentNumber The segment number
+     * @param channel The segment's channel
+     * @return The number of slots in use
+     * @throws IOException If the segment cannot be read
+     */
+    private int scanSegment(int segmentNumber, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BATCH_RECORDS * RECORD_SIZE);
+        int slot = 0;
+        long position = 0;
+
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < RECORD_SIZE) {
+                return slot;
+            }
+            buffer.flip();
+
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int start = buffer.position();
+                if (!isValidRecord(buffer, start)) {
+                    return slot;
+                }
+
+                indexRecord(buffer, start, segmentNumber, slot);
+                buffer.position(start + RECORD_SIZE);
+                slot++;
+            }
+            position += read - read % RECORD_SIZE;
+        }
+    }
+
+    /**
+     * Adds the valid record starting at an offset to the index.
+     */
+    private void indexRecord(ByteBuffer buffer, int start, int segmentNumber, int slot) {
+        long sequence = buffer.getLong(start + 8);
+        String username = readString(buffer, start + HEADER_SIZE, buffer.get(start + 24) & 0xFF);
+        String accountName = readString(buffer, start + HEADER_SIZE + (buffer.get(start + 24) & 0xFF),
+                                        buffer.get(start + 25) & 0xFF);
+        addressesFor(username, accountName).add(address(segmentNumber, slot));
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        noteTimestamp(segmentNumber, buffer.getLong(start + 16));
+    }
+
+    private void noteTimestamp(int segmentNumber, long timestamp) {
+        newestTimestamps.merge(segmentNumber, timestamp, Math::max);
+    }
+
+    /**
+     * Checks the magic number and checksum of the record starting at an offset.
+     *
+     * @param buffer The buffer holding the record
+     * @param start The offset of the record
+     * @return true if the slot holds a complete record
+     */
+    private static boolean isValidRecord(ByteBuffer buffer, int start) {
+        if (buffer.getInt(start) != RECORD_MAGIC) {
+            return false;
+        }
+        CRC32 checksum = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.limit(start + RECORD_SIZE).position(start + CHECKSUM_OFFSET);
+        checksum.update(body);
+        return (int) checksum.getValue() == buffer.getInt(start + 4);
+    }
+
+    /**
+     * Creates and preallocates a new segment file and makes it the active one.
+     *
+     * @param segmentNumber The number of the new segment
+     * @throws IOException If the segment cannot be created
+     */
+    private void startSegment(int segmentNumber) throws IOException {
+        Path path = segmentPath(segmentNumber);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentBytes); // reserve the whole segment up front
+        }
+        segments.put(segmentNumber, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        activeSegment = segmentNumber;
+        activeCapacity = (int) (segmentBytes / RECORD_SIZE);
+        nextSlot = 0;
+    }
+
+    private Path segmentPath(int segmentNumber) {
+        return journalDirectory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+    }
+
+    private Path archivePath(int segmentNumber, String suffix) {
+        return journalDirectory.resolve(String.format("%s%08d%s", ARCHIVE_PREFIX, segmentNumber, suffix));
+    }
+
+    /**
+     * Appends a transaction to the journal.
+     * Text that does not fit in a record is rejected.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param timestamp The transaction time in epoch milliseconds
+     * @param text The transaction description
+     * @return The sequence number assigned to the record
+     * @throws IOException If the record cannot be written
+     */
+    public synchronized long append(String username, String accountName, long timestamp, String text) throws IOException {
+        ensureOpen();
+        rollIfFull();
+
+        long sequence = nextSequence;
+        writeBuffer.clear();
+        encode(writeBuffer, sequence, timestamp, username, accountName, text);
+        writeBuffer.flip();
+        writeFully(writeBuffer, (long) nextSlot * RECORD_SIZE);
+
+        addressesFor(username, accountName).add(address(activeSegment, nextSlot));
+        noteTimestamp(activeSegment, timestamp);
+        nextSlot++;
+        nextSequence++;
+        return sequence;
+    }
+
+    /**
+     * Appends a batch of pending records, writing each run of records that
+     * fits in the active segment with a single write call.
+     * Assigns each record its sequence number.
+     *
+     * @param batch The records to append, in order
+     * @throws IOException If the records cannot be written
+     */
+    synchronized void appendBatch(List<GroupCommitWriter.PendingRecord> batch) throws IOException {
+        ensureOpen();
+        int done = 0;
+        while (done < batch.size()) {
+            rollIfFull();
+            int count = Math.min(batch.size() - done, activeCapacity - nextSlot);
+            ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+
+            for (int i = 0; i < count; i++) {
+                GroupCommitWriter.PendingRecord record = batch.get(done + i);
+                encode(buffer, nextSequence + i, record.timestamp, record.username, record.accountName, record.text);
+            }
+            buffer.flip();
+            writeFully(buffer, (long) nextSlot * RECORD_SIZE);
+
+            for (int i = 0; i < count; i++) {
+                GroupCommitWriter.PendingRecord record = batch.get(done + i);
+                record.sequence = nextSequence++;
+                addressesFor(record.username, record.accountName).add(address(activeSegment, nextSlot++));
+                noteTimestamp(activeSegment, record.timestamp);
+            }
+            done += count;
+        }
+    }
+
+    /**
+     * Starts a new segment if the active one has no free slots.
+     */
+    private void rollIfFull() throws IOException {
+        if (nextSlot >= activeCapacity) {
+            segments.get(activeSegment).force(false);
+            sealedSlots.put(activeSegment, nextSlot);
+            startSegment(activeSegment + 1);
+            scheduleArchiving();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        FileChannel channel = segments.get(activeSegment);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Checks that a record's names and text fit in a single record.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param text The transaction description
+     * @throws IOException If the names or text are too long for a record
+     */
+    static void checkRecord(String username, String accountName, String text) throws IOException {
+        byte[] userBytes = username.getBytes(StandardCharsets.UTF_8);
+        byte[] accountBytes = accountName.getBytes(StandardCharsets.UTF_8);
+        checkNames(userBytes, accountBytes);
+        checkText(text.getBytes(StandardCharsets.UTF_8), userBytes, accountBytes);
+    }
+
+    private static void checkNames(byte[] userBytes, byte[] accountBytes) throws IOException {
+        if (userBytes.length > 255 || accountBytes.length > 255
+                || userBytes.length + accountBytes.length > PAYLOAD_SIZE) {
+            throw new IOException("Username or account name too long for journal record");
+        }
+    }
+
+    private static void checkText(byte[] textBytes, byte[] userBytes, byte[] accountBytes) throws IOException {
+        if (textBytes.length > PAYLOAD_SIZE - userBytes.length - accountBytes.length) {
+            throw new IOException("Transaction text too long for journal record");
+        }
+    }
+
+    /**
+     * Cuts text to the longest prefix that fits in a record with the given names,
+     * without splitting a multi-byte character.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param text The transaction description
+     * @return The text, or a prefix of it if the whole text does not fit
+     */
+    static String fitText(String username, String accountName, String text) {
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        int limit = Math.max(0, PAYLOAD_SIZE - username.getBytes(StandardCharsets.UTF_8).length
+                                            - accountName.getBytes(StandardCharsets.UTF_8).length);
+        if (textBytes.length <= limit) {
+            return text;
+        }
+        int length = limit;
+        while (length > 0 && (textBytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return new String(textBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes a record at the buffer's current position and advances past it.
+     */
+    private static void encode(ByteBuffer buffer, long sequence, long timestamp,
+                               String username, String accountName, String text) throws IOException {
+        byte[] userBytes = username.getBytes(StandardCharsets.UTF_8);
+        byte[] accountBytes = accountName.getBytes(StandardCharsets.UTF_8);
+        checkNames(userBytes, accountBytes);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        checkText(textBytes, userBytes, accountBytes);
+        int textLength = textBytes.length;
+
+        int start = buffer.position();
+        buffer.putInt(RECORD_MAGIC)
+              .putInt(0) // checksum, filled in below
+              .putLong(sequence)
+              .putLong(timestamp)
+              .put((byte) userBytes.length)
+              .put((byte) accountBytes.length)
+              .putShort((short) textLength)
+              .put(userBytes)
+              .put(accountBytes)
+              .put(textBytes, 0, textLength);
+        Arrays.fill(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.arrayOffset() + start + RECORD_SIZE, (byte) 0);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), buffer.arrayOffset() + start + CHECKSUM_OFFSET, RECORD_SIZE - CHECKSUM_OFFSET);
+        buffer.putInt(start + 4, (int) checksum.getValue());
+        buffer.position(start + RECORD_SIZE);
+    }
+
+    /**
+     * Forces all appended records to disk.
+     *
+     * @throws IOException If the force fails
+     */
+    public synchronized void force() throws IOException {
+        ensureOpen();
+        segments.get(activeSegment).force(false);
+    }
+
+    /**
+     * Gets the number of records stored for an account.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @return The number of records
+     */
+    public synchronized int size(String username, String accountName) {
+        AddressList addresses = index.get(indexKey(username, accountName));
+        return addresses == null ? 0 : addresses.size;
+    }
+
+    /**
+     * Reads a range of an account's records, oldest first.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param fromIndex The first record to read (inclusive)
+     * @param toIndex The last record to read (exclusive)
+     * @return The records in the range
+     * @throws IOException If a record cannot be read
+     */
+    public synchronized List<Entry> read(String username, String accountName, int fromIndex, int toIndex) throws IOException {
+        ensureOpen();
+        AddressList addresses = index.get(indexKey(username, accountName));
+        if (addresses == null) {
+            return new ArrayList<>();
+        }
+        return readRange(addresses, Math.max(0, fromIndex), Math.min(toIndex, addresses.size));
+    }
+
+    /**
+     * Reads an account's most recent records, oldest first.
+     * Works backwards from the newest record, so the cost depends only on
+     * the number of records requested and not on the length of the history.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param count The maximum number of records to read
+     * @return Up to count of the newest records
+     * @throws IOException If a record cannot be read
+     */
+    public synchronized List<Entry> readLast(String username, String accountName, int count) throws IOException {
+        ensureOpen();
+        AddressList addresses = index.get(indexKey(username, accountName));
+        if (addresses == null || count <= 0) {
+            return new ArrayList<>();
+        }
+        return readRange(addresses, Math.max(0, addresses.size - count), addresses.size);
+    }
+
+    /**
+     * Reads an account's records with timestamps in a range, oldest first.
+     * Archive blocks whose time span lies outside the range are skipped
+     * without being decompressed.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @param fromMillis The start of the range in epoch milliseconds (inclusive)
+     * @param toMillis The end of the range in epoch milliseconds (exclusive)
+     * @return The records in the range
+     * @throws IOException If a record cannot be read
+     */
+    public synchronized List<Entry> readBetween(String username, String accountName, long fromMillis, long toMillis) throws IOException {
+        ensureOpen();
+        List<Entry> entries = new ArrayList<>();
+        AddressList addresses = index.get(indexKey(username, accountName));
+        if (addresses == null || fromMillis >= toMillis) {
+            return entries;
+        }
+
+        AddressList candidates = new AddressList();
+        for (int i = 0; i < addresses.size; i++) {
+            long address = addresses.values[i];
+            JournalArchive archive = archives.get((int) (address >>> 32));
+            if (archive == null || archive.mayContain((int) address, fromMillis, toMillis)) {
+                candidates.add(address);
+            }
+        }
+
+        for (Entry entry : readRange(candidates, 0, candidates.size)) {
+            if (entry.getTimestamp() >= fromMillis && entry.getTimestamp() < toMillis) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the records at index positions [from, to), walking backwards from the end.
+     * Records that sit next to each other in a segment are fetched with one read.
+     */
+    private List<Entry> readRange(AddressList addresses, int from, int to) throws IOException {
+        Entry[] entries = new Entry[Math.max(0, to - from)];
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BLOCK_RECORDS * RECORD_SIZE);
+
+        int last = to - 1;
+        while (last >= from) {
+            int first = last;
+            while (first > from && last - first + 1 < READ_BLOCK_RECORDS
+                    && addresses.values[first - 1] == addresses.values[first] - 1
+                    && (addresses.values[first - 1] >>> 32) == (addresses.values[last] >>> 32)) {
+                first--;
+            }
+
+            readBlock(buffer, addresses.values[first], last - first + 1);
+            for (int i = first; i <= last; i++) {
+                entries[i - from] = decodeEntry(buffer, (i - first) * RECORD_SIZE);
+            }
+            last = first - 1;
+        }
+        return new ArrayList<>(Arrays.asList(entries));
+    }
+
+    /**
+     * Reads a run of consecutive records starting at an address into the buffer.
+     */
+    private void readBlock(ByteBuffer buffer, long address, int records) throws IOException {
+        JournalArchive archive = archives.get((int) (address >>> 32));
+        if (archive != null) {
+            archive.readRecords((int) address, records, buffer);
+            return;
+        }
+
+        FileChannel channel = segments.get((int) (address >>> 32));
+        long position = (address & 0xFFFFFFFFL) * RECORD_SIZE;
+
+        buffer.clear().limit(records * RECORD_SIZE);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal segment");
+            }
+        }
+    }
+
+    /**
+     * Decodes the record starting at an offset in the buffer.
+     */
+    private static Entry decodeEntry(ByteBuffer buffer, int start) {
+        int userLength = buffer.get(start + 24) & 0xFF;
+        int accountLength = buffer.get(start + 25) & 0xFF;
+        int textLength = buffer.getShort(start + 26) & 0xFFFF;
+        String text = readString(buffer, start + HEADER_SIZE + userLength + accountLength, textLength);
+        return new Entry(buffer.getLong(start + 8), buffer.getLong(start + 16), text);
+    }
+
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts archiving cold segments in the background, if archiving is enabled.
+     */
+    private void scheduleArchiving() {
+        if (archiveAfterMillis < 0) {
+            return;
+        }
+        ARCHIVER.execute(() -> {
+            try {
+                archiveColdSegments(System.currentTimeMillis() - archiveAfterMillis);
+            } catch (IOException e) {
+                System.err.println("Error archiving transaction journal: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Compresses every sealed segment whose newest record is older than a
+     * cutoff into an archive, then deletes the segment.
+     * The segment is compressed without holding the journal's lock, so
+     * appends and reads continue meanwhile.
+     *
+     * @param cutoffMillis Segments with only older records are archived
+     * @return The number of segments archived
+     * @throws IOException If an archive cannot be written
+     */
+    public int archiveColdSegments(long cutoffMillis) throws IOException {
+        synchronized (archiveLock) {
+            List<Integer> candidates = new ArrayList<>();
+            synchronized (this) {
+                ensureOpen();
+                for (Integer segmentNumber : new TreeMap<>(sealedSlots).keySet()) {
+                    Long newest = newestTimestamps.get(segmentNumber);
+                    if (newest == null || newest < cutoffMillis) {
+                        candidates.add(segmentNumber);
+                    }
+                }
+            }
+
+            int archived = 0;
+            for (int segmentNumber : candidates) {
+                FileChannel channel;
+                int usedSlots;
+                byte[] archiveIndex;
+                synchronized (this) {
+                    if (closed) {
+                        break;
+                    }
+                    channel = segments.get(segmentNumber);
+                    usedSlots = sealedSlots.get(segmentNumber);
+                    archiveIndex = encodeArchiveIndex(segmentNumber, usedSlots, lastSequence(channel, usedSlots));
+                }
+
+                // Sealed segments never change, so they can be read without the lock.
+                // The index file goes first so a complete archive always has one.
+                writeArchiveIndex(segmentNumber, archiveIndex);
+                Path archivePath = archivePath(segmentNumber, ARCHIVE_SUFFIX);
+                JournalArchive.write(archivePath, channel, usedSlots);
+                JournalArchive archive = new JournalArchive(archivePath);
+
+                synchronized (this) {
+                    if (closed) {
+                        archive.close();
+                        break;
+                    }
+                    archives.put(segmentNumber, archive);
+                    sealedSlots.remove(segmentNumber);
+                    segments.remove(segmentNumber).close();
+                }
+                Files.deleteIfExists(segmentPath(segmentNumber));
+                archived++;
+            }
+            return archived;
+        }
+    }
+
+    /**
+     * Marks an account's legacy history file as checked.
+     *
+     * @param username The account owner's username
+     * @param accountName The account name
+     * @return true the first time this is called for the account, false afterwards
+     */
+    synchronized boolean claimLegacyCheck(String username, String accountName) {
+        return legacyChecked.add(indexKey(username, accountName));
+    }
+
+    /**
+     * Gets the group-commit writer for this journal, starting it on first use.
+     *
+     * @return The journal's writer
+     * @throws IOException If the journal is closed
+     */
+    public synchronized GroupCommitWriter writer() throws IOException {
+        ensureOpen();
+        if (writer == null) {
+            writer = new GroupCommitWriter(this);
+        }
+        return writer;
+    }
+
+    /**
+     * Commits any queued records and closes all segment files.
+     * Further use of this journal will fail; {@link #forDirectory} opens a new one.
+     */
+    public void close() {
+        GroupCommitWriter activeWriter;
+        synchronized (this) {
+            activeWriter = writer;
+            writer = null;
+        }
+        // Stopped outside the lock so the flusher can finish its last batch
+        if (activeWriter != null) {
+            activeWriter.stop();
+        }
+
+        synchronized (this) {
+            for (FileChannel channel : segments.values()) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing journal segment: " + e.getMessage());
+                }
+            }
+            segments.clear();
+            for (JournalArchive archive : archives.values()) {
+                archive.close();
+            }
+            archives.clear();
+            closed = true;
+        }
+        synchronized (TransactionJournal.class) {
+            OPEN_JOURNALS.remove(journalDirectory.getParent(), this);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Transaction journal is closed");
+        }
+    }
+
+    private AddressList addressesFor(String username, String accountName) {
+        return index.computeIfAbsent(indexKey(username, accountName), key -> new AddressList());
+    }
+
+    /**
+     * Reads the sequence number of a segment's last record.
+     *
+     * @return The sequence number, or 0 if the segment is empty
+     */
+    private static long lastSequence(FileChannel channel, int usedSlots) throws IOException {
+        if (usedSlots == 0) {
+            return 0;
+        }
+        ByteBuffer sequence = ByteBuffer.allocate(8);
+        long position = (long) (usedSlots - 1) * RECORD_SIZE + 8;
+        while (sequence.hasRemaining()) {
+            if (channel.read(sequence, position + sequence.position()) < 0) {
+                throw new IOException("Unexpected end of journal segment");
+            }
+        }
+        return sequence.getLong(0);
+    }
+
+    private static String indexKey(String username, String accountName) {
+        return username + '\u0000' + accountName;
+    }
+
+    private static long address(int segmentNumber, int slot) {
+        return ((long) segmentNumber << 32) | slot;
+    }
+
+    /**
+     * Growable list of record addresses for one account.
+     */
+    private static class AddressList {
+        private long[] values = new long[8];
+        private int size;
+
+        void add(long address) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = address;
+        }
+
+        /**
+         * Finds the position of the first address at or after a given one.
+         * Addresses are added in increasing order.
+         */
+        int firstAtOrAfter(long address) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[middle] < address) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package bankapp;
+
+/**
+ * The outcome of a change to an account's balance, for callers that report
+ * failures themselves instead of having them printed.
+ */
+public enum TransactionStatus {
+    OK("Done."),
+    INVALID_AMOUNT("Amount must be positive."),
+    FROZEN("Account is frozen."),
+    TARGET_FROZEN("Target account is frozen."),
+    SAME_ACCOUNT("Cannot transfer to the same account."),
+    OVER_WITHDRAWAL_LIMIT("Withdrawal exceeds the per-transaction limit."),
+    OVER_TRANSFER_LIMIT("Transfer exceeds the account's transfer limit."),
+    INSUFFICIENT_FUNDS("Insufficient funds."),
+    BALANCE_OUT_OF_RANGE("The balance would be larger than an account can hold.");
+
+    private final String description;
+
+    TransactionStatus(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Gets a short description that needs no account details.
+     *
+     * @return The description
+     */
+    public String getDescription() {
+        return description;
+    }
+}
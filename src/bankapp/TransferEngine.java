@@ -0,0 +1,217 @@
+package bankapp;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves money between two accounts as one unit.
+ *
+ * A transfer holds a lock on both accounts while it checks the limits,
+ * takes the money from the source, pays it into the target and queues the
+ * history records for both. No other transfer touching either account can
+ * run in between, and if the deposit fails, for example because the target
+ * was frozen meanwhile, the money goes back to the source before the locks
+ * are released. Plain deposits and withdrawals do not take these locks; they
+ * stay atomic through the account's own compare-and-set.
+ *
+ * Locks are striped: an account's ID picks one of a fixed set of locks, so
+ * memory does not grow with the number of accounts, and transfers between
+ * unrelated accounts almost always take different locks and run in
+ * parallel. Both locks are always taken in stripe order, the same global
+ * order for every thread, so two transfers in opposite directions cannot
+ * deadlock.
+ */
+public class TransferEngine {
+    private static final TransferEngine SHARED =
+            new TransferEngine(Integer.getInteger("bankapp.transfers.lockStripes", 1024));
+
+    private final ReentrantLock[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Creates an engine.
+     *
+     * @param stripeCount The number of locks, rounded up to a power of two
+     */
+    public TransferEngine(int stripeCount) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.stripeMask = size - 1;
+    }
+
+    /**
+     * Gets the engine shared by every session, sized by the
+     * bankapp.transfers.lockStripes system property.
+     *
+     * @return The shared engine
+     */
+    public static TransferEngine shared() {
+        return SHARED;
+    }
+
+    /**
+     * Transfers money without recording history.
+     *
+     * @param source The account to take the money from
+     * @param target The account to pay it into
+     * @param amountCents The amount in cents
+     * @return true if the transfer was made
+     */
+    public boolean transfer(BankAccount source, BankAccount target, long amountCents) {
+        return transfer(source, target, amountCents, null, null);
+    }
+
+    /**
+     * Transfers money and records it in both accounts' history, printing
+     * why if it cannot be made.
+     *
+     * @param source The account to take the money from
+     * @param target The account to pay it into
+     * @param amountCents The amount in cents
+     * @param storage Where to record history, or null to record none
+     * @param username The accounts' owner, for the history records
+     * @return true if the transfer was made
+     */
+    public boolean transfer(BankAccount source, BankAccount target, long amountCents,
+                            AccountStorage storage, String username) {
+        TransactionStatus status = tryTransfer(source, target, amountCents, storage, username);
+        if (status != TransactionStatus.OK) {
+            System.out.println(describeFailure(status, source));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Transfers money and records it in both accounts' history without
+     * printing anything. The history records are queued while the accounts
+     * are locked, so they are in the same order as the balance changes, and
+     * this waits for them to be durable after the locks are released.
+     *
+     * @param source The account to take the money from
+     * @param target The account to pay it into
+     * @param amountCents The amount in cents
+     * @param storage Where to record history, or null to record none
+     * @param username The accounts' owner, for the history records
+     * @return OK, or why the transfer was refused
+     */
+    public TransactionStatus tryTransfer(BankAccount source, BankAccount target, long amountCents,
+                                         AccountStorage storage, String username) {
+        if (source == target) {
+            return TransactionStatus.SAME_ACCOUNT;
+        }
+        if (amountCents <= 0) {
+            return TransactionStatus.INVALID_AMOUNT;
+        }
+
+        CompletableFuture<Long> withdrawal = null;
+        CompletableFuture<Long> deposit = null;
+        int first = stripe(source);
+        int second = stripe(target);
+        if (first > second) {
+            int swap = first;
+            first = second;
+            second = swap;
+        }
+        stripes[first].lock();
+        if (second != first) {
+            stripes[second].lock();
+        }
+        try {
+            TransactionStatus status = checkTransfer(source, target, amountCents);
+            if (status == TransactionStatus.OK) {
+                status = source.tryWithdrawCents(amountCents);
+            }
+            if (status != TransactionStatus.OK) {
+                return status;
+            }
+            TransactionStatus deposited = target.tryDepositCents(amountCents);
+            if (deposited != TransactionStatus.OK) {
+                if (source.refundCents(amountCents) != TransactionStatus.OK) {
+                    System.err.println("Could not refund $" + Money.format(amountCents) + " to "
+                            + source.getAccountName() + ": the balance would be out of range.");
+                }
+                return deposited == TransactionStatus.FROZEN ? TransactionStatus.TARGET_FROZEN : deposited;
+            }
+
+            if (storage != null) {
+                String amount = Money.format(amountCents);
+                try {
+                    withdrawal = storage.recordTransactionAsync(username, source.getAccountName(),
+                            "Transfer to " + target.getAccountName() + ": $" + amount);
+                    deposit = storage.recordTransactionAsync(username, target.getAccountName(),
+                            "Transfer from " + source.getAccountName() + ": $" + amount);
+                } catch (IOException e) {
+                    System.err.println("Error recording transfer transactions: " + e.getMessage());
+                }
+            }
+        } finally {
+            if (second != first) {
+                stripes[second].unlock();
+            }
+            stripes[first].unlock();
+        }
+
+        // Wait for the disk outside the locks so other transfers are not held up
+        try {
+            if (withdrawal != null) {
+                AccountStorage.awaitDurable(withdrawal);
+            }
+            if (deposit != null) {
+                AccountStorage.awaitDurable(deposit);
+            }
+        } catch (IOException e) {
+            System.err.println("Error recording transfer transactions: " + e.getMessage());
+        }
+        return TransactionStatus.OK;
+    }
+
+    /**
+     * Explains why a transfer was refused, using the source account's limits.
+     *
+     * @param status The status returned by tryTransfer
+     * @param source The account the money was to come from
+     * @return A message for the account holder
+     */
+    public static String describeFailure(TransactionStatus status, BankAccount source) {
+        switch (status) {
+            case SAME_ACCOUNT:
+                return "Cannot transfer to the same account.";
+            case INVALID_AMOUNT:
+                return "Transfer amount must be positive.";
+            case TARGET_FROZEN:
+                return "Target account is frozen. Cannot transfer funds to it.";
+            case BALANCE_OUT_OF_RANGE:
+                return "Target account cannot hold a balance that large.";
+            case OVER_TRANSFER_LIMIT:
+                return "Transfer exceeds the limit of $" + Money.format(source.getTransferLimitCents()) + " for this account.";
+            default:
+                return source.describeWithdrawalFailure(status);
+        }
+    }
+
+    /**
+     * Checks the conditions the accounts themselves do not.
+     */
+    private static TransactionStatus checkTransfer(BankAccount source, BankAccount target, long amountCents) {
+        if (target.isFrozen()) {
+            return TransactionStatus.TARGET_FROZEN;
+        }
+        if (amountCents > source.getTransferLimitCents()) {
+            return TransactionStatus.OVER_TRANSFER_LIMIT;
+        }
+        return TransactionStatus.OK;
+    }
+
+    private int stripe(BankAccount account) {
+        long hash = account.getAccountId() * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & stripeMask;
+    }
+}
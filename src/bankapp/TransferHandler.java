@@ -1,12 +1,12 @@
 package bankapp;
 
-import java.io.IOException;
 import java.util.Scanner;
 
 /**
  * Handles money transfers between accounts.
  */
 public class TransferHandler {
+	private static final BankService SERVICE = new BankService();
 
 	/**
 	 * Handles the transfer process from one account to another.
@@ -26,7 +26,7 @@ public class TransferHandler {
 		}
 
 		// Get transfer amount
-		double amount = getTransferAmount(scanner);
+		long amount = getTransferAmount(scanner);
 		if (amount <= 0) {
 			System.out.println("Transfer amount must be positive.");
 			return;
@@ -44,9 +44,9 @@ public class TransferHandler {
 	 */
 	private static void displayAvailableTargetAccounts(AccountManager accountManager, BankAccount sourceAccount) {
 	    System.out.println("\n===== AVAILABLE ACCOUNTS FOR TRANSFER =====");
-	    System.out.printf("From: %s (Current Balance: $%.2f)\n", 
-	                    sourceAccount.getAccountName(), sourceAccount.getBalance());
-	    System.out.printf("Transfer Limit: $%.2f\n", sourceAccount.getTransferLimit());
+	    System.out.printf("From: %s (Current Balance: $%s)\n", 
+	                    sourceAccount.getAccountName(), Money.format(sourceAccount.getBalanceCents()));
+	    System.out.printf("Transfer Limit: $%s\n", Money.format(sourceAccount.getTransferLimitCents()));
 	    
 	    // Display checking accounts
 	    displayAvailableCheckingAccounts(accountManager, sourceAccount);
@@ -69,9 +69,9 @@ public class TransferHandler {
 
 		for (CheckingAccount account : accountManager.getCheckingAccounts()) {
 			if (!account.getAccountName().equals(sourceAccount.getAccountName())) {
-				System.out.printf("- %s: $%.2f%s\n", 
+				System.out.printf("- %s: $%s%s\n", 
 						account.getAccountName(), 
-						account.getBalance(),
+						Money.format(account.getBalanceCents()),
 						account.isFrozen() ? " [FROZEN]" : "");
 				hasOtherAccounts = true;
 			}
@@ -94,9 +94,9 @@ public class TransferHandler {
 
 		for (SavingsAccount account : accountManager.getSavingsAccounts()) {
 			if (!account.getAccountName().equals(sourceAccount.getAccountName())) {
-				System.out.printf("- %s: $%.2f%s\n", 
+				System.out.printf("- %s: $%s%s\n", 
 						account.getAccountName(), 
-						account.getBalance(),
+						Money.format(account.getBalanceCents()),
 						account.isFrozen() ? " [FROZEN]" : "");
 				hasOtherAccounts = true;
 			}
@@ -145,13 +145,13 @@ public class TransferHandler {
 	 * Gets the transfer amount from the user.
 	 * 
 	 * @param scanner The scanner for user input
-	 * @return The transfer amount, or 0 if invalid
+	 * @return The transfer amount in cents, or 0 if invalid
 	 */
-	private static double getTransferAmount(Scanner scanner) {
+	private static long getTransferAmount(Scanner scanner) {
 		System.out.print("Enter amount to transfer: $");
 
 		try {
-			return Double.parseDouble(scanner.nextLine());
+			return Money.parse(scanner.nextLine().trim());
 		} catch (NumberFormatException e) {
 			System.out.println("Invalid amount. Please enter a number.");
 			return 0;
@@ -164,66 +164,23 @@ public class TransferHandler {
 	 * @param accountManager The account manager
 	 * @param sourceAccount The source account
 	 * @param targetAccount The target account
-	 * @param amount The transfer amount
+	 * @param amount The transfer amount in cents
 	 */
 	private static void executeTransfer(AccountManager accountManager, 
 			BankAccount sourceAccount, 
 			BankAccount targetAccount, 
-			double amount) {
-		// First check the transfer limit
-		if (amount > sourceAccount.getTransferLimit()) {
-			System.out.printf("Transfer exceeds the limit of $%.2f for this account.\n", 
-					sourceAccount.getTransferLimit());
+			long amount) {
+		// Checks the limits, moves the money and records both legs as one unit
+		BankService.TransferResponse response = SERVICE.transfer(accountManager, sourceAccount, targetAccount, amount);
+		System.out.println(response.getMessage());
+		if (!response.isOk()) {
 			return;
 		}
 
-		// Check if source account has sufficient funds
-		if (!sourceAccount.withdraw(amount)) {
-			return; // Withdrawal failed (error message already displayed)
-		}
-
-		// Deposit to target account
-		targetAccount.deposit(amount);
-
-		// Record the transactions
-		recordTransferTransactions(accountManager, sourceAccount, targetAccount, amount);
-
-		// Success message
-		System.out.printf("Successfully transferred $%.2f from %s to %s.\n", 
-				amount, sourceAccount.getAccountName(), targetAccount.getAccountName());
-
 		// Show new balances
-		System.out.printf("New balance in %s: $%.2f\n", 
-				sourceAccount.getAccountName(), sourceAccount.getBalance());
-		System.out.printf("New balance in %s: $%.2f\n", 
-				targetAccount.getAccountName(), targetAccount.getBalance());
-	}
-
-	/**
-	 * Records transfer transactions in the account history.
-	 * 
-	 * @param accountManager The account manager
-	 * @param sourceAccount The source account
-	 * @param targetAccount The target account
-	 * @param amount The transfer amount
-	 */
-	private static void recordTransferTransactions(AccountManager accountManager, 
-			BankAccount sourceAccount, 
-			BankAccount targetAccount, 
-			double amount) {
-		AccountStorage accountStorage = new AccountStorage();
-		String username = accountManager.getUsername();
-
-		try {
-			// Record the withdrawal from source account
-			accountStorage.recordTransaction(username, sourceAccount.getAccountName(), 
-					String.format("Transfer to %s: $%.2f", targetAccount.getAccountName(), amount));
-
-			// Record the deposit to target account
-			accountStorage.recordTransaction(username, targetAccount.getAccountName(), 
-					String.format("Transfer from %s: $%.2f", sourceAccount.getAccountName(), amount));
-		} catch (IOException e) {
-			System.err.println("Error recording transfer transactions: " + e.getMessage());
-		}
+		System.out.printf("New balance in %s: $%s\n", 
+				response.getAccountName(), Money.format(response.getBalanceCents()));
+		System.out.printf("New balance in %s: $%s\n", 
+				response.getTargetAccountName(), Money.format(response.getTargetBalanceCents()));
 	}
-}
\ No newline at end of file
+}
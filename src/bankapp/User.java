@@ -1,26 +1,24 @@
 package bankapp;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
 
 /**
  * Class that represents a user in the system.
  */
 public class User {
     private String username;
-    private String passwordHash;
+    private volatile String passwordHash; // Replaced when a login upgrades it
     private UserProfile profile;
     private AccountManager accountManager;
 
     // Store the file in a data directory to make it more organized
     private static final String USER_FILE = "data/users.txt";
+    private static final String USER_KEY_PREFIX = "user/";
+    // Third field of a users file line that replaces an earlier line's password hash
+    static final String PASSWORD_UPDATE_MARKER = "rehash";
     private boolean isExistingUser;
+    private boolean isPasswordUpdate;
     
     // Add a static initializer to ensure the file and directory exist when the class is loaded
     static {
@@ -31,7 +29,7 @@ public class User {
      * Initializes the user file and ensures the directory exists.
      */
     public static void initializeUserFile() {
-        File file = new File(USER_FILE);
+        File file = new File(getUserFilePath());
         File directory = file.getParentFile();
         
         // Create the directory if it doesn't exist
@@ -61,21 +59,22 @@ public class User {
     
     /**
      * Creates a new user with the specified username and password.
-     * The password is stored as a hash, not in plain text.
+     * The password is stored as a salted hash, not in plain text.
      * 
      * @param usernameText The user's username
      * @param passwordText The user's password
+     * @throws java.util.concurrent.RejectedExecutionException If too many passwords are already being hashed
      */
     public User(String usernameText, String passwordText) {
         this.username = usernameText;
-        this.passwordHash = hashPassword(passwordText);
+        this.passwordHash = PasswordHashing.hash(passwordText);
         this.isExistingUser = false;
-        this.accountManager = new AccountManager(usernameText);
     }
 
     /**
      * Constructor for loading an existing user from stored data.
      * Uses a flag parameter to distinguish from the other constructor.
+     * Only the username and hash are kept; accounts and profile are loaded on first use.
      * 
      * @param usernameText The user's username
      * @param passwordHashText The user's already hashed password
@@ -85,15 +84,20 @@ public class User {
         this.username = usernameText;
         this.passwordHash = passwordHashText;
         this.isExistingUser = isExisting;
-        this.accountManager = new AccountManager(usernameText);
-        
-        // Load accounts for existing users
-        if (isExisting) {
-            this.accountManager.loadAccounts();
-        }
     }
     
-    public AccountManager getAccountManager() {
+    /**
+     * Gets the user's account manager, loading an existing user's accounts on first access.
+     * 
+     * @return The user's account manager
+     */
+    public synchronized AccountManager getAccountManager() {
+        if (accountManager == null) {
+            accountManager = new AccountManager(username);
+            if (isExistingUser) {
+                accountManager.loadAccounts();
+            }
+        }
         return accountManager;
     }
     
@@ -109,12 +113,53 @@ public class User {
     }
     
     /**
-     * Gets the path to the user file.
+     * Factory method for a stored line that replaces an existing user's password hash.
      * 
-     * @return The file path
+     * @param usernameText The username from stored data
+     * @param passwordHashText The new password hash
+     * @return A User instance marked as a password update
+     */
+    static User loadPasswordUpdate(String usernameText, String passwordHashText) {
+        User update = new User(usernameText, passwordHashText, true);
+        update.isPasswordUpdate = true;
+        return update;
+    }
+    
+    /**
+     * Checks whether this was read from a line replacing an earlier user's password hash.
+     * 
+     * @return true for a password update
+     */
+    boolean isPasswordUpdate() {
+        return isPasswordUpdate;
+    }
+    
+    /**
+     * Gets the path to the user file, set by the bankapp.users.file system property.
+     * 
+     * @return The file path, data/users.txt by default
      */
     public static String getUserFilePath() {
-        return USER_FILE;
+        return System.getProperty("bankapp.users.file", USER_FILE);
+    }
+    
+    /**
+     * Gets the key-value store key holding a user's password hash.
+     * 
+     * @param usernameText The username
+     * @return The store key
+     */
+    public static String getStoreKey(String usernameText) {
+        return USER_KEY_PREFIX + usernameText;
+    }
+    
+    /**
+     * Gets the prefix shared by every user's key-value store key.
+     * 
+     * @return The key prefix
+     */
+    public static String getStoreKeyPrefix() {
+        return USER_KEY_PREFIX;
     }
     
     /**
@@ -125,34 +170,35 @@ public class User {
     public String getUsername() {
         return username;
     }
-    
+
     /**
-     * Creates a hash of the provided password.
-     * 
-     * @param passwordText The password to hash
-     * @return The hashed password
+     * Gets the stored password hash.
+     *
+     * @return The password hash
      */
-    private String hashPassword(String passwordText) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] encodedhash = digest.digest(
-                    passwordText.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encodedhash);
-        } catch (NoSuchAlgorithmException e) {
-            // Fallback to simple hashing if SHA-256 isn't available
-            return String.valueOf(passwordText.hashCode());
-        }
+    String getPasswordHash() {
+        return passwordHash;
+    }
+
+    /**
+     * Replaces the stored password hash.
+     *
+     * @param passwordHashText The new password hash
+     */
+    void setPasswordHash(String passwordHashText) {
+        this.passwordHash = passwordHashText;
     }
     
     /**
-     * Validates if the provided password matches the stored password hash.
+     * Validates if the provided password matches the stored password hash,
+     * using whichever hasher produced it.
      * 
      * @param passwordText The password to validate
      * @return true if password matches, false otherwise
+     * @throws java.util.concurrent.RejectedExecutionException If too many passwords are already being checked
      */
     public boolean validatePassword(String passwordText) {
-        String hashedInput = hashPassword(passwordText);
-        return passwordHash.equals(hashedInput);
+        return PasswordHashing.verify(passwordText, passwordHash);
     }
     
     /**
@@ -160,7 +206,7 @@ public class User {
      * 
      * @return The user's profile
      */
-    public UserProfile getProfile() {
+    public synchronized UserProfile getProfile() {
         if (profile == null) {
             profile = UserProfile.loadProfile(username);
         }
@@ -169,6 +215,8 @@ public class User {
     
     /**
      * Saves the user to the data file.
+     * The username check and the write happen atomically, so two registrations
+     * of the same name cannot both succeed.
      * 
      * @return true if save was successful, false otherwise
      */
@@ -177,21 +225,11 @@ public class User {
             // Ensure file exists
             initializeUserFile();
             
-            File file = new File(USER_FILE);
-            
-            // Check if user already exists
-            UserManager userManager = UserManager.getInstance();
-            if (userManager.usernameExists(this.username)) {
+            if (!UserManager.getInstance().registerUser(this)) {
                 System.out.println("User already exists: " + this.username);
                 return false;
             }
-            
-            // Add new user
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
-                writer.write(username + "," + passwordHash);
-                writer.newLine();
-                System.out.println("User saved successfully: " + this.username);
-            }
+            System.out.println("User saved successfully: " + this.username);
             return true;
         } catch (IOException e) {
             System.err.println("Error saving user: " + e.getMessage());
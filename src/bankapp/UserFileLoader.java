@@ -0,0 +1,255 @@
+package bankapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel reader for the users file.
+ *
+ * The file is split into chunks that end on line boundaries. Each chunk is
+ * memory-mapped and parsed on the common fork-join pool, so loading a large
+ * users file is spread across every core rather than read line by line on
+ * one thread. Chunk results are returned in file order, so callers see users
+ * in the same order as a sequential read.
+ */
+public class UserFileLoader {
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    private static final long MAX_CHUNK_BYTES = 64L << 20;
+    private static final int CHUNKS_PER_WORKER = 4; // Spare chunks let idle workers steal from slow ones
+    private static final int BOUNDARY_SCAN_BYTES = 4096;
+
+    private UserFileLoader() {
+    }
+
+    /**
+     * Reads every valid user in a users file, sizing chunks by file size and core count.
+     *
+     * @param file The users file
+     * @return The users, in file order
+     * @throws IOException If the file cannot be read
+     */
+    public static List<User> load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return load(channel, 0, size, defaultChunkBytes(size));
+        }
+    }
+
+    /**
+     * Reads every valid user in a users file using chunks of about the given size.
+     *
+     * @param file The users file
+     * @param chunkBytes The target chunk size in bytes
+     * @return The users, in file order
+     * @throws IOException If the file cannot be read
+     */
+    public static List<User> load(Path file, long chunkBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return load(channel, 0, channel.size(), chunkBytes);
+        }
+    }
+
+    /**
+     * Reads the users in part of a users file, such as lines appended since an earlier load.
+     *
+     * @param file The users file
+     * @param start The offset of the first line to read
+     * @param end The offset just past the last line to read
+     * @return The users, in file order
+     * @throws IOException If the file cannot be read
+     */
+    public static List<User> load(Path file, long start, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return load(channel, start, end, defaultChunkBytes(end - start));
+        }
+    }
+
+    /**
+     * Finds where the last complete line in part of a file ends, so that a
+     * line still being appended by another process is left for a later read.
+     *
+     * @param file The users file
+     * @param start The offset to search from
+     * @param end The offset to search back from
+     * @return The offset just past the last newline, or start if there is none
+     * @throws IOException If the file cannot be read
+     */
+    public static long endOfCompleteLines(Path file, long start, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer scan = ByteBuffer.allocate(BOUNDARY_SCAN_BYTES);
+            long offset = end;
+            while (offset > start) {
+                int length = (int) Math.min(BOUNDARY_SCAN_BYTES, offset - start);
+                scan.clear().limit(length);
+                readFully(channel, scan, offset - length);
+                for (int i = length - 1; i >= 0; i--) {
+                    if (scan.get(i) == '\n') {
+                        return offset - length + i + 1;
+                    }
+                }
+                offset -= length;
+            }
+            return start;
+        }
+    }
+
+    private static long defaultChunkBytes(long size) {
+        long perWorker = size / ((long) ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_WORKER);
+        return Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, perWorker));
+    }
+
+    private static List<User> load(FileChannel channel, long start, long end, long chunkBytes) throws IOException {
+        long[] bounds = findChunkBounds(channel, start, end, Math.max(1, chunkBytes));
+        int chunkCount = bounds.length - 1;
+        List<List<User>> results = new ArrayList<>(Collections.nCopies(chunkCount, (List<User>) null));
+
+        ParseChunks task = new ParseChunks(channel, bounds, results, 0, chunkCount);
+        ForkJoinPool.commonPool().invoke(task);
+        if (task.failure != null) {
+            throw task.failure;
+        }
+
+        int total = 0;
+        for (List<User> chunk : results) {
+            total += chunk.size();
+        }
+        List<User> users = new ArrayList<>(total);
+        for (List<User> chunk : results) {
+            users.addAll(chunk);
+        }
+        return users;
+    }
+
+    /**
+     * Picks chunk boundaries so that every chunk starts at the beginning of a line.
+     *
+     * @return Offsets of each chunk's start, followed by the end offset
+     */
+    private static long[] findChunkBounds(FileChannel channel, long start, long end, long chunkBytes) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        ByteBuffer scan = ByteBuffer.allocate(BOUNDARY_SCAN_BYTES);
+        long next = start + chunkBytes;
+        while (next < end) {
+            long lineStart = nextLineStart(channel, scan, next, end);
+            if (lineStart >= end) {
+                break;
+            }
+            bounds.add(lineStart);
+            next = lineStart + chunkBytes;
+        }
+        bounds.add(end);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the start of the first line beginning at or after a position.
+     */
+    private static long nextLineStart(FileChannel channel, ByteBuffer scan, long position, long end) throws IOException {
+        long offset = position - 1; // A newline just before the position means a line starts there
+        while (offset < end) {
+            scan.clear().limit((int) Math.min(BOUNDARY_SCAN_BYTES, end - offset));
+            int read = channel.read(scan, offset);
+            if (read <= 0) {
+                return end;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return end;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of users file");
+            }
+        }
+    }
+
+    /**
+     * Parses one chunk of the file. A line with a third field of "rehash"
+     * replaces an earlier user's password hash and is returned as a password update.
+     *
+     * @return The chunk's valid users and password updates, in order
+     */
+    private static List<User> parseChunk(FileChannel channel, long start, long end) throws IOException {
+        List<User> users = new ArrayList<>();
+        if (end <= start) {
+            return users;
+        }
+
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        byte[] data = new byte[(int) (end - start)];
+        mapped.get(data);
+
+        LegacyCsvParser parser = new LegacyCsvParser(data);
+        while (parser.nextLine()) {
+            if (parser.fieldCount() == 2) {
+                users.add(User.loadExistingUser(parser.fieldString(0), parser.fieldString(1)));
+            } else if (parser.fieldCount() == 3 && User.PASSWORD_UPDATE_MARKER.equals(parser.fieldString(2))) {
+                users.add(User.loadPasswordUpdate(parser.fieldString(0), parser.fieldString(1)));
+            } else {
+                System.err.println("Invalid user format in file: " + parser.lineString());
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Splits a range of chunks in half until each task parses a single chunk.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private static class ParseChunks extends RecursiveAction {
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final List<List<User>> results;
+        private final int from;
+        private final int to;
+        private IOException failure;
+
+        ParseChunks(FileChannel channel, long[] bounds, List<List<User>> results, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    results.set(from, parseChunk(channel, bounds[from], bounds[from + 1]));
+                } catch (IOException e) {
+                    failure = e;
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            ParseChunks left = new ParseChunks(channel, bounds, results, from, middle);
+            ParseChunks right = new ParseChunks(channel, bounds, results, middle, to);
+            invokeAll(left, right);
+            failure = left.failure != null ? left.failure : right.failure;
+        }
+    }
+}
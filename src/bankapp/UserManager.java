@@ -1,26 +1,149 @@
 package bankapp;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
 
 /**
  * Manages user accounts for the banking application.
  * Handles user authentication, creation and lookup.
+ * 
+ * Users are indexed by a hash map for constant-time lookup, with a sorted
+ * {@link UsernamePrefixIndex} for finding usernames by prefix that is built
+ * the first time it is needed. Setting the
+ * bankapp.users.caseInsensitive system property to true makes lookups
+ * ignore the case of usernames.
+ * 
+ * Users are stored in bankapp.users.shards files (default 1), chosen by
+ * username hash; with one shard the file is the users file
+ * (bankapp.users.file, default data/users.txt), otherwise users-N.txt beside
+ * it. Each shard has its own lock, so registration is atomic per shard, and
+ * startup reads the shards in parallel. The shard count must
+ * stay the same for a data directory once users are registered in shards.
+ * 
+ * The manager remembers how much of each shard it has read, so a refresh
+ * only parses lines other processes have appended since. Setting
+ * bankapp.users.watch to true refreshes automatically whenever a shard changes.
+ * 
+ * A Bloom filter per shard answers most availability checks for free
+ * names without touching the index. Its false positive rate is set by
+ * bankapp.users.bloomFalsePositiveRate (default 0.01), and it is saved next to
+ * the shard so startup only has to add users appended since it was saved.
+ * 
+ * Passwords are checked by {@link PasswordHashing}. When a login succeeds
+ * against a hash weaker than the current hasher produces, the password is
+ * hashed again and the new hash appended as a password update line, so
+ * users move to the current hash as they log in.
+ * 
+ * Login attempts are throttled per username and per source before any
+ * password is hashed, by {@link LoginThrottler}s allowing
+ * bankapp.login.userAttempts (default 10) and bankapp.login.sourceAttempts
+ * (default 100) attempts per bankapp.login.windowMs (default 60000)
+ * milliseconds, with room for bankapp.login.throttleKeys keys (default 65536) each.
+ * 
+ * {@link #startSession} logs in once and returns a token that
+ * {@link #getSession} resolves without hashing the password again. Sessions
+ * last bankapp.sessions.idleMs without use (default 15 minutes), at most
+ * bankapp.sessions.absoluteMs after login (default 8 hours), and at most
+ * bankapp.sessions.max are kept (default 100000).
  */
 public class UserManager {
+    private static final int FILTER_STAMP_BYTES = 4096;
+    
     private static UserManager instance;
-    private List<User> users;
+    private Map<String, User> users;
+    private UsernamePrefixIndex prefixIndex; // null until the first prefix search
+    private final boolean caseInsensitive;
+    private final UserShard[] shards;
+    private WatchService watcher;
+    private final double filterFalsePositiveRate;
+    private final LoginThrottler userThrottler;
+    private final LoginThrottler sourceThrottler;
+    private final SessionStore sessions;
     
     /**
      * Private constructor for singleton pattern.
      */
     private UserManager() {
-        users = new ArrayList<>();
+        users = new HashMap<>();
+        caseInsensitive = Boolean.getBoolean("bankapp.users.caseInsensitive");
+        filterFalsePositiveRate = Double.parseDouble(System.getProperty("bankapp.users.bloomFalsePositiveRate", "0.01"));
+        shards = createShards(Math.max(1, Integer.getInteger("bankapp.users.shards", 1)));
+        long throttleWindow = Long.getLong("bankapp.login.windowMs", 60_000);
+        int throttleKeys = Integer.getInteger("bankapp.login.throttleKeys", 1 << 16);
+        userThrottler = new LoginThrottler(Integer.getInteger("bankapp.login.userAttempts", 10), throttleWindow, throttleKeys);
+        sourceThrottler = new LoginThrottler(Integer.getInteger("bankapp.login.sourceAttempts", 100), throttleWindow, throttleKeys);
+        sessions = new SessionStore(Long.getLong("bankapp.sessions.idleMs", 15 * 60_000),
+                Long.getLong("bankapp.sessions.absoluteMs", 8 * 60 * 60_000), Integer.getInteger("bankapp.sessions.max", 100_000));
         loadUsers();
+        importUnshardedUsers();
+        if (Boolean.getBoolean("bankapp.users.watch")) {
+            startWatching();
+        }
+    }
+    
+    /**
+     * Creates the shards, with their files next to the users file.
+     * 
+     * @param count The number of shards
+     * @return The shards
+     */
+    private static UserShard[] createShards(int count) {
+        Path userFile = new File(User.getUserFilePath()).toPath();
+        UserShard[] shards = new UserShard[count];
+        if (count == 1) {
+            shards[0] = new UserShard(userFile, userFile.resolveSibling("users.bloom"));
+            return shards;
+        }
+        
+        for (int i = 0; i < count; i++) {
+            shards[i] = new UserShard(userFile.resolveSibling("users-" + i + ".txt"),
+                    userFile.resolveSibling("users-" + i + ".bloom"));
+            try {
+                // Every shard exists from the start, so its first registration does not look like a replaced file
+                if (!Files.exists(shards[i].getFile())) {
+                    Files.createFile(shards[i].getFile());
+                }
+            } catch (IOException e) {
+                System.err.println("Error creating users shard: " + e.getMessage());
+            }
+        }
+        return shards;
+    }
+    
+    /**
+     * Gets the shard a username belongs to.
+     * 
+     * @param key The username's index key
+     * @return The shard
+     */
+    private UserShard shardFor(String key) {
+        return shards[Math.floorMod(key.hashCode(), shards.length)];
     }
     
     /**
@@ -36,47 +159,292 @@ public class UserManager {
     }
     
     /**
-     * Loads users from the data file.
+     * Loads users from the data files, reading every shard in parallel.
      */
-    private void loadUsers() {
-        File file = new File(User.getUserFilePath());
+    private synchronized void loadUsers() {
+        KeyValueStore store = KeyValueStore.configuredStore();
+        if (store != null) {
+            loadUsersFromStore(store);
+            return;
+        }
         
-        if (!file.exists()) {
+        boolean anyFile = false;
+        for (UserShard shard : shards) {
+            anyFile |= Files.exists(shard.getFile());
+        }
+        if (!anyFile) {
             System.out.println("No existing users file found. Starting with empty user list.");
             return;
         }
         
-        users.clear();
+        clearUsers();
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                User user = parseUserFromLine(line);
-                if (user != null) {
-                    users.add(user);
+        try {
+            List<Callable<List<User>>> reads = new ArrayList<>();
+            for (UserShard shard : shards) {
+                reads.add(shard::readAll);
+            }
+            List<List<User>> loaded = new ArrayList<>();
+            int total = 0;
+            for (Future<List<User>> read : ForkJoinPool.commonPool().invokeAll(reads)) {
+                List<User> shardUsers = read.get();
+                loaded.add(shardUsers);
+                total += shardUsers.size();
+            }
+            
+            users = new HashMap<>(total * 4 / 3 + 1);
+            for (List<User> shardUsers : loaded) {
+                for (User user : shardUsers) {
+                    addUser(user);
+                }
+            }
+            for (int i = 0; i < shards.length; i++) {
+                restoreUsernameFilter(shards[i], loaded.get(i));
+            }
+        } catch (ExecutionException e) {
+            System.err.println("Error loading users: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while loading users");
+        }
+    }
+    
+    /**
+     * Reuses a shard's saved username filter if it was built from an unchanged
+     * start of the shard file, adding the users appended since it was saved.
+     * Otherwise rebuilds it from the shard's users. Saves it again if it changed.
+     * 
+     * @param shard The shard, just read in full
+     * @param shardUsers Every user read from the shard
+     */
+    private void restoreUsernameFilter(UserShard shard, List<User> shardUsers) {
+        long end = shard.getLoadedOffset();
+        if (end < 0) {
+            shard.filter = buildUsernameFilter(shardUsers.size(), usernameKeys(shardUsers));
+            return;
+        }
+        
+        UsernameBloomFilter filter = null;
+        try {
+            filter = UsernameBloomFilter.load(shard.getFilterFile());
+            if (filter != null && isFilterCurrent(filter, shard, end)) {
+                for (User user : UserFileLoader.load(shard.getFile(), filter.getSourceOffset(), end)) {
+                    filter.add(indexKey(user.getUsername()));
                 }
+            } else {
+                filter = null;
             }
         } catch (IOException e) {
-            System.err.println("Error loading users: " + e.getMessage());
+            System.err.println("Error loading username filter, rebuilding it: " + e.getMessage());
+            filter = null;
+        }
+        
+        UsernameBloomFilter restored = filter;
+        if (restored == null || shard.userCount > restored.getCapacity()) {
+            restored = buildUsernameFilter(shard.userCount, usernameKeys(shardUsers));
+        }
+        shard.filter = restored;
+        
+        if (restored.getSourceOffset() != end || filter != restored) {
+            try {
+                restored.save(shard.getFilterFile(), end, filterStamp(shard, end));
+            } catch (IOException e) {
+                System.err.println("Error saving username filter: " + e.getMessage());
+            }
         }
     }
     
     /**
-     * Parses a user from a line in the users file.
+     * Checks whether a saved filter was built from the same start of a shard
+     * file and with the same settings as this manager uses.
+     */
+    private boolean isFilterCurrent(UsernameBloomFilter filter, UserShard shard, long end) throws IOException {
+        return filter.getSourceOffset() <= end
+                && filter.getFalsePositiveRate() == filterFalsePositiveRate
+                && filter.getSourceStamp() == filterStamp(shard, filter.getSourceOffset());
+    }
+    
+    /**
+     * Fingerprints the start of a shard file that a filter covers: the file's
+     * identity, the case mode and a checksum of the last lines the filter read.
      * 
-     * @param line The line to parse
-     * @return The user object or null if the line is invalid
+     * @param shard The shard
+     * @param offset How far into the shard file the filter covers
+     * @return The fingerprint
+     * @throws IOException If the file cannot be read
      */
-    private User parseUserFromLine(String line) {
-        String[] parts = line.split(",");
-        if (parts.length != 2) {
-            System.err.println("Invalid user format in file: " + line);
-            return null;
+    private long filterStamp(UserShard shard, long offset) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(String.valueOf(shard.getLoadedFileKey()).getBytes(StandardCharsets.UTF_8));
+        crc.update(caseInsensitive ? 1 : 0);
+        try (FileChannel channel = FileChannel.open(shard.getFile(), StandardOpenOption.READ)) {
+            long start = Math.max(0, offset - FILTER_STAMP_BYTES);
+            ByteBuffer tail = ByteBuffer.allocate((int) (offset - start));
+            while (tail.hasRemaining()) {
+                if (channel.read(tail, start + tail.position()) < 0) {
+                    throw new IOException("Users file is shorter than the username filter");
+                }
+            }
+            tail.flip();
+            crc.update(tail);
+        }
+        return (offset << 32) ^ crc.getValue();
+    }
+    
+    /**
+     * Builds a username filter sized with room for the user count to double.
+     * 
+     * @param count The number of usernames
+     * @param keys The usernames' index keys
+     * @return The filter
+     */
+    private UsernameBloomFilter buildUsernameFilter(long count, Iterable<String> keys) {
+        UsernameBloomFilter filter = new UsernameBloomFilter(count * 2, filterFalsePositiveRate);
+        for (String key : keys) {
+            filter.add(key);
+        }
+        return filter;
+    }
+    
+    /**
+     * Rebuilds a shard's username filter from the index.
+     * 
+     * @param shard The shard
+     */
+    private void rebuildUsernameFilter(UserShard shard) {
+        List<String> keys = new ArrayList<>(shard.userCount);
+        for (String key : users.keySet()) {
+            if (shardFor(key) == shard) {
+                keys.add(key);
+            }
+        }
+        shard.filter = buildUsernameFilter(keys.size(), keys);
+    }
+    
+    private List<String> usernameKeys(List<User> shardUsers) {
+        List<String> keys = new ArrayList<>(shardUsers.size());
+        for (User user : shardUsers) {
+            keys.add(indexKey(user.getUsername()));
+        }
+        return keys;
+    }
+    
+    /**
+     * Reads users appended to every shard since it was last read.
+     * Falls back to a full load if a shard was replaced or truncated.
+     * Does nothing when users are kept in the key-value store.
+     */
+    private synchronized void loadAppendedUsers() {
+        for (UserShard shard : shards) {
+            if (!loadAppendedUsers(shard)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Reads users appended to one shard since it was last read.
+     * Falls back to a full load if the shard was replaced or truncated.
+     * 
+     * @param shard The shard
+     * @return false if a full load was needed instead
+     */
+    private synchronized boolean loadAppendedUsers(UserShard shard) {
+        if (KeyValueStore.configuredStore() != null) {
+            return true;
         }
+        List<User> appended = shard.readAppended();
+        if (appended == null) {
+            loadUsers();
+            return false;
+        }
+        for (User user : appended) {
+            addUser(user);
+        }
+        return true;
+    }
+    
+    /**
+     * Loads users from the key-value store, importing the users file the first time.
+     * 
+     * @param store The key-value store
+     */
+    private void loadUsersFromStore(KeyValueStore store) {
+        clearUsers();
+        
+        try {
+            List<String> keys = store.keysWithPrefix(User.getStoreKeyPrefix());
+            if (keys.isEmpty()) {
+                importUsersFile(store);
+                keys = store.keysWithPrefix(User.getStoreKeyPrefix());
+            }
             
-        String username = parts[0];
-        String passwordHash = parts[1];
-        return User.loadExistingUser(username, passwordHash);
+            for (String key : keys) {
+                String username = key.substring(User.getStoreKeyPrefix().length());
+                String passwordHash = store.getString(key);
+                if (passwordHash != null) {
+                    addUser(User.loadExistingUser(username, passwordHash));
+                }
+            }
+            for (UserShard shard : shards) {
+                rebuildUsernameFilter(shard);
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading users: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Copies every user in the users files into the key-value store with one write.
+     * 
+     * @param store The key-value store
+     * @throws IOException If a file cannot be read or the store written
+     */
+    private void importUsersFile(KeyValueStore store) throws IOException {
+        Map<String, byte[]> imported = new LinkedHashMap<>();
+        for (UserShard shard : shards) {
+            if (!Files.exists(shard.getFile())) {
+                continue;
+            }
+            for (User user : UserFileLoader.load(shard.getFile())) {
+                byte[] passwordHash = user.getPasswordHash().getBytes(StandardCharsets.UTF_8);
+                if (user.isPasswordUpdate()) {
+                    imported.computeIfPresent(User.getStoreKey(user.getUsername()), (key, previous) -> passwordHash);
+                } else {
+                    imported.putIfAbsent(User.getStoreKey(user.getUsername()), passwordHash);
+                }
+            }
+        }
+        store.putAll(imported);
+    }
+    
+    /**
+     * Moves users from the users file into their shards when more than one
+     * shard is configured, then empties the old file. Users already in a shard
+     * are skipped, so an interrupted import can simply run again.
+     */
+    private void importUnshardedUsers() {
+        if (shards.length == 1 || KeyValueStore.configuredStore() != null) {
+            return;
+        }
+        Path legacyFile = new File(User.getUserFilePath()).toPath();
+        try {
+            if (!Files.exists(legacyFile) || Files.size(legacyFile) == 0) {
+                return;
+            }
+            for (User user : UserFileLoader.load(legacyFile)) {
+                if (user.isPasswordUpdate()) {
+                    updatePasswordHash(user.getUsername(), user.getPasswordHash());
+                } else {
+                    registerUser(user);
+                }
+            }
+            try (FileChannel channel = FileChannel.open(legacyFile, StandardOpenOption.WRITE)) {
+                channel.truncate(0);
+            }
+        } catch (IOException e) {
+            System.err.println("Error moving users into shards: " + e.getMessage());
+        }
     }
     
     /**
@@ -86,6 +454,14 @@ public class UserManager {
      * @return true if the username exists, false otherwise
      */
     public boolean usernameExists(String username) {
+        if (username != null) {
+            // The filter only ever gains bits until it is replaced, and publishes them safely, so it can be read without the lock
+            String key = indexKey(username);
+            UsernameBloomFilter filter = shardFor(key).filter;
+            if (filter != null && !filter.mightContain(key)) {
+                return false; // Definitely free
+            }
+        }
         return findUserByUsername(username) != null;
     }
     
@@ -95,34 +471,230 @@ public class UserManager {
      * @param username The username to search for
      * @return The user with the specified username, or null if not found
      */
-    private User findUserByUsername(String username) {
-        for (User user : users) {
-            if (user.getUsername().equals(username)) {
-                return user;
+    private synchronized User findUserByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        return users.get(indexKey(username));
+    }
+    
+    /**
+     * Finds registered usernames that start with a prefix, in sorted order.
+     * When lookups are case-insensitive the prefix matches in any case.
+     * 
+     * @param prefix The username prefix
+     * @param limit The maximum number of usernames to return
+     * @return The matching usernames
+     */
+    public synchronized List<String> findByPrefix(String prefix, int limit) {
+        if (prefixIndex == null) {
+            prefixIndex = UsernamePrefixIndex.build(users.keySet());
+        }
+        List<String> keys = prefixIndex.findByPrefix(indexKey(prefix), limit);
+        List<String> usernames = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            usernames.add(users.get(key).getUsername());
+        }
+        return usernames;
+    }
+    
+    /**
+     * Adds a user to the indexes and the username filter. The first entry for
+     * a username is kept; a password update replaces the kept entry's hash.
+     * 
+     * @param user The user to add
+     */
+    private void addUser(User user) {
+        String key = indexKey(user.getUsername());
+        if (user.isPasswordUpdate()) {
+            User existing = users.get(key);
+            if (existing != null) {
+                existing.setPasswordHash(user.getPasswordHash());
+            }
+            return;
+        }
+        if (users.putIfAbsent(key, user) != null) {
+            return;
+        }
+        if (prefixIndex != null) {
+            prefixIndex.add(key);
+        }
+        UserShard shard = shardFor(key);
+        shard.userCount++;
+        UsernameBloomFilter filter = shard.filter;
+        if (filter != null) {
+            if (shard.userCount > filter.getCapacity()) {
+                rebuildUsernameFilter(shard);
+            } else {
+                filter.add(key);
             }
         }
-        return null;
+    }
+    
+    private void clearUsers() {
+        users = new HashMap<>();
+        prefixIndex = null;
+        for (UserShard shard : shards) {
+            shard.filter = null;
+            shard.userCount = 0;
+        }
     }
     
     /**
-     * Authenticates a user with their username and password.
+     * Gets the index key for a username.
+     * 
+     * @param username The username
+     * @return The username, lower-cased when lookups are case-insensitive
+     */
+    private String indexKey(String username) {
+        return caseInsensitive ? username.toLowerCase(Locale.ROOT) : username;
+    }
+    
+    /**
+     * Authenticates a user with their username and password, upgrading the
+     * stored password hash if it is weaker than the current hasher's.
      * 
      * @param username The username
      * @param password The password
      * @return The authenticated user, or null if authentication failed
      */
     public User login(String username, String password) {
+        return login(username, password, null);
+    }
+    
+    /**
+     * Authenticates a user, turning the attempt away without checking the
+     * password if the username or the source has made too many recent attempts.
+     * 
+     * @param username The username
+     * @param password The password
+     * @param source Where the attempt came from, such as a client address, or null if unknown
+     * @return The authenticated user, or null if authentication failed or was throttled
+     */
+    public User login(String username, String password, String source) {
+        return authenticate(username, password, source).getUser();
+    }
+    
+    /**
+     * Authenticates a user and reports why a failed attempt failed.
+     * Never prints; callers decide what to tell the user.
+     * 
+     * @param username The username
+     * @param password The password
+     * @param source Where the attempt came from, such as a client address, or null if unknown
+     * @return The outcome, holding the user when the login succeeded
+     */
+    public LoginResult authenticate(String username, String password, String source) {
+        if (username == null) {
+            return LoginResult.BAD_CREDENTIALS_RESULT;
+        }
+        if ((source != null && !sourceThrottler.tryAcquire(source)) || !userThrottler.tryAcquire(indexKey(username))) {
+            return LoginResult.THROTTLED_RESULT;
+        }
+        
         User user = findUserByUsername(username);
         
         if (user == null) {
-            return null; // User not found
+            return LoginResult.BAD_CREDENTIALS_RESULT; // User not found
         }
         
-        if (!user.validatePassword(password)) {
-            return null; // Invalid password
+        try {
+            if (!user.validatePassword(password)) {
+                return LoginResult.BAD_CREDENTIALS_RESULT; // Invalid password
+            }
+            if (PasswordHashing.needsRehash(user.getPasswordHash())) {
+                String upgraded = PasswordHashing.hash(password);
+                updatePasswordHash(username, upgraded);
+                user.setPasswordHash(upgraded);
+            }
+        } catch (RejectedExecutionException e) {
+            return LoginResult.BUSY_RESULT;
+        } catch (IOException e) {
+            // The old hash still works, so the login succeeds and the upgrade is retried next time
+            System.err.println("Error upgrading password hash: " + e.getMessage());
+        }
+        
+        return new LoginResult(LoginStatus.OK, user); // Authentication successful
+    }
+    
+    /**
+     * Logs a user in and starts a session for them.
+     * 
+     * @param username The username
+     * @param password The password
+     * @param source Where the attempt came from, or null if unknown
+     * @return The session token, or null if authentication failed or was throttled
+     */
+    public String startSession(String username, String password, String source) {
+        return startSession(authenticate(username, password, source));
+    }
+    
+    /**
+     * Starts a session for a successful login.
+     * 
+     * @param login The result of {@link #authenticate}
+     * @return The session token, or null if the login did not succeed
+     */
+    public String startSession(LoginResult login) {
+        return login.getStatus() == LoginStatus.OK ? sessions.create(login.getUser()) : null;
+    }
+    
+    /**
+     * Finds a session started by {@link #startSession}, without checking the password again.
+     * 
+     * @param token The session token
+     * @return The session, or null if the token is unknown or the session has expired
+     */
+    public SessionStore.Session getSession(String token) {
+        return sessions.get(token);
+    }
+    
+    /**
+     * Ends a session.
+     * 
+     * @param token The session token
+     * @return true if the session existed
+     */
+    public boolean endSession(String token) {
+        return sessions.invalidate(token);
+    }
+    
+    /**
+     * Replaces a registered user's password hash, in memory and in storage.
+     * 
+     * @param username The username
+     * @param passwordHash The new password hash
+     * @throws IOException If the new hash cannot be written
+     */
+    private void updatePasswordHash(String username, String passwordHash) throws IOException {
+        String key = indexKey(username);
+        KeyValueStore store = KeyValueStore.configuredStore();
+        if (store != null) {
+            synchronized (this) {
+                User user = users.get(key);
+                if (user != null) {
+                    store.putString(User.getStoreKey(user.getUsername()), passwordHash);
+                    user.setPasswordHash(passwordHash);
+                }
+            }
+            return;
         }
         
-        return user; // Authentication successful
+        UserShard shard = shardFor(key);
+        shard.lock();
+        try {
+            // The user may have been reloaded as a new object since it was looked up
+            loadAppendedUsers(shard);
+            synchronized (this) {
+                User user = users.get(key);
+                if (user != null) {
+                    shard.appendPasswordUpdate(user.getUsername(), passwordHash);
+                    user.setPasswordHash(passwordHash);
+                }
+            }
+        } finally {
+            shard.unlock();
+        }
     }
     
     /**
@@ -138,13 +710,46 @@ public class UserManager {
             return null;
         }
         
-        User newUser = createNewUser(username, password);
-        if (newUser == null) {
-            return null;
+        return createNewUser(username, password);
+    }
+    
+    /**
+     * Registers a user if the username is free, atomically within the username's shard.
+     * 
+     * @param user The user to register
+     * @return false if the username is already taken
+     * @throws IOException If the user cannot be written
+     */
+    boolean registerUser(User user) throws IOException {
+        String username = user.getUsername();
+        KeyValueStore store = KeyValueStore.configuredStore();
+        if (store != null) {
+            synchronized (this) {
+                if (findUserByUsername(username) != null) {
+                    return false;
+                }
+                store.putString(User.getStoreKey(username), user.getPasswordHash());
+                addUser(user);
+                return true;
+            }
         }
         
-        users.add(newUser);
-        return newUser;
+        UserShard shard = shardFor(indexKey(username));
+        shard.lock();
+        try {
+            // Pick up registrations from other processes before checking the name
+            loadAppendedUsers(shard);
+            if (usernameExists(username)) {
+                return false;
+            }
+            synchronized (this) {
+                shard.append(username, user.getPasswordHash());
+                addUser(user);
+            }
+            return true;
+        } finally {
+            shard.unlock();
+        }
     }
     
     /**
@@ -155,7 +760,13 @@ public class UserManager {
      * @return The new user or null if saving failed
      */
     private User createNewUser(String username, String password) {
-        User newUser = new User(username, password);
+        User newUser;
+        try {
+            newUser = new User(username, password);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Too many registrations in progress. Please try again shortly.");
+            return null;
+        }
         
         if (!newUser.saveUser()) {
             System.out.println("Failed to save user to file.");
@@ -166,10 +777,107 @@ public class UserManager {
     }
     
     /**
-     * Refreshes the user list from the data file.
+     * Refreshes the user list from the data file, reading only lines appended
+     * since the last refresh.
      */
     public void refreshUsers() {
-        loadUsers();
+        if (KeyValueStore.configuredStore() != null) {
+            loadUsers();
+        } else {
+            loadAppendedUsers();
+        }
+    }
+    
+    /**
+     * Starts a background thread that refreshes the user list whenever a
+     * users file changes. Does nothing if already watching or if users are
+     * kept in the key-value store.
+     */
+    public synchronized void startWatching() {
+        if (watcher != null || KeyValueStore.configuredStore() != null) {
+            return;
+        }
+        
+        Set<Path> fileNames = new HashSet<>();
+        for (UserShard shard : shards) {
+            fileNames.add(shard.getFile().getFileName());
+        }
+        Path directory = new File(User.getUserFilePath()).getAbsoluteFile().toPath().getParent();
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watcher = service;
+            
+            Thread thread = new Thread(() -> watchUserFiles(service, fileNames), "user-file-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException e) {
+            System.err.println("Error watching users file: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Stops refreshing the user list when the users files change.
+     */
+    public synchronized void stopWatching() {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            System.err.println("Error closing users file watcher: " + e.getMessage());
+        }
+        watcher = null;
+    }
+    
+    /**
+     * Waits for changes to the users files and refreshes after each batch of them.
+     * 
+     * @param service The watch service registered on the files' directory
+     * @param fileNames The users files' names
+     */
+    private void watchUserFiles(WatchService service, Set<Path> fileNames) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileNames.contains(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    refreshUsers();
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopWatching was called
+        }
+    }
+    
+    /**
+     * Gets the throttler counting login attempts per username, for monitoring.
+     * 
+     * @return The username throttler
+     */
+    public LoginThrottler getUserThrottler() {
+        return userThrottler;
+    }
+    
+    /**
+     * Gets the throttler counting login attempts per source, for monitoring.
+     * 
+     * @return The source throttler
+     */
+    public LoginThrottler getSourceThrottler() {
+        return sourceThrottler;
     }
     
     /**
@@ -177,7 +885,48 @@ public class UserManager {
      * 
      * @return The number of users
      */
-    public int getUserCount() {
+    public synchronized int getUserCount() {
         return users.size();
     }
-}
\ No newline at end of file
+    
+    /**
+     * Why a login attempt succeeded or failed.
+     */
+    public enum LoginStatus {
+        OK,
+        /** The username is unknown or the password is wrong. */
+        BAD_CREDENTIALS,
+        /** The username or source has made too many recent attempts. */
+        THROTTLED,
+        /** Too many password checks are already running. */
+        BUSY
+    }
+    
+    /**
+     * The outcome of a login attempt.
+     */
+    public static final class LoginResult {
+        private static final LoginResult BAD_CREDENTIALS_RESULT = new LoginResult(LoginStatus.BAD_CREDENTIALS, null);
+        private static final LoginResult THROTTLED_RESULT = new LoginResult(LoginStatus.THROTTLED, null);
+        private static final LoginResult BUSY_RESULT = new LoginResult(LoginStatus.BUSY, null);
+        
+        private final LoginStatus status;
+        private final User user;
+        
+        private LoginResult(LoginStatus status, User user) {
+            this.status = status;
+            this.user = user;
+        }
+        
+        public LoginStatus getStatus() {
+            return status;
+        }
+        
+        /**
+         * @return The authenticated user, or null if the login failed
+         */
+        public User getUser() {
+            return user;
+        }
+    }
+}
@@ -45,7 +45,9 @@ public class UserProfile {
         this.email = "";
         this.address = "";
         
-        createProfileDirectory();
+        if (KeyValueStore.configuredStore() == null) {
+            createProfileDirectory();
+        }
     }
     
     /**
@@ -65,13 +67,21 @@ public class UserProfile {
      * @return true if the save was successful, false otherwise
      */
     public boolean saveProfile() {
-        createProfileDirectory();
-        
-        Path profilePath = getProfilePath();
-        
         try {
             Map<String, String> profileData = convertToMap();
-            saveMapToFile(profilePath, profileData);
+            
+            KeyValueStore store = KeyValueStore.configuredStore();
+            if (store != null) {
+                StringWriter profileText = new StringWriter();
+                try (BufferedWriter writer = new BufferedWriter(profileText)) {
+                    writeMap(writer, profileData);
+                }
+                store.putString(getStoreKey(username), profileText.toString());
+                return true;
+            }
+            
+            createProfileDirectory();
+            saveMapToFile(getProfilePath(), profileData);
             return true;
         } catch (IOException exception) {
             System.err.println("Error saving profile for " + username + ": " + exception.getMessage());
@@ -104,26 +114,37 @@ public class UserProfile {
      */
     private void saveMapToFile(Path profilePath, Map<String, String> profileData) throws IOException {
         try (BufferedWriter writer = Files.newBufferedWriter(profilePath)) {
-            for (Map.Entry<String, String> entry : profileData.entrySet()) {
-                String key = entry.getKey();
-                String value = entry.getValue();
-                
-                // Special handling for multiline values
-                if (value != null && value.contains("\n")) {
-                    // Start with the key and an opening marker
-                    writer.write(key + "=<<MULTILINE>>");
-                    writer.newLine();
-                    // Write the content
-                    writer.write(value);
-                    writer.newLine();
-                    // End with a closing marker
-                    writer.write("<<END>>");
-                    writer.newLine();
-                } else {
-                    // Normal single-line entry
-                    writer.write(key + "=" + (value != null ? value : ""));
-                    writer.newLine();
-                }
+            writeMap(writer, profileData);
+        }
+    }
+    
+    /**
+     * Writes profile data as key=value lines, marking multiline values.
+     * 
+     * @param writer The writer to use
+     * @param profileData The map of profile data to write
+     * @throws IOException If there's an error writing the data
+     */
+    private static void writeMap(BufferedWriter writer, Map<String, String> profileData) throws IOException {
+        for (Map.Entry<String, String> entry : profileData.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            
+            // Special handling for multiline values
+            if (value != null && value.contains("\n")) {
+                // Start with the key and an opening marker
+                writer.write(key + "=<<MULTILINE>>");
+                writer.newLine();
+                // Write the content
+                writer.write(value);
+                writer.newLine();
+                // End with a closing marker
+                writer.write("<<END>>");
+                writer.newLine();
+            } else {
+                // Normal single-line entry
+                writer.write(key + "=" + (value != null ? value : ""));
+                writer.newLine();
             }
         }
     }
@@ -138,12 +159,19 @@ public class UserProfile {
         UserProfile profile = new UserProfile(username);
         Path profilePath = profile.getProfilePath();
         
-        if (!Files.exists(profilePath)) {
-            return profile;
-        }
-        
         try {
-            Map<String, String> profileData = loadMapFromFile(profilePath);
+            // A profile file left from file storage is read until the profile is next saved
+            KeyValueStore store = KeyValueStore.configuredStore();
+            String storedProfile = store != null ? store.getString(getStoreKey(username)) : null;
+            
+            Map<String, String> profileData;
+            if (storedProfile != null) {
+                profileData = readMap(new BufferedReader(new StringReader(storedProfile)));
+            } else if (Files.exists(profilePath)) {
+                profileData = loadMapFromFile(profilePath);
+            } else {
+                return profile;
+            }
             populateFromMap(profile, profileData);
             return profile;
         } catch (IOException exception) {
@@ -160,9 +188,20 @@ public class UserProfile {
      * @throws IOException If there's an error reading from the file
      */
     private static Map<String, String> loadMapFromFile(Path profilePath) throws IOException {
+        return readMap(Files.newBufferedReader(profilePath));
+    }
+    
+    /**
+     * Reads profile data written by {@link #writeMap}.
+     * 
+     * @param profileReader The reader over the profile data, closed when done
+     * @return A map of profile data
+     * @throws IOException If there's an error reading the data
+     */
+    private static Map<String, String> readMap(BufferedReader profileReader) throws IOException {
         Map<String, String> profileData = new HashMap<>();
         
-        try (BufferedReader reader = Files.newBufferedReader(profilePath)) {
+        try (BufferedReader reader = profileReader) {
             String line;
             String currentKey = null;
             StringBuilder multilineValue = null;
@@ -236,6 +275,16 @@ public class UserProfile {
         return Paths.get(PROFILE_DIRECTORY, username + ".txt");
     }
     
+    /**
+     * Gets the key-value store key holding a user's profile.
+     * 
+     * @param username The profile owner's username
+     * @return The store key
+     */
+    private static String getStoreKey(String username) {
+        return "profile/" + username;
+    }
+    
     /**
      * Sets the user's full name.
      * 
@@ -0,0 +1,201 @@
+package bankapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One partition of the users file.
+ *
+ * Usernames are assigned to shards by hash. Each shard is its own append-only
+ * file with its own lock, append channel and username filter, so names in
+ * different shards can be registered at the same time. Registration holds the
+ * shard's lock together with an OS file lock, which makes checking for a name
+ * and appending it atomic, even across processes sharing the data directory.
+ */
+class UserShard {
+    private final Path file;
+    private final Path filterFile;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel appendChannel;
+    private Object appendFileKey;
+    private FileLock fileLock;
+    private long loadedOffset = -1; // Bytes of the file already read, or -1 before a full read
+    private Object loadedFileKey;
+    volatile UsernameBloomFilter filter; // null while the index is being loaded
+    int userCount;
+
+    /**
+     * Creates a shard.
+     *
+     * @param file The shard's users file
+     * @param filterFile Where the shard's username filter is saved
+     */
+    UserShard(Path file, Path filterFile) {
+        this.file = file;
+        this.filterFile = filterFile;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    Path getFilterFile() {
+        return filterFile;
+    }
+
+    long getLoadedOffset() {
+        return loadedOffset;
+    }
+
+    Object getLoadedFileKey() {
+        return loadedFileKey;
+    }
+
+    /**
+     * Reads every user in the shard file and remembers how much of it was read.
+     *
+     * @return The users, in file order
+     * @throws IOException If the file cannot be read
+     */
+    List<User> readAll() throws IOException {
+        if (!Files.exists(file)) {
+            loadedOffset = -1;
+            loadedFileKey = null;
+            return Collections.emptyList();
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        List<User> users = UserFileLoader.load(file, 0, attributes.size());
+        // An unterminated last line may still be being written, so read it again next time
+        loadedOffset = UserFileLoader.endOfCompleteLines(file, 0, attributes.size());
+        loadedFileKey = attributes.fileKey();
+        return users;
+    }
+
+    /**
+     * Reads the users appended to the shard file since it was last read.
+     *
+     * @return The appended users, or null if the file was replaced, truncated
+     *         or deleted and must be read again in full
+     */
+    List<User> readAppended() {
+        if (loadedOffset < 0) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!Objects.equals(attributes.fileKey(), loadedFileKey) || attributes.size() < loadedOffset) {
+                return null;
+            }
+
+            long end = UserFileLoader.endOfCompleteLines(file, loadedOffset, attributes.size());
+            if (end == loadedOffset) {
+                return Collections.emptyList();
+            }
+            List<User> users = UserFileLoader.load(file, loadedOffset, end);
+            loadedOffset = end;
+            return users;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Takes the shard's lock and an exclusive lock on its file.
+     *
+     * @throws IOException If the file cannot be opened or locked
+     */
+    void lock() throws IOException {
+        lock.lock();
+        try {
+            Object currentKey = Files.exists(file) ? Files.readAttributes(file, BasicFileAttributes.class).fileKey() : null;
+            if (appendChannel == null || currentKey == null || !currentKey.equals(appendFileKey)) {
+                // The file was replaced since the channel was opened
+                closeChannel();
+                appendChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                appendFileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            }
+            fileLock = appendChannel.lock();
+        } catch (IOException | RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the locks taken by {@link #lock()}.
+     */
+    void unlock() {
+        try {
+            if (fileLock != null) {
+                fileLock.release();
+            }
+        } catch (IOException e) {
+            System.err.println("Error unlocking users file: " + e.getMessage());
+        } finally {
+            fileLock = null;
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends one user line. The caller must hold the lock and have read
+     * everything already in the file, so the line is counted as read.
+     *
+     * @param username The username
+     * @param passwordHash The password hash
+     * @throws IOException If the line cannot be written
+     */
+    void append(String username, String passwordHash) throws IOException {
+        appendLine(username + "," + passwordHash + "\n");
+    }
+
+    /**
+     * Appends a line replacing a user's password hash. The caller must hold
+     * the lock and have read everything already in the file.
+     *
+     * @param username The username
+     * @param passwordHash The new password hash
+     * @throws IOException If the line cannot be written
+     */
+    void appendPasswordUpdate(String username, String passwordHash) throws IOException {
+        appendLine(username + "," + passwordHash + "," + User.PASSWORD_UPDATE_MARKER + "\n");
+    }
+
+    private void appendLine(String line) throws IOException {
+        if (loadedOffset >= 0 && appendChannel.size() > loadedOffset) {
+            // A writer died part way through a line, so start on a fresh one
+            line = "\n" + line;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            appendChannel.write(buffer);
+        }
+        if (loadedOffset >= 0) {
+            loadedOffset = appendChannel.size();
+        }
+    }
+
+    private void closeChannel() {
+        if (appendChannel == null) {
+            return;
+        }
+        try {
+            appendChannel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing users file: " + e.getMessage());
+        }
+        appendChannel = null;
+    }
+}
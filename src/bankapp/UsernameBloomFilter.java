@@ -0,0 +1,227 @@
+package bankapp;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bloom filter over usernames.
+ *
+ * A miss means the username is definitely not registered, so availability
+ * checks can skip the user index entirely; a hit may be a false positive and
+ * must be confirmed with an exact lookup. The filter is blocked: every
+ * username's bits fall in one 64-byte block, so a check touches a single
+ * cache line. Hashing starts from String.hashCode, which strings cache.
+ * Bits are set with release and read with acquire semantics, so checks may
+ * run on other threads without the lock that guards adds. The filter can be saved to disk
+ * together with a description of the data it was built from, so it can be
+ * reused at startup instead of rehashing every username.
+ *
+ * File layout (big-endian):
+ *   header  magic, version, hash count, reserved, bit count, capacity,
+ *           false positive rate, source offset, source stamp
+ *   bits    bit count / 64 longs, in blocks of 8
+ */
+public class UsernameBloomFilter {
+    private static final int FILTER_MAGIC = 0x55424C4D; // "UBLM"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 56;
+    private static final long MIN_CAPACITY = 1024;
+    private static final int BLOCK_WORDS = 8; // 512 bits, one cache line
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long capacity;
+    private final double falsePositiveRate;
+    private long sourceOffset;
+    private long sourceStamp;
+
+    /**
+     * Creates an empty filter that keeps the false positive rate at or below
+     * the target until it holds capacity usernames.
+     *
+     * @param capacity The number of usernames the filter is sized for
+     * @param falsePositiveRate The target false positive rate, between 0 and 1
+     */
+    public UsernameBloomFilter(long capacity, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        this.capacity = Math.max(MIN_CAPACITY, capacity);
+        this.falsePositiveRate = falsePositiveRate;
+
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        bits += bits / 5; // Blocking crowds some blocks, so give it a fifth more room
+        this.words = new long[(int) ((bits + 511) / 512) * BLOCK_WORDS];
+        this.bitCount = words.length * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.capacity * ln2));
+    }
+
+    private UsernameBloomFilter(long[] words, int hashCount, long capacity, double falsePositiveRate) {
+        this.words = words;
+        this.bitCount = words.length * 64L;
+        this.hashCount = hashCount;
+        this.capacity = capacity;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Adds a username.
+     *
+     * @param username The username, as it is keyed in the user index
+     */
+    public void add(String username) {
+        long hash = hash(username);
+        int block = block(hash);
+        long bits = hash * 0x9E3779B97F4A7C15L;
+        int first = (int) bits;
+        int step = (int) (bits >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (first + i * step) & 511;
+            WORDS.getAndBitwiseOrRelease(words, block + (bit >>> 6), 1L << bit);
+        }
+    }
+
+    /**
+     * Checks whether a username may have been added.
+     *
+     * @param username The username, as it is keyed in the user index
+     * @return false if the username was definitely never added
+     */
+    public boolean mightContain(String username) {
+        long hash = hash(username);
+        int block = block(hash);
+        long bits = hash * 0x9E3779B97F4A7C15L;
+        int first = (int) bits;
+        int step = (int) (bits >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (first + i * step) & 511;
+            if (((long) WORDS.getAcquire(words, block + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes a username to 64 bits from the string's cached hash code and its length.
+     */
+    private static long hash(String username) {
+        return (username.hashCode() + 31L * username.length()) * 0xC4CEB93FE1A85A63L;
+    }
+
+    /**
+     * Picks the block for a hash from its high half, scaling instead of dividing.
+     *
+     * @return The index of the block's first word
+     */
+    private int block(long hash) {
+        return (int) (((hash >>> 32) * (words.length / BLOCK_WORDS)) >>> 32) * BLOCK_WORDS;
+    }
+
+    /**
+     * Gets the number of usernames the filter was sized for.
+     *
+     * @return The capacity
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the false positive rate the filter was sized for.
+     *
+     * @return The target false positive rate
+     */
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Gets how far into its source data the filter is known to be complete.
+     *
+     * @return The source offset recorded when the filter was saved or loaded
+     */
+    public long getSourceOffset() {
+        return sourceOffset;
+    }
+
+    /**
+     * Gets the caller-defined fingerprint of the source data.
+     *
+     * @return The source stamp recorded when the filter was saved or loaded
+     */
+    public long getSourceStamp() {
+        return sourceStamp;
+    }
+
+    /**
+     * Saves the filter. The file is written under a temporary name and moved into place.
+     *
+     * @param file Where to save the filter
+     * @param sourceOffset How far into its source data the filter is complete
+     * @param sourceStamp A fingerprint the caller can use to check the source is unchanged
+     * @throws IOException If the file cannot be written
+     */
+    public void save(Path file, long sourceOffset, long sourceStamp) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + words.length * 8);
+        buffer.putInt(FILTER_MAGIC).putInt(FORMAT_VERSION).putInt(hashCount).putInt(0)
+              .putLong(bitCount).putLong(capacity).putDouble(falsePositiveRate)
+              .putLong(sourceOffset).putLong(sourceStamp);
+        buffer.asLongBuffer().put(words);
+        buffer.clear();
+
+        Path tempPath = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tempPath, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.sourceOffset = sourceOffset;
+        this.sourceStamp = sourceStamp;
+    }
+
+    /**
+     * Loads a saved filter.
+     *
+     * @param file The saved filter
+     * @return The filter, or null if the file does not exist
+     * @throws IOException If the file cannot be read or is not a complete filter
+     */
+    public static UsernameBloomFilter load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buffer.getInt(0) != FILTER_MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Username filter is corrupt: " + file);
+        }
+        int hashCount = buffer.getInt(8);
+        long bitCount = buffer.getLong(16);
+        long capacity = buffer.getLong(24);
+        double falsePositiveRate = buffer.getDouble(32);
+        if (hashCount < 1 || bitCount <= 0 || bitCount % 512 != 0 || data.length != HEADER_SIZE + bitCount / 8) {
+            throw new IOException("Username filter is corrupt: " + file);
+        }
+
+        long[] words = new long[(int) (bitCount / 64)];
+        buffer.position(HEADER_SIZE);
+        buffer.asLongBuffer().get(words);
+        UsernameBloomFilter filter = new UsernameBloomFilter(words, hashCount, capacity, falsePositiveRate);
+        filter.sourceOffset = buffer.getLong(40);
+        filter.sourceStamp = buffer.getLong(48);
+        return filter;
+    }
+}
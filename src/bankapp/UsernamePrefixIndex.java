@@ -0,0 +1,259 @@
+package bankapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorted index of usernames for prefix search.
+ *
+ * Names live in one sorted array, found by binary search, plus a small sorted
+ * buffer of names added since the array was built. The buffer is merged into
+ * the array once it grows past about the square root of the array's size, so
+ * adding a name stays cheap while searches only ever look in two places.
+ *
+ * Building from scratch sorts on each name's first eight characters packed
+ * into a long, kept in an array beside the names, so most comparisons read
+ * two longs instead of following two string references; only names sharing
+ * that prefix fall back to a full string comparison.
+ */
+public class UsernamePrefixIndex {
+    private static final int MIN_PENDING_LIMIT = 256;
+    private static final int INSERTION_SORT_SIZE = 16;
+    private static final int SERIAL_SORT_SIZE = 1 << 13;
+
+    private String[] names;
+    private String[] pending = new String[MIN_PENDING_LIMIT];
+    private int pendingCount;
+
+    private UsernamePrefixIndex(String[] sortedNames) {
+        this.names = sortedNames;
+    }
+
+    /**
+     * Builds an index over a set of distinct names.
+     *
+     * @param names The names
+     * @return The index
+     */
+    public static UsernamePrefixIndex build(Collection<String> names) {
+        String[] sorted = names.toArray(new String[0]);
+        long[] keys = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            keys[i] = packPrefix(sorted[i]);
+        }
+        ForkJoinPool.commonPool().invoke(new SortRange(keys, sorted, 0, sorted.length));
+        return new UsernamePrefixIndex(sorted);
+    }
+
+    /**
+     * Packs up to the first eight characters of a name into a long, one byte
+     * each, so that comparing keys as unsigned numbers agrees with comparing
+     * the names. From the first character that does not fit in a byte onwards
+     * every byte is set, and equal keys are settled by comparing the names.
+     */
+    static long packPrefix(String name) {
+        long key = 0;
+        int length = Math.min(8, name.length());
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c >= 0xFF) {
+                return (key << (8 * (8 - i))) | (-1L >>> (8 * i));
+            }
+            key = (key << 8) | c;
+        }
+        return key << (8 * (8 - length));
+    }
+
+    private static int compare(long[] keys, String[] names, int a, long key, String name) {
+        int result = Long.compareUnsigned(keys[a], key);
+        return result != 0 ? result : names[a].compareTo(name);
+    }
+
+    private static void swap(long[] keys, String[] names, int a, int b) {
+        long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        String name = names[a];
+        names[a] = names[b];
+        names[b] = name;
+    }
+
+    /**
+     * Adds a name that is not already in the index.
+     *
+     * @param name The name
+     */
+    public void add(String name) {
+        int insertAt = lowerBound(pending, pendingCount, name);
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        System.arraycopy(pending, insertAt, pending, insertAt + 1, pendingCount - insertAt);
+        pending[insertAt] = name;
+        pendingCount++;
+
+        if (pendingCount > pendingLimit()) {
+            mergePending();
+        }
+    }
+
+    private int pendingLimit() {
+        return Math.max(MIN_PENDING_LIMIT, (int) Math.sqrt(names.length));
+    }
+
+    /**
+     * Merges the pending buffer into the main array.
+     */
+    private void mergePending() {
+        String[] merged = new String[names.length + pendingCount];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < names.length && j < pendingCount) {
+            merged[k++] = names[i].compareTo(pending[j]) <= 0 ? names[i++] : pending[j++];
+        }
+        System.arraycopy(names, i, merged, k, names.length - i);
+        System.arraycopy(pending, j, merged, k + names.length - i, pendingCount - j);
+        names = merged;
+        Arrays.fill(pending, 0, pendingCount, null);
+        pendingCount = 0;
+    }
+
+    /**
+     * Finds names starting with a prefix, in sorted order.
+     *
+     * @param prefix The prefix
+     * @param limit The maximum number of names to return
+     * @return The matching names
+     */
+    public List<String> findByPrefix(String prefix, int limit) {
+        List<String> matches = new ArrayList<>(Math.min(Math.max(limit, 0), 64));
+        int i = lowerBound(names, names.length, prefix);
+        int j = lowerBound(pending, pendingCount, prefix);
+        while (matches.size() < limit) {
+            String fromNames = i < names.length && names[i].startsWith(prefix) ? names[i] : null;
+            String fromPending = j < pendingCount && pending[j].startsWith(prefix) ? pending[j] : null;
+            if (fromNames == null && fromPending == null) {
+                break;
+            }
+            if (fromPending == null || (fromNames != null && fromNames.compareTo(fromPending) <= 0)) {
+                matches.add(fromNames);
+                i++;
+            } else {
+                matches.add(fromPending);
+                j++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the first position whose name is not less than the key.
+     */
+    private static int lowerBound(String[] sorted, int length, String key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Quicksorts names by their packed keys, sorting the two sides of each
+     * large partition in parallel.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private static class SortRange extends RecursiveAction {
+        private final long[] keys;
+        private final String[] names;
+        private final int from;
+        private final int to;
+
+        SortRange(long[] keys, String[] names, int from, int to) {
+            this.keys = keys;
+            this.names = names;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int low = from;
+            int high = to;
+            while (high - low > INSERTION_SORT_SIZE) {
+                // Median of three, left at the middle as the pivot
+                int middle = (low + high) >>> 1;
+                if (compare(keys, names, middle, keys[low], names[low]) < 0) {
+                    swap(keys, names, middle, low);
+                }
+                if (compare(keys, names, high - 1, keys[low], names[low]) < 0) {
+                    swap(keys, names, high - 1, low);
+                }
+                if (compare(keys, names, high - 1, keys[middle], names[middle]) < 0) {
+                    swap(keys, names, high - 1, middle);
+                }
+                long pivotKey = keys[middle];
+                String pivotName = names[middle];
+
+                int i = low;
+                int j = high - 1;
+                while (i <= j) {
+                    while (compare(keys, names, i, pivotKey, pivotName) < 0) {
+                        i++;
+                    }
+                    while (compare(keys, names, j, pivotKey, pivotName) > 0) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(keys, names, i++, j--);
+                    }
+                }
+
+                if (high - low > SERIAL_SORT_SIZE) {
+                    invokeAll(new SortRange(keys, names, low, j + 1), new SortRange(keys, names, i, high));
+                    return;
+                }
+                // Recurse into the smaller side and loop on the larger to bound the stack
+                if (j + 1 - low < high - i) {
+                    new SortRange(keys, names, low, j + 1).compute();
+                    low = i;
+                } else {
+                    new SortRange(keys, names, i, high).compute();
+                    high = j + 1;
+                }
+            }
+
+            for (int i = low + 1; i < high; i++) {
+                long key = keys[i];
+                String name = names[i];
+                int j = i;
+                while (j > low && compare(keys, names, j - 1, key, name) > 0) {
+                    keys[j] = keys[j - 1];
+                    names[j] = names[j - 1];
+                    j--;
+                }
+                keys[j] = key;
+                names[j] = name;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of names in the index.
+     *
+     * @return The name count
+     */
+    public int size() {
+        return names.length + pendingCount;
+    }
+}
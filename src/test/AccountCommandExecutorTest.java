@@ -0,0 +1,210 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.AccountCommandExecutor;
+import bankapp.AccountStorage;
+import bankapp.BankAccount;
+import bankapp.CheckingAccount;
+import bankapp.TransactionJournal;
+import bankapp.TransactionStatus;
+
+class AccountCommandExecutorTest {
+    private static final Path TEST_ROOT = Paths.get("..", "data", "testcommands");
+
+    private AccountCommandExecutor executor;
+
+    @BeforeEach
+    void setup() {
+        executor = new AccountCommandExecutor(2, 64);
+    }
+
+    @AfterEach
+    void cleanup() {
+        executor.shutdown();
+        TransactionJournal.closeDirectory(TEST_ROOT);
+        if (Files.exists(TEST_ROOT)) {
+            try {
+                Files.walk(TEST_ROOT)
+                     .sorted(Comparator.reverseOrder())
+                     .forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Test
+    void commands_applyInTheOrderTheyWereSubmitted() throws Exception {
+        BankAccount account = new CheckingAccount("Ordered");
+
+        CompletableFuture<TransactionStatus> deposit = executor.deposit(account, 1_000, null, null);
+        CompletableFuture<Void> freeze = executor.setFrozen(account, true);
+        CompletableFuture<TransactionStatus> blocked = executor.withdraw(account, 500, null, null);
+        CompletableFuture<Void> unfreeze = executor.setFrozen(account, false);
+        CompletableFuture<TransactionStatus> withdrawal = executor.withdraw(account, 1_000, null, null);
+        CompletableFuture<TransactionStatus> overdrawn = executor.withdraw(account, 1, null, null);
+
+        assertEquals(TransactionStatus.OK, deposit.get(10, TimeUnit.SECONDS));
+        freeze.get(10, TimeUnit.SECONDS);
+        assertEquals(TransactionStatus.FROZEN, blocked.get(10, TimeUnit.SECONDS), "Withdrawals wait behind the freeze");
+        unfreeze.get(10, TimeUnit.SECONDS);
+        assertEquals(TransactionStatus.OK, withdrawal.get(10, TimeUnit.SECONDS));
+        assertEquals(TransactionStatus.INSUFFICIENT_FUNDS, overdrawn.get(10, TimeUnit.SECONDS));
+        assertEquals(0, account.getBalanceCents());
+    }
+
+    @Test
+    void commands_recordHistoryBeforeCompleting() throws Exception {
+        AccountStorage storage = new AccountStorage(TEST_ROOT);
+        BankAccount account = new CheckingAccount("Recorded");
+
+        assertEquals(TransactionStatus.OK, executor.deposit(account, 2_550, storage, "commanduser").get(10, TimeUnit.SECONDS));
+        assertEquals(TransactionStatus.OK, executor.withdraw(account, 50, storage, "commanduser").get(10, TimeUnit.SECONDS));
+        assertEquals(TransactionStatus.INSUFFICIENT_FUNDS,
+                executor.withdraw(account, 1_000_000, storage, "commanduser").get(10, TimeUnit.SECONDS));
+
+        List<String> history = storage.getAccountHistory("commanduser", "Recorded");
+        assertEquals(2, history.size(), "Failed withdrawals leave no history");
+        assertTrue(history.get(0).startsWith("Deposit: $25.50"));
+        assertTrue(history.get(1).startsWith("Withdraw: $0.50"));
+    }
+
+    @Test
+    void commands_fromManyThreadsOnAHotAccountAreNeverLost() throws Exception {
+        BankAccount account = new CheckingAccount("Hot");
+        int threads = 8;
+        int perThread = 20_000;
+        ExecutorService submitters = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(submitters.submit(() -> {
+                start.await();
+                int rejected = 0;
+                List<CompletableFuture<TransactionStatus>> pending = new ArrayList<>();
+                for (int i = 0; i < perThread; i++) {
+                    pending.add(executor.deposit(account, 1, null, null));
+                    if (pending.size() == 32) {
+                        rejected += await(pending);
+                    }
+                }
+                return rejected + await(pending);
+            }));
+        }
+        start.countDown();
+        int rejected = 0;
+        for (Future<Integer> result : results) {
+            rejected += result.get(60, TimeUnit.SECONDS);
+        }
+        submitters.shutdown();
+
+        assertEquals((long) threads * perThread - rejected, account.getBalanceCents());
+    }
+
+    private static int await(List<CompletableFuture<TransactionStatus>> pending) throws InterruptedException {
+        int rejected = 0;
+        for (CompletableFuture<TransactionStatus> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+                rejected++;
+            }
+        }
+        pending.clear();
+        return rejected;
+    }
+
+    @Test
+    void submit_rejectsCommandsWhenThePartitionIsFull() throws Exception {
+        AccountCommandExecutor small = new AccountCommandExecutor(1, 2);
+        BankAccount account = new CheckingAccount("Busy");
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<Boolean> blocker = small.submit(account, target -> {
+                running.countDown();
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            });
+            running.await();
+            CompletableFuture<TransactionStatus> first = small.deposit(account, 1, null, null);
+            CompletableFuture<TransactionStatus> second = small.deposit(account, 1, null, null);
+            CompletableFuture<TransactionStatus> third = small.deposit(account, 1, null, null);
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> third.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            release.countDown();
+            assertTrue(blocker.get(10, TimeUnit.SECONDS));
+            assertEquals(TransactionStatus.OK, first.get(10, TimeUnit.SECONDS));
+            assertEquals(TransactionStatus.OK, second.get(10, TimeUnit.SECONDS));
+            assertEquals(2, account.getBalanceCents());
+        } finally {
+            release.countDown();
+            small.shutdown();
+        }
+    }
+
+    @Test
+    void submit_completesEveryCommandSubmittedAroundShutdown() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            AccountCommandExecutor racing = new AccountCommandExecutor(1, 1024);
+            BankAccount account = new CheckingAccount("Racing");
+            List<CompletableFuture<TransactionStatus>> pending = new ArrayList<>();
+            CountDownLatch started = new CountDownLatch(1);
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    pending.add(racing.deposit(account, 1, null, null));
+                    started.countDown();
+                }
+            });
+            submitter.start();
+            started.await();
+            racing.shutdown();
+            submitter.join();
+
+            // Every command either ran or was refused; none is left waiting
+            int rejected = 0;
+            for (CompletableFuture<TransactionStatus> future : pending) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    rejected++;
+                }
+            }
+            assertEquals(pending.size() - rejected, account.getBalanceCents());
+        }
+    }
+
+    @Test
+    void submit_keepsRunningAfterACommandThrows() throws Exception {
+        BankAccount account = new CheckingAccount("Resilient");
+
+        CompletableFuture<Object> failed = executor.submit(account, target -> {
+            throw new IllegalStateException("boom");
+        });
+        CompletableFuture<TransactionStatus> deposit = executor.deposit(account, 100, null, null);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(TransactionStatus.OK, deposit.get(10, TimeUnit.SECONDS));
+    }
+}
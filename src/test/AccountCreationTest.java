@@ -5,11 +5,36 @@ import bankapp.CheckingAccount;
 import bankapp.SavingsAccount;
 import bankapp.BankAccount;
 
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class AccountCreationTest {
+    private static final Path ACCOUNTS_ROOT = Paths.get("..", "data", "testaccountcreation");
+    
+    @BeforeAll
+    static void useTestAccountsDirectory() {
+        System.setProperty("bankapp.accounts.dir", ACCOUNTS_ROOT.toString());
+    }
+    
+    @AfterAll
+    static void removeTestAccountsDirectory() throws IOException {
+        AccountManager.flushAll();
+        System.clearProperty("bankapp.accounts.dir");
+        if (Files.exists(ACCOUNTS_ROOT)) {
+            try (Stream<Path> paths = Files.walk(ACCOUNTS_ROOT)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
 
     @Test
     void testCreateCheckingAccount() {
@@ -1,6 +1,22 @@
 package test;
 
 import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -10,6 +26,23 @@ import bankapp.SavingsAccount;
 
 
 class AccountManagerTest {
+    private static final Path ACCOUNTS_ROOT = Paths.get("..", "data", "testaccountmanager");
+    
+    @BeforeAll
+    static void useTestAccountsDirectory() {
+        System.setProperty("bankapp.accounts.dir", ACCOUNTS_ROOT.toString());
+    }
+    
+    @AfterAll
+    static void removeTestAccountsDirectory() throws IOException {
+        AccountManager.flushAll();
+        System.clearProperty("bankapp.accounts.dir");
+        if (Files.exists(ACCOUNTS_ROOT)) {
+            try (Stream<Path> paths = Files.walk(ACCOUNTS_ROOT)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
     
     private AccountManager accountManager;
     private final String TEST_USERNAME = "testuser";
@@ -52,6 +85,27 @@ class AccountManagerTest {
         assertEquals(0, accountManager.getSavingsAccounts().size());
     }
     
+    @Test
+    void testRefusedAddPrintsWhy() {
+        assertTrue(accountManager.addCheckingAccount("Primary Account"));
+        
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        try {
+            assertFalse(accountManager.addCheckingAccount("primary account"));
+            assertFalse(accountManager.addSavingsAccount("x".repeat(100), 1.0));
+        } finally {
+            System.setOut(originalOut);
+        }
+        
+        String printed = output.toString();
+        assertTrue(printed.contains("Account name 'primary account' is already in use."), printed);
+        assertTrue(printed.contains("is too long."), printed);
+        assertEquals(1, accountManager.getCheckingAccounts().size());
+        assertEquals(0, accountManager.getSavingsAccounts().size());
+    }
+    
     @Test
     void testAccountLimits() {
         // Add max checking accounts
@@ -119,4 +173,185 @@ class AccountManagerTest {
         assertEquals(200.0, loadedSavings.getBalance());
         assertEquals(2.0, ((SavingsAccount)loadedSavings).getInterestRate());
     }
-}
\ No newline at end of file
+    
+    @Test
+    void testLoggedChangesSurviveReload() {
+        accountManager.addCheckingAccount("Logged Checking");
+        accountManager.addSavingsAccount("Logged Savings", 1.5);
+        
+        // Changes made after a load are appended to the account log
+        AccountManager session = new AccountManager(TEST_USERNAME);
+        assertTrue(session.loadAccounts());
+        session.getAccountByName("Logged Checking").deposit(40.0);
+        assertTrue(session.freezeAccount("Logged Checking"));
+        assertTrue(session.setOverdraftLimit("Logged Savings", 75.0));
+        assertTrue(session.closeAccount("Logged Savings"));
+        
+        AccountManager reloaded = new AccountManager(TEST_USERNAME);
+        assertTrue(reloaded.loadAccounts());
+        
+        BankAccount checking = reloaded.getAccountByName("Logged Checking");
+        assertNotNull(checking);
+        assertEquals(40.0, checking.getBalance());
+        assertTrue(checking.isFrozen());
+        assertNull(reloaded.getAccountByName("Logged Savings"));
+    }
+    
+    @Test
+    void testFlushWritesOnlyChangedAccounts() {
+        accountManager.addCheckingAccount("Quiet Checking");
+        accountManager.addCheckingAccount("Busy Checking");
+        
+        AccountManager session = new AccountManager(TEST_USERNAME);
+        assertTrue(session.loadAccounts());
+        BankAccount busy = session.getAccountByName("Busy Checking");
+        busy.deposit(10.0);
+        busy.deposit(15.0);
+        assertTrue(session.flush());
+        
+        // Nothing changed since the last flush, so there is nothing to write
+        assertTrue(session.flush());
+        
+        AccountManager reloaded = new AccountManager(TEST_USERNAME);
+        assertTrue(reloaded.loadAccounts());
+        assertEquals(25.0, reloaded.getAccountByName("Busy Checking").getBalance());
+        assertEquals(0.0, reloaded.getAccountByName("Quiet Checking").getBalance());
+    }
+    
+    @Test
+    void testChangesAfterATornLogRecordSurviveReload() throws IOException {
+        Path userDirectory = ACCOUNTS_ROOT.resolve("tornlog");
+        try {
+            AccountManager first = new AccountManager("tornlog");
+            assertTrue(first.addCheckingAccount("Main"));
+            AccountManager session = new AccountManager("tornlog");
+            assertTrue(session.loadAccounts());
+            session.getAccountByName("Main").depositCents(1_000);
+            assertTrue(session.flush());
+            
+            // A crash mid-append leaves a partial record at the end of the log
+            Files.write(userDirectory.resolve("accounts.wal"), new byte[] {0, 0, 0, 40, 1, 2, 3},
+                    StandardOpenOption.APPEND);
+            
+            AccountManager afterCrash = new AccountManager("tornlog");
+            assertTrue(afterCrash.loadAccounts());
+            assertEquals(1_000, afterCrash.getAccountByName("Main").getBalanceCents());
+            afterCrash.getAccountByName("Main").depositCents(49_000);
+            assertTrue(afterCrash.flush());
+            
+            AccountManager reloaded = new AccountManager("tornlog");
+            assertTrue(reloaded.loadAccounts());
+            assertEquals(50_000, reloaded.getAccountByName("Main").getBalanceCents());
+        } finally {
+            try (Stream<Path> files = Files.walk(userDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+    
+    @Test
+    void testCsvAccountsAreMigratedToRecords() throws IOException {
+        Path userDirectory = ACCOUNTS_ROOT.resolve("csvmigration");
+        Files.createDirectories(userDirectory);
+        try {
+            Files.write(userDirectory.resolve("checking.txt"), Arrays.asList("Main,50.0,true,100.0,5.0,300.0"));
+            // Current 7-column line and the legacy 3-column savings format
+            Files.write(userDirectory.resolve("savings.txt"),
+                    Arrays.asList("Rainy Day,250.0,false,0.0,0.0,0.0,1.5", "Old Savings,80.0,2.0"));
+            
+            AccountManager migrated = new AccountManager("csvmigration");
+            assertTrue(migrated.loadAccounts());
+            assertTrue(Files.exists(userDirectory.resolve("checking.dat")));
+            assertTrue(Files.exists(userDirectory.resolve("savings.dat")));
+            assertFalse(Files.exists(userDirectory.resolve("checking.txt")));
+            assertFalse(Files.exists(userDirectory.resolve("savings.txt")));
+            
+            AccountManager reloaded = new AccountManager("csvmigration");
+            assertTrue(reloaded.loadAccounts());
+            BankAccount main = reloaded.getAccountByName("Main");
+            assertEquals(50.0, main.getBalance());
+            assertTrue(main.isFrozen());
+            assertEquals(100.0, main.getOverdraftLimit());
+            assertEquals(300.0, main.getWithdrawalLimit());
+            assertEquals(1.5, ((SavingsAccount) reloaded.getAccountByName("Rainy Day")).getInterestRate());
+            SavingsAccount old = (SavingsAccount) reloaded.getAccountByName("Old Savings");
+            assertEquals(80.0, old.getBalance());
+            assertEquals(2.0, old.getInterestRate());
+        } finally {
+            try (Stream<Path> files = Files.walk(userDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+    
+    @Test
+    void testCsvAccountsWithLongNamesStayInCsv() throws IOException {
+        Path userDirectory = ACCOUNTS_ROOT.resolve("csvlongname");
+        Files.createDirectories(userDirectory);
+        String longName = "x".repeat(100); // Too long for a binary account record
+        try {
+            Files.write(userDirectory.resolve("checking.txt"), Arrays.asList(longName + ",50.0,false,0.0,0.0,300.0"));
+            Files.write(userDirectory.resolve("savings.txt"), Arrays.asList("Rainy Day,250.0,false,0.0,0.0,0.0,1.5"));
+            
+            AccountManager migrated = new AccountManager("csvlongname");
+            assertTrue(migrated.loadAccounts());
+            assertEquals(50.0, migrated.getAccountByName(longName).getBalance());
+            assertTrue(Files.exists(userDirectory.resolve("checking.txt")));
+            assertFalse(Files.exists(userDirectory.resolve("checking.dat")));
+            assertTrue(Files.exists(userDirectory.resolve("savings.dat")));
+            
+            // Enough changes to checkpoint, which rewrites the checking accounts as CSV again
+            for (int i = 0; i < 100; i++) {
+                migrated.getAccountByName(longName).tryDepositCents(100);
+                assertTrue(migrated.flush());
+            }
+            assertTrue(Files.exists(userDirectory.resolve("checking.txt")));
+            assertFalse(Files.exists(userDirectory.resolve("checking.dat")));
+            
+            AccountManager reloaded = new AccountManager("csvlongname");
+            assertTrue(reloaded.loadAccounts());
+            BankAccount account = reloaded.getAccountByName(longName);
+            assertEquals(15_000, account.getBalanceCents());
+            assertEquals(300.0, account.getWithdrawalLimit());
+            assertEquals(250.0, reloaded.getAccountByName("Rainy Day").getBalance());
+        } finally {
+            try (Stream<Path> files = Files.walk(userDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+    
+    @Test
+    void testAccountChangesDuringBackgroundFlushes() throws Exception {
+        accountManager.addCheckingAccount("Steady");
+        AccountManager session = new AccountManager(TEST_USERNAME);
+        assertTrue(session.loadAccounts());
+        
+        // Flush continuously, as the write-behind thread would, while accounts come and go
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread flusher = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    session.flush();
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        flusher.start();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(session.addSavingsAccount("Churn", 1.0));
+            assertTrue(session.removeAccount("Churn"));
+        }
+        done.set(true);
+        flusher.join();
+        
+        assertNull(failure.get());
+        assertTrue(session.flush());
+        AccountManager reloaded = new AccountManager(TEST_USERNAME);
+        assertTrue(reloaded.loadAccounts());
+        assertNotNull(reloaded.getAccountByName("Steady"));
+        assertNull(reloaded.getAccountByName("Churn"));
+    }
+}
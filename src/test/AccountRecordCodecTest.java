@@ -0,0 +1,75 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import bankapp.AccountRecordCodec;
+import bankapp.BankAccount;
+import bankapp.CheckingAccount;
+import bankapp.SavingsAccount;
+
+class AccountRecordCodecTest {
+    
+    @Test
+    void testRoundTripPreservesAccountState() throws IOException {
+        CheckingAccount checking = new CheckingAccount("Everyday Checking");
+        checking.deposit(125.75);
+        checking.setOverdraftLimit(200.0);
+        checking.setOverdraftInterestRate(12.5);
+        checking.setWithdrawalLimit(500.0);
+        checking.freezeAccount();
+        
+        SavingsAccount savings = new SavingsAccount("Épargne", 2.25);
+        savings.deposit(1000.0);
+        
+        byte[] records = AccountRecordCodec.encodeAll(Arrays.asList(checking, savings));
+        assertEquals(2 * AccountRecordCodec.RECORD_SIZE, records.length);
+        assertTrue(AccountRecordCodec.isBinary(records));
+        
+        List<BankAccount> decoded = AccountRecordCodec.decodeAll(records);
+        BankAccount decodedChecking = decoded.get(0);
+        assertTrue(decodedChecking instanceof CheckingAccount);
+        assertEquals("Everyday Checking", decodedChecking.getAccountName());
+        assertEquals(125.75, decodedChecking.getBalance());
+        assertEquals(200.0, decodedChecking.getOverdraftLimit());
+        assertEquals(12.5, decodedChecking.getOverdraftInterestRate());
+        assertEquals(500.0, decodedChecking.getWithdrawalLimit());
+        assertTrue(decodedChecking.isFrozen());
+        
+        SavingsAccount decodedSavings = (SavingsAccount) decoded.get(1);
+        assertEquals("Épargne", decodedSavings.getAccountName());
+        assertEquals(1000.0, decodedSavings.getBalance());
+        assertEquals(2.25, decodedSavings.getInterestRate());
+        assertFalse(decodedSavings.isFrozen());
+    }
+    
+    @Test
+    void testCsvTextIsNotMistakenForRecords() {
+        assertFalse(AccountRecordCodec.isBinary("Main,10.0,false,0.0,0.0,0.0\n".getBytes()));
+    }
+    
+    @Test
+    void testUnknownVersionIsRejected() {
+        byte[] records = AccountRecordCodec.encodeAll(Arrays.asList(new CheckingAccount("Main")));
+        records[0] = 99;
+        assertThrows(IOException.class, () -> AccountRecordCodec.decode(ByteBuffer.wrap(records)));
+    }
+    
+    @Test
+    void testNameLongerThanRecordIsRejected() {
+        char[] name = new char[AccountRecordCodec.MAX_NAME_BYTES + 1];
+        Arrays.fill(name, 'a');
+        String longName = new String(name);
+        
+        assertFalse(AccountRecordCodec.fitsName(longName));
+        assertTrue(AccountRecordCodec.fitsName(longName.substring(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> AccountRecordCodec.encodeAll(Arrays.asList(new CheckingAccount(longName))));
+    }
+}
@@ -2,11 +2,24 @@ package test;
 
 import org.junit.jupiter.api.*;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.*;
 import bankapp.AccountStorage;
+import bankapp.GroupCommitWriter;
+import bankapp.HistoryPage;
+import bankapp.TransactionJournal;
 
 class AccountStorageTest {
     private static final String TEST_USERNAME = "testuser";
@@ -23,6 +36,7 @@ class AccountStorageTest {
 
     @AfterEach
     void cleanup() throws IOException {
+        storage.close();
         deleteTestDirectory();
     }
 
@@ -41,12 +55,32 @@ class AccountStorageTest {
     }
 
     @Test
-    void recordTransaction_createHistoryFile() throws IOException {
+    void recordTransaction_writesToJournal() throws IOException {
         storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, "Deposit $100");
         Path historyFile = TEST_ROOT.resolve(TEST_USERNAME)
                                   .resolve(TEST_ACCOUNT + "_history.txt");
+        Path firstSegment = TEST_ROOT.resolve("_journal").resolve("segment-00000001.log");
         
-        assertTrue(Files.exists(historyFile), "History file should be created");
+        assertTrue(Files.exists(firstSegment), "Journal segment should be created");
+        assertFalse(Files.exists(historyFile), "No per-account history file should be created");
+    }
+
+    @Test
+    void getAccountHistory_importsLegacyHistoryFile() throws IOException {
+        Path userDir = Files.createDirectories(TEST_ROOT.resolve(TEST_USERNAME));
+        Path legacyFile = userDir.resolve(TEST_ACCOUNT + "_history.txt");
+        Files.write(legacyFile, List.of("Deposit: $100.0, 04-01-2025 10:15:00",
+                                        "Withdraw: $25.0, 04-02-2025 09:00:00"));
+
+        List<String> history = storage.getAccountHistory(TEST_USERNAME, TEST_ACCOUNT);
+        assertEquals(List.of("Deposit: $100.0, 04-01-2025 10:15:00",
+                             "Withdraw: $25.0, 04-02-2025 09:00:00"), history);
+        assertFalse(Files.exists(legacyFile), "Legacy file should be removed after import");
+
+        storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, "Deposit: $5.0");
+        List<String> updated = storage.getAccountHistory(TEST_USERNAME, TEST_ACCOUNT);
+        assertEquals(3, updated.size());
+        assertTrue(updated.get(2).startsWith("Deposit: $5.0, "));
     }
 
     @Test
@@ -80,6 +114,24 @@ class AccountStorageTest {
         assertTrue(lastFive.get(4).contains("Transaction 7"));
     }
 
+    @Test
+    void getLastNTransactions_returnsNewestInOrder() throws IOException {
+        for (int i = 1; i <= 200; i++) {
+            storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, "Transaction " + i);
+            if (i % 3 == 0) {
+                // Interleave another account so the records are not contiguous
+                storage.recordTransaction(TEST_USERNAME, "Savings1", "Other " + i);
+            }
+        }
+
+        List<String> lastTen = storage.getLastNTransactions(TEST_USERNAME, TEST_ACCOUNT, 10);
+        assertEquals(10, lastTen.size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(lastTen.get(i).startsWith("Transaction " + (191 + i) + ","));
+        }
+        assertTrue(storage.getLastNTransactions(TEST_USERNAME, TEST_ACCOUNT, 0).isEmpty());
+    }
+
     @Test
     void getLastFiveTransactions_returnsAllWhenLessThanFive() throws IOException {
         storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, "Only transaction");
@@ -87,6 +139,65 @@ class AccountStorageTest {
         assertEquals(1, result.size(), "Should return all transactions when less than 5");
     }
 
+    @Test
+    void recordTransactionAsync_concurrentCallersAllBecomeDurable() throws Exception {
+        List<CompletableFuture<Long>> pending = new ArrayList<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 25; i++) {
+                    try {
+                        CompletableFuture<Long> future = storage.recordTransactionAsync(
+                                TEST_USERNAME, TEST_ACCOUNT, "Thread " + thread + " deposit " + i);
+                        synchronized (pending) {
+                            pending.add(future);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (CompletableFuture<Long> future : pending) {
+            AccountStorage.awaitDurable(future);
+        }
+
+        assertEquals(100, storage.getAccountHistory(TEST_USERNAME, TEST_ACCOUNT).size());
+    }
+
+    @Test
+    void getHistoryPage_resumesFromCursor() throws IOException {
+        for (int i = 1; i <= 7; i++) {
+            storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, "Transaction " + i);
+        }
+
+        HistoryPage first = storage.getHistoryPage(TEST_USERNAME, TEST_ACCOUNT, 0, 3);
+        assertEquals(3, first.getTransactions().size());
+        assertTrue(first.hasMore());
+
+        HistoryPage last = storage.getHistoryPage(TEST_USERNAME, TEST_ACCOUNT, 6, 3);
+        assertEquals(1, last.getTransactions().size());
+        assertTrue(last.getTransactions().get(0).startsWith("Transaction 7,"));
+        assertFalse(last.hasMore());
+    }
+
+    @Test
+    void streamAccountHistory_readsAllPagesLazily() throws IOException {
+        for (int i = 1; i <= 7; i++) {
+            storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, "Transaction " + i);
+        }
+
+        try (Stream<String> history = storage.streamAccountHistory(TEST_USERNAME, TEST_ACCOUNT, 2)) {
+            List<String> lines = history.collect(Collectors.toList());
+            assertEquals(storage.getAccountHistory(TEST_USERNAME, TEST_ACCOUNT), lines);
+        }
+    }
+
     @Test
     void multipleAccounts_haveSeparateHistories() throws IOException {
         String account2 = "Savings1";
@@ -101,6 +212,147 @@ class AccountStorageTest {
         assertTrue(checkingHistory.get(0).contains("Checking"));
         assertTrue(savingsHistory.get(0).contains("Savings"));
     }
+
+    @Test
+    void groupCommitWriter_completesEveryRecordSubmittedAroundStop() throws Exception {
+        TransactionJournal journal = TransactionJournal.forDirectory(TEST_ROOT);
+        for (int round = 0; round < 20; round++) {
+            GroupCommitWriter writer = new GroupCommitWriter(journal, GroupCommitWriter.Durability.ASYNC, 1);
+            List<CompletableFuture<Long>> futures = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    futures.add(writer.submit(TEST_USERNAME, TEST_ACCOUNT, 0L, "Racing " + i));
+                }
+            });
+            submitter.start();
+            writer.stop();
+            submitter.join();
+
+            // Each record is either committed or failed; none is left waiting
+            for (CompletableFuture<Long> future : futures) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                }
+            }
+        }
+    }
+
+    @Test
+    void groupCommitWriter_failsOnlyTheRecordWithOversizedNames() throws Exception {
+        TransactionJournal journal = TransactionJournal.forDirectory(TEST_ROOT);
+        GroupCommitWriter writer = new GroupCommitWriter(journal, GroupCommitWriter.Durability.ASYNC, 1);
+        try {
+            CompletableFuture<Long> before = writer.submit(TEST_USERNAME, TEST_ACCOUNT, 0L, "Deposit $1");
+            CompletableFuture<Long> oversized = writer.submit(TEST_USERNAME, "x".repeat(300), 0L, "Deposit $2");
+            CompletableFuture<Long> after = writer.submit(TEST_USERNAME, TEST_ACCOUNT, 0L, "Deposit $3");
+
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> oversized.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IOException);
+            assertNotNull(before.get(10, TimeUnit.SECONDS));
+            assertNotNull(after.get(10, TimeUnit.SECONDS));
+        } finally {
+            writer.stop();
+        }
+        assertEquals(2, journal.size(TEST_USERNAME, TEST_ACCOUNT));
+    }
+
+    @Test
+    void recordTransaction_rejectsTextTooLongForRecord() throws IOException {
+        String longText = "Note: " + "x".repeat(300);
+        assertThrows(IOException.class,
+                () -> storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, longText));
+
+        storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, "Deposit $1");
+        List<String> history = storage.getAccountHistory(TEST_USERNAME, TEST_ACCOUNT);
+        assertEquals(1, history.size());
+        assertTrue(history.get(0).startsWith("Deposit $1, "));
+    }
+
+    @Test
+    void archivedHistory_isMergedAndQueriedByDate() throws IOException {
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+        System.setProperty("bankapp.journal.segmentBytes", String.valueOf(300 * TransactionJournal.RECORD_SIZE));
+        System.setProperty("bankapp.journal.archiveAfterDays", "-1");
+        try {
+            TransactionJournal journal = TransactionJournal.forDirectory(TEST_ROOT);
+            for (int i = 0; i < 700; i++) {
+                long timestamp = start.plusHours(i).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                journal.append(TEST_USERNAME, TEST_ACCOUNT, timestamp, "Deposit #" + i);
+            }
+            journal.force();
+
+            assertEquals(2, journal.archiveColdSegments(Long.MAX_VALUE));
+            Path journalDirectory = TEST_ROOT.resolve("_journal");
+            assertTrue(Files.exists(journalDirectory.resolve("archive-00000001.arc")));
+            assertTrue(Files.exists(journalDirectory.resolve("archive-00000001.idx")));
+            assertFalse(Files.exists(journalDirectory.resolve("segment-00000001.log")));
+
+            List<String> history = storage.getAccountHistory(TEST_USERNAME, TEST_ACCOUNT);
+            assertEquals(700, history.size());
+            assertTrue(history.get(0).startsWith("Deposit #0, "));
+            assertTrue(history.get(699).startsWith("Deposit #699, "));
+
+            List<String> range = storage.getAccountHistoryBetween(TEST_USERNAME, TEST_ACCOUNT,
+                    start.plusHours(295), start.plusHours(305));
+            assertEquals(10, range.size());
+            assertTrue(range.get(0).startsWith("Deposit #295, "));
+            assertTrue(range.get(9).startsWith("Deposit #304, "));
+
+            // Archives are found again when the journal is reopened
+            journal.close();
+            assertEquals(700, storage.getAccountHistory(TEST_USERNAME, TEST_ACCOUNT).size());
+            storage.recordTransaction(TEST_USERNAME, TEST_ACCOUNT, "Deposit #700");
+            assertEquals(701, storage.getAccountHistory(TEST_USERNAME, TEST_ACCOUNT).size());
+        } finally {
+            System.clearProperty("bankapp.journal.segmentBytes");
+            System.clearProperty("bankapp.journal.archiveAfterDays");
+            TransactionJournal.forDirectory(TEST_ROOT).close();
+        }
+    }
+
+    @Test
+    void archiveIndex_isLoadedOnOpenInsteadOfDecompressing() throws IOException {
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+        System.setProperty("bankapp.journal.segmentBytes", String.valueOf(300 * TransactionJournal.RECORD_SIZE));
+        System.setProperty("bankapp.journal.archiveAfterDays", "-1");
+        try {
+            TransactionJournal journal = TransactionJournal.forDirectory(TEST_ROOT);
+            for (int i = 0; i < 700; i++) {
+                long timestamp = start.plusHours(i).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                journal.append(TEST_USERNAME, i % 2 == 0 ? TEST_ACCOUNT : "Savings1", timestamp, "Deposit #" + i);
+            }
+            assertEquals(2, journal.archiveColdSegments(Long.MAX_VALUE));
+            journal.close();
+
+            // Damage the first compressed block; opening must not need to read it
+            Path journalDirectory = TEST_ROOT.resolve("_journal");
+            try (FileChannel archive = FileChannel.open(
+                    journalDirectory.resolve("archive-00000001.arc"), StandardOpenOption.WRITE)) {
+                archive.write(ByteBuffer.wrap(new byte[32]), 8);
+            }
+            List<String> range = storage.getAccountHistoryBetween(TEST_USERNAME, TEST_ACCOUNT,
+                    start.plusHours(400), start.plusHours(410));
+            assertEquals(5, range.size());
+            assertTrue(range.get(0).startsWith("Deposit #400, "));
+            assertEquals(5, storage.getAccountHistoryBetween(TEST_USERNAME, "Savings1",
+                    start.plusHours(400), start.plusHours(410)).size());
+
+            // A missing index file is rebuilt from the archive
+            TransactionJournal.closeDirectory(TEST_ROOT);
+            Files.delete(journalDirectory.resolve("archive-00000002.idx"));
+            range = storage.getAccountHistoryBetween(TEST_USERNAME, "Savings1", start.plusHours(300), start.plusHours(600));
+            assertEquals(150, range.size());
+            assertTrue(range.get(0).startsWith("Deposit #301, "));
+            assertTrue(Files.exists(journalDirectory.resolve("archive-00000002.idx")));
+        } finally {
+            System.clearProperty("bankapp.journal.segmentBytes");
+            System.clearProperty("bankapp.journal.archiveAfterDays");
+            TransactionJournal.forDirectory(TEST_ROOT).close();
+        }
+    }
 }
 
     @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -3,9 +3,17 @@ package test;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import bankapp.BankAccount;
 import bankapp.CheckingAccount;
 import bankapp.SavingsAccount;
+import bankapp.TransactionStatus;
 
 class BankAccountTest {
 
@@ -171,4 +179,107 @@ class BankAccountTest {
         account.deposit(50.0);
         assertEquals(150.0, account.getBalance(), "Deposit should work after unfreezing");
     }
-}
\ No newline at end of file
+    
+    @Test
+    void testConcurrentUpdatesAreNeverLost() throws Exception {
+        BankAccount account = new CheckingAccount("Contested");
+        int threads = 8;
+        int operations = 200_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                long net = 0;
+                for (int i = 0; i < operations; i++) {
+                    if (i % 2 == 0) {
+                        account.depositCents(3);
+                        net += 3;
+                    } else if (account.withdrawCents(2)) {
+                        net -= 2;
+                    }
+                }
+                return net;
+            }));
+        }
+        start.countDown();
+        long expected = 0;
+        for (Future<Long> result : results) {
+            expected += result.get();
+        }
+        executor.shutdown();
+        
+        assertEquals(expected, account.getBalanceCents());
+        assertEquals(threads * (operations / 2) * 1L, expected, "Every withdrawal was covered, so all should succeed");
+    }
+    
+    @Test
+    void testConcurrentWithdrawalsNeverExceedTheOverdraft() throws Exception {
+        BankAccount account = new CheckingAccount("Contested");
+        account.depositCents(10_000);
+        account.setOverdraftLimitCents(5_000);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int succeeded = 0;
+                for (int i = 0; i < 1000; i++) {
+                    if (account.withdrawCents(7)) {
+                        succeeded++;
+                    }
+                }
+                return succeeded;
+            }));
+        }
+        start.countDown();
+        int succeeded = 0;
+        for (Future<Integer> result : results) {
+            succeeded += result.get();
+        }
+        executor.shutdown();
+        
+        assertEquals(15_000 / 7, succeeded);
+        assertEquals(10_000 - 7L * succeeded, account.getBalanceCents());
+        assertTrue(account.getBalanceCents() >= -5_000);
+    }
+    
+    @Test
+    void testBalanceOutOfRangeIsRefused() {
+        BankAccount account = new CheckingAccount("Overflow");
+        long max = Long.MAX_VALUE >> 1; // The largest balance an account can hold
+        assertEquals(TransactionStatus.OK, account.tryDepositCents(max));
+        
+        assertEquals(TransactionStatus.BALANCE_OUT_OF_RANGE, account.tryDepositCents(1));
+        assertEquals(TransactionStatus.BALANCE_OUT_OF_RANGE, account.tryDepositCents(Long.MAX_VALUE));
+        assertFalse(account.depositCents(1));
+        assertEquals(max, account.getBalanceCents());
+        
+        // Interest that would overflow is not added rather than thrown
+        SavingsAccount savings = new SavingsAccount("Huge Savings", 50.0);
+        savings.depositCents(max - 1);
+        assertEquals(0, savings.applyInterestCents());
+        assertEquals(max - 1, savings.getBalanceCents());
+        
+        BankAccount overdrawn = new CheckingAccount("Overdrawn");
+        overdrawn.setOverdraftLimitCents(Long.MAX_VALUE);
+        overdrawn.setWithdrawalLimitCents(Long.MAX_VALUE);
+        assertEquals(TransactionStatus.INSUFFICIENT_FUNDS, overdrawn.tryWithdrawCents(Long.MAX_VALUE));
+        assertEquals(0, overdrawn.getBalanceCents());
+    }
+    
+    @Test
+    void testFreezingStopsConcurrentDeposits() {
+        BankAccount account = new CheckingAccount("Freeze Race");
+        account.depositCents(500);
+        account.freezeAccount();
+        
+        assertFalse(account.depositCents(100));
+        assertFalse(account.withdrawCents(100));
+        assertEquals(500, account.getBalanceCents());
+        assertTrue(account.isFrozen(), "Balance changes must not clear the frozen flag");
+    }
+}
@@ -0,0 +1,231 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.AccountCommandExecutor;
+import bankapp.AccountManager;
+import bankapp.AccountStorage;
+import bankapp.BankAccount;
+import bankapp.BankService;
+import bankapp.BankService.*;
+import bankapp.TransactionStatus;
+import bankapp.UserManager;
+
+class BankServiceTest {
+    private static final Path HISTORY_ROOT = Paths.get("..", "data", "testservice");
+    private static final Path ACCOUNTS_ROOT = Paths.get("..", "data", "testserviceaccounts");
+    private static final Path USERS_ROOT = Paths.get("..", "data", "testserviceusers");
+    private static final String USERNAME = "serviceuser";
+    private static final String PASSWORD = "Password123!";
+
+    private UserManager users;
+    private AccountStorage storage;
+    private BankService service;
+    private String token;
+    private AccountManager accounts;
+
+    @BeforeAll
+    static void useTestDirectories() throws Exception {
+        System.setProperty("bankapp.accounts.dir", ACCOUNTS_ROOT.toString());
+        Files.createDirectories(USERS_ROOT);
+        System.setProperty("bankapp.users.file", USERS_ROOT.resolve("users.txt").toString());
+        resetUserManager();
+    }
+
+    @AfterAll
+    static void removeTestDirectories() throws Exception {
+        AccountManager.flushAll();
+        resetUserManager();
+        System.clearProperty("bankapp.accounts.dir");
+        System.clearProperty("bankapp.users.file");
+        delete(ACCOUNTS_ROOT);
+        delete(USERS_ROOT);
+    }
+
+    private static void resetUserManager() throws Exception {
+        Field instance = UserManager.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+    }
+
+    @BeforeEach
+    void setup() {
+        users = UserManager.getInstance();
+        users.createAccount(USERNAME, PASSWORD); // Already there if an earlier test created it
+        storage = new AccountStorage(HISTORY_ROOT);
+        service = new BankService(users, storage);
+        LoginResponse login = service.login(new LoginRequest(USERNAME, PASSWORD, null));
+        assertTrue(login.isOk(), login.getMessage());
+        token = login.getToken();
+        accounts = users.getSession(token).getAccountManager();
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        // The user's account manager outlives the session, so empty it for the next test
+        for (BankAccount account : new ArrayList<BankAccount>(accounts.getCheckingAccounts())) {
+            accounts.removeAccount(account.getAccountName());
+        }
+        for (BankAccount account : new ArrayList<BankAccount>(accounts.getSavingsAccounts())) {
+            accounts.removeAccount(account.getAccountName());
+        }
+        accounts.flush();
+        service.logout(token);
+        storage.close();
+        delete(HISTORY_ROOT);
+        delete(ACCOUNTS_ROOT.resolve(USERNAME));
+    }
+
+    private static void delete(Path root) throws IOException {
+        if (Files.exists(root)) {
+            Files.walk(root)
+                 .sorted(Comparator.reverseOrder())
+                 .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void moneyFlows_updateBalancesAndRecordHistory() {
+        assertTrue(service.openAccount(token, OpenAccountRequest.checking("Everyday", 0)).isOk());
+        assertTrue(service.openAccount(token, OpenAccountRequest.savings("Rainy Day", 1.5)).isOk());
+
+        AccountResponse deposit = service.deposit(token, new AmountRequest("Everyday", 10_000));
+        assertTrue(deposit.isOk());
+        assertEquals(10_000, deposit.getBalanceCents());
+
+        AccountResponse withdrawal = service.withdraw(token, new AmountRequest("Everyday", 2_550));
+        assertTrue(withdrawal.isOk());
+        assertEquals(7_450, withdrawal.getBalanceCents());
+
+        AccountResponse overdrawn = service.withdraw(token, new AmountRequest("Everyday", 10_000));
+        assertEquals(Status.REJECTED, overdrawn.getStatus());
+        assertEquals(TransactionStatus.INSUFFICIENT_FUNDS, overdrawn.getTransactionStatus());
+        assertEquals(7_450, overdrawn.getBalanceCents());
+
+        TransferResponse transfer = service.transfer(token, new TransferRequest("Everyday", "Rainy Day", 1_000));
+        assertTrue(transfer.isOk(), transfer.getMessage());
+        assertEquals(6_450, transfer.getBalanceCents());
+        assertEquals(1_000, transfer.getTargetBalanceCents());
+
+        HistoryResponse history = service.history(token, new HistoryRequest("Everyday", 0, 10));
+        assertTrue(history.isOk());
+        List<String> transactions = history.getPage().getTransactions();
+        assertEquals(3, transactions.size(), "Refused withdrawals leave no history");
+        assertTrue(transactions.get(0).startsWith("Deposit: $100.00"));
+        assertTrue(transactions.get(1).startsWith("Withdraw: $25.50"));
+        assertTrue(transactions.get(2).startsWith("Transfer to Rainy Day: $10.00"));
+    }
+
+    @Test
+    void freeze_blocksChangesUntilUnfrozen() {
+        service.openAccount(token, OpenAccountRequest.checking("Everyday", 0));
+
+        assertTrue(service.setFrozen(token, new FreezeRequest("Everyday", true)).isOk());
+        AccountResponse blocked = service.deposit(token, new AmountRequest("Everyday", 500));
+        assertEquals(Status.REJECTED, blocked.getStatus());
+        assertEquals(TransactionStatus.FROZEN, blocked.getTransactionStatus());
+
+        assertTrue(service.setFrozen(token, new FreezeRequest("Everyday", false)).isOk());
+        assertEquals(500, service.deposit(token, new AmountRequest("Everyday", 500)).getBalanceCents());
+    }
+
+    @Test
+    void setLimit_appliesToLaterChanges() {
+        service.openAccount(token, OpenAccountRequest.checking("Everyday", 0));
+        service.openAccount(token, OpenAccountRequest.checking("Bills", 0));
+        service.deposit(token, new AmountRequest("Everyday", 5_000));
+
+        assertTrue(service.setLimit(token, new LimitRequest("Everyday", Limit.WITHDRAWAL, 1_000)).isOk());
+        assertEquals(TransactionStatus.OVER_WITHDRAWAL_LIMIT,
+                service.withdraw(token, new AmountRequest("Everyday", 1_500)).getTransactionStatus());
+
+        assertTrue(service.setLimit(token, new LimitRequest("Everyday", Limit.TRANSFER, 2_000)).isOk());
+        assertEquals(TransactionStatus.OVER_TRANSFER_LIMIT,
+                service.transfer(token, new TransferRequest("Everyday", "Bills", 2_500)).getTransactionStatus());
+
+        assertTrue(service.setLimit(token, new LimitRequest("Everyday", Limit.OVERDRAFT, 10_000)).isOk());
+        service.setLimit(token, new LimitRequest("Everyday", Limit.WITHDRAWAL, 20_000));
+        assertEquals(-4_000, service.withdraw(token, new AmountRequest("Everyday", 9_000)).getBalanceCents());
+        assertEquals(Status.REJECTED,
+                service.setLimit(token, new LimitRequest("Everyday", Limit.OVERDRAFT, -1)).getStatus());
+    }
+
+    @Test
+    void commandsEnabled_appliesChangesOnTheExecutor() {
+        AccountCommandExecutor executor = new AccountCommandExecutor(2, 16);
+        BankService queued = new BankService(users, storage, executor);
+        try {
+            queued.openAccount(token, OpenAccountRequest.checking("Everyday", 1_000));
+            queued.openAccount(token, OpenAccountRequest.savings("Rainy Day", 10.0));
+            assertEquals(10_000, queued.deposit(token, new AmountRequest("Rainy Day", 10_000)).getBalanceCents());
+
+            assertTrue(queued.setLimit(token, new LimitRequest("Everyday", Limit.WITHDRAWAL, 500)).isOk());
+            assertEquals(TransactionStatus.OVER_WITHDRAWAL_LIMIT,
+                    queued.withdraw(token, new AmountRequest("Everyday", 600)).getTransactionStatus());
+            assertEquals(-500, queued.withdraw(token, new AmountRequest("Everyday", 500)).getBalanceCents());
+
+            assertTrue(queued.applySavingsInterest(token).isOk());
+            assertEquals(11_000, accounts.getAccountByName("Rainy Day").getBalanceCents());
+            Response charged = queued.applyOverdraftInterest(token);
+            assertEquals("Applied overdraft interest. Total interest charged: $0.75", charged.getMessage());
+            assertEquals(-575, accounts.getAccountByName("Everyday").getBalanceCents());
+
+            assertTrue(queued.setFrozen(token, new FreezeRequest("Everyday", true)).isOk());
+            assertEquals(TransactionStatus.FROZEN,
+                    queued.deposit(token, new AmountRequest("Everyday", 100)).getTransactionStatus());
+
+            List<String> transactions = queued.history(token, new HistoryRequest("Everyday", 0, 10)).getPage().getTransactions();
+            assertEquals(2, transactions.size());
+            assertTrue(transactions.get(0).startsWith("Withdraw: $5.00"));
+            assertTrue(transactions.get(1).startsWith("Overdraft Interest Charged: $0.75"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void closeAccount_onlyClosesAccountsThatAreNotOverdrawn() {
+        service.openAccount(token, OpenAccountRequest.checking("Everyday", 10_000));
+        service.withdraw(token, new AmountRequest("Everyday", 500));
+
+        assertEquals(Status.REJECTED, service.closeAccount(token, new CloseRequest("Everyday")).getStatus());
+
+        service.deposit(token, new AmountRequest("Everyday", 500));
+        assertTrue(service.closeAccount(token, new CloseRequest("Everyday")).isOk());
+        assertEquals(Status.NOT_FOUND, service.deposit(token, new AmountRequest("Everyday", 100)).getStatus());
+    }
+
+    @Test
+    void login_reportsThrottlingApartFromBadCredentials() {
+        // Ten attempts per username are allowed by default; a name of its own keeps other tests unthrottled
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Status.UNAUTHORIZED, service.login(new LoginRequest("throttledservice", "Wrong123!", null)).getStatus());
+        }
+        LoginResponse throttled = service.login(new LoginRequest("throttledservice", "Wrong123!", null));
+        assertEquals(Status.THROTTLED, throttled.getStatus());
+        assertNull(throttled.getToken());
+    }
+
+    @Test
+    void requests_areRefusedWithoutAValidSessionOrAccount() {
+        assertEquals(Status.UNAUTHORIZED, service.login(new LoginRequest(USERNAME, "Wrong123!", null)).getStatus());
+        assertEquals(Status.UNAUTHORIZED, service.deposit("no-such-token", new AmountRequest("Everyday", 100)).getStatus());
+
+        assertTrue(service.openAccount(token, OpenAccountRequest.checking("Everyday", 0)).isOk());
+        assertEquals(Status.REJECTED, service.openAccount(token, OpenAccountRequest.checking("everyday", 0)).getStatus(),
+                "Names are unique ignoring case");
+        assertEquals(Status.NOT_FOUND, service.withdraw(token, new AmountRequest("Nowhere", 100)).getStatus());
+        assertEquals(Status.NOT_FOUND, service.transfer(token, new TransferRequest("Everyday", "Nowhere", 100)).getStatus());
+        assertEquals(TransactionStatus.INVALID_AMOUNT,
+                service.deposit(token, new AmountRequest("Everyday", 0)).getTransactionStatus());
+
+        assertTrue(service.logout(token).isOk());
+        assertEquals(Status.UNAUTHORIZED, service.deposit(token, new AmountRequest("Everyday", 100)).getStatus());
+    }
+}
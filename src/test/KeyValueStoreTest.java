@@ -0,0 +1,142 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.KeyValueStore;
+
+class KeyValueStoreTest {
+    private static final Path TEST_ROOT = Paths.get("..", "data", "teststore");
+    private KeyValueStore store;
+
+    @BeforeEach
+    void setup() throws IOException {
+        deleteTestDirectory();
+        store = KeyValueStore.forDirectory(TEST_ROOT);
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        store.close();
+        deleteTestDirectory();
+    }
+
+    private void deleteTestDirectory() throws IOException {
+        if (Files.exists(TEST_ROOT)) {
+            Files.walk(TEST_ROOT)
+                 .sorted(Comparator.reverseOrder())
+                 .forEach(path -> {
+                     try {
+                         Files.delete(path);
+                     } catch (IOException e) {
+                         throw new RuntimeException("Failed to delete " + path, e);
+                     }
+                 });
+        }
+    }
+
+    private long countDataFiles() throws IOException {
+        try (Stream<Path> files = Files.list(TEST_ROOT)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void putAndGet_returnsLatestValue() throws IOException {
+        store.putString("user/alice", "first");
+        store.putString("user/alice", "second");
+        store.putString("user/bob", "other");
+
+        assertEquals("second", store.getString("user/alice"));
+        assertEquals("other", store.getString("user/bob"));
+        assertNull(store.getString("user/carol"));
+        assertEquals(Arrays.asList("user/alice", "user/bob"), store.keysWithPrefix("user/"));
+    }
+
+    @Test
+    void delete_removesKeyAcrossReopen() throws IOException {
+        store.putString("profile/alice", "fullName=Alice");
+        store.putString("profile/bob", "fullName=Bob");
+        store.delete("profile/alice");
+
+        store.close();
+        store = KeyValueStore.forDirectory(TEST_ROOT);
+
+        assertFalse(store.containsKey("profile/alice"));
+        assertEquals("fullName=Bob", store.getString("profile/bob"));
+    }
+
+    @Test
+    void reopen_ignoresTornRecordAtEnd() throws IOException {
+        store.putString("accounts/alice/checking", "Main,10.0");
+        store.close();
+
+        // Simulate a crash part way through appending the next record
+        Path dataFile = TEST_ROOT.resolve("data-00000001.log");
+        Files.write(dataFile, new byte[] {1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        store = KeyValueStore.forDirectory(TEST_ROOT);
+        assertEquals("Main,10.0", store.getString("accounts/alice/checking"));
+
+        store.putString("accounts/alice/savings", "Rainy Day,5.0,1.5");
+        store.close();
+        store = KeyValueStore.forDirectory(TEST_ROOT);
+        assertEquals("Rainy Day,5.0,1.5", store.getString("accounts/alice/savings"));
+    }
+
+    @Test
+    void compact_keepsLiveValuesAndRemovesOldFiles() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            store.putString("accounts/alice/checking", "Main," + i);
+        }
+        store.putString("accounts/bob/checking", "Spare,1.0");
+        store.delete("accounts/bob/checking");
+        assertTrue(store.getDeadBytes() > 0);
+
+        store.compact();
+
+        assertEquals(0, store.getDeadBytes());
+        assertEquals("Main,49", store.getString("accounts/alice/checking"));
+        assertNull(store.getString("accounts/bob/checking"));
+        assertEquals(2, countDataFiles(), "Only the compacted file and the new active file should remain");
+
+        store.close();
+        store = KeyValueStore.forDirectory(TEST_ROOT);
+        assertEquals("Main,49", store.getString("accounts/alice/checking"));
+        assertFalse(store.containsKey("accounts/bob/checking"));
+    }
+
+    @Test
+    void compact_failedCopyDropsPartialFileAndAllowsLaterCompactions() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            store.putString("accounts/alice/checking", "Main," + i);
+        }
+        // A directory where the compacted file would go makes the copy fail
+        String lastFile;
+        try (Stream<Path> files = Files.list(TEST_ROOT)) {
+            lastFile = files.map(path -> path.getFileName().toString()).max(Comparator.naturalOrder()).get();
+        }
+        int nextId = Integer.parseInt(lastFile.substring("data-".length(), lastFile.length() - ".log".length())) + 1;
+        Path blocker = Files.createDirectory(TEST_ROOT.resolve(String.format("data-%08d.log", nextId)));
+
+        assertThrows(IOException.class, store::compact);
+        assertFalse(Files.exists(blocker), "The partial compacted file should be deleted");
+        assertEquals("Main,4", store.getString("accounts/alice/checking"));
+
+        // Enough superseded bytes to schedule a background compaction
+        String large = "x".repeat(10_000);
+        for (int i = 0; i < 150; i++) {
+            store.putString("accounts/alice/checking", large + i);
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (store.getDeadBytes() >= 1024 * 1024 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(store.getDeadBytes() < 1024 * 1024, "A failed compaction should not block later ones");
+        assertEquals(large + 149, store.getString("accounts/alice/checking"));
+    }
+}
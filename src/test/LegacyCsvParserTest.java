@@ -0,0 +1,97 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import bankapp.LegacyCsvParser;
+
+class LegacyCsvParserTest {
+    
+    private static LegacyCsvParser parserFor(String text) {
+        return new LegacyCsvParser(text.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    void testSplitsFieldsLikeStringSplit() {
+        LegacyCsvParser parser = parserFor("Main,50.0,true,100.0,5.0,300.0\r\nOld Savings,80.0,2.0,,\n\nÉpargne,1.5,0.5");
+        
+        assertTrue(parser.nextLine());
+        assertEquals(6, parser.fieldCount());
+        assertEquals("Main", parser.fieldString(0));
+        assertEquals(50.0, parser.fieldDouble(1));
+        assertTrue(parser.fieldBoolean(2));
+        assertEquals(300.0, parser.fieldDouble(5));
+        
+        assertTrue(parser.nextLine());
+        assertEquals(3, parser.fieldCount(), "Trailing empty fields are dropped");
+        assertEquals(2.0, parser.fieldDouble(2));
+        
+        assertTrue(parser.nextLine());
+        assertEquals(0, parser.fieldCount());
+        
+        assertTrue(parser.nextLine());
+        assertEquals("Épargne", parser.fieldString(0));
+        assertFalse(parser.nextLine());
+    }
+    
+    @Test
+    void testDoublesMatchDoubleParseDouble() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        double[] expected = new double[2000];
+        for (int i = 0; i < expected.length; i++) {
+            switch (i % 4) {
+                case 0: expected[i] = Math.round(random.nextDouble() * 1_000_000) / 100.0; break;
+                case 1: expected[i] = random.nextDouble() * 1e9 - 5e8; break;
+                case 2: expected[i] = random.nextDouble() * 1e-5; break;
+                default: expected[i] = random.nextGaussian() * 1e12; break;
+            }
+            text.append(expected[i]).append('\n');
+        }
+        text.append("1e3\n-0.0\nNaN\n007.50\n");
+        
+        LegacyCsvParser parser = parserFor(text.toString());
+        for (double value : expected) {
+            assertTrue(parser.nextLine());
+            assertEquals(value, parser.fieldDouble(0), 0.0, "Parsing " + value);
+        }
+        parser.nextLine();
+        assertEquals(1000.0, parser.fieldDouble(0));
+        parser.nextLine();
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(parser.fieldDouble(0)));
+        parser.nextLine();
+        assertTrue(Double.isNaN(parser.fieldDouble(0)));
+        parser.nextLine();
+        assertEquals(7.5, parser.fieldDouble(0));
+    }
+    
+    @Test
+    void testInvalidNumberThrows() {
+        LegacyCsvParser parser = parserFor("Main,12abc");
+        parser.nextLine();
+        assertThrows(NumberFormatException.class, () -> parser.fieldDouble(1));
+        assertFalse(parser.fieldBoolean(1));
+    }
+    
+    @Test
+    void testTrailingTimestamp() {
+        LegacyCsvParser parser = parserFor("Deposit: $25.00, 03-14-2025 09:26:53\nDeposit: $25.00\n");
+        ZoneId zone = ZoneId.systemDefault();
+        
+        assertTrue(parser.nextLine());
+        assertTrue(parser.hasTrailingTimestamp());
+        assertEquals("Deposit: $25.00", parser.textBeforeTimestamp());
+        long expected = LocalDateTime.of(2025, 3, 14, 9, 26, 53).atZone(zone).toInstant().toEpochMilli();
+        assertEquals(expected, parser.trailingTimestampMillis(zone));
+        
+        assertTrue(parser.nextLine());
+        assertFalse(parser.hasTrailingTimestamp());
+        assertEquals("Deposit: $25.00", parser.lineString());
+    }
+}
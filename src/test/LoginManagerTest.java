@@ -9,6 +9,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
 
 import bankapp.LoginManager;
 import bankapp.User;
@@ -16,21 +21,40 @@ import bankapp.UserManager;
 
 class LoginManagerTest {
     
+    private static final Path USERS_ROOT = Paths.get("..", "data", "testloginmanager");
+    
     private ByteArrayOutputStream outputStream;
     private PrintStream originalOut;
     
     @BeforeEach
-    void setUp() {
+    void setUp() throws Exception {
         // Save original System.out and redirect to our stream for testing output
         originalOut = System.out;
         outputStream = new ByteArrayOutputStream();
         System.setOut(new PrintStream(outputStream));
+        
+        // Keep the users file, and the filter saved beside it, out of the real data directory
+        Files.createDirectories(USERS_ROOT);
+        System.setProperty("bankapp.users.file", USERS_ROOT.resolve("users.txt").toString());
+        resetUserManager();
     }
     
     @AfterEach
-    void tearDown() {
+    void tearDown() throws Exception {
         // Restore the original System.out
         System.setOut(originalOut);
+        
+        resetUserManager();
+        System.clearProperty("bankapp.users.file");
+        try (Stream<Path> paths = Files.walk(USERS_ROOT)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+    
+    private void resetUserManager() throws Exception {
+        Field instance = UserManager.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
     }
     
     @Test
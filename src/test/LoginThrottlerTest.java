@@ -0,0 +1,99 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.LoginThrottler;
+
+class LoginThrottlerTest {
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void tryAcquire_turnsAwayAttemptsOverTheLimit() {
+        LoginThrottler throttler = new LoginThrottler(3, 60_000, 1024, now::get);
+
+        assertTrue(throttler.tryAcquire("alice"));
+        assertTrue(throttler.tryAcquire("alice"));
+        assertTrue(throttler.tryAcquire("alice"));
+        assertFalse(throttler.tryAcquire("alice"));
+        assertTrue(throttler.tryAcquire("bob"), "Other keys should have their own counts");
+
+        assertEquals(4, throttler.getAllowedCount());
+        assertEquals(1, throttler.getRejectedCount());
+        assertEquals(2, throttler.getTrackedKeyCount());
+    }
+
+    @Test
+    void tryAcquire_slidesThePreviousWindowOut() {
+        LoginThrottler throttler = new LoginThrottler(4, 60_000, 1024, now::get);
+        now.set(60_000 * 100); // Start of a window
+        for (int i = 0; i < 4; i++) {
+            assertTrue(throttler.tryAcquire("alice"));
+        }
+
+        // A quarter into the next window, three quarters of the old count still apply
+        now.addAndGet(60_000 + 15_000);
+        assertTrue(throttler.tryAcquire("alice"));
+        assertFalse(throttler.tryAcquire("alice"));
+
+        // Three quarters in, only one of the old attempts still applies
+        now.addAndGet(30_000);
+        assertTrue(throttler.tryAcquire("alice"));
+        assertTrue(throttler.tryAcquire("alice"));
+        assertFalse(throttler.tryAcquire("alice"));
+
+        // Two windows later every count has expired
+        now.addAndGet(120_000);
+        assertEquals(0, throttler.getTrackedKeyCount());
+        assertTrue(throttler.tryAcquire("alice"));
+    }
+
+    @Test
+    void tryAcquire_keepsMemoryBoundedByEvicting() {
+        LoginThrottler throttler = new LoginThrottler(5, 60_000, 64, now::get);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(throttler.tryAcquire("source" + i));
+        }
+
+        assertEquals(64, throttler.getCapacity());
+        assertTrue(throttler.getTrackedKeyCount() <= 64);
+        assertTrue(throttler.getEvictedCount() >= 10_000 - 64);
+    }
+
+    @Test
+    void tryAcquire_neverAllowsMoreThanTheLimitConcurrently() throws Exception {
+        LoginThrottler throttler = new LoginThrottler(50, 60_000, 1024, now::get);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            results.add(executor.submit(() -> {
+                int allowed = 0;
+                for (int i = 0; i < 1000; i++) {
+                    if (throttler.tryAcquire("contested")) {
+                        allowed++;
+                    }
+                }
+                return allowed;
+            }));
+        }
+        int allowed = 0;
+        for (Future<Integer> result : results) {
+            allowed += result.get();
+        }
+        executor.shutdown();
+
+        assertEquals(50, allowed);
+        assertEquals(8000 - 50, throttler.getRejectedCount());
+    }
+
+    @Test
+    void constructor_rejectsLimitsThatDoNotFit() {
+        assertThrows(IllegalArgumentException.class, () -> new LoginThrottler(0, 60_000, 16));
+        assertThrows(IllegalArgumentException.class, () -> new LoginThrottler(LoginThrottler.MAX_LIMIT + 1, 60_000, 16));
+    }
+}
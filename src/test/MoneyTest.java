@@ -0,0 +1,96 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.Money;
+
+class MoneyTest {
+
+    @Test
+    void format_matchesTwoDecimalPlaces() {
+        assertEquals("0.00", Money.format(0));
+        assertEquals("0.05", Money.format(5));
+        assertEquals("-0.05", Money.format(-5));
+        assertEquals("12.30", Money.format(1230));
+        assertEquals("-1234.56", Money.format(-123456));
+        for (long cents : new long[] {1, 99, 100, 101, 1_000_000_07L, -42}) {
+            assertEquals(String.format("%.2f", cents / 100.0), Money.format(cents));
+        }
+        assertEquals(BigDecimal.valueOf(Long.MIN_VALUE, 2).toPlainString(), Money.format(Long.MIN_VALUE));
+    }
+
+    @Test
+    void parse_readsDecimalAmounts() {
+        assertEquals(1200, Money.parse("12"));
+        assertEquals(-350, Money.parse("-3.5"));
+        assertEquals(50, Money.parse(".5"));
+        assertEquals(1005, Money.parse("+10.05"));
+        assertEquals(1234, Money.parse("x12.34y", 1, 6));
+    }
+
+    @Test
+    void parse_roundsExtraDigitsHalfToEven() {
+        assertEquals(30, Money.parse("0.30000000000000004"));
+        assertEquals(2, Money.parse("0.025"));
+        assertEquals(4, Money.parse("0.035"));
+        assertEquals(3, Money.parse("0.0250001"));
+        assertEquals(-4, Money.parse("-0.035"));
+        assertEquals(123456, Money.parse("1234.564999"));
+    }
+
+    @Test
+    void parse_acceptsExponentsAndRejectsGarbage() {
+        assertEquals(1_000_000_000L, Money.parse("1.0E7"));
+        assertEquals(1, Money.parse("1e-2"));
+        assertThrows(NumberFormatException.class, () -> Money.parse(""));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.2.3"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("12abc"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("NaN"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("999999999999999999999"));
+    }
+
+    @Test
+    void divide_roundsEachModeLikeBigDecimal() {
+        long[] dividends = {-26, -25, -24, -15, -5, -1, 0, 1, 5, 15, 24, 25, 26, 35};
+        RoundingMode[] modes = {RoundingMode.UP, RoundingMode.DOWN, RoundingMode.CEILING, RoundingMode.FLOOR,
+            RoundingMode.HALF_UP, RoundingMode.HALF_DOWN, RoundingMode.HALF_EVEN};
+        for (long dividend : dividends) {
+            for (RoundingMode mode : modes) {
+                long expected = BigDecimal.valueOf(dividend).divide(BigDecimal.TEN, 0, mode).longValueExact();
+                assertEquals(expected, Money.divide(dividend, 10, mode), dividend + "/10 " + mode);
+            }
+        }
+        assertThrows(ArithmeticException.class, () -> Money.divide(5, 10, RoundingMode.UNNECESSARY));
+        assertEquals(2, Money.divide(20, 10, RoundingMode.UNNECESSARY));
+        assertEquals(1, Money.divide(Long.MAX_VALUE / 2 + 1, Long.MAX_VALUE, RoundingMode.HALF_UP));
+    }
+
+    @Test
+    void percentOf_usesTheGivenRounding() {
+        assertEquals(500, Money.percentOf(5000, 10.0, RoundingMode.HALF_UP));
+        assertEquals(2, Money.percentOf(50, 5.0, RoundingMode.HALF_EVEN)); // 2.5 cents
+        assertEquals(3, Money.percentOf(50, 5.0, RoundingMode.HALF_UP));
+        assertEquals(4, Money.percentOf(70, 5.0, RoundingMode.HALF_EVEN)); // 3.5 cents
+        assertEquals(1, Money.percentOf(1, 0.0001, RoundingMode.CEILING));
+        assertEquals(-250, Money.percentOf(-10000, 2.5, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    void percentOf_fallsBackToBigDecimalForHugeAmounts() {
+        long cents = Long.MAX_VALUE / 4;
+        long expected = BigDecimal.valueOf(cents).multiply(BigDecimal.valueOf(15))
+                .divide(BigDecimal.valueOf(100), 0, RoundingMode.HALF_UP).longValueExact();
+
+        assertEquals(expected, Money.percentOf(cents, 15.0, RoundingMode.HALF_UP));
+    }
+
+    @Test
+    void fromDouble_roundsToTheNearestCent() {
+        assertEquals(30, Money.fromDouble(0.1 + 0.2));
+        assertEquals(-1999, Money.fromDouble(-19.99));
+        assertEquals(19.99, Money.toDouble(1999));
+    }
+}
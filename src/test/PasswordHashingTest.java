@@ -0,0 +1,77 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.LegacySha256PasswordHasher;
+import bankapp.PasswordHasher;
+import bankapp.PasswordHashing;
+import bankapp.Pbkdf2PasswordHasher;
+
+class PasswordHashingTest {
+    private PasswordHasher original;
+
+    @BeforeEach
+    void setup() {
+        original = PasswordHashing.getHasher();
+        PasswordHashing.setHasher(new Pbkdf2PasswordHasher(2000)); // Cheap enough for tests
+    }
+
+    @AfterEach
+    void cleanup() {
+        PasswordHashing.setHasher(original);
+    }
+
+    @Test
+    void pbkdf2_saltsEachHashAndVerifies() {
+        String first = PasswordHashing.hash("Password123!");
+        String second = PasswordHashing.hash("Password123!");
+
+        assertTrue(first.startsWith("pbkdf2-sha256$2000$"));
+        assertNotEquals(first, second, "Each hash should get its own salt");
+        assertTrue(PasswordHashing.verify("Password123!", first));
+        assertTrue(PasswordHashing.verify("Password123!", second));
+        assertFalse(PasswordHashing.verify("Password123?", first));
+        assertFalse(PasswordHashing.needsRehash(first));
+    }
+
+    @Test
+    void legacyHash_verifiesAndNeedsRehash() throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest("Password123!".getBytes(StandardCharsets.UTF_8));
+        String legacy = Base64.getEncoder().encodeToString(digest);
+
+        assertTrue(PasswordHashing.hasherFor(legacy) instanceof LegacySha256PasswordHasher);
+        assertTrue(PasswordHashing.verify("Password123!", legacy));
+        assertFalse(PasswordHashing.verify("Password123?", legacy));
+        assertTrue(PasswordHashing.needsRehash(legacy));
+    }
+
+    @Test
+    void raisedCost_oldHashesStillVerifyButNeedRehash() {
+        String cheap = PasswordHashing.hash("Password123!");
+        PasswordHashing.setHasher(new Pbkdf2PasswordHasher(4000));
+
+        assertTrue(PasswordHashing.verify("Password123!", cheap));
+        assertTrue(PasswordHashing.needsRehash(cheap));
+        assertFalse(PasswordHashing.needsRehash(PasswordHashing.hash("Password123!")));
+    }
+
+    @Test
+    void malformedOrUnknownHashes_doNotVerify() {
+        assertFalse(PasswordHashing.verify("Password123!", "pbkdf2-sha256$notanumber$AAAA$AAAA"));
+        assertFalse(PasswordHashing.verify("Password123!", "pbkdf2-sha256$1000$AAAA"));
+        assertFalse(PasswordHashing.verify("Password123!", "bcrypt$10$whatever"));
+        assertTrue(PasswordHashing.needsRehash("bcrypt$10$whatever"));
+    }
+
+    @Test
+    void calibrate_scalesWithTargetTime() {
+        int quick = Pbkdf2PasswordHasher.calibrate(5);
+        int slow = Pbkdf2PasswordHasher.calibrate(200);
+
+        assertTrue(quick >= 1000);
+        assertTrue(slow > quick, "A longer target should allow more iterations");
+    }
+}
@@ -1,8 +1,16 @@
 package test;
 
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import java.io.ByteArrayInputStream;
 import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
 import bankapp.AccountManager;
 import bankapp.BankAccount;
 import bankapp.CheckingAccount;
@@ -10,6 +18,23 @@ import bankapp.PromptHandler;
 import static org.junit.jupiter.api.Assertions.*;
 
 class PromptHandlerTest {
+    private static final Path ACCOUNTS_ROOT = Paths.get("..", "data", "testprompthandler");
+    
+    @BeforeAll
+    static void useTestAccountsDirectory() {
+        System.setProperty("bankapp.accounts.dir", ACCOUNTS_ROOT.toString());
+    }
+    
+    @AfterAll
+    static void removeTestAccountsDirectory() throws IOException {
+        AccountManager.flushAll();
+        System.clearProperty("bankapp.accounts.dir");
+        if (Files.exists(ACCOUNTS_ROOT)) {
+            try (Stream<Path> paths = Files.walk(ACCOUNTS_ROOT)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
     
     // Original tests
 	@Test
@@ -116,6 +141,20 @@ class PromptHandlerTest {
         assertEquals(100.00, account.getBalance(), 0.001);
     }
     
+    @Test
+    void testHandleDepositRejectsNonNumericAmounts() {
+        AccountManager accountManager = new AccountManager("testuser");
+        BankAccount account = new CheckingAccount("TestAccount");
+        account.deposit(100.00);
+        
+        for (String input : new String[] {"NaN\n", "Infinity\n", "1e400\n"}) {
+            Scanner scanner = new Scanner(new ByteArrayInputStream(input.getBytes()));
+            PromptHandler.handleDeposit(accountManager, account, scanner);
+        }
+        
+        assertEquals(10_000, account.getBalanceCents());
+    }
+    
     @Test
     void testHandleDepositWithNegativeAmount() {
         // Setup
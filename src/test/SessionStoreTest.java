@@ -0,0 +1,123 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.SessionStore;
+import bankapp.User;
+
+class SessionStoreTest {
+    private static final long MINUTE = 60_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setup() {
+        alice = User.loadExistingUser("session-alice", "unused");
+        bob = User.loadExistingUser("session-bob", "unused");
+    }
+
+    @Test
+    void get_returnsTheSameHydratedUserForAToken() {
+        SessionStore store = new SessionStore(15 * MINUTE, 480 * MINUTE, 100, now::get);
+        String token = store.create(alice);
+
+        SessionStore.Session session = store.get(token);
+
+        assertNotNull(session);
+        assertSame(alice, session.getUser());
+        assertSame(alice.getAccountManager(), session.getAccountManager());
+        assertNull(store.get("not-a-token"));
+        assertNull(store.get(null));
+    }
+
+    @Test
+    void create_issuesDistinctUnguessableTokens() {
+        SessionStore store = new SessionStore(15 * MINUTE, 480 * MINUTE, 1000, now::get);
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            tokens.add(store.create(alice));
+        }
+
+        assertEquals(500, tokens.size());
+        assertTrue(tokens.iterator().next().length() >= 43, "Tokens should carry 256 random bits");
+    }
+
+    @Test
+    void get_expiresIdleSessionsButUseKeepsThemAlive() {
+        SessionStore store = new SessionStore(15 * MINUTE, 480 * MINUTE, 100, now::get);
+        String used = store.create(alice);
+        String idle = store.create(bob);
+
+        for (int i = 0; i < 6; i++) {
+            now.addAndGet(10 * MINUTE);
+            assertNotNull(store.get(used), "A session in use should stay open");
+        }
+
+        assertNull(store.get(idle), "An idle session should expire");
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void get_expiresSessionsAtTheAbsoluteLimitEvenWhenUsed() {
+        SessionStore store = new SessionStore(15 * MINUTE, 60 * MINUTE, 100, now::get);
+        String token = store.create(alice);
+
+        for (int i = 0; i < 5; i++) {
+            now.addAndGet(10 * MINUTE);
+            assertNotNull(store.get(token));
+        }
+        now.addAndGet(10 * MINUTE);
+
+        assertNull(store.get(token));
+    }
+
+    @Test
+    void expire_sweepsSessionsNobodyAsksForAgain() {
+        SessionStore store = new SessionStore(15 * MINUTE, 480 * MINUTE, 1000, now::get);
+        for (int i = 0; i < 200; i++) {
+            store.create(i % 2 == 0 ? alice : bob);
+            now.addAndGet(1000);
+        }
+        assertEquals(200, store.size());
+
+        // Well past the last idle deadline, after a gap longer than a whole turn of the wheel
+        now.addAndGet(1000 * MINUTE);
+        store.expire();
+
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void create_evictsTheLeastRecentlyUsedSessionWhenFull() {
+        SessionStore store = new SessionStore(15 * MINUTE, 480 * MINUTE, 2, now::get);
+        String first = store.create(alice);
+        String second = store.create(bob);
+        store.get(first);
+
+        String third = store.create(alice);
+
+        assertNotNull(store.get(first));
+        assertNull(store.get(second), "The least recently used session should be evicted");
+        assertNotNull(store.get(third));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void invalidate_endsSessions() {
+        SessionStore store = new SessionStore(15 * MINUTE, 480 * MINUTE, 100, now::get);
+        String token = store.create(alice);
+        store.create(alice);
+        String other = store.create(bob);
+
+        assertTrue(store.invalidate(token));
+        assertFalse(store.invalidate(token));
+        assertNull(store.get(token));
+        assertEquals(1, store.invalidateUser("session-alice"));
+        assertNotNull(store.get(other));
+    }
+}
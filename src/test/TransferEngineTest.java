@@ -0,0 +1,155 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.AccountStorage;
+import bankapp.BankAccount;
+import bankapp.CheckingAccount;
+import bankapp.SavingsAccount;
+import bankapp.TransactionJournal;
+import bankapp.TransactionStatus;
+import bankapp.TransferEngine;
+
+class TransferEngineTest {
+    private static final Path TEST_ROOT = Paths.get("..", "data", "testtransfers");
+
+    @AfterEach
+    void cleanup() throws IOException {
+        TransactionJournal.closeDirectory(TEST_ROOT);
+        if (Files.exists(TEST_ROOT)) {
+            Files.walk(TEST_ROOT)
+                 .sorted(Comparator.reverseOrder())
+                 .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void transfer_movesMoneyAndRecordsBothLegs() throws IOException {
+        TransferEngine engine = new TransferEngine(64);
+        AccountStorage storage = new AccountStorage(TEST_ROOT);
+        BankAccount source = new CheckingAccount("Everyday");
+        BankAccount target = new SavingsAccount("Rainy Day", 1.0);
+        source.depositCents(20_000);
+
+        assertTrue(engine.transfer(source, target, 7_550, storage, "transferuser"));
+
+        assertEquals(12_450, source.getBalanceCents());
+        assertEquals(7_550, target.getBalanceCents());
+        assertEquals("Transfer to Rainy Day: $75.50",
+                storage.getLastNTransactions("transferuser", "Everyday", 1).get(0).split(", ")[0]);
+        assertEquals("Transfer from Everyday: $75.50",
+                storage.getLastNTransactions("transferuser", "Rainy Day", 1).get(0).split(", ")[0]);
+    }
+
+    @Test
+    void transfer_isRefundedWhenTheTargetBalanceWouldOverflow() {
+        TransferEngine engine = new TransferEngine(64);
+        BankAccount source = new CheckingAccount("Source");
+        BankAccount target = new CheckingAccount("Full");
+        source.depositCents(10_000);
+        target.depositCents(Long.MAX_VALUE >> 1);
+
+        assertEquals(TransactionStatus.BALANCE_OUT_OF_RANGE, engine.tryTransfer(source, target, 5_000, null, "transferuser"));
+        assertEquals(10_000, source.getBalanceCents());
+        assertEquals(Long.MAX_VALUE >> 1, target.getBalanceCents());
+    }
+
+    @Test
+    void transfer_leavesBothAccountsUnchangedWhenItFails() {
+        TransferEngine engine = new TransferEngine(64);
+        BankAccount source = new CheckingAccount("Source");
+        BankAccount target = new CheckingAccount("Target");
+        source.depositCents(10_000);
+
+        assertFalse(engine.transfer(source, target, 20_000), "Insufficient funds");
+        assertFalse(engine.transfer(source, target, source.getTransferLimitCents() + 1), "Over the transfer limit");
+        assertFalse(engine.transfer(source, source, 100), "Same account");
+        target.freezeAccount();
+        assertFalse(engine.transfer(source, target, 100), "Frozen target");
+
+        assertEquals(10_000, source.getBalanceCents());
+        assertEquals(0, target.getBalanceCents());
+    }
+
+    @Test
+    void transfer_opposingTransfersDoNotDeadlock() throws Exception {
+        TransferEngine engine = new TransferEngine(64);
+        BankAccount a = new CheckingAccount("A");
+        BankAccount b = new CheckingAccount("B");
+        a.depositCents(1_000_000);
+        b.depositCents(1_000_000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?> forward = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 50_000; i++) {
+                engine.transfer(a, b, 3);
+            }
+            return null;
+        });
+        Future<?> backward = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 50_000; i++) {
+                engine.transfer(b, a, 3);
+            }
+            return null;
+        });
+        start.countDown();
+        forward.get(30, TimeUnit.SECONDS);
+        backward.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertEquals(2_000_000, a.getBalanceCents() + b.getBalanceCents());
+    }
+
+    @Test
+    void transfer_conservesMoneyUnderRandomConcurrentTransfers() throws Exception {
+        TransferEngine engine = new TransferEngine(16); // Few stripes, so accounts share locks
+        BankAccount[] accounts = new BankAccount[50];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new CheckingAccount("Account " + i);
+            accounts[i].depositCents(500);
+        }
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20_000; i++) {
+                    BankAccount from = accounts[random.nextInt(accounts.length)];
+                    BankAccount to = accounts[random.nextInt(accounts.length)];
+                    if (from != to) {
+                        engine.transfer(from, to, 1 + random.nextInt(100));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        long total = 0;
+        for (BankAccount account : accounts) {
+            assertTrue(account.getBalanceCents() >= 0, "No overdraft is allowed");
+            total += account.getBalanceCents();
+        }
+        assertEquals(500L * accounts.length, total);
+    }
+}
@@ -1,14 +1,39 @@
 package test;
 
 import bankapp.*;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
 import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class TransferHandlerTest {
+    private static final Path ACCOUNTS_ROOT = Paths.get("..", "data", "testtransferhandler");
+    
+    @BeforeAll
+    static void useTestAccountsDirectory() {
+        System.setProperty("bankapp.accounts.dir", ACCOUNTS_ROOT.toString());
+    }
+    
+    @AfterAll
+    static void removeTestAccountsDirectory() throws IOException {
+        AccountManager.flushAll();
+        System.clearProperty("bankapp.accounts.dir");
+        if (Files.exists(ACCOUNTS_ROOT)) {
+            try (Stream<Path> paths = Files.walk(ACCOUNTS_ROOT)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
 
     @Test
     void testTransferBetweenAccounts() {
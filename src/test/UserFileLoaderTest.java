@@ -0,0 +1,65 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.User;
+import bankapp.UserFileLoader;
+
+class UserFileLoaderTest {
+    private static final Path TEST_FILE = Paths.get("..", "data", "loader-users.txt");
+
+    @BeforeEach
+    void setup() throws IOException {
+        Files.createDirectories(TEST_FILE.getParent());
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        Files.deleteIfExists(TEST_FILE);
+    }
+
+    private List<String> usernames(List<User> users) {
+        List<String> names = new ArrayList<>();
+        for (User user : users) {
+            names.add(user.getUsername());
+        }
+        return names;
+    }
+
+    @Test
+    void load_smallChunksKeepEveryUserInFileOrder() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String username = "user" + i;
+            contents.append(username).append(",hash").append(i).append('\n');
+            expected.add(username);
+        }
+        Files.write(TEST_FILE, contents.toString().getBytes(StandardCharsets.UTF_8));
+
+        // Chunks of 7 bytes split almost every line, so each boundary must move to a line start
+        assertEquals(expected, usernames(UserFileLoader.load(TEST_FILE, 7)));
+        assertEquals(expected, usernames(UserFileLoader.load(TEST_FILE)));
+    }
+
+    @Test
+    void load_skipsInvalidLinesAndHandlesMissingFinalNewline() throws IOException {
+        Files.write(TEST_FILE, "alice,hash1\r\ninvalidformat\nbob,hash2,extra\n\ncarol,hash3".getBytes(StandardCharsets.UTF_8));
+
+        List<User> users = UserFileLoader.load(TEST_FILE, 4);
+
+        assertEquals(List.of("alice", "carol"), usernames(users));
+    }
+
+    @Test
+    void load_emptyFileHasNoUsers() throws IOException {
+        Files.write(TEST_FILE, new byte[0]);
+
+        assertTrue(UserFileLoader.load(TEST_FILE).isEmpty());
+    }
+}
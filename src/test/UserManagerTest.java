@@ -8,9 +8,19 @@ import org.junit.After;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import bankapp.User;
 import bankapp.UserManager;
@@ -18,16 +28,16 @@ import bankapp.UserManager;
 public class UserManagerTest {
     
     private UserManager userManager;
-    private final String testDataDir = "data";
-    private final String testUserFile = "data/users.txt";
+    private final String testDataDir = "../data/testusermanager";
+    private final String testUserFile = testDataDir + "/users.txt";
     
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         // Create test directory if it doesn't exist
         Path dataDir = Paths.get(testDataDir);
         if (!Files.exists(dataDir)) {
             try {
-                Files.createDirectory(dataDir);
+                Files.createDirectories(dataDir);
             } catch (Exception e) {
                 fail("Could not create test data directory: " + e.getMessage());
             }
@@ -44,18 +54,25 @@ public class UserManagerTest {
             fail("Could not create test user file: " + e.getMessage());
         }
         
-        // Initialize the user manager
+        // Initialize a user manager on the test file, so its shards and filters are written beside it
+        System.setProperty("bankapp.users.file", testUserFile);
+        resetInstance();
         userManager = UserManager.getInstance();
         userManager.refreshUsers();
     }
     
     @After
-    public void tearDown() {
-        // Clean up the test file
-        File userFile = new File(testUserFile);
-        if (userFile.exists()) {
-            userFile.delete();
+    public void tearDown() throws Exception {
+        // Clean up the test directory
+        resetInstance();
+        System.clearProperty("bankapp.users.file");
+        File[] files = new File(testDataDir).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
         }
+        new File(testDataDir).delete();
     }
     
     @Test
@@ -186,4 +203,274 @@ public class UserManagerTest {
         userManager.createAccount("testuser2", "Password123!");
         assertEquals("User count should be 2", 2, userManager.getUserCount());
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testFindByPrefix() {
+        userManager.createAccount("bob_smith", "Password123!");
+        userManager.createAccount("alice", "Password123!");
+        userManager.createAccount("bob", "Password123!");
+        userManager.createAccount("bobby", "Password123!");
+        
+        assertEquals(Arrays.asList("bob", "bob_smith", "bobby"), userManager.findByPrefix("bob", 10));
+        assertEquals(Arrays.asList("bob", "bob_smith"), userManager.findByPrefix("bob", 2));
+        assertTrue("No usernames should match", userManager.findByPrefix("carol", 10).isEmpty());
+        
+        // Users registered after the index was built are found too
+        userManager.createAccount("bobcat", "Password123!");
+        assertEquals(Arrays.asList("bob", "bob_smith", "bobby", "bobcat"), userManager.findByPrefix("bob", 10));
+    }
+    
+    @Test
+    public void testDuplicateUserLinesKeepFirstEntry() throws IOException {
+        userManager.createAccount("testuser1", "Password123!");
+        userManager.createAccount("testuser2", "Different123!");
+        List<String> lines = Files.readAllLines(Paths.get(testUserFile));
+        String secondHash = lines.get(1).split(",")[1];
+        try (FileWriter writer = new FileWriter(testUserFile, true)) {
+            writer.write("testuser1," + secondHash + "\n");
+        }
+        
+        userManager.refreshUsers();
+        
+        assertEquals("Duplicate lines should count once", 2, userManager.getUserCount());
+        assertNotNull("The first entry's password should log in", userManager.login("testuser1", "Password123!"));
+        assertNull("The later entry's password should not log in", userManager.login("testuser1", "Different123!"));
+    }
+    
+    @Test
+    public void testRefreshReadsAppendedUsers() throws IOException {
+        userManager.createAccount("testuser1", "Password123!");
+        
+        // Another process registers a user by appending to the file
+        try (FileWriter writer = new FileWriter(testUserFile, true)) {
+            writer.write("testuser2,hashedpassword2\n");
+            writer.write("partialuser,hashed"); // Still being written
+        }
+        userManager.refreshUsers();
+        
+        assertTrue("Appended user should be visible", userManager.usernameExists("testuser2"));
+        assertFalse("An unterminated line should not be read yet", userManager.usernameExists("partialuser"));
+        assertEquals("User count should be 2", 2, userManager.getUserCount());
+        
+        try (FileWriter writer = new FileWriter(testUserFile, true)) {
+            writer.write("password3\n");
+        }
+        userManager.refreshUsers();
+        
+        assertTrue("Completed line should be read", userManager.usernameExists("partialuser"));
+        assertEquals("User count should be 3", 3, userManager.getUserCount());
+    }
+    
+    @Test
+    public void testRefreshReloadsTruncatedFile() throws IOException {
+        userManager.createAccount("testuser1", "Password123!");
+        userManager.createAccount("testuser2", "Password123!");
+        
+        try (FileWriter writer = new FileWriter(testUserFile)) {
+            writer.write("testuser3,hash3\n");
+        }
+        userManager.refreshUsers();
+        
+        assertFalse("Removed users should be gone", userManager.usernameExists("testuser1"));
+        assertTrue("testuser3 should exist", userManager.usernameExists("testuser3"));
+        assertEquals("User count should be 1", 1, userManager.getUserCount());
+    }
+    
+    @Test
+    public void testWatcherRefreshesOnAppend() throws Exception {
+        userManager.startWatching();
+        try {
+            try (FileWriter writer = new FileWriter(testUserFile, true)) {
+                writer.write("watcheduser,hashedpassword\n");
+            }
+            
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!userManager.usernameExists("watcheduser") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue("Watcher should load the appended user", userManager.usernameExists("watcheduser"));
+        } finally {
+            userManager.stopWatching();
+        }
+    }
+    
+    @Test
+    public void testUsernameFilterIsSavedOnFullLoad() throws IOException {
+        try (FileWriter writer = new FileWriter(testUserFile)) {
+            writer.write("filtered1,hashedpassword1\n");
+            writer.write("filtered2,hashedpassword2\n");
+        }
+        Files.deleteIfExists(Paths.get(testDataDir, "users.bloom"));
+        
+        // A shorter file forces a full load
+        userManager.createAccount("testuser1", "Password123!");
+        try (FileWriter writer = new FileWriter(testUserFile)) {
+            writer.write("filtered1,hashedpassword1\n");
+        }
+        userManager.refreshUsers();
+        
+        assertTrue("Username filter should be saved", Files.exists(Paths.get(testDataDir, "users.bloom")));
+        assertTrue("filtered1 should exist", userManager.usernameExists("filtered1"));
+        assertFalse("filtered2 should not exist", userManager.usernameExists("filtered2"));
+        assertFalse("testuser1 should not exist", userManager.usernameExists("testuser1"));
+    }
+    
+    @Test
+    public void testShardedRegistrationIsAtomic() throws Exception {
+        UserManager sharded = useShardedManager(4);
+        try {
+            int threads = 8;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<User>> sameName = new ArrayList<>();
+            List<Future<User>> distinctNames = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int n = i;
+                sameName.add(executor.submit(() -> sharded.createAccount("contested", "Password123!")));
+                distinctNames.add(executor.submit(() -> sharded.createAccount("sharded" + n, "Password123!")));
+            }
+            int created = 0;
+            for (Future<User> result : sameName) {
+                if (result.get() != null) {
+                    created++;
+                }
+            }
+            for (Future<User> result : distinctNames) {
+                assertNotNull("Every distinct name should register", result.get());
+            }
+            executor.shutdown();
+            
+            assertEquals("Only one registration of a name should succeed", 1, created);
+            int lines = 0;
+            for (int i = 0; i < 4; i++) {
+                lines += Files.readAllLines(Paths.get(testDataDir, "users-" + i + ".txt")).size();
+            }
+            assertEquals("Each user should be written once", threads + 1, lines);
+            
+            // A new manager reads every shard back
+            UserManager reloaded = useShardedManager(4);
+            assertEquals("All users should load from the shards", threads + 1, reloaded.getUserCount());
+            assertNotNull("contested should log in", reloaded.login("contested", "Password123!"));
+        } finally {
+            useDefaultManager();
+        }
+    }
+    
+    @Test
+    public void testUnshardedUsersMoveIntoShards() throws Exception {
+        try (FileWriter writer = new FileWriter(testUserFile)) {
+            writer.write("legacy1,hashedpassword1\n");
+            writer.write("legacy2,hashedpassword2\n");
+        }
+        
+        try {
+            UserManager sharded = useShardedManager(2);
+            
+            assertEquals("Imported users should be indexed", 2, sharded.getUserCount());
+            assertEquals("The old file should be emptied", 0, Files.size(Paths.get(testUserFile)));
+            assertEquals("Imported users should be in the shards", 2,
+                    Files.readAllLines(Paths.get(testDataDir, "users-0.txt")).size()
+                    + Files.readAllLines(Paths.get(testDataDir, "users-1.txt")).size());
+        } finally {
+            useDefaultManager();
+        }
+    }
+    
+    @Test
+    public void testLegacyPasswordHashIsUpgradedOnLogin() throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest("Password123!".getBytes(StandardCharsets.UTF_8));
+        try (FileWriter writer = new FileWriter(testUserFile)) {
+            writer.write("legacyuser," + Base64.getEncoder().encodeToString(digest) + "\n");
+        }
+        userManager.refreshUsers();
+        
+        assertNull("A wrong password should not log in", userManager.login("legacyuser", "Wrong123!"));
+        assertNotNull("The legacy hash should still log in", userManager.login("legacyuser", "Password123!"));
+        List<String> lines = Files.readAllLines(Paths.get(testUserFile));
+        assertEquals("The upgraded hash should be appended", 2, lines.size());
+        assertTrue("The new hash should be salted PBKDF2",
+                lines.get(1).startsWith("legacyuser,pbkdf2-sha256$") && lines.get(1).endsWith(",rehash"));
+        
+        assertNotNull("The upgraded hash should log in", userManager.login("legacyuser", "Password123!"));
+        assertEquals("An upgraded hash should not be upgraded again", 2, Files.readAllLines(Paths.get(testUserFile)).size());
+        
+        // A new manager applies the update line
+        resetInstance();
+        userManager = UserManager.getInstance();
+        assertEquals("The update line should not count as a user", 1, userManager.getUserCount());
+        assertNotNull("The upgraded hash should log in after a reload", userManager.login("legacyuser", "Password123!"));
+        assertEquals("A reloaded upgrade should not be repeated", 2, Files.readAllLines(Paths.get(testUserFile)).size());
+    }
+    
+    @Test
+    public void testLoginAttemptsAreThrottled() throws Exception {
+        System.setProperty("bankapp.login.userAttempts", "3");
+        System.setProperty("bankapp.login.sourceAttempts", "5");
+        try {
+            resetInstance();
+            userManager = UserManager.getInstance();
+            userManager.createAccount("throttled1", "Password123!");
+            userManager.createAccount("throttled2", "Password123!");
+            
+            for (int i = 0; i < 3; i++) {
+                assertEquals("Wrong passwords should fail", UserManager.LoginStatus.BAD_CREDENTIALS,
+                        userManager.authenticate("throttled1", "Wrong123!", null).getStatus());
+            }
+            UserManager.LoginResult throttled = userManager.authenticate("throttled1", "Password123!", null);
+            assertEquals("The right password should be turned away once throttled",
+                    UserManager.LoginStatus.THROTTLED, throttled.getStatus());
+            assertNull(throttled.getUser());
+            assertEquals(1, userManager.getUserThrottler().getRejectedCount());
+            
+            // Attempts from one source count across usernames
+            assertNotNull(userManager.login("throttled2", "Password123!", "10.0.0.1"));
+            for (int i = 0; i < 4; i++) {
+                userManager.login("nobody" + i, "Password123!", "10.0.0.1");
+            }
+            assertNull("The source should be throttled", userManager.login("throttled2", "Password123!", "10.0.0.1"));
+            assertNotNull("Other sources should still log in", userManager.login("throttled2", "Password123!", "10.0.0.2"));
+            assertEquals(1, userManager.getSourceThrottler().getRejectedCount());
+        } finally {
+            System.clearProperty("bankapp.login.userAttempts");
+            System.clearProperty("bankapp.login.sourceAttempts");
+            resetInstance();
+            userManager = UserManager.getInstance();
+        }
+    }
+    
+    @Test
+    public void testSessionResolvesWithoutLoggingInAgain() {
+        userManager.createAccount("sessionuser", "Password123!");
+        
+        assertNull("A wrong password should not start a session", userManager.startSession("sessionuser", "Wrong123!", null));
+        String token = userManager.startSession("sessionuser", "Password123!", null);
+        assertNotNull(token);
+        
+        long allowedBefore = userManager.getUserThrottler().getAllowedCount();
+        assertEquals("sessionuser", userManager.getSession(token).getUser().getUsername());
+        assertEquals("A session lookup should not count as a login", allowedBefore, userManager.getUserThrottler().getAllowedCount());
+        
+        assertTrue(userManager.endSession(token));
+        assertNull("An ended session should not resolve", userManager.getSession(token));
+    }
+    
+    private UserManager useShardedManager(int shards) throws Exception {
+        System.setProperty("bankapp.users.shards", String.valueOf(shards));
+        resetInstance();
+        return UserManager.getInstance();
+    }
+    
+    private void useDefaultManager() throws Exception {
+        System.clearProperty("bankapp.users.shards");
+        resetInstance();
+        for (int i = 0; i < 4; i++) {
+            Files.deleteIfExists(Paths.get(testDataDir, "users-" + i + ".txt"));
+            Files.deleteIfExists(Paths.get(testDataDir, "users-" + i + ".bloom"));
+        }
+    }
+    
+    private void resetInstance() throws Exception {
+        Field instance = UserManager.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+    }
+}
@@ -20,6 +20,7 @@ class UserTest {
     private static final String TEST_PASSWORD = "Myhusbandiswalterwhiteyo1!";
     private static final String TEST_FILE_PATH = "data/testusers.txt";
     private static final String PROD_FILE_PATH = "data/users.txt";
+    private static final String PROD_FILTER_PATH = "data/users.bloom"; // Written beside the users file
     
     @BeforeEach
     void setUp() throws Exception {
@@ -38,6 +39,15 @@ class UserTest {
                 System.err.println("Failed to backup production file: " + e.getMessage());
             }
         }
+        File prodFilter = new File(PROD_FILTER_PATH);
+        if (prodFilter.exists()) {
+            try {
+                Files.copy(prodFilter.toPath(), Paths.get(PROD_FILTER_PATH + ".bak"));
+            } catch (IOException e) {
+                System.err.println("Failed to backup production filter: " + e.getMessage());
+            }
+            prodFilter.delete();
+        }
         
         // Delete both files to start clean
         if (prodFile.exists()) {
@@ -98,6 +108,21 @@ class UserTest {
             }
         }
         
+        // The filter written for the test users must not outlive them
+        File prodFilter = new File(PROD_FILTER_PATH);
+        if (prodFilter.exists()) {
+            prodFilter.delete();
+        }
+        File filterBackup = new File(PROD_FILTER_PATH + ".bak");
+        if (filterBackup.exists()) {
+            try {
+                Files.copy(filterBackup.toPath(), Paths.get(PROD_FILTER_PATH));
+                filterBackup.delete();
+            } catch (IOException e) {
+                System.err.println("Failed to restore production filter: " + e.getMessage());
+            }
+        }
+        
         // Reset UserManager to clear any cached state
         resetUserManagerInstance();
     }
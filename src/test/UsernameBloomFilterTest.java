@@ -0,0 +1,95 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.UsernameBloomFilter;
+
+class UsernameBloomFilterTest {
+    private static final Path TEST_FILE = Paths.get("..", "data", "test-users.bloom");
+
+    @AfterEach
+    void cleanup() throws IOException {
+        Files.deleteIfExists(TEST_FILE);
+    }
+
+    @Test
+    void mightContain_hasNoFalseNegatives() {
+        UsernameBloomFilter filter = new UsernameBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("user" + i), "Added username must always be reported");
+        }
+    }
+
+    @Test
+    void mightContain_seesNamesAddedOnAnotherThread() throws InterruptedException {
+        UsernameBloomFilter filter = new UsernameBloomFilter(10000, 0.01);
+        AtomicInteger added = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                filter.add("user" + i);
+                added.set(i + 1);
+            }
+        });
+        writer.start();
+
+        // Every name the writer has finished adding must be seen without a lock
+        while (added.get() < 10000) {
+            int seen = added.get();
+            for (int i = Math.max(0, seen - 100); i < seen; i++) {
+                assertTrue(filter.mightContain("user" + i), "Added username must be visible: user" + i);
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    void mightContain_staysNearTargetFalsePositiveRate() {
+        UsernameBloomFilter filter = new UsernameBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2000, "False positive rate too high: " + falsePositives + " in 100000");
+    }
+
+    @Test
+    void saveAndLoad_keepsContentsAndSource() throws IOException {
+        UsernameBloomFilter filter = new UsernameBloomFilter(2000, 0.05);
+        filter.add("alice");
+        filter.add("bob");
+        filter.save(TEST_FILE, 1234, 5678);
+
+        UsernameBloomFilter loaded = UsernameBloomFilter.load(TEST_FILE);
+
+        assertTrue(loaded.mightContain("alice"));
+        assertTrue(loaded.mightContain("bob"));
+        assertEquals(2000, loaded.getCapacity());
+        assertEquals(0.05, loaded.getFalsePositiveRate());
+        assertEquals(1234, loaded.getSourceOffset());
+        assertEquals(5678, loaded.getSourceStamp());
+        assertNull(UsernameBloomFilter.load(TEST_FILE.resolveSibling("missing.bloom")));
+    }
+
+    @Test
+    void load_rejectsTruncatedFile() throws IOException {
+        new UsernameBloomFilter(2000, 0.01).save(TEST_FILE, 0, 0);
+        byte[] data = Files.readAllBytes(TEST_FILE);
+        Files.write(TEST_FILE, Arrays.copyOf(data, data.length - 8));
+
+        assertThrows(IOException.class, () -> UsernameBloomFilter.load(TEST_FILE));
+    }
+}
@@ -0,0 +1,73 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import static org.junit.jupiter.api.Assertions.*;
+import bankapp.UsernamePrefixIndex;
+
+class UsernamePrefixIndexTest {
+
+    @Test
+    void findByPrefix_returnsSortedMatchesUpToLimit() {
+        UsernamePrefixIndex index = UsernamePrefixIndex.build(Arrays.asList("carol", "bob", "alice", "bobby", "bo"));
+
+        assertEquals(Arrays.asList("bo", "bob", "bobby"), index.findByPrefix("bo", 10));
+        assertEquals(Arrays.asList("bo", "bob"), index.findByPrefix("bo", 2));
+        assertEquals(Arrays.asList("alice", "bo", "bob", "bobby", "carol"), index.findByPrefix("", 10));
+        assertTrue(index.findByPrefix("dave", 10).isEmpty());
+        assertTrue(index.findByPrefix("bobbyz", 10).isEmpty());
+    }
+
+    @Test
+    void add_mergesNewNamesWithBuiltOnes() {
+        List<String> initial = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 2) {
+            initial.add(String.format("user%04d", i));
+        }
+        UsernamePrefixIndex index = UsernamePrefixIndex.build(initial);
+        TreeSet<String> expected = new TreeSet<>(initial);
+
+        // Enough adds to pass the pending limit and force merges
+        List<String> added = new ArrayList<>();
+        for (int i = 1; i < 1000; i += 2) {
+            added.add(String.format("user%04d", i));
+        }
+        Collections.shuffle(added, new Random(42));
+        for (String name : added) {
+            index.add(name);
+            expected.add(name);
+        }
+
+        assertEquals(1000, index.size());
+        assertEquals(new ArrayList<>(expected), index.findByPrefix("user", 2000));
+        assertEquals(Arrays.asList("user0500", "user0501", "user0502"), index.findByPrefix("user05", 3));
+    }
+
+    @Test
+    void build_sortsLikeStringCompareTo() {
+        // Shared eight-character prefixes, short names and characters outside Latin-1
+        List<String> names = new ArrayList<>(Arrays.asList("abcdefgh", "abcdefghz", "abcdefgha", "abc", "ab",
+                "ab\u00ff", "ab\u0100", "ab\u4e2d\u6587", "ab\u4e2d", "\u00e9", "e", "ab\u0000"));
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                name.append(random.nextInt(10) == 0 ? (char) (0xF0 + random.nextInt(32)) : (char) ('a' + random.nextInt(3)));
+            }
+            names.add(name.toString());
+        }
+        TreeSet<String> expected = new TreeSet<>(names);
+        List<String> shuffled = new ArrayList<>(expected);
+        Collections.shuffle(shuffled, random);
+
+        UsernamePrefixIndex index = UsernamePrefixIndex.build(shuffled);
+
+        assertEquals(new ArrayList<>(expected), index.findByPrefix("", Integer.MAX_VALUE));
+    }
+}